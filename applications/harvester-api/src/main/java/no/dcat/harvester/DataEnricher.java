@@ -12,7 +12,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by bjg on 14.10.2016.
@@ -20,6 +23,9 @@ import java.util.List;
  * The purpose of this class is to enrich data imported from external sources
  * Elements required by the DCAT-AP-NO 1.1 standard may be missing.
  * This class adds sensible default data
+ *
+ * The source is detected from the first catalog once, and each property is traversed once. Triples are added after
+ * a traversal is done and removed at the end, so no iterator sees the changes of its own traversal.
  */
 public class DataEnricher {
 
@@ -28,12 +34,23 @@ public class DataEnricher {
     //Default language added to titles, descriptions and keywords with no language
     private static final String DEFAULT_LANGUAGE = "nb";
 
+    private static final Resource VCARD_KIND = ResourceFactory.createResource("http://www.w3.org/2006/vcard/ns#Kind");
+    private static final Resource LICENSE_DOCUMENT = ResourceFactory.createResource("http://purl.org/dc/terms#LicenseDocument");
+    private static final Literal STATENS_VEGVESEN = ResourceFactory.createPlainLiteral("Statens vegvesen");
+    private static final String EU_FREQUENCY = "http://publications.europa.eu/resource/authority/frequency/";
+
+    //Literals of these properties get a language and are cleaned of html
+    private static final List<Property> LANGUAGE_PROPERTIES = Arrays.asList(DCTerms.title, DCTerms.description, DCAT.keyword);
+
     //Hold the model to be enriched
     private Model model;
 
     //Hold statements to be deleted at end
     private List<Statement> statementsToDelete = new ArrayList<>();
 
+    //Cleaned text of the literals seen so far, keywords in particular are repeated across datasets
+    private final Map<String, String> cleanedHtml = new HashMap<>();
+
     /**
      * This method enriches an input RDF DCAT model with extra data
      *
@@ -44,20 +61,23 @@ public class DataEnricher {
 
         model = inputModel;
 
-        if (isEntryscape()) {
-            enrichForEntryscape();
-        }
-        if (isVegvesenet()) {
-            enrichForVegvesenet();
-        }
-        if (isDatanorge()) {
-            enrichForDatanorge();
+        String catalogUri = getFirstCatalogUri();
+        if (catalogUri != null) {
+            if (catalogUri.contains("://difi.entryscape.net/")) {
+                enrichForEntryscape();
+            }
+            if (catalogUri.contains("utv.vegvesen.no")) {
+                enrichForVegvesenet();
+            }
+            if (catalogUri.contains("data.norge.no")) {
+                enrichForDatanorge();
+            }
         }
 
         enrichLanguageAndCleanHtml();
 
         //Remove statements marked for deletion
-        statementsToDelete.forEach(model::remove);
+        model.remove(statementsToDelete);
 
         return model;
 
@@ -65,32 +85,16 @@ public class DataEnricher {
 
 
     /**
-     * Check to see if a model have been created with EntryScape
-     */
-    private boolean isEntryscape() {
-        //detect entryscape data by doing a string match against the uri of a catalog
-        ResIterator resIterator = model.listResourcesWithProperty(RDF.type, model.createResource("http://www.w3.org/ns/dcat#Catalog"));
-        return resIterator.hasNext() && resIterator.nextResource().getURI().contains("://difi.entryscape.net/");
-    }
-
-
-    /**
-     * Check if model is from data.norge.no (Norwegian register for open data)
+     * The source of a model is detected by a string match against the uri of its first catalog:
+     * EntryScape, Vegvesenet (Norwegian state roads authority) or data.norge.no (Norwegian register for open data)
      */
-    private boolean isDatanorge() {
-        //detect datanorge data by doing a string match against the uri of a catalog
-        ResIterator resIterator = model.listResourcesWithProperty(RDF.type, model.createResource("http://www.w3.org/ns/dcat#Catalog"));
-        return resIterator.hasNext() && resIterator.nextResource().getURI().contains("data.norge.no");
-    }
-
-
-    /**
-     * Check if model is from Vegvesenet (Norwegian state roads authority)
-     */
-    private boolean isVegvesenet() {
-        //detect Vegvesenet data by doing a string match against the uri of a catalog
-        ResIterator resIterator = model.listResourcesWithProperty(RDF.type, model.createResource("http://www.w3.org/ns/dcat#Catalog"));
-        return resIterator.hasNext() && resIterator.nextResource().getURI().contains("utv.vegvesen.no");
+    private String getFirstCatalogUri() {
+        ResIterator resIterator = model.listResourcesWithProperty(RDF.type, DCAT.Catalog);
+        try {
+            return resIterator.hasNext() ? resIterator.nextResource().getURI() : null;
+        } finally {
+            resIterator.close();
+        }
     }
 
 
@@ -98,55 +102,40 @@ public class DataEnricher {
      * Add required DCAT-AP-NO data elements to models created with Entryscape
      */
     private void enrichForEntryscape() {
+        List<Statement> additions = new ArrayList<>();
 
         // Add type DCTerms.RightsStatement to alle DCTerms.rights
-        NodeIterator dctRights = model.listObjectsOfProperty(DCTerms.rights);
-        while (dctRights.hasNext()) {
-            dctRights.next().asResource().addProperty(RDF.type, DCTerms.RightsStatement);
-        }
+        addTypeToObjects(DCTerms.rights, DCTerms.RightsStatement);
 
         // Add type  DCTerms.Location to all DCTerms.spatial
-        NodeIterator dctSpatial = model.listObjectsOfProperty(DCTerms.spatial);
-        while (dctSpatial.hasNext()) {
-            dctSpatial.next().asResource().addProperty(RDF.type, DCTerms.Location);
-        }
+        addTypeToObjects(DCTerms.spatial, DCTerms.Location);
 
         // Replace all DCTerms.issued where the literal is not a date or datetime
-        StmtIterator dctIssued = model.listStatements(new SimpleSelector(null, DCTerms.issued, (RDFNode) null));
+        StmtIterator dctIssued = model.listStatements(null, DCTerms.issued, (RDFNode) null);
         while (dctIssued.hasNext()) {
             Statement statement = dctIssued.next();
             Literal literal = statement.getObject().asLiteral();
             if (literal.getDatatype().equals(XSDDatatype.XSDstring)) {
-
-
                 String string = literal.getString();
                 statementsToDelete.add(statement);
 
-                if (string.contains(":")) {
-                    //datetime
-                    Literal typedLiteral = ResourceFactory.createTypedLiteral(string, XSDDatatype.XSDdateTime);
-                    statement.getSubject().addLiteral(DCTerms.issued, typedLiteral);
-                } else {
-                    //date
-
-                    Literal typedLiteral = ResourceFactory.createTypedLiteral(string, XSDDatatype.XSDdate);
-                    statement.getSubject().addLiteral(DCTerms.issued, typedLiteral);
-
-                }
-
-
+                //datetime if there is a time, otherwise date
+                XSDDatatype datatype = string.contains(":") ? XSDDatatype.XSDdateTime : XSDDatatype.XSDdate;
+                additions.add(model.createStatement(statement.getSubject(), DCTerms.issued, ResourceFactory.createTypedLiteral(string, datatype)));
             }
         }
 
         // Remove DCTerms.accrualPeriodicity that are not according to DCAT AP 1.1
-        StmtIterator accrualPeriodicity = model.listStatements(new SimpleSelector(null, DCTerms.accrualPeriodicity, (RDFNode) null));
+        StmtIterator accrualPeriodicity = model.listStatements(null, DCTerms.accrualPeriodicity, (RDFNode) null);
         while (accrualPeriodicity.hasNext()) {
             Statement statement = accrualPeriodicity.next();
             String uri = statement.getObject().asResource().getURI();
-            if (!uri.startsWith("http://publications.europa.eu/resource/authority/frequency/")) {
+            if (!uri.startsWith(EU_FREQUENCY)) {
                 statementsToDelete.add(statement);
             }
         }
+
+        model.add(additions);
     } //end method enrichForEntryscape
 
 
@@ -156,42 +145,31 @@ public class DataEnricher {
     private void enrichForVegvesenet() {
 
         // Make all use of dcat:contactPoint point to resources of type vcard:Kind
-        NodeIterator contactPoint = model.listObjectsOfProperty(DCAT.contactPoint);
-        while (contactPoint.hasNext()) {
-            Resource resource = contactPoint.next().asResource();
-            resource.addProperty(RDF.type, model.createResource("http://www.w3.org/2006/vcard/ns#Kind"));
-        }
+        addTypeToObjects(DCAT.contactPoint, VCARD_KIND);
 
         // Find a resource with foaf:name "Statens vegvesen" and use it as the dct:publisher for all dcat:Catalog(s)
-        ResIterator catalogPublisher = model.listSubjectsWithProperty(RDF.type, DCAT.Catalog);
-        while (catalogPublisher.hasNext()) {
-            Resource resource = catalogPublisher.next().asResource();
-            ResIterator resIterator = model.listSubjectsWithProperty(FOAF.name, "Statens vegvesen");
-            resource.addProperty(DCTerms.publisher, resIterator.nextResource());
+        List<Resource> catalogs = model.listSubjectsWithProperty(RDF.type, DCAT.Catalog).toList();
+        if (!catalogs.isEmpty()) {
+            ResIterator publishers = model.listSubjectsWithProperty(FOAF.name, STATENS_VEGVESEN);
+            Resource publisher = publishers.nextResource();
+            publishers.close();
+            for (Resource catalog : catalogs) {
+                catalog.addProperty(DCTerms.publisher, publisher);
+            }
         }
 
         // Change dcat:accessUrl from string literal to uri resource
-        List<Statement> toDelete = new ArrayList<>();
+        List<Statement> additions = new ArrayList<>();
         StmtIterator accessURL = model.listStatements(null, DCAT.accessUrl, (String) null);
         while (accessURL.hasNext()) {
-            toDelete.add(accessURL.nextStatement());
-        }
-
-        //TODO: kan sikkert gjøres på en lurerer måte
-        for (Statement statement : toDelete) {
-            Resource subject = statement.getSubject();
-            subject.addProperty(DCAT.accessUrl, model.createResource(statement.getObject().toString()));
+            Statement statement = accessURL.nextStatement();
+            additions.add(model.createStatement(statement.getSubject(), DCAT.accessUrl, model.createResource(statement.getObject().toString())));
             statementsToDelete.add(statement);
         }
-
+        model.add(additions);
 
         // Make all uses of dct:publisher point to resources of type foaf:Agent
-        NodeIterator dctPublisher = model.listObjectsOfProperty(DCTerms.publisher);
-        while (dctPublisher.hasNext()) {
-            Resource resource = dctPublisher.next().asResource();
-            resource.addProperty(RDF.type, FOAF.Agent);
-        }
-
+        addTypeToObjects(DCTerms.publisher, FOAF.Agent);
 
     } //end method enrichForVegvesenet
 
@@ -201,31 +179,34 @@ public class DataEnricher {
      */
     private void enrichForDatanorge() {
         // Add dct:LicenseDocument to license, if it is missing
-        NodeIterator licenses = model.listObjectsOfProperty(DCTerms.license);
-        while (licenses.hasNext()) {
-            Resource license = licenses.next().asResource();
+        for (RDFNode node : model.listObjectsOfProperty(DCTerms.license).toList()) {
+            Resource license = node.asResource();
             if(license.getProperty(DCTerms.source) == null) {
-                license.addProperty(RDF.type, model.createResource("http://purl.org/dc/terms#LicenseDocument"));
+                license.addProperty(RDF.type, LICENSE_DOCUMENT);
                 license.addProperty(DCTerms.source, license.getURI());
             }
         }
     }
 
 
+    private void addTypeToObjects(Property property, Resource type) {
+        for (RDFNode node : model.listObjectsOfProperty(property).toList()) {
+            node.asResource().addProperty(RDF.type, type);
+        }
+    }
+
+
     /**
      * Add language tag to dataset title, description and keyword if this is missing
      * Value will be set to "no-nb"
      * See Jira https://jira.brreg.no/browse/FDK-82
      */
     private void enrichLanguageAndCleanHtml() {
-        //Enrich title properties
-        enrichLanguageForPropertyAndCleanHtml(DCTerms.title, DEFAULT_LANGUAGE);
-
-        //Enrich description properties
-        enrichLanguageForPropertyAndCleanHtml(DCTerms.description, DEFAULT_LANGUAGE);
-
-        //Enrich keyword properties
-        enrichLanguageForPropertyAndCleanHtml(DCAT.keyword, DEFAULT_LANGUAGE);
+        List<Statement> additions = new ArrayList<>();
+        for (Property predicate : LANGUAGE_PROPERTIES) {
+            enrichLanguageForPropertyAndCleanHtml(predicate, DEFAULT_LANGUAGE, additions);
+        }
+        model.add(additions);
     }
 
 
@@ -234,24 +215,26 @@ public class DataEnricher {
      * to object literal if language is missing
      * @param predicate predicate to search for
      * @param language language code that will be added to literal
+     * @param additions receives the statements to add
      */
-    private void enrichLanguageForPropertyAndCleanHtml(Property predicate, String language) {
+    private void enrichLanguageForPropertyAndCleanHtml(Property predicate, String language, List<Statement> additions) {
         //Find all statements with specified property
-        StmtIterator statementIterator = model.listStatements(new SimpleSelector(null, predicate, (RDFNode) null));
+        StmtIterator statementIterator = model.listStatements(null, predicate, (RDFNode) null);
         while(statementIterator.hasNext()) {
             Statement statement = statementIterator.nextStatement();
             Literal literal = statement.getObject().asLiteral();
 
             String originalLiteralString = literal.getString();
-            String cleanedString = HtmlCleaner.clean(originalLiteralString);
+            String cleanedString = cleanedHtml.computeIfAbsent(originalLiteralString, HtmlCleaner::clean);
 
             //if language is blank, specified language should be added
             //if language code is "no", change to specified language, in order to keep language coding consistent
-            if(isLanguageBlankOrNo(literal) || !originalLiteralString.equals(cleanedString)) {
+            boolean languageBlankOrNo = isLanguageBlankOrNo(literal);
+            if(languageBlankOrNo || !originalLiteralString.equals(cleanedString)) {
                 //create new resource with language added
-                String languageToSet = isLanguageBlankOrNo(literal) ? language : literal.getLanguage();
+                String languageToSet = languageBlankOrNo ? language : literal.getLanguage();
                 Literal literalWithLang = ResourceFactory.createLangLiteral(cleanedString, languageToSet);
-                statement.getSubject().addLiteral(predicate, literalWithLang);
+                additions.add(model.createStatement(statement.getSubject(), predicate, literalWithLang));
 
                 //mark resource without language for deletion
                 statementsToDelete.add(statement);
@@ -2,6 +2,9 @@ package no.dcat.harvester;
 
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.LoadingCache;
+import no.dcat.client.referencedata.ReferenceCodeCache;
+import no.dcat.harvester.settings.ApplicationSettings;
+import no.dcat.harvester.settings.CrawlerSettings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -16,6 +19,7 @@ import springfox.documentation.spring.web.plugins.Docket;
 import springfox.documentation.swagger2.annotations.EnableSwagger2;
 
 import java.net.URL;
+import java.time.Duration;
 
 @SpringBootApplication
 @PropertySource({"classpath:swagger.properties"})
@@ -50,6 +54,14 @@ public class HarvesterApplication {
                 .build();
     }
 
+    /**
+     * The code lists and themes from reference-data, shared by the readers of all harvests
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ReferenceCodeCache referenceCodeCache(ApplicationSettings applicationSettings, CrawlerSettings crawlerSettings) {
+        return new ReferenceCodeCache(applicationSettings.getReferenceDataUrl(), Duration.ofMinutes(crawlerSettings.getReferenceCodeRefreshMinutes()));
+    }
+
     public static void main(String[] args) {
 
         SpringApplication.run(HarvesterApplication.class, args);
@@ -7,41 +7,318 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Runs crawler jobs on a fixed number of threads and keeps a registry of the jobs that are queued or running.
+ *
+ * There is at most one job per dcat source: submitting a source that is already queued or running returns the
+ * job that is there. The queue is bounded, and a submission is rejected with a {@link RejectedExecutionException}
+ * when it is full. Jobs can be cancelled, and a running job is cancelled when it has run longer than the timeout.
+ */
 @Component
 public class Crawler {
-	
+
+	static final int DEFAULT_THREAD_POOL_SIZE = 2;
+	static final int DEFAULT_MAX_QUEUED_JOBS = 100;
+
 	@Autowired
 	private CrawlerSettings crawlerSettings;
 
 
 	private ThreadPoolExecutor executorService;
-	
+	private ScheduledExecutorService timeoutService;
+	private Duration jobTimeout = Duration.ZERO;
+
+	private final Map<String, Job> jobs = new LinkedHashMap<>();
+	private final AtomicLong jobCounter = new AtomicLong();
+
 	private final Logger logger = LoggerFactory.getLogger(Crawler.class);
-	
+
+	public enum State {
+		QUEUED, RUNNING
+	}
+
+	/**
+	 * Called when a job is done, whether it completed, failed or was cancelled.
+	 */
+	@FunctionalInterface
+	public interface CompletionListener {
+		/**
+		 * @param duration how long the job ran, zero if it was cancelled before it started
+		 * @param error    what the job threw, a {@link CancellationException} if it was cancelled, or null
+		 */
+		void completed(Duration duration, Throwable error);
+	}
+
 	public Crawler() {
 	}
-	
+
+	Crawler(CrawlerSettings crawlerSettings) {
+		this.crawlerSettings = crawlerSettings;
+	}
+
 	@PostConstruct
 	public void initialize() {
+		int threadPoolSize = DEFAULT_THREAD_POOL_SIZE;
+		int maxQueuedJobs = DEFAULT_MAX_QUEUED_JOBS;
 		if (crawlerSettings != null) {
-			executorService = (ThreadPoolExecutor) Executors.newFixedThreadPool(crawlerSettings.getThreadPoolSize());
-		} else {
-			executorService = (ThreadPoolExecutor) Executors.newFixedThreadPool(2);
+			threadPoolSize = crawlerSettings.getThreadPoolSize() > 0 ? crawlerSettings.getThreadPoolSize() : threadPoolSize;
+			maxQueuedJobs = crawlerSettings.getMaxQueuedJobs() > 0 ? crawlerSettings.getMaxQueuedJobs() : maxQueuedJobs;
+			jobTimeout = Duration.ofMinutes(crawlerSettings.getJobTimeoutMinutes());
 		}
 
+		executorService = new ThreadPoolExecutor(threadPoolSize, threadPoolSize, 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<>(maxQueuedJobs));
+		timeoutService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "crawler-job-timeout");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executorService.shutdownNow();
+		timeoutService.shutdownNow();
+	}
+
+	void setJobTimeout(Duration jobTimeout) {
+		this.jobTimeout = jobTimeout;
 	}
 
 	public synchronized boolean isIdle(){
-		return executorService.getQueue().isEmpty() && executorService.getActiveCount() == 0;
+		return jobs.isEmpty() && executorService.getQueue().isEmpty() && executorService.getActiveCount() == 0;
 	}
 
 
-	synchronized public Future<?> execute(CrawlerJob crawlerJob) {
-		return executorService.submit(crawlerJob);
+	/**
+	 * Queues the job, unless a job for the same dcat source is already queued or running.
+	 *
+	 * @return the queued job, or the job that was already there
+	 * @throws RejectedExecutionException if the queue is full
+	 */
+	public Future<?> execute(CrawlerJob crawlerJob) {
+		return execute(crawlerJob.getDcatSourceId(), crawlerJob, null);
+	}
+
+	/**
+	 * Queues the job, unless a job for the same dcat source is already queued or running. In that case the listener
+	 * is called when the job that is there is done.
+	 *
+	 * @param dcatSourceId the source the job harvests, or null to run the job without checking for duplicates
+	 * @param task         the job
+	 * @param listener     called when the job is done, may be null
+	 * @return the queued job, or the job that was already there
+	 * @throws RejectedExecutionException if the queue is full
+	 */
+	public synchronized Future<?> execute(String dcatSourceId, Runnable task, CompletionListener listener) {
+		Job existing = dcatSourceId != null ? jobs.get(dcatSourceId) : null;
+		if (existing != null) {
+			logger.info("Crawler job for {} is already {}, not queued again", dcatSourceId, existing.getState());
+			if (listener != null) {
+				existing.listeners.add(listener);
+			}
+			return existing;
+		}
+
+		String key = dcatSourceId != null ? dcatSourceId : "job-" + jobCounter.incrementAndGet();
+		Job job = new Job(key, task);
+		if (listener != null) {
+			job.listeners.add(listener);
+		}
+
+		jobs.put(key, job);
+		try {
+			executorService.execute(job);
+		} catch (RejectedExecutionException e) {
+			jobs.remove(key);
+			logger.warn("Crawler queue is full, rejected job for {}", key);
+			throw e;
+		}
+		return job;
+	}
+
+	/**
+	 * Cancels the queued or running job of a dcat source. A running job is interrupted and stops at the next stage.
+	 *
+	 * @return true if there was a job to cancel
+	 */
+	public boolean cancel(String dcatSourceId) {
+		Job job;
+		synchronized (this) {
+			job = jobs.get(dcatSourceId);
+		}
+		if (job == null) {
+			return false;
+		}
+
+		logger.info("Cancelling {} crawler job for {}", job.getState(), dcatSourceId);
+		boolean cancelled = job.cancel(true);
+		executorService.remove(job);
+		return cancelled;
+	}
+
+	/**
+	 * @return the queued and running jobs, in the order they were submitted
+	 */
+	public synchronized List<JobStatus> getJobs() {
+		Instant now = Instant.now();
+		List<JobStatus> result = new ArrayList<>();
+		for (Job job : jobs.values()) {
+			result.add(job.toStatus(now));
+		}
+		return result;
+	}
+
+	private synchronized void remove(Job job) {
+		jobs.remove(job.key, job);
+	}
+
+	private class Job extends FutureTask<Void> {
+		private final String key;
+		private final Instant queued = Instant.now();
+		private final List<CompletionListener> listeners = new ArrayList<>();
+		private volatile Instant started;
+		private volatile ScheduledFuture<?> timeout;
+		private volatile boolean timedOut;
+		private final AtomicBoolean finished = new AtomicBoolean();
+
+		Job(String key, Runnable task) {
+			super(task, null);
+			this.key = key;
+		}
+
+		State getState() {
+			return started != null ? State.RUNNING : State.QUEUED;
+		}
+
+		@Override
+		public void run() {
+			if (isDone()) {
+				return;
+			}
+			started = Instant.now();
+			if (!jobTimeout.isZero() && !jobTimeout.isNegative()) {
+				timeout = timeoutService.schedule(() -> {
+					logger.warn("Crawler job for {} has run longer than {}, cancelling it", key, jobTimeout);
+					timedOut = true;
+					cancel(true);
+				}, jobTimeout.toMillis(), TimeUnit.MILLISECONDS);
+			}
+			try {
+				super.run();
+			} finally {
+				finish();
+			}
+		}
+
+		/**
+		 * A running job stays registered until its thread is done, also when it is cancelled.
+		 */
+		@Override
+		protected void done() {
+			if (started == null) {
+				finish();
+			}
+		}
+
+		private void finish() {
+			if (!finished.compareAndSet(false, true)) {
+				return;
+			}
+			if (timeout != null) {
+				timeout.cancel(false);
+			}
+			remove(this);
+
+			Duration duration = started != null ? Duration.between(started, Instant.now()) : Duration.ZERO;
+			Throwable error = null;
+			try {
+				get();
+			} catch (CancellationException e) {
+				error = timedOut ? new CancellationException("Timed out after " + jobTimeout) : e;
+			} catch (ExecutionException e) {
+				error = e.getCause();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			List<CompletionListener> toNotify;
+			synchronized (Crawler.this) {
+				toNotify = new ArrayList<>(listeners);
+			}
+			for (CompletionListener listener : toNotify) {
+				try {
+					listener.completed(duration, error);
+				} catch (RuntimeException e) {
+					logger.error("Completion listener of crawler job for {} failed", key, e);
+				}
+			}
+		}
+
+		JobStatus toStatus(Instant now) {
+			JobStatus status = new JobStatus();
+			status.id = key;
+			status.state = getState();
+			status.queued = queued.toString();
+			status.started = started != null ? started.toString() : null;
+			status.elapsedMillis = Duration.between(started != null ? started : queued, now).toMillis();
+			return status;
+		}
+	}
+
+	/**
+	 * A queued or running job, serialized by the jobs endpoint.
+	 */
+	public static class JobStatus {
+		private String id;
+		private State state;
+		private String queued;
+		private String started;
+		private long elapsedMillis;
+
+		public String getId() {
+			return id;
+		}
+
+		public State getState() {
+			return state;
+		}
+
+		public String getQueued() {
+			return queued;
+		}
+
+		public String getStarted() {
+			return started;
+		}
+
+		/**
+		 * @return how long the job has run, or how long it has waited if it is queued
+		 */
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
 	}
 
 }
@@ -1,56 +1,56 @@
 package no.dcat.harvester.crawler;
 
 import com.google.common.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
 import no.dcat.datastore.domain.dcat.vocabulary.DCAT;
 import no.dcat.harvester.DataEnricher;
 import no.dcat.harvester.DatasetSortRankingCreator;
 import no.dcat.harvester.crawler.converters.EnhetsregisterResolver;
+import no.dcat.harvester.service.LocationResolver;
+import no.dcat.harvester.service.OrganizationCache;
+import no.dcat.harvester.service.SourceFetchCache;
 import no.dcat.harvester.service.SubjectCrawler;
+import no.dcat.harvester.service.ValidationProfiler;
 import no.dcat.harvester.validation.DcatValidation;
 import no.dcat.harvester.validation.ImportStatus;
 import no.dcat.harvester.validation.ValidationError;
+import no.dcat.harvester.validation.ValidationProfile;
 import no.dcat.datastore.AdminDataStore;
 import no.dcat.datastore.domain.DcatSource;
 import no.dcat.datastore.domain.DifiMeta;
 import no.dcat.datastore.domain.dcat.vocabulary.DCATCrawler;
+import no.dcat.datastore.domain.harvest.HarvestMetrics;
 import org.apache.jena.atlas.web.HttpException;
-import org.apache.jena.graph.Triple;
-import org.apache.jena.query.Dataset;
 import org.apache.jena.rdf.model.Model;
-import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.ResIterator;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.ResourceFactory;
 import org.apache.jena.rdf.model.Statement;
 import org.apache.jena.rdf.model.StmtIterator;
-import org.apache.jena.riot.Lang;
-import org.apache.jena.riot.RDFDataMgr;
-import org.apache.jena.riot.RDFLanguages;
-import org.apache.jena.riot.system.StreamRDF;
 import org.apache.jena.shared.JenaException;
-import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.vocabulary.DCTerms;
 import org.apache.jena.vocabulary.RDF;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.StringWriter;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 
@@ -68,14 +68,30 @@ public class CrawlerJob implements Runnable {
     private StringBuilder crawlerResultMessage;
     private Resource rdfStatus;
     private SubjectCrawler subjectCrawler;
+    private SourceFetchCache fetchCache;
+    private SourceFetchCache.FetchedSource fetchedSource;
+    private boolean replay = false;
+    private final CrawlerJobMetrics metrics = new CrawlerJobMetrics();
+    private MeterRegistry meterRegistry;
+    private LocationResolver locationResolver;
+    private boolean ownsLocationResolver = false;
+    private final AtomicInteger locationChecks = new AtomicInteger();
+    private OrganizationCache organizationCache;
+    private HarvestStore harvestStore = HarvestStore.inMemory();
+    private ValidationProfiler validationProfiler;
+    private long slowValidationRuleMillis = DEFAULT_SLOW_VALIDATION_RULE_MILLIS;
+    private ValidationProfile validationProfile;
 
     public List<String> getValidationResult() {return validationResult;}
-    private Set<String> illegalUris = new HashSet<>();
     private boolean test = false;
     private Model model = null;
 
     private final Logger logger = LoggerFactory.getLogger(CrawlerJob.class);
 
+    static final long DEFAULT_SLOW_VALIDATION_RULE_MILLIS = 5000;
+
+    static final String UNCHANGED_MESSAGE = "Unchanged since last harvest\n";
+
     protected CrawlerJob(DcatSource dcatSource,
                          AdminDataStore adminDataStore,
                          SubjectCrawler subjectCrawler,
@@ -98,6 +114,75 @@ public class CrawlerJob implements Runnable {
         test = true;
     }
 
+    public void setFetchCache(SourceFetchCache fetchCache) {
+        this.fetchCache = fetchCache;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public void setLocationResolver(LocationResolver locationResolver) {
+        this.locationResolver = locationResolver;
+    }
+
+    public void setOrganizationCache(OrganizationCache organizationCache) {
+        this.organizationCache = organizationCache;
+    }
+
+    /**
+     * @param validationProfiler       receives the time each validation rule took, may be null
+     * @param slowValidationRuleMillis rules that take longer are reported in the harvest result
+     */
+    public void setValidationProfiler(ValidationProfiler validationProfiler, long slowValidationRuleMillis) {
+        this.validationProfiler = validationProfiler;
+        this.slowValidationRuleMillis = slowValidationRuleMillis;
+    }
+
+    /**
+     * @return the time each validation rule took in the last validation, or null if the source has not been validated
+     */
+    public ValidationProfile getValidationProfile() {
+        return validationProfile;
+    }
+
+    /**
+     * Lets the job move the source to a temporary TDB store on disk, see {@link HarvestStore}.
+     *
+     * @param directory       where the temporary stores are created
+     * @param tripleThreshold the number of triples kept in memory, 0 to always use the disk
+     */
+    public void setDiskBackedStore(Path directory, long tripleThreshold) {
+        this.harvestStore = new HarvestStore(directory, tripleThreshold);
+    }
+
+    /**
+     * Jobs created outside of the application context get their own resolver, which checks
+     * with {@link #locationUriResponds(String)} and only caches for the duration of the job.
+     */
+    private LocationResolver getLocationResolver() {
+        if (locationResolver == null) {
+            locationResolver = new LocationResolver(this::locationUriResponds, 4, Duration.ofDays(1), Duration.ofDays(1), null);
+            ownsLocationResolver = true;
+        }
+        return locationResolver;
+    }
+
+    /**
+     * @return stage timings and counters of this job, filled in while the job runs
+     */
+    public CrawlerJobMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Harvest the last downloaded copy of the source instead of fetching it from the publisher.
+     * Requires a fetch cache.
+     */
+    void replayFromCache() {
+        replay = true;
+    }
+
     Model getModel() {
         return model;
     }
@@ -144,31 +229,64 @@ public class CrawlerJob implements Runnable {
     public void run() {
         logger.info("Started crawler job: {}", dcatSource.toString());
         LocalDateTime start = LocalDateTime.now();
+        long startNanos = System.nanoTime();
 
         try {
+            fetchedSource = metrics.time(CrawlerJobMetrics.FETCH, this::fetchSource);
+
+            if (fetchedSource != null && fetchedSource.isUnchangedSinceLastHarvest() && !replay) {
+                logger.info("[crawler_operations] [success] Source unchanged since last harvest, skipping crawler job: {}", dcatSource.toString());
+                if (adminDataStore != null) {
+                    Optional<DcatSource.Harvest> lastHarvest = dcatSource.getLastHarvest();
+                    String lastMessage = lastHarvest.map(DcatSource.Harvest::getMessageOrEmpty).orElse("");
+                    // the last message is already prefixed if the source was skipped before
+                    adminDataStore.addCrawlResults(dcatSource,
+                        lastHarvest.map(DcatSource.Harvest::getStatus).orElse(DifiMeta.ok),
+                        lastMessage.startsWith(UNCHANGED_MESSAGE) ? lastMessage : UNCHANGED_MESSAGE + lastMessage);
+                }
+                return;
+            }
+
+            stopIfCancelled();
             Model union = prepareModelForValidation();
+            stopIfCancelled();
+            CompletableFuture<Map<String, LocationResolver.Status>> locations = resolveLocations(union);
 
             // if model is valid run the various handlers process method
             //TODO: Refaktorering. Nå er det et salig rot av lokale og globale variabler, parametre....
-            if (isValid(union)) {
-                logger.info("Total number of datasets to harvest: {}", getTotalDatasets(union).size());
+            boolean valid = metrics.time(CrawlerJobMetrics.VALIDATION, () -> validate(union));
+            if (valid) {
+                int totalDatasets = getTotalDatasets(union).size();
+                logger.info("Total number of datasets to harvest: {}", totalDatasets);
                 logger.info("{} datasets have syntax problems", nonValidDatasets.size());
+                metrics.setCount(CrawlerJobMetrics.DATASETS, totalDatasets);
 
                 removeNonValidDatasets(union);
                 Set<String> orphanedDatasets = getOrphanedDatasetUris(union);
+                metrics.setCount(CrawlerJobMetrics.DATASETS_IN_ERROR, datasetsInError.size());
+                metrics.setCount(CrawlerJobMetrics.ORPHANED_DATASETS, orphanedDatasets.size());
 
                 logger.warn("{} datasets were in error and are not imported: {}", datasetsInError.size(), datasetsInError);
                 logger.warn("{} datasets were orphaned (have no catalog) and are not imported: {}", orphanedDatasets.size(), orphanedDatasets);
 
-                crawlerResultMessage.append(removeNonResolvableLocations(union));
+                crawlerResultMessage.append(metrics.time(CrawlerJobMetrics.LOCATIONS, () -> removeNonResolvableLocations(union, locations)));
 
                 //add sort ranking to datasets
                 DatasetSortRankingCreator rankingCreator = new DatasetSortRankingCreator();
-                Model rankedUnion = rankingCreator.rankDatasets(union, dcatSource.getUrl());
+                Model rankedUnion = metrics.time(CrawlerJobMetrics.RANKING, () -> rankingCreator.rankDatasets(union, dcatSource.getUrl()));
                 model = rankedUnion;
 
                 for (CrawlerResultHandler handler : handlers) {
-                    handler.process(dcatSource, rankedUnion, validationResult);
+                    stopIfCancelled();
+                    metrics.timeStep(CrawlerJobMetrics.HANDLER_PREFIX + handler.getClass().getSimpleName(),
+                        () -> handler.process(dcatSource, rankedUnion, validationResult));
+                }
+
+                if (metrics.hasCount(CrawlerJobMetrics.DATASETS_UNCHANGED)) {
+                    crawlerResultMessage.append(String.format("Datasets: %d new, %d changed, %d unchanged\n",
+                        metrics.getCount(CrawlerJobMetrics.DATASETS_NEW),
+                        metrics.getCount(CrawlerJobMetrics.DATASETS_CHANGED),
+                        metrics.getCount(CrawlerJobMetrics.DATASETS_UNCHANGED)));
                 }
             }
 
@@ -176,6 +294,11 @@ public class CrawlerJob implements Runnable {
             String crawlerResultStr = crawlerResultMessage.toString();
             if (adminDataStore != null) adminDataStore.addCrawlResults(dcatSource, rdfStatus, crawlerResultStr);
 
+            // a source that failed is harvested again next time, even if it is unchanged
+            if (fetchedSource != null && valid && metrics.getCount(CrawlerJobMetrics.INDEXING_ERRORS) == 0) {
+                fetchCache.markHarvested(dcatSource, fetchedSource);
+            }
+
             LocalDateTime stop = LocalDateTime.now();
             logger.info("[crawler_operations] [success] Finished crawler job: {}", dcatSource.toString() + ", Duration=" + returnCrawlDuration(start, stop));
 
@@ -186,6 +309,15 @@ public class CrawlerJob implements Runnable {
             }
             logger.error(String.format("[crawler_operations] [fail] Error running crawler job: %1$s, error=%2$s", dcatSource.toString(), e.toString()),e);
 
+        } catch (InterruptedException e) {
+            // clear the interrupt while the result is stored, and restore it afterwards
+            Thread.interrupted();
+            if (adminDataStore != null) {
+                adminDataStore.addCrawlResults(dcatSource, DifiMeta.error, "Harvest was cancelled");
+            }
+            logger.warn("[crawler_operations] [cancelled] Crawler job cancelled: {}", dcatSource.toString());
+            Thread.currentThread().interrupt();
+
         } catch (HttpException e) {
             if (adminDataStore != null) {
                 adminDataStore.addCrawlResults(dcatSource, DifiMeta.networkError, e.getMessage());
@@ -196,10 +328,53 @@ public class CrawlerJob implements Runnable {
                 adminDataStore.addCrawlResults(dcatSource, DifiMeta.error, e.getMessage());
             }
             logger.error(String.format("[crawler_operations] [fail] Error running crawler job: %1$s, error=%2$s", dcatSource.toString(), e.toString()),e);
+        } finally {
+            if (ownsLocationResolver) {
+                locationResolver.shutdown();
+            }
+            if (harvestStore.isOnDisk()) {
+                // the model is deleted with the store
+                model = null;
+            }
+            harvestStore.close();
+            metrics.addStageTime(CrawlerJobMetrics.TOTAL, System.nanoTime() - startNanos);
+            publishMetrics();
         }
 
     }
 
+    /**
+     * A job that is cancelled or times out is interrupted, and stops between stages.
+     */
+    private void stopIfCancelled() throws InterruptedException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException("Crawler job cancelled");
+        }
+    }
+
+    /**
+     * Validates the model, and treats validation that stopped because the job was interrupted as a cancelled job.
+     */
+    private boolean validate(Model union) throws InterruptedException {
+        try {
+            return isValid(union);
+        } catch (RuntimeException e) {
+            // the validation rule set restores the interrupt before it gives up
+            stopIfCancelled();
+            throw e;
+        }
+    }
+
+    private void publishMetrics() {
+        HarvestMetrics harvestMetrics = metrics.toHarvestMetrics();
+        logger.info("[crawler_metrics] {}: stages {} ms, counts {}", dcatSource.getId(),
+            harvestMetrics.getStageDurations(), harvestMetrics.getCounts());
+
+        if (meterRegistry != null) {
+            metrics.publish(meterRegistry, dcatSource);
+        }
+    }
+
     protected static String formatJenaException(JenaException e) {
         String message = e.getMessage();
 
@@ -217,21 +392,33 @@ public class CrawlerJob implements Runnable {
     }
 
 
-    void verifyModelByParsing(Model union) {
-        StringWriter str = new StringWriter();
+    /**
+     * Download the source into the fetch cache, or pick up the cached copy when replaying.
+     *
+     * @return the local copy of the source, or null if the source is not fetched through the cache
+     */
+    SourceFetchCache.FetchedSource fetchSource() throws IOException, InterruptedException {
+        if (fetchCache == null) {
+            if (replay) {
+                throw new IllegalStateException("Replay of " + dcatSource.getId() + " requires a fetch cache");
+            }
+            return null;
+        }
 
-        // writes and parses RDF turtle
-        union.write(str, RDFLanguages.strLangTurtle);
-        RDFDataMgr.parse(new MyStreamRDF(), new ByteArrayInputStream(str.toString().getBytes(StandardCharsets.UTF_8)), Lang.TTL);
+        if (replay) {
+            return fetchCache.getCachedCopy(dcatSource)
+                .orElseThrow(() -> new IllegalStateException("No cached copy of " + dcatSource.getUrl() + " to replay"));
+        }
 
-        str = new StringWriter();
+        URL url = new URL(dcatSource.getUrl());
+        if (url.getProtocol().equals("http") || url.getProtocol().equals("https")) {
+            metrics.addRemoteCalls(CrawlerJobMetrics.FETCH, 1);
+            return fetchCache.fetch(dcatSource);
+        }
 
-        // writes and parses RDF XML
-        union.write(str, RDFLanguages.strLangRDFXML);
-        RDFDataMgr.parse(new MyStreamRDF(), new ByteArrayInputStream(str.toString().getBytes(StandardCharsets.UTF_8)), Lang.RDFXML);
+        return null;
     }
 
-
     /**
      * Do necessary preparations in model before it can be validated
      * - enrichement of missing values
@@ -239,10 +426,16 @@ public class CrawlerJob implements Runnable {
      *
      * @return enriched model
      */
-    Model prepareModelForValidation() throws MalformedURLException {
+    Model prepareModelForValidation() throws IOException {
         logger.debug("loadDataset: "+ dcatSource.getUrl());
         URL url = new URL(dcatSource.getUrl());
-        if (url.getProtocol().equals("http") || url.getProtocol().equals("https") || test) {
+        if (fetchedSource != null) {
+
+            SerializationCheck check = new SerializationCheck();
+            metrics.time(CrawlerJobMetrics.LOAD, () -> harvestStore.load(fetchedSource, check::checking));
+            return loadModelAndValidate(url, harvestStore.withWriteLayer(), check);
+
+        } else if (url.getProtocol().equals("http") || url.getProtocol().equals("https") || test) {
 
             return loadModelAndValidate(url);
 
@@ -252,73 +445,69 @@ public class CrawlerJob implements Runnable {
     }
 
     Model loadModelAndValidate(URL url) {
-
-        Dataset dataset = RDFDataMgr.loadDataset(url.toString());
-        Model union = ModelFactory.createUnion(ModelFactory.createDefaultModel(), dataset.getDefaultModel());
-        Iterator<String> stringIterator = dataset.listNames();
-
-        while (stringIterator.hasNext()) {
-            union = ModelFactory.createUnion(union, dataset.getNamedModel(stringIterator.next()));
+        if (!test) {
+            metrics.addRemoteCalls(CrawlerJobMetrics.FETCH, 1);
         }
+        SerializationCheck check = new SerializationCheck();
+        metrics.time(CrawlerJobMetrics.LOAD, () -> harvestStore.load(url.toString(), check::checking));
+        return loadModelAndValidate(url, harvestStore.withWriteLayer(), check);
+    }
+
+    /**
+     * Enrich and resolve a source that has been loaded into one model.
+     *
+     * @param url the url of the source
+     * @param union the default graph and all named graphs of the source, see {@link HarvestStore}
+     * @param check the serialization check the source was parsed through
+     * @return enriched model
+     */
+    Model loadModelAndValidate(URL url, Model union, SerializationCheck check) {
 
         // remember the base url
         Resource o = ResourceFactory.createResource(url.toString());
-        union.add(DCATCrawler.ImportResource, DCATCrawler.source_url, o);
-
-        verifyModelByParsing(union);
+        Statement sourceUrl = union.createStatement(DCATCrawler.ImportResource, DCATCrawler.source_url, o);
+        union.add(sourceUrl);
+        metrics.setCount(CrawlerJobMetrics.TRIPLES, union.size());
+        metrics.setCount(CrawlerJobMetrics.DISK_BACKED, harvestStore.isOnDisk() ? 1 : 0);
+
+        Model loaded = union;
+        metrics.timeStep(CrawlerJobMetrics.VERIFY, () -> {
+            check.check(sourceUrl.asTriple());
+            check.throwIfInvalid();
+        });
 
         //Enrich model with elements missing according to DCAT-AP-NO 1.1 standard
         DataEnricher enricher = new DataEnricher();
-        union = enricher.enrichData(union);
+        union = metrics.time(CrawlerJobMetrics.ENRICH, () -> enricher.enrichData(loaded));
 
         // Checks subjects and resolve definitions
         if (subjectCrawler != null) {
-            union = subjectCrawler.annotateSubjects(union);
+            Model enriched = union;
+            AtomicInteger subjectLookups = new AtomicInteger();
+            union = metrics.time(CrawlerJobMetrics.SUBJECTS, () -> subjectCrawler.annotateSubjects(enriched, subjectLookups));
+            metrics.addRemoteCalls(CrawlerJobMetrics.SUBJECTS, subjectLookups.get());
         } else {
             logger.warn("Could not annotate subjects. Reason subject crawler is not initialized!");
         }
 
         // Checks publisher and resolve according to registrered in BRREG Enhetsregistret
-        EnhetsregisterResolver enhetsregisterResolver = new EnhetsregisterResolver();
-        return enhetsregisterResolver.resolveModel(union);
-    }
-
-
-    /**
-     * Needed in RDFDataMgr for parsing.
-     */
-    static class MyStreamRDF implements StreamRDF {
-        @Override
-        public void start() {
-
-        }
-
-        @Override
-        public void triple(Triple triple) {
-
-        }
-
-        @Override
-        public void quad(Quad quad) {
-
-        }
-
-        @Override
-        public void base(String base) {
-
-        }
-
-        @Override
-        public void prefix(String prefix, String iri) {
-
+        if (organizationCache == null) {
+            logger.warn("Could not resolve publishers. Reason organization cache is not initialized!");
+            return union;
         }
-
-        @Override
-        public void finish() {
-
+        EnhetsregisterResolver enhetsregisterResolver = new EnhetsregisterResolver(organizationCache);
+        Model annotated = union;
+        try {
+            return metrics.time(CrawlerJobMetrics.ORGANISATIONS, () -> enhetsregisterResolver.resolveModel(annotated));
+        } finally {
+            metrics.addRemoteCalls(CrawlerJobMetrics.ORGANISATIONS, enhetsregisterResolver.getRemoteCalls());
+            if (enhetsregisterResolver.getRemoteCalls() > 0) {
+                organizationCache.save();
+            }
         }
     }
 
+
     String formatValidationMessage(ValidationError error) {
 
         String subject = "";
@@ -366,6 +555,7 @@ public class CrawlerJob implements Runnable {
 
         final int[] errors ={0}, warnings ={0}, others ={0};
 
+        ValidationProfile profile = new ValidationProfile();
         DcatValidation.validate(model, (error) -> {
             String msg = formatValidationMessage(error);
 
@@ -394,7 +584,11 @@ public class CrawlerJob implements Runnable {
                 logger.debug(msg);
             }
 
-        });
+        }, profile);
+        validationProfile = profile;
+        if (validationProfiler != null && dcatSource != null) {
+            validationProfiler.record(dcatSource.getId(), profile);
+        }
 
         String summary = "[validation_summary] " + errors[0] + " errors, "+ warnings[0] + " warnings and " + others[0] + " other messages ";
         validationResult.add(0, summary);
@@ -410,6 +604,7 @@ public class CrawlerJob implements Runnable {
 
         rdfStatus = createCrawlerStatusForAdmin(status, minimumCriteriaMet);
         crawlerResultMessage = createDatasetSummaryMessage();
+        crawlerResultMessage.append(createSlowValidationRulesMessage(profile));
 
         //Prepend summary message before detailed error message
         if (message[0] != null) {
@@ -455,40 +650,62 @@ public class CrawlerJob implements Runnable {
         return locConnection.getResponseCode() >= 200 && locConnection.getResponseCode() < 400;
     }
 
+    private String getLocationUri(Resource resource) {
+        Resource location = resource.getPropertyResourceValue(DCTerms.spatial);
+        String locUri = location != null ? location.getURI() : null;
+
+        if (locUri != null && locUri.startsWith("file://")) { // hack to remove fuseki file namespace on locations.
+            locUri = lastPath(locUri);
+        }
+        return locUri;
+    }
+
     /**
-     * Remove triples containing DCTerms.spatial URLs that cannot be resolved
+     * Start checking the DCTerms.spatial URLs of the model in the background, while the model is validated
      *
      * @param model the model
+     * @return the status of each URL, when all of them are checked
      */
-    private String removeNonResolvableLocations(Model model) {
-        StringBuilder resultMsg = new StringBuilder();
+    private CompletableFuture<Map<String, LocationResolver.Status>> resolveLocations(Model model) {
+        Set<String> locUris = new HashSet<>();
         ResIterator locIter = model.listSubjectsWithProperty(DCTerms.spatial);
         while (locIter.hasNext()) {
-            Resource resource = locIter.next();
-
-            String locUri = resource.getPropertyResourceValue(DCTerms.spatial).getURI();
-
-            if (locUri != null && locUri.startsWith("file://")) { // hack to remove fuseki file namespace on locations.
-                locUri = lastPath(locUri);
+            String locUri = getLocationUri(locIter.next());
+            if (locUri != null) {
+                locUris.add(locUri);
             }
+        }
 
-            try {
-                if (!illegalUris.contains(locUri)) {
+        return getLocationResolver().resolve(locUris, locationChecks);
+    }
 
-                    if (!locationUriResponds(locUri)) {
-                        //Remove non-resolvable location from dataset
-                        resultMsg.append(String.format("Dataset %s has non-resolvable property DCTerms.spatial: %s", resource.toString(), locUri));
-                        resultMsg.append("\n");
-                        model.removeAll(resource, DCTerms.spatial, null);
-                        logger.warn("DCTerms.spatial URI cannot be resolved. Location removed form dataset: {}", locUri);
-                        illegalUris.add(locUri);
-                    }
-                }
-            } catch (ClassCastException | IOException e) {
-                logger.error("Location URL not valid: {}. Reason {}", locUri, e.getLocalizedMessage());
-                illegalUris.add(locUri);
-            }
+    /**
+     * Remove triples containing DCTerms.spatial URLs that cannot be resolved.
+     *
+     * A URL that cannot be resolved is removed from every dataset that refers to it. Before the URLs were resolved
+     * ahead of time, a URL was remembered as illegal after the first dataset it was removed from, and the datasets
+     * after that kept it.
+     *
+     * @param model the model
+     * @param locations the status of the URLs, from {@link #resolveLocations(Model)}
+     */
+    private String removeNonResolvableLocations(Model model, CompletableFuture<Map<String, LocationResolver.Status>> locations) {
+        Map<String, LocationResolver.Status> statuses = locations.join();
+        metrics.addRemoteCalls(CrawlerJobMetrics.LOCATIONS, locationChecks.get());
 
+        StringBuilder resultMsg = new StringBuilder();
+        ResIterator locIter = model.listSubjectsWithProperty(DCTerms.spatial);
+        List<Resource> resources = locIter.toList();
+        for (Resource resource : resources) {
+            String locUri = getLocationUri(resource);
+
+            if (statuses.get(locUri) == LocationResolver.Status.NOT_RESOLVABLE) {
+                //Remove non-resolvable location from dataset
+                resultMsg.append(String.format("Dataset %s has non-resolvable property DCTerms.spatial: %s", resource.toString(), locUri));
+                resultMsg.append("\n");
+                model.removeAll(resource, DCTerms.spatial, null);
+                logger.warn("DCTerms.spatial URI cannot be resolved. Location removed form dataset: {}", locUri);
+            }
         }
         return resultMsg.toString();
     }
@@ -592,6 +809,17 @@ public class CrawlerJob implements Runnable {
     }
 
 
+    private String createSlowValidationRulesMessage(ValidationProfile profile) {
+        List<ValidationProfile.RuleTiming> slowRules = profile.getRulesSlowerThan(slowValidationRuleMillis);
+        if (slowRules.isEmpty()) {
+            return "";
+        }
+
+        String rules = slowRules.stream().map(ValidationProfile.RuleTiming::toString).collect(Collectors.joining(", "));
+        logger.warn("[validation] {} validation rules took more than {} ms: {}", slowRules.size(), slowValidationRuleMillis, rules);
+        return String.format("Slow validation rules (over %d ms): %s\n", slowValidationRuleMillis, rules);
+    }
+
     /**
      * Create the status value of the crawl to be stored in Admin data store
      *
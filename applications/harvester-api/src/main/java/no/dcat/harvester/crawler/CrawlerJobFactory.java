@@ -1,11 +1,18 @@
 package no.dcat.harvester.crawler;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import no.dcat.client.referencedata.ReferenceCodeCache;
 import no.dcat.harvester.crawler.handlers.ElasticSearchResultHandler;
 import no.dcat.harvester.crawler.handlers.ElasticSearchResultPubHandler;
 import no.dcat.harvester.crawler.handlers.FusekiResultHandler;
 import no.dcat.harvester.crawler.notification.EmailNotificationService;
+import no.dcat.harvester.service.LocationResolver;
+import no.dcat.harvester.service.OrganizationCache;
+import no.dcat.harvester.service.SourceFetchCache;
 import no.dcat.harvester.service.SubjectCrawler;
+import no.dcat.harvester.service.ValidationProfiler;
 import no.dcat.harvester.settings.ApplicationSettings;
+import no.dcat.harvester.settings.CrawlerSettings;
 import no.dcat.harvester.settings.ElasticSettings;
 import no.dcat.harvester.settings.FusekiSettings;
 import no.dcat.datastore.AdminDataStore;
@@ -18,6 +25,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 @Component
 public class CrawlerJobFactory {
@@ -31,18 +40,37 @@ public class CrawlerJobFactory {
 	@Autowired
 	private ElasticSettings elasticSettings;
 
+	@Autowired
+	private CrawlerSettings crawlerSettings;
+
 	@Autowired
 	private SubjectCrawler subjectCrawler;
 
 	@Autowired
 	private EmailNotificationService emailNotificationService;
+
+	@Autowired
+	private SourceFetchCache sourceFetchCache;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Autowired
+	private LocationResolver locationResolver;
+
+	@Autowired
+	private ValidationProfiler validationProfiler;
+
+	@Autowired
+	private OrganizationCache organizationCache;
+
+	@Autowired
+	private ReferenceCodeCache referenceCodeCache;
 	
 	private AdminDataStore adminDataStore;
 	private DcatDataStore dcatDataStore;
 	
 	private FusekiResultHandler fusekiResultHandler;
-	private ElasticSearchResultHandler elasticSearchResultHandler;
-	private CrawlerResultHandler publisherHandler;
 	private CrawlerResultHandler codeHandler;
 
 	private final Logger logger = LoggerFactory.getLogger(CrawlerJobFactory.class);
@@ -55,6 +83,15 @@ public class CrawlerJobFactory {
 	}
 	
 	public CrawlerJob createCrawlerJob(DcatSource dcatSource) {
+		return createCrawlerJob(dcatSource, true);
+	}
+
+	/**
+	 * Jobs may be created concurrently, so each job gets its own Elasticsearch handler, configured before the job is returned.
+	 *
+	 * @param incremental false to index every dataset again, also those that are unchanged since the last harvest
+	 */
+	CrawlerJob createCrawlerJob(DcatSource dcatSource, boolean incremental) {
 
 		logger.debug("elastic.clusterNodes: " + elasticSettings.getClusterNodes());
 		logger.debug("elastic.clusterName: " + elasticSettings.getClusterName());
@@ -63,8 +100,35 @@ public class CrawlerJobFactory {
 		logger.debug("application.httpPassword: " + applicationSettings.getHttpPassword());
 		logger.debug("application.notificationMailSenderAddress" + applicationSettings.getNotificationMailSenderAddress());
 
-		publisherHandler = new ElasticSearchResultPubHandler(elasticSettings.getClusterNodes(), elasticSettings.getClusterName());
-		elasticSearchResultHandler = new ElasticSearchResultHandler(
+		CrawlerResultHandler publisherHandler = new ElasticSearchResultPubHandler(elasticSettings.getClusterNodes(), elasticSettings.getClusterName());
+		ElasticSearchResultHandler elasticSearchResultHandler = createElasticSearchResultHandler(incremental);
+
+		CrawlerJob crawlerJob = new CrawlerJob(dcatSource, adminDataStore, subjectCrawler, fusekiResultHandler, elasticSearchResultHandler, publisherHandler);
+		crawlerJob.setFetchCache(sourceFetchCache);
+		crawlerJob.setMeterRegistry(meterRegistry);
+		crawlerJob.setLocationResolver(locationResolver);
+		crawlerJob.setOrganizationCache(organizationCache);
+		crawlerJob.setValidationProfiler(validationProfiler, crawlerSettings.getSlowValidationRuleMillis());
+		if (crawlerSettings.getDiskBackedSources().contains(dcatSource.getId())) {
+			crawlerJob.setDiskBackedStore(getDiskStoreDirectory(), 0);
+		} else if (crawlerSettings.getDiskBackedTripleThreshold() > 0) {
+			crawlerJob.setDiskBackedStore(getDiskStoreDirectory(), crawlerSettings.getDiskBackedTripleThreshold());
+		}
+		elasticSearchResultHandler.setJobMetrics(crawlerJob.getMetrics());
+
+		return crawlerJob;
+	}
+
+	/**
+	 * The publisher job resolves publishers through the same organization cache as the crawler jobs.
+	 */
+	public CrawlerPublisherJob createCrawlerPublisherJob(DcatSource dcatSource) {
+		CrawlerResultHandler publisherHandler = new ElasticSearchResultPubHandler(elasticSettings.getClusterNodes(), elasticSettings.getClusterName());
+		return new CrawlerPublisherJob(dcatSource, adminDataStore, organizationCache, publisherHandler);
+	}
+
+	ElasticSearchResultHandler createElasticSearchResultHandler(boolean incremental) {
+		ElasticSearchResultHandler elasticSearchResultHandler = new ElasticSearchResultHandler(
 				elasticSettings.getClusterNodes(),
 				elasticSettings.getClusterName(),
 				applicationSettings.getReferenceDataUrl(),
@@ -72,8 +136,28 @@ public class CrawlerJobFactory {
 				applicationSettings.getHttpPassword(),
 				applicationSettings.getNotificationMailSenderAddress(),
 				emailNotificationService);
+		elasticSearchResultHandler.setReferenceCodeCache(referenceCodeCache);
+		elasticSearchResultHandler.setDatasetBuildParallelism(crawlerSettings.getDatasetBuildParallelism());
+		elasticSearchResultHandler.setIncremental(incremental);
+
+		return elasticSearchResultHandler;
+	}
+
+	private Path getDiskStoreDirectory() {
+		if (crawlerSettings.getDiskStoreDirectory() != null) {
+			return Paths.get(crawlerSettings.getDiskStoreDirectory());
+		}
+		return Paths.get(System.getProperty("java.io.tmpdir"), "harvest-store");
+	}
+
+	/**
+	 * Creates a crawler job that re-indexes the last downloaded copy of the source without contacting the publisher.
+	 */
+	public CrawlerJob createReplayCrawlerJob(DcatSource dcatSource) {
+		CrawlerJob crawlerJob = createCrawlerJob(dcatSource, false);
+		crawlerJob.replayFromCache();
 
-		return new CrawlerJob(dcatSource, adminDataStore, subjectCrawler, fusekiResultHandler, elasticSearchResultHandler, publisherHandler);
+		return crawlerJob;
 	}
 
 }
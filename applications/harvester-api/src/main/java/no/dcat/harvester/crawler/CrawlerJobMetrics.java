@@ -0,0 +1,138 @@
+package no.dcat.harvester.crawler;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import no.dcat.datastore.domain.DcatSource;
+import no.dcat.datastore.domain.harvest.HarvestMetrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the time spent in each stage of one crawler job, together with counters for triples, datasets and
+ * remote calls. The values are published to Micrometer when the job is done and stored on the catalog harvest record.
+ */
+public class CrawlerJobMetrics {
+
+    public static final String STAGE_TIMER = "harvest.stage";
+    public static final String COUNT_SUMMARY = "harvest.count";
+
+    public static final String FETCH = "fetch";
+    public static final String LOAD = "load";
+    public static final String VERIFY = "verify";
+    public static final String ENRICH = "enrich";
+    public static final String SUBJECTS = "subjects";
+    public static final String ORGANISATIONS = "organisations";
+    public static final String VALIDATION = "validation";
+    public static final String LOCATIONS = "locations";
+    public static final String RANKING = "ranking";
+    public static final String HARVEST_RECORDS = "harvestRecords";
+    public static final String HANDLER_PREFIX = "handler.";
+    public static final String TOTAL = "total";
+
+    public static final String TRIPLES = "triples";
+    public static final String DISK_BACKED = "diskBacked";
+    public static final String DATASETS = "datasets";
+    public static final String DATASETS_IN_ERROR = "datasetsInError";
+    public static final String ORPHANED_DATASETS = "orphanedDatasets";
+    public static final String DATASETS_NEW = "datasetsNew";
+    public static final String DATASETS_CHANGED = "datasetsChanged";
+    public static final String DATASETS_UNCHANGED = "datasetsUnchanged";
+    public static final String INDEXING_ERRORS = "indexingErrors";
+    public static final String REMOTE_CALLS_PREFIX = "remoteCalls.";
+
+    private final Map<String, Long> stageNanos = new LinkedHashMap<>();
+    private final Map<String, Long> counts = new LinkedHashMap<>();
+
+    @FunctionalInterface
+    public interface Stage<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    /**
+     * Runs one stage of the job and adds the time it took to the stage.
+     */
+    public <T, E extends Exception> T time(String stage, Stage<T, E> step) throws E {
+        long start = System.nanoTime();
+        try {
+            return step.run();
+        } finally {
+            addStageTime(stage, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Runs one stage of the job that does not return anything and adds the time it took to the stage.
+     */
+    public void timeStep(String stage, Runnable step) {
+        time(stage, () -> {
+            step.run();
+            return null;
+        });
+    }
+
+    public synchronized void addStageTime(String stage, long nanos) {
+        stageNanos.merge(stage, nanos, Long::sum);
+    }
+
+    public synchronized void setCount(String name, long value) {
+        counts.put(name, value);
+    }
+
+    public synchronized void addCount(String name, long delta) {
+        counts.merge(name, delta, Long::sum);
+    }
+
+    public void addRemoteCalls(String service, long calls) {
+        addCount(REMOTE_CALLS_PREFIX + service, calls);
+    }
+
+    public synchronized long getStageMillis(String stage) {
+        return TimeUnit.NANOSECONDS.toMillis(stageNanos.getOrDefault(stage, 0L));
+    }
+
+    public synchronized long getCount(String name) {
+        return counts.getOrDefault(name, 0L);
+    }
+
+    public synchronized boolean hasCount(String name) {
+        return counts.containsKey(name);
+    }
+
+    /**
+     * @return a copy of the values collected so far, for storing on the harvest record
+     */
+    public synchronized HarvestMetrics toHarvestMetrics() {
+        Map<String, Long> stageDurations = new LinkedHashMap<>();
+        stageNanos.forEach((stage, nanos) -> stageDurations.put(stage, TimeUnit.NANOSECONDS.toMillis(nanos)));
+
+        HarvestMetrics harvestMetrics = new HarvestMetrics();
+        harvestMetrics.setStageDurations(stageDurations);
+        harvestMetrics.setCounts(new LinkedHashMap<>(counts));
+        return harvestMetrics;
+    }
+
+    /**
+     * Records the stage times in the timer harvest.stage and the counters in the summary harvest.count,
+     * both tagged with the id of the source.
+     */
+    public synchronized void publish(MeterRegistry registry, DcatSource dcatSource) {
+        stageNanos.forEach((stage, nanos) ->
+            Timer.builder(STAGE_TIMER)
+                .description("Time spent in each stage of a harvest")
+                .tag("source", dcatSource.getId())
+                .tag("stage", stage)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS));
+
+        counts.forEach((name, value) ->
+            DistributionSummary.builder(COUNT_SUMMARY)
+                .description("Triples, datasets and remote calls per harvest")
+                .tag("source", dcatSource.getId())
+                .tag("name", name)
+                .register(registry)
+                .record(value));
+    }
+}
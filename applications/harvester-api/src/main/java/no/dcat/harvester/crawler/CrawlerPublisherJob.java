@@ -5,6 +5,7 @@ import com.google.common.cache.LoadingCache;
 import no.dcat.datastore.AdminDataStore;
 import no.dcat.datastore.domain.DcatSource;
 import no.dcat.harvester.crawler.converters.EnhetsregisterResolver;
+import no.dcat.harvester.service.OrganizationCache;
 import org.apache.jena.query.Dataset;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
@@ -25,18 +26,24 @@ public class CrawlerPublisherJob implements Runnable {
     private final List<CrawlerResultHandler> handlers;
     private final DcatSource dcatSource;
     private final AdminDataStore adminDataStore;
+    private final OrganizationCache organizationCache;
     private final List<String> validationResult = new ArrayList<>();
 
     public List<String> getValidationResult() {return validationResult;}
 
     private final Logger logger = LoggerFactory.getLogger(CrawlerPublisherJob.class);
 
+    /**
+     * @param organizationCache where publishers are looked up, shared with the crawler jobs
+     */
     protected CrawlerPublisherJob(DcatSource dcatSource,
                          AdminDataStore adminDataStore,
+                         OrganizationCache organizationCache,
                          CrawlerResultHandler... handlers) {
         this.handlers = Arrays.asList(handlers);
         this.dcatSource = dcatSource;
         this.adminDataStore = adminDataStore;
+        this.organizationCache = organizationCache;
     }
 
     /**
@@ -53,8 +60,11 @@ public class CrawlerPublisherJob implements Runnable {
 
         Model modelDataset = ModelFactory.createUnion(ModelFactory.createDefaultModel(), dataset.getDefaultModel());
 
-        EnhetsregisterResolver enhetsregisterResolver = new EnhetsregisterResolver();
+        EnhetsregisterResolver enhetsregisterResolver = new EnhetsregisterResolver(organizationCache);
         enhetsregisterResolver.resolveModel(modelDataset);
+        if (enhetsregisterResolver.getRemoteCalls() > 0) {
+            organizationCache.save();
+        }
 
         for (CrawlerResultHandler handler : handlers) {
             handler.process(dcatSource, modelDataset, null);
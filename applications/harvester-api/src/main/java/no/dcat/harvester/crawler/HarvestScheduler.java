@@ -0,0 +1,362 @@
+package no.dcat.harvester.crawler;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import no.dcat.datastore.domain.DcatSource;
+import no.dcat.harvester.settings.CrawlerSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Harvests a set of dcat sources in parallel on the thread pool of the {@link Crawler}.
+ *
+ * All sources are queued at once, longest running first based on the duration of their previous harvest, so the
+ * slowest sources do not end up last. At most threadPoolSize jobs run at the same time, and at most
+ * maxConcurrentHarvestsPerHost jobs fetch from the same remote host. Sources that have never been harvested
+ * are treated as the slowest. The durations are stored next to the fetch cache, so the order survives a restart.
+ */
+@Component
+public class HarvestScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(HarvestScheduler.class);
+
+    static final int DEFAULT_THREAD_POOL_SIZE = 2;
+    static final int DEFAULT_MAX_CONCURRENT_HARVESTS_PER_HOST = 2;
+    static final String DURATIONS_FILE = "harvest-durations.json";
+
+    private final Crawler crawler;
+    private final CrawlerJobFactory crawlerJobFactory;
+    private final int maxConcurrentHarvests;
+    private final int maxConcurrentHarvestsPerHost;
+
+    private final Map<String, Duration> lastDurations = new ConcurrentHashMap<>();
+    private final Path durationsFile;
+    private final Gson gson = new Gson();
+
+    private final LinkedList<DcatSource> pending = new LinkedList<>();
+    private final Map<String, SourceStatus> running = new LinkedHashMap<>();
+    private final Map<String, Integer> runningPerHost = new HashMap<>();
+    private final List<SourceStatus> completed = new ArrayList<>();
+    private Instant started;
+    private Instant finished;
+
+    @Autowired
+    public HarvestScheduler(Crawler crawler, CrawlerJobFactory crawlerJobFactory, CrawlerSettings crawlerSettings) {
+        this.crawler = crawler;
+        this.crawlerJobFactory = crawlerJobFactory;
+        this.maxConcurrentHarvests = crawlerSettings.getThreadPoolSize() > 0 ?
+            crawlerSettings.getThreadPoolSize() : DEFAULT_THREAD_POOL_SIZE;
+        this.maxConcurrentHarvestsPerHost = crawlerSettings.getMaxConcurrentHarvestsPerHost() > 0 ?
+            crawlerSettings.getMaxConcurrentHarvestsPerHost() : DEFAULT_MAX_CONCURRENT_HARVESTS_PER_HOST;
+        this.durationsFile = getDurationsFile(crawlerSettings);
+
+        readDurations();
+    }
+
+    private static Path getDurationsFile(CrawlerSettings crawlerSettings) {
+        if (crawlerSettings.getFetchCacheDirectory() != null) {
+            return Paths.get(crawlerSettings.getFetchCacheDirectory(), DURATIONS_FILE);
+        }
+        return Paths.get(System.getProperty("java.io.tmpdir"), "harvest-cache", DURATIONS_FILE);
+    }
+
+    /**
+     * Queues all sources for harvest and returns without waiting for them to finish.
+     *
+     * @param dcatSources the sources to harvest
+     * @return false if a previous harvest of all sources is still in progress, in which case nothing is queued
+     */
+    public synchronized boolean harvestAll(List<DcatSource> dcatSources) {
+        if (isRunning()) {
+            logger.warn("Harvest of all sources already in progress, {} pending and {} running", pending.size(), running.size());
+            return false;
+        }
+
+        List<DcatSource> ordered = new ArrayList<>(dcatSources);
+        ordered.sort(Comparator.comparing(this::getExpectedDuration).reversed());
+
+        pending.clear();
+        pending.addAll(ordered);
+        completed.clear();
+        started = Instant.now();
+        finished = null;
+
+        logger.info("Scheduling harvest of {} sources, max {} concurrent jobs and {} per host",
+            ordered.size(), maxConcurrentHarvests, maxConcurrentHarvestsPerHost);
+
+        dispatch();
+        return true;
+    }
+
+    /**
+     * @return true while any source of the last harvest of all sources is pending or running
+     */
+    public synchronized boolean isRunning() {
+        return !pending.isEmpty() || !running.isEmpty();
+    }
+
+    /**
+     * @return a snapshot of the progress of the last harvest of all sources
+     */
+    public synchronized HarvestStatus getStatus() {
+        HarvestStatus status = new HarvestStatus();
+        status.running = isRunning();
+        status.started = started != null ? started.toString() : null;
+        status.finished = finished != null ? finished.toString() : null;
+        status.total = pending.size() + running.size() + completed.size();
+        status.pending = pending.size();
+        status.completed = completed.size();
+        status.failed = (int) completed.stream().filter(source -> source.error != null).count();
+        for (SourceStatus source : running.values()) {
+            status.runningSources.add(source.copy());
+        }
+        for (SourceStatus source : completed) {
+            status.completedSources.add(source.copy());
+        }
+        return status;
+    }
+
+    Duration getExpectedDuration(DcatSource dcatSource) {
+        return lastDurations.getOrDefault(dcatSource.getId(), Duration.ofDays(1));
+    }
+
+    /**
+     * Starts as many pending jobs as the global and per host limits allow, picking the first source in
+     * the queue whose host has capacity left.
+     */
+    private synchronized void dispatch() {
+        Iterator<DcatSource> iterator = pending.iterator();
+        while (running.size() < maxConcurrentHarvests && iterator.hasNext()) {
+            DcatSource dcatSource = iterator.next();
+            String host = getHost(dcatSource);
+            if (runningPerHost.getOrDefault(host, 0) >= maxConcurrentHarvestsPerHost) {
+                continue;
+            }
+
+            iterator.remove();
+            start(dcatSource, host);
+        }
+    }
+
+    private void start(DcatSource dcatSource, String host) {
+        SourceStatus sourceStatus = new SourceStatus();
+        sourceStatus.id = dcatSource.getId();
+        sourceStatus.url = dcatSource.getUrl();
+        sourceStatus.host = host;
+        sourceStatus.started = Instant.now().toString();
+
+        running.put(dcatSource.getId(), sourceStatus);
+        runningPerHost.merge(host, 1, Integer::sum);
+
+        try {
+            CrawlerJob job = crawlerJobFactory.createCrawlerJob(dcatSource);
+            crawler.execute(dcatSource.getId(), job, (duration, error) -> {
+                if (error != null) {
+                    logger.error("EXECUTION ERROR ", error);
+                }
+                completed(dcatSource, host, duration, error);
+            });
+        } catch (RuntimeException e) {
+            logger.error("Unable to start crawler job for {}", dcatSource.getId(), e);
+            completed(dcatSource, host, Duration.ZERO, e);
+        }
+    }
+
+    private synchronized void completed(DcatSource dcatSource, String host, Duration duration, Throwable error) {
+        SourceStatus sourceStatus = running.remove(dcatSource.getId());
+        runningPerHost.computeIfPresent(host, (key, count) -> count > 1 ? count - 1 : null);
+
+        if (sourceStatus != null) {
+            sourceStatus.durationMillis = duration.toMillis();
+            sourceStatus.error = error != null ? error.toString() : null;
+            completed.add(sourceStatus);
+        }
+        if (error == null) {
+            lastDurations.put(dcatSource.getId(), duration);
+            saveDurations();
+        }
+
+        logger.info("Harvest of {} finished in {} ms, {} pending and {} running",
+            dcatSource.getId(), duration.toMillis(), pending.size(), running.size());
+
+        dispatch();
+
+        if (!isRunning()) {
+            finished = Instant.now();
+            logger.info("Finished harvest of all {} sources in {} ms",
+                completed.size(), Duration.between(started, finished).toMillis());
+        }
+    }
+
+    /**
+     * Writes the duration in milliseconds of the last successful harvest of each source.
+     */
+    private void saveDurations() {
+        Map<String, Long> millis = new TreeMap<>();
+        lastDurations.forEach((id, duration) -> millis.put(id, duration.toMillis()));
+
+        try {
+            Path parent = durationsFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path tempFile = Files.createTempFile(parent, DURATIONS_FILE, ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                gson.toJson(millis, writer);
+            }
+            Files.move(tempFile, durationsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Unable to write harvest durations {}: {}", durationsFile, e.getMessage());
+        }
+    }
+
+    private void readDurations() {
+        if (!Files.exists(durationsFile)) {
+            return;
+        }
+
+        try (Reader reader = Files.newBufferedReader(durationsFile, StandardCharsets.UTF_8)) {
+            Map<String, Long> millis = gson.fromJson(reader, new TypeToken<Map<String, Long>>() {}.getType());
+            if (millis != null) {
+                millis.forEach((id, duration) -> {
+                    if (duration != null) {
+                        lastDurations.put(id, Duration.ofMillis(duration));
+                    }
+                });
+            }
+            logger.info("Loaded the last harvest duration of {} sources from {}", lastDurations.size(), durationsFile);
+        } catch (IOException | JsonParseException e) {
+            logger.warn("Unable to read harvest durations {}: {}", durationsFile, e.getMessage());
+        }
+    }
+
+    static String getHost(DcatSource dcatSource) {
+        try {
+            URL url = new URL(dcatSource.getUrl());
+            return url.getHost() != null && !url.getHost().isEmpty() ? url.getHost() : url.getProtocol();
+        } catch (MalformedURLException e) {
+            return "";
+        }
+    }
+
+    /**
+     * Progress of a harvest of all sources, serialized by the status endpoint.
+     */
+    public static class HarvestStatus {
+        private boolean running;
+        private String started;
+        private String finished;
+        private int total;
+        private int pending;
+        private int completed;
+        private int failed;
+        private List<SourceStatus> runningSources = new ArrayList<>();
+        private List<SourceStatus> completedSources = new ArrayList<>();
+
+        public boolean isRunning() {
+            return running;
+        }
+
+        public String getStarted() {
+            return started;
+        }
+
+        public String getFinished() {
+            return finished;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getPending() {
+            return pending;
+        }
+
+        public int getCompleted() {
+            return completed;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public List<SourceStatus> getRunningSources() {
+            return runningSources;
+        }
+
+        public List<SourceStatus> getCompletedSources() {
+            return completedSources;
+        }
+    }
+
+    /**
+     * Progress of the harvest of one source.
+     */
+    public static class SourceStatus {
+        private String id;
+        private String url;
+        private String host;
+        private String started;
+        private Long durationMillis;
+        private String error;
+
+        SourceStatus copy() {
+            SourceStatus copy = new SourceStatus();
+            copy.id = id;
+            copy.url = url;
+            copy.host = host;
+            copy.started = started;
+            copy.durationMillis = durationMillis;
+            copy.error = error;
+            return copy;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public String getStarted() {
+            return started;
+        }
+
+        public Long getDurationMillis() {
+            return durationMillis;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package no.dcat.harvester.crawler;
+
+import no.dcat.harvester.service.SourceFetchCache;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphUtil;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.tdb.TDB;
+import org.apache.jena.tdb.TDBFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Holds the triples of one harvest, in memory or in a temporary TDB store on disk.
+ *
+ * The triples of the default graph and of every named graph of a source are streamed directly into the same
+ * indexed graph while parsing. Triples that occur in more than one graph are only stored once. This replaces
+ * building a dataset and wrapping each graph in ModelFactory.createUnion, where every lookup had to visit all graphs.
+ *
+ * A source is parsed into memory first. When the number of parsed triples passes the threshold, the triples read so far are copied to a TDB store in a new directory and the rest of the source is
+ * streamed there, so very large catalogs do not have to fit in the heap. Enrichment, validation and extraction of
+ * datasets work on the returned model whichever way it is stored. Close the store when the harvest is done, which
+ * deletes the directory.
+ */
+public class HarvestStore implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(HarvestStore.class);
+
+    private final Path directory;
+    private final long tripleThreshold;
+
+    private Path storeDirectory;
+    private final List<Dataset> datasets = new ArrayList<>();
+    private Model loaded;
+
+    /**
+     * A store that keeps everything in memory.
+     */
+    public static HarvestStore inMemory() {
+        return new HarvestStore(null, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param directory       where the temporary TDB stores are created
+     * @param tripleThreshold the number of triples kept in memory before the source is moved to disk,
+     *                        0 to stream the source to disk from the start
+     */
+    public HarvestStore(Path directory, long tripleThreshold) {
+        this.directory = directory;
+        this.tripleThreshold = tripleThreshold;
+    }
+
+    /**
+     * Parses the RDF document at the uri, passing the triples through a filter on the way into the store.
+     *
+     * @param uri location of the RDF document, also used as base uri
+     * @param filter wraps the stream that adds triples to the store
+     * @return a model containing the union of all graphs in the document
+     */
+    public Model load(String uri, UnaryOperator<StreamRDF> filter) {
+        SpillingStreamRDF destination = new SpillingStreamRDF();
+        RDFDataMgr.parse(filter.apply(destination), uri);
+        return loaded(destination);
+    }
+
+    /**
+     * Parses a cached copy of a dcat source, passing the triples through a filter on the way into the store.
+     *
+     * @param fetchedSource the local copy of the source
+     * @param filter wraps the stream that adds triples to the store
+     * @return a model containing the union of all graphs in the source
+     */
+    public Model load(SourceFetchCache.FetchedSource fetchedSource, UnaryOperator<StreamRDF> filter) throws IOException {
+        SpillingStreamRDF destination = new SpillingStreamRDF();
+        fetchedSource.parse(filter.apply(destination));
+        return loaded(destination);
+    }
+
+    private Model loaded(SpillingStreamRDF destination) {
+        loaded = destination.model;
+        if (isOnDisk()) {
+            TDB.sync(loaded);
+            logger.info("Stored {} parsed triples on disk in {}", destination.count, storeDirectory);
+        }
+        return loaded;
+    }
+
+    /**
+     * Wraps the loaded model in a union with an empty model that receives all additions, see
+     * {@link #withWriteLayer(Model)}. On disk the additions go to a TDB store of their own,
+     * since a TDB store does not allow changes while one of its graphs is iterated.
+     *
+     * @return a model that reads from the loaded model and writes to a separate graph
+     */
+    Model withWriteLayer() {
+        if (!isOnDisk()) {
+            return withWriteLayer(loaded);
+        }
+        return ModelFactory.createUnion(createDiskModel("additions"), loaded);
+    }
+
+    /**
+     * Wraps a model in a union with an empty model that receives all additions.
+     * The enrichment steps add statements while iterating over the model, which one graph alone does not allow.
+     * Lookups visit at most these two graphs, however many named graphs the source had.
+     *
+     * @param model a model in memory
+     * @return a model that reads from the model and writes to a separate graph
+     */
+    public static Model withWriteLayer(Model model) {
+        return ModelFactory.createUnion(ModelFactory.createDefaultModel(), model);
+    }
+
+    /**
+     * @return true if the source has been moved to disk
+     */
+    public boolean isOnDisk() {
+        return storeDirectory != null;
+    }
+
+    private Model createDiskModel(String name) {
+        try {
+            if (storeDirectory == null) {
+                Files.createDirectories(directory);
+                storeDirectory = Files.createTempDirectory(directory, "harvest-");
+            }
+            Dataset dataset = TDBFactory.createDataset(storeDirectory.resolve(name).toString());
+            datasets.add(dataset);
+            return dataset.getDefaultModel();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create harvest store in " + directory, e);
+        }
+    }
+
+    /**
+     * Releases the TDB stores and deletes their directory. Models returned by the store cannot be used afterwards.
+     */
+    @Override
+    public void close() {
+        for (Dataset dataset : datasets) {
+            TDBFactory.release(dataset);
+        }
+        datasets.clear();
+
+        if (storeDirectory != null) {
+            try (Stream<Path> paths = Files.walk(storeDirectory)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            } catch (IOException e) {
+                logger.warn("Unable to delete harvest store {}: {}", storeDirectory, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Adds every triple and the triple part of every quad to one graph, and moves the graph to disk when the
+     * threshold is passed.
+     */
+    private class SpillingStreamRDF extends StreamRDFBase {
+        private Model model;
+        private Graph graph;
+        private long count;
+
+        SpillingStreamRDF() {
+            model = tripleThreshold == 0 ? createDiskModel("source") : ModelFactory.createDefaultModel();
+            graph = model.getGraph();
+        }
+
+        @Override
+        public void triple(Triple triple) {
+            add(triple);
+        }
+
+        @Override
+        public void quad(Quad quad) {
+            add(quad.asTriple());
+        }
+
+        private void add(Triple triple) {
+            graph.add(triple);
+            if (++count > tripleThreshold && !isOnDisk()) {
+                spill();
+            }
+        }
+
+        private void spill() {
+            logger.info("Source has more than {} triples, moving it to disk", tripleThreshold);
+            Model diskModel = createDiskModel("source");
+            GraphUtil.addInto(diskModel.getGraph(), graph);
+            model = diskModel;
+            graph = diskModel.getGraph();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package no.dcat.harvester.crawler;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.riot.system.StreamRDFWrapper;
+import org.apache.jena.sparql.core.Quad;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Checks, while a source is parsed, that every triple can be written as Turtle and RDF/XML and read back again.
+ *
+ * This used to be done by writing the whole model to Turtle and RDF/XML and parsing the result after loading.
+ * Instead, the triples are collected in batches as they pass through the stream, and each batch is written and
+ * parsed with the same writers and parsers, so a failing source reports the same exceptions and messages as before.
+ * Only the line and column refer to the batch. The copies of the source in memory are never larger than one batch.
+ * The first Turtle error is reported before the first RDF/XML error, like the old order of the two passes.
+ */
+class SerializationCheck {
+
+    static final int DEFAULT_BATCH_SIZE = 10_000;
+
+    private final int batchSize;
+
+    private Model batch = ModelFactory.createDefaultModel();
+
+    private RuntimeException turtleError;
+    private RuntimeException rdfXmlError;
+
+    SerializationCheck() {
+        this(DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param batchSize the number of triples written and parsed at a time
+     */
+    SerializationCheck(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Checks all triples of a model that is already loaded.
+     *
+     * @throws RuntimeException the exception the Turtle or RDF/XML writer or parser raises for the model
+     */
+    static void verify(Model model) {
+        SerializationCheck check = new SerializationCheck();
+        model.getGraph().find().forEachRemaining(check::check);
+        check.throwIfInvalid();
+    }
+
+    /**
+     * Wraps a parser destination so that every triple and quad is checked before it is passed on.
+     * Errors are collected, call {@link #throwIfInvalid()} when parsing is done.
+     *
+     * @param destination receiver of the parsed triples and quads
+     * @return a stream that checks and forwards to the destination
+     */
+    StreamRDF checking(StreamRDF destination) {
+        return new StreamRDFWrapper(destination) {
+            @Override
+            public void triple(Triple triple) {
+                check(triple);
+                super.triple(triple);
+            }
+
+            @Override
+            public void quad(Quad quad) {
+                check(quad.asTriple());
+                super.quad(quad);
+            }
+        };
+    }
+
+    /**
+     * Checks one triple, for triples that are added to the model outside of the parser.
+     */
+    void check(Triple triple) {
+        if (turtleError != null) {
+            // a Turtle error is reported whatever else is wrong
+            return;
+        }
+
+        Graph graph = batch.getGraph();
+        graph.add(triple);
+        if (graph.size() >= batchSize) {
+            checkBatch();
+        }
+    }
+
+    /**
+     * Checks the triples that are left, and reports the first error found.
+     *
+     * @throws RuntimeException the first error found, Turtle errors before RDF/XML errors
+     */
+    void throwIfInvalid() {
+        if (turtleError == null && !batch.isEmpty()) {
+            checkBatch();
+        }
+        if (turtleError != null) {
+            throw turtleError;
+        }
+        if (rdfXmlError != null) {
+            throw rdfXmlError;
+        }
+    }
+
+    private void checkBatch() {
+        try {
+            writeAndParse(batch, RDFLanguages.strLangTurtle, Lang.TTL);
+        } catch (RuntimeException e) {
+            turtleError = e;
+        }
+        if (turtleError == null && rdfXmlError == null) {
+            try {
+                writeAndParse(batch, RDFLanguages.strLangRDFXML, Lang.RDFXML);
+            } catch (RuntimeException e) {
+                rdfXmlError = e;
+            }
+        }
+        batch = ModelFactory.createDefaultModel();
+    }
+
+    static void writeAndParse(Model model, String writerLanguage, Lang parserLanguage) {
+        StringWriter str = new StringWriter();
+        model.write(str, writerLanguage);
+        RDFDataMgr.parse(StreamRDFLib.sinkNull(), new ByteArrayInputStream(str.toString().getBytes(StandardCharsets.UTF_8)), parserLanguage);
+    }
+}
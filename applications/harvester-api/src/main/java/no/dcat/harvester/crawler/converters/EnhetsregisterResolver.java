@@ -4,8 +4,8 @@ import no.dcat.datastore.domain.dcat.Publisher;
 import no.dcat.datastore.domain.dcat.builders.PublisherBuilder;
 import no.dcat.datastore.domain.dcat.vocabulary.DCATNO;
 import no.dcat.datastore.domain.dcat.vocabulary.EnhetsregisteretRDF;
-import no.dcat.harvester.HarvesterApplication;
 import no.dcat.harvester.crawler.entities.Enhet;
+import no.dcat.harvester.service.OrganizationCache;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVRecord;
 import org.apache.jena.rdf.model.*;
@@ -17,11 +17,12 @@ import org.apache.jena.vocabulary.SKOS;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.io.ClassPathResource;
-import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestTemplate;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -34,8 +35,22 @@ public class EnhetsregisterResolver {
 
     private HashMap<String, String> canonicalNames = new HashMap<>();
     private Set<String> resolvedOrganizations = new HashSet<>();
+    private final AtomicInteger remoteCalls = new AtomicInteger();
+    private final OrganizationCache organizationCache;
+    private final Map<String, CompletableFuture<Enhet>> prefetched = new HashMap<>();
 
+    /**
+     * A resolver with a cache of its own, for tests and tools. Crawler jobs use the shared cache.
+     */
     public EnhetsregisterResolver() {
+        this(new OrganizationCache());
+    }
+
+    /**
+     * @param organizationCache where organisations are looked up, shared with other resolvers
+     */
+    public EnhetsregisterResolver(OrganizationCache organizationCache) {
+        this.organizationCache = organizationCache;
         initializeCanonicalNames();
     }
 
@@ -55,9 +70,27 @@ public class EnhetsregisterResolver {
         }
     }
 
+    /**
+     * @return the number of lookups in Enhetsregisteret made by this resolver
+     */
+    public int getRemoteCalls() {
+        return remoteCalls.get();
+    }
+
+    /**
+     * Adds the organisations of the publishers and creators, and their parent organisations, from Enhetsregisteret.
+     *
+     * The organisations are first looked up concurrently, and then added to the model one by one on the calling thread.
+     */
     public Model resolveModel(final Model model) {
-        processAgents(model, DCTerms.publisher);
-        processAgents(model, DCTerms.creator);
+        try {
+            prefetch(collectOrgNumbers(model));
+
+            processAgents(model, DCTerms.publisher);
+            processAgents(model, DCTerms.creator);
+        } finally {
+            prefetched.clear();
+        }
 
         postprocessAgentNames(model);
         processAgentHierarchy(model);
@@ -65,6 +98,64 @@ public class EnhetsregisterResolver {
         return model;
     }
 
+    private Set<String> collectOrgNumbers(final Model model) {
+        Set<String> orgNumbers = new LinkedHashSet<>();
+        for (Property agentProperty : Arrays.asList(DCTerms.publisher, DCTerms.creator)) {
+            NodeIterator orgIterator = model.listObjectsOfProperty(agentProperty);
+            while (orgIterator.hasNext()) {
+                RDFNode next = orgIterator.next();
+                if (next.isURIResource()) {
+                    String orgNo = getOrgNrFromIdentifier(model, next.asResource());
+                    if (orgNo != null) {
+                        orgNumbers.add(orgNo);
+                    }
+                }
+            }
+        }
+        return orgNumbers;
+    }
+
+    /**
+     * Looks up the organisations and all their parents, one level of the hierarchy at a time.
+     * A failed lookup is reported when the organisation is added to the model.
+     */
+    private void prefetch(final Collection<String> orgNumbers) {
+        Set<String> pending = new LinkedHashSet<>(orgNumbers);
+        while (!pending.isEmpty()) {
+            Map<String, CompletableFuture<Enhet>> level = new LinkedHashMap<>();
+            for (String orgNo : pending) {
+                if (!prefetched.containsKey(orgNo)) {
+                    level.put(orgNo, organizationCache.getAsync(orgNo, remoteCalls));
+                }
+            }
+            prefetched.putAll(level);
+
+            pending = new LinkedHashSet<>();
+            for (CompletableFuture<Enhet> future : level.values()) {
+                try {
+                    Enhet enhet = future.join();
+                    if (enhet != null && enhet.getOverordnetEnhet() != null) {
+                        pending.add(enhet.getOverordnetEnhet());
+                    }
+                } catch (CompletionException e) {
+                    // logged when the organisation is added to the model
+                }
+            }
+        }
+    }
+
+    private Enhet lookup(String orgNo) throws Exception {
+        CompletableFuture<Enhet> future = prefetched.remove(orgNo);
+        if (future == null) {
+            return organizationCache.get(orgNo, remoteCalls);
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
     private void processAgents(final Model model, final Property agentProperty) {
         NodeIterator orgIterator = model.listObjectsOfProperty(agentProperty);
         while (orgIterator.hasNext()) {
@@ -114,13 +205,11 @@ public class EnhetsregisterResolver {
             //Add identifier
             model.add(orgResource, DCTerms.identifier, orgNo);
 
-            RestTemplate restTemplate = new RestTemplate();
-            String url = HarvesterApplication.getEnhetsregisterJsonUrlForOrganization(orgNo);
-            Enhet enhet;
-
-            enhet = restTemplate.getForObject(url, Enhet.class);
+            Enhet enhet = lookup(orgNo);
             if (enhet == null) {
-                throw new Exception("Enhetsregisteret svarer ikke eller fant ikke organisasjonsnummeret " + orgNo);
+                model.addLiteral(orgResource, DCTerms.valid, false);
+                logger.warn("Unable to lookup organization {} in master data service. It is not registered", orgNo);
+                return;
             }
 
             Resource resolvedOrgResource = enhet.createResource(model, null, orgResource);
@@ -139,13 +228,7 @@ public class EnhetsregisterResolver {
             }
         } catch (Exception e) {
             model.addLiteral(orgResource, DCTerms.valid, false);
-            if (e instanceof HttpClientErrorException && ((HttpClientErrorException)e).getStatusCode().is4xxClientError()) {
-                int statusCode = ((HttpClientErrorException)e).getStatusCode().value();
-                String statusText = ((HttpClientErrorException)e).getStatusText();
-                logger.warn("Unable to lookup organization {} in master data service. Statuscode={} {}", orgNo, statusCode, statusText!=null?statusText:"");
-            } else {
-                logger.warn("Unable to lookup organization {} in master data service. Reason {}", orgNo, e.getMessage(), e);
-            }
+            logger.warn("Unable to lookup organization {} in master data service. Reason {}", orgNo, e.getMessage(), e);
         }
     }
 
@@ -32,7 +32,7 @@ public class Enhet {
     public String maalform;
 
     @JsonIgnore
-    private Model model = null; //Call initialize(Model) to initialize
+    private transient Model model = null; //Call initialize(Model) to initialize
 
     public void initialize(final Model model) {
         this.model = model;
@@ -0,0 +1,222 @@
+package no.dcat.harvester.crawler.handlers;
+
+import no.dcat.datastore.domain.dcat.vocabulary.DCAT;
+import no.dcat.shared.DataTheme;
+import no.dcat.shared.SkosCode;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.sparql.util.FmtUtils;
+import org.apache.jena.vocabulary.RDF;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Computes a stable hash of the RDF subgraph that a dataset is built from.
+ *
+ * The subgraph is the statements of the dataset, the statements of blank nodes reachable from it (contacts,
+ * periods of time, quality annotations), and the statements of the resources it links to directly (distributions,
+ * publishers, contact points). The statements of the catalog are included, except its list of datasets, since the
+ * catalog is copied into every dataset. Statements are sorted before hashing, and blank nodes are described by their
+ * content instead of their labels, so the same data gives the same fingerprint in every harvest.
+ *
+ * The document of a dataset also depends on how it is built and on the labels of the reference codes, so the
+ * fingerprint includes {@link #FINGERPRINT_VERSION} and the codes and themes that the subgraph refers to, by uri or
+ * by value. Codes that the dataset does not refer to are left out, so a code list that grows, like the locations
+ * that every harvest registers, only changes the fingerprints of the datasets that refer to the new codes.
+ */
+public class DatasetFingerprint {
+
+    /**
+     * Increase when the builders or the mapping of the dataset documents change, to index every dataset again.
+     */
+    public static final int FINGERPRINT_VERSION = 1;
+
+    private static final String CYCLE = "_:cycle";
+
+    private final Map<String, Map<String, SkosCode>> codes;
+    private final Map<String, DataTheme> dataThemes;
+    private final Map<Resource, LinkedResource> linkedResources = new HashMap<>();
+    private final Map<String, String> referenceDescriptions = new HashMap<>();
+
+    /**
+     * Fingerprints without reference codes.
+     */
+    public DatasetFingerprint() {
+        this(null, null);
+    }
+
+    /**
+     * @param codes      the codes of each code type, by uri, that the datasets are built with, or null
+     * @param dataThemes the themes, by id, that the datasets are built with, or null
+     */
+    public DatasetFingerprint(Map<String, Map<String, SkosCode>> codes, Map<String, DataTheme> dataThemes) {
+        this.codes = codes != null ? new TreeMap<>(codes) : Collections.emptyMap();
+        this.dataThemes = dataThemes != null ? dataThemes : Collections.emptyMap();
+    }
+
+    private static class LinkedResource {
+        final String hash;
+        final Set<String> values;
+
+        LinkedResource(String hash, Set<String> values) {
+            this.hash = hash;
+            this.values = values;
+        }
+    }
+
+    /**
+     * @param dataset            the dataset resource
+     * @param catalog            the catalog the dataset belongs to, or null
+     * @param validationMessages validation messages that are stored with the dataset
+     * @return the fingerprint, a SHA-256 hex string
+     */
+    public String of(Resource dataset, Resource catalog, Collection<String> validationMessages) {
+        MessageDigest digest = createDigest();
+
+        Set<String> values = new TreeSet<>();
+        update(digest, "version " + FINGERPRINT_VERSION);
+        update(digest, "dataset " + describe(dataset, true, new HashSet<>(), values));
+        if (catalog != null) {
+            update(digest, "catalog " + describe(catalog, false, new HashSet<>(), values));
+        }
+        for (String value : values) {
+            String reference = describeReference(value);
+            if (reference != null) {
+                update(digest, "reference " + reference);
+            }
+        }
+        if (validationMessages != null) {
+            List<String> messages = new ArrayList<>(validationMessages);
+            messages.sort(null);
+            messages.forEach(message -> update(digest, "validation " + message));
+        }
+
+        return toHex(digest.digest());
+    }
+
+    private String describe(Resource resource, boolean followLinks, Set<Resource> blankNodesInProgress, Set<String> values) {
+        List<String> lines = new ArrayList<>();
+
+        StmtIterator iterator = resource.listProperties();
+        while (iterator.hasNext()) {
+            Statement statement = iterator.next();
+            if (statement.getPredicate().equals(DCAT.dataset) && resource.hasProperty(RDF.type, DCAT.Catalog)) {
+                continue;
+            }
+            lines.add(FmtUtils.stringForNode(statement.getPredicate().asNode()) + " " +
+                describe(statement.getObject(), followLinks, blankNodesInProgress, values));
+        }
+
+        lines.sort(null);
+        return String.join("\n", lines);
+    }
+
+    private String describe(RDFNode node, boolean followLinks, Set<Resource> blankNodesInProgress, Set<String> values) {
+        if (node.isAnon()) {
+            Resource blankNode = node.asResource();
+            if (!blankNodesInProgress.add(blankNode)) {
+                return CYCLE;
+            }
+            String description = "[" + describe(blankNode, followLinks, blankNodesInProgress, values) + "]";
+            blankNodesInProgress.remove(blankNode);
+            return description;
+        }
+
+        // codes are looked up by the uri or the value that the builders read
+        values.add(node.isURIResource() ? node.asResource().getURI() : node.asLiteral().getLexicalForm());
+
+        String value = FmtUtils.stringForNode(node.asNode());
+        if (followLinks && node.isURIResource() && !isDatasetOrCatalog(node.asResource())) {
+            LinkedResource linkedResource = linkedResource(node.asResource());
+            values.addAll(linkedResource.values);
+            return value + " {" + linkedResource.hash + "}";
+        }
+        return value;
+    }
+
+    /**
+     * Linked resources are often shared by many datasets, like publishers, so their hash is computed once.
+     */
+    private LinkedResource linkedResource(Resource resource) {
+        LinkedResource linkedResource = linkedResources.get(resource);
+        if (linkedResource == null) {
+            Set<String> values = new HashSet<>();
+            MessageDigest digest = createDigest();
+            update(digest, describe(resource, false, new HashSet<>(), values));
+            linkedResource = new LinkedResource(toHex(digest.digest()), values);
+            linkedResources.put(resource, linkedResource);
+        }
+        return linkedResource;
+    }
+
+    /**
+     * @return the codes and the theme with the uri or value, with their labels, or null if there are none
+     */
+    private String describeReference(String value) {
+        if (referenceDescriptions.containsKey(value)) {
+            return referenceDescriptions.get(value);
+        }
+
+        List<String> lines = new ArrayList<>();
+        codes.forEach((type, codesOfType) -> {
+            SkosCode code = codesOfType != null ? codesOfType.get(value) : null;
+            if (code != null) {
+                lines.add(type + " " + code.getUri() + " " + code.getCode() + " " + sorted(code.getPrefLabel()));
+            }
+        });
+        DataTheme dataTheme = dataThemes.get(value);
+        if (dataTheme != null) {
+            lines.add("theme " + dataTheme.getId() + " " + dataTheme.getCode() + " " + sorted(dataTheme.getTitle()) +
+                (dataTheme.getConceptSchema() != null ? " " + dataTheme.getConceptSchema().getId() + " " +
+                    sorted(dataTheme.getConceptSchema().getTitle()) + " " + dataTheme.getConceptSchema().getVersioninfo() +
+                    " " + dataTheme.getConceptSchema().getVersionnumber() : ""));
+        }
+
+        String description = lines.isEmpty() ? null : value + "\n" + String.join("\n", lines);
+        referenceDescriptions.put(value, description);
+        return description;
+    }
+
+    private static Map<String, String> sorted(Map<String, String> labels) {
+        return labels != null ? new TreeMap<>(labels) : null;
+    }
+
+    private static boolean isDatasetOrCatalog(Resource resource) {
+        return resource.hasProperty(RDF.type, DCAT.Dataset) || resource.hasProperty(RDF.type, DCAT.Catalog);
+    }
+
+    private static void update(MessageDigest digest, String text) {
+        digest.update(text.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -4,30 +4,41 @@ import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.FileAppender;
+import com.google.common.collect.Iterables;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonParseException;
 import no.dcat.client.elasticsearch5.Elasticsearch5Client;
+import no.dcat.client.referencedata.ReferenceCodeCache;
 import no.dcat.datastore.DcatIndexUtils;
 import no.dcat.datastore.domain.DcatSource;
 import no.dcat.datastore.domain.dcat.builders.AbstractBuilder;
 import no.dcat.datastore.domain.dcat.builders.DcatReader;
 import no.dcat.datastore.domain.dcat.vocabulary.DCAT;
 import no.dcat.datastore.domain.harvest.*;
+import no.dcat.harvester.crawler.CrawlerJobMetrics;
 import no.dcat.harvester.crawler.CrawlerResultHandler;
 import no.dcat.harvester.crawler.notification.EmailNotificationService;
 import no.dcat.htmlclean.HtmlCleaner;
 import no.dcat.shared.*;
 import org.apache.jena.rdf.model.*;
 import org.apache.jena.vocabulary.RDF;
+import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetRequestBuilder;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.MultiSearchRequestBuilder;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.index.query.*;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
 import org.elasticsearch.search.sort.SortOrder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,11 +67,14 @@ public class ElasticSearchResultHandler implements CrawlerResultHandler {
     public static final String VALIDATION_EMAIL_SUBJECT = "Felles datakatalog harvestlogg";
     private static final Logger logger = LoggerFactory.getLogger(ElasticSearchResultHandler.class);
     private static final SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT);
+    // the number of lookup entries or harvest records read with one multi-get or multi-search
+    static final int LOOKUP_BATCH_SIZE = 500;
     Elasticsearch5Client elasticClient;
     DcatIndexUtils dcatIndexUtils;
     String clusterNodes;
     String clusterName;
     String referenceDataUrl;
+    ReferenceCodeCache referenceCodeCache;
     String httpUsername;
     String httpPassword;
     String notificationEmailSender;
@@ -70,6 +84,16 @@ public class ElasticSearchResultHandler implements CrawlerResultHandler {
     private EmailNotificationService notificationService;
     private boolean enableHarvestLog = true;
     private boolean enableChangeHandling = true;
+    private boolean incremental = true;
+    private int datasetBuildParallelism = 1;
+    private CrawlerJobMetrics jobMetrics;
+
+    // per harvest: fingerprint and lookup entry of each dataset in the source, and the datasets that are skipped
+    private Map<String, String> datasetFingerprints = new HashMap<>();
+    private Map<String, DatasetLookup> datasetLookups = new HashMap<>();
+    private Set<String> unchangedDatasetUris = new HashSet<>();
+    // per harvest: last harvest record with content of each dataset id, null if it has none
+    private Map<String, DatasetHarvestRecord> lastHarvestRecordsWithContent = new HashMap<>();
 
     /**
      * Creates a new elasticsearch code result handler connected to
@@ -87,6 +111,7 @@ public class ElasticSearchResultHandler implements CrawlerResultHandler {
         this.clusterNodes = clusterNodes;
         this.clusterName = clusterName;
         this.referenceDataUrl = referenceDataUrl;
+        this.referenceCodeCache = ReferenceCodeCache.shared(referenceDataUrl);
         this.httpUsername = httpUsername;
         this.httpPassword = httpPassword;
         this.notificationEmailSender = notifactionEmailSender;
@@ -103,6 +128,35 @@ public class ElasticSearchResultHandler implements CrawlerResultHandler {
         this(clusterNodes, clusterName, referenceDataUrl, httpUsername, httpPassword, DEFAULT_EMAIL_SENDER, null);
     }
 
+    /**
+     * Metrics of the crawler job that uses this handler. The stage timings and counters collected before
+     * indexing starts are stored on the catalog harvest records.
+     */
+    public void setJobMetrics(CrawlerJobMetrics jobMetrics) {
+        this.jobMetrics = jobMetrics;
+    }
+
+    /**
+     * The code lists and themes to build datasets with, by default the cache shared by the whole process.
+     */
+    public void setReferenceCodeCache(ReferenceCodeCache referenceCodeCache) {
+        this.referenceCodeCache = referenceCodeCache;
+    }
+
+    /**
+     * Turns off skipping of unchanged datasets, so that every dataset is built and indexed again.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * The number of threads that build the datasets of a catalog, 1 builds them on the harvest thread.
+     */
+    public void setDatasetBuildParallelism(int datasetBuildParallelism) {
+        this.datasetBuildParallelism = datasetBuildParallelism;
+    }
+
     // for unit test purposes
     ElasticSearchResultHandler() {
 
@@ -153,7 +207,8 @@ public class ElasticSearchResultHandler implements CrawlerResultHandler {
     }
 
     DcatReader getReader(Model model) {
-        return new DcatReader(model, referenceDataUrl, httpUsername, httpPassword);
+        return new DcatReader(model, referenceCodeCache, referenceDataUrl, httpUsername, httpPassword)
+            .setParallelism(datasetBuildParallelism);
     }
 
 
@@ -171,20 +226,21 @@ public class ElasticSearchResultHandler implements CrawlerResultHandler {
 
         DcatReader dcatReader = getReader(model);
 
-        List<Dataset> datasets = dcatReader.getDatasets();
+        Gson gson = getGson();
+        findUnchangedDatasets(model, elasticsearch, gson, validationResults);
+
+        List<Dataset> datasets = dcatReader.getDatasets(uri -> !unchangedDatasetUris.contains(uri));
         List<Catalog> catalogs = dcatReader.getCatalogs();
 
         Set<String> datasetsInSource = getSourceDatasetUris(model);
 
-        if (datasets == null || datasets.isEmpty()) {
+        if ((datasets == null || datasets.isEmpty()) && unchangedDatasetUris.isEmpty()) {
 
             logger.error("No datasets to index. Found {} non valid datasets at url {}",
                 datasetsInSource.size(),
                 dcatSource.getUrl());
         } else {
-            logger.info("Processing {} datasets", datasets.size());
-
-            Gson gson = getGson();
+            logger.info("Processing {} datasets, skipping {} unchanged datasets", datasets.size(), unchangedDatasetUris.size());
 
             updateDatasets(dcatSource, model, elasticsearch, validationResults, gson, datasets, catalogs);
             updateSubjects(datasets, elasticsearch, gson);
@@ -193,6 +249,95 @@ public class ElasticSearchResultHandler implements CrawlerResultHandler {
         stopHarvestLogAndReport(dcatSource, validationResults);
     }
 
+    /**
+     * Fingerprints each dataset in the model and looks up its entry in the lookup index. A dataset is unchanged if
+     * the fingerprint is the same as when it was last indexed, and the dataset is still in the dcat index.
+     * Unchanged datasets are not built, compared with their harvest records or indexed again.
+     */
+    void findUnchangedDatasets(Model model, Elasticsearch5Client elasticsearch, Gson gson, List<String> validationResults) {
+        datasetFingerprints = new HashMap<>();
+        datasetLookups = new HashMap<>();
+        unchangedDatasetUris = new HashSet<>();
+        lastHarvestRecordsWithContent = new HashMap<>();
+
+        ReferenceCodeCache.Snapshot referenceCodes = referenceCodeCache != null ? referenceCodeCache.getSnapshot() : null;
+        DatasetFingerprint fingerprint = referenceCodes != null ?
+            new DatasetFingerprint(referenceCodes.getCodes(), referenceCodes.getDataThemes()) : new DatasetFingerprint();
+        ResIterator catalogIterator = model.listResourcesWithProperty(RDF.type, DCAT.Catalog);
+        while (catalogIterator.hasNext()) {
+            Resource catalog = catalogIterator.next();
+            StmtIterator datasetIterator = catalog.listProperties(DCAT.dataset);
+            while (datasetIterator.hasNext()) {
+                RDFNode node = datasetIterator.next().getObject();
+                if (node.isURIResource()) {
+                    Resource dataset = node.asResource();
+                    datasetFingerprints.put(dataset.getURI(),
+                        fingerprint.of(dataset, catalog, filterValidationMessagesForDataset(validationResults, dataset)));
+                }
+            }
+        }
+
+        datasetLookups = findLookupDatasets(elasticsearch.getClient(), datasetFingerprints.keySet(), gson);
+
+        Map<String, String> candidates = new HashMap<>();
+        int newDatasets = 0;
+        for (Map.Entry<String, String> entry : datasetFingerprints.entrySet()) {
+            DatasetLookup lookup = datasetLookups.get(entry.getKey());
+
+            if (lookup == null) {
+                newDatasets++;
+            } else if (incremental && lookup.getDatasetId() != null && entry.getValue().equals(lookup.getFingerprint())) {
+                candidates.put(lookup.getDatasetId(), entry.getKey());
+            }
+        }
+
+        for (List<String> batch : Iterables.partition(candidates.keySet(), LOOKUP_BATCH_SIZE)) {
+            MultiGetRequestBuilder multiGet = elasticsearch.getClient().prepareMultiGet();
+            batch.forEach(datasetId -> multiGet.add(
+                new MultiGetRequest.Item(DCAT_INDEX, DATASET_TYPE, datasetId).fetchSourceContext(FetchSourceContext.DO_NOT_FETCH_SOURCE)));
+
+            addHarvestRecordCalls(1);
+            for (MultiGetItemResponse item : multiGet.get().getResponses()) {
+                if (!item.isFailed() && item.getResponse().isExists()) {
+                    unchangedDatasetUris.add(candidates.get(item.getId()));
+                }
+            }
+        }
+
+        int changedDatasets = datasetFingerprints.size() - newDatasets - unchangedDatasetUris.size();
+        logger.info("{} new, {} changed and {} unchanged datasets", newDatasets, changedDatasets, unchangedDatasetUris.size());
+
+        if (jobMetrics != null) {
+            jobMetrics.setCount(CrawlerJobMetrics.DATASETS_NEW, newDatasets);
+            jobMetrics.setCount(CrawlerJobMetrics.DATASETS_CHANGED, changedDatasets);
+            jobMetrics.setCount(CrawlerJobMetrics.DATASETS_UNCHANGED, unchangedDatasetUris.size());
+        }
+    }
+
+    /**
+     * The validation messages that are stored on the harvest record of the dataset, see
+     * {@link #filterValidationMessagesForDataset(List, Dataset)}.
+     */
+    List<String> filterValidationMessagesForDataset(List<String> catalogValidationResults, Resource dataset) {
+        if (catalogValidationResults == null) {
+            return null;
+        }
+
+        Set<String> distributionUris = new HashSet<>();
+        StmtIterator distributionIterator = dataset.listProperties(DCAT.distribution);
+        while (distributionIterator.hasNext()) {
+            RDFNode distribution = distributionIterator.next().getObject();
+            if (distribution.isURIResource()) {
+                distributionUris.add(distribution.asResource().getURI());
+            }
+        }
+
+        return catalogValidationResults.stream().filter(m ->
+            (m.contains(dataset.getURI()) && m.contains("className='Dataset'")) ||
+                (m.contains("className='Distribution'") && distributionUris.stream().anyMatch(m::contains)))
+            .collect(Collectors.toList());
+    }
+
     private Gson getGson() {
         // enable gson to read subtype of publisher
         RuntimeTypeAdapterFactory<Publisher> typeFactory = RuntimeTypeAdapterFactory
@@ -342,8 +487,19 @@ public class ElasticSearchResultHandler implements CrawlerResultHandler {
             catalogRecord.setPublisher(catalog.getPublisher());
 
             ChangeInformation stats = new ChangeInformation();
+            for (String uri : getDatasetsUris(model, catalog.getUri())) {
+                if (unchangedDatasetUris.contains(uri)) {
+                    catalogRecord.getValidDatasetUris().add(uri);
+                    stats.setUnchanged(stats.getUnchanged() + 1);
+                    saveUnchangedDatasetHarvest(dcatSource, gson, bulkRequest, harvestTime, datasetLookups.get(uri));
+                }
+            }
             logger.debug("stats: " + stats.toString());
-            for (Dataset dataset : datasetsToImport.stream().filter(d -> d.getCatalog().getUri().equals(catalog.getUri())).collect(Collectors.toList())) {
+            List<Dataset> catalogDatasets = datasetsToImport.stream().filter(d -> d.getCatalog().getUri().equals(catalog.getUri())).collect(Collectors.toList());
+            if (enableChangeHandling) {
+                findLastDatasetHarvestRecordsWithContent(catalogDatasets, elasticsearch, gson);
+            }
+            for (Dataset dataset : catalogDatasets) {
 
                 catalogRecord.getValidDatasetUris().add(dataset.getUri());
 
@@ -373,6 +529,7 @@ public class ElasticSearchResultHandler implements CrawlerResultHandler {
         if (response.hasFailures()) {
             //TODO: process failures by iterating through each bulk response item?
             logger.error("Cannot store bulk requests: {}", response.buildFailureMessage());
+            addIndexingErrors(countFailures(response));
         }
 
         waitForIndexing(elasticsearch);
@@ -429,7 +586,52 @@ public class ElasticSearchResultHandler implements CrawlerResultHandler {
     }
 
     DatasetHarvestRecord findLastDatasetHarvestRecordWithContent(Dataset dataset, Elasticsearch5Client elasticsearch, Gson gson) {
-        TermQueryBuilder hasDatasetId = QueryBuilders.termQuery("datasetId", dataset.getId());
+        // found with the other datasets of the catalog
+        if (lastHarvestRecordsWithContent.containsKey(dataset.getId())) {
+            return lastHarvestRecordsWithContent.get(dataset.getId());
+        }
+
+        addHarvestRecordCalls(1);
+        SearchResponse lastDatasetRecordResponse = searchLastDatasetHarvestRecordWithContent(elasticsearch.getClient(), dataset.getId()).get();
+
+        return readLastDatasetHarvestRecordWithContent(lastDatasetRecordResponse, dataset.getId(), dataset.getUri(), gson);
+    }
+
+    /**
+     * Finds the last harvest record with content of each dataset that has been harvested before, with multi-search,
+     * and keeps them for the rest of the job. New datasets and datasets with old harvest records are not searched for.
+     */
+    void findLastDatasetHarvestRecordsWithContent(List<Dataset> datasets, Elasticsearch5Client elasticsearch, Gson gson) {
+        Map<String, Dataset> datasetsById = new LinkedHashMap<>();
+        for (Dataset dataset : datasets) {
+            DatasetLookup lookup = datasetLookups.get(dataset.getUri());
+            if (lookup != null && lookup.getDatasetId() != null && lookup.getHarvest() != null && lookup.getHarvest().getFirstHarvested() != null
+                && !lastHarvestRecordsWithContent.containsKey(lookup.getDatasetId())) {
+                datasetsById.put(lookup.getDatasetId(), dataset);
+            }
+        }
+
+        for (List<String> batch : Iterables.partition(datasetsById.keySet(), LOOKUP_BATCH_SIZE)) {
+            MultiSearchRequestBuilder multiSearch = elasticsearch.getClient().prepareMultiSearch();
+            batch.forEach(datasetId -> multiSearch.add(searchLastDatasetHarvestRecordWithContent(elasticsearch.getClient(), datasetId)));
+
+            addHarvestRecordCalls(1);
+            MultiSearchResponse.Item[] responses = multiSearch.get().getResponses();
+            for (int i = 0; i < responses.length; i++) {
+                String datasetId = batch.get(i);
+                if (responses[i].isFailure()) {
+                    // searched for again with the dataset
+                    logger.warn("Unable to find last harvest record of {}. Reason {}", datasetId, responses[i].getFailureMessage());
+                } else {
+                    lastHarvestRecordsWithContent.put(datasetId,
+                        readLastDatasetHarvestRecordWithContent(responses[i].getResponse(), datasetId, datasetsById.get(datasetId).getUri(), gson));
+                }
+            }
+        }
+    }
+
+    private SearchRequestBuilder searchLastDatasetHarvestRecordWithContent(Client client, String datasetId) {
+        TermQueryBuilder hasDatasetId = QueryBuilders.termQuery("datasetId", datasetId);
         ExistsQueryBuilder hasDatasetValue = QueryBuilders.existsQuery("dataset");
 
         BoolQueryBuilder datasetWithValueQuery = QueryBuilders.boolQuery();
@@ -437,22 +639,24 @@ public class ElasticSearchResultHandler implements CrawlerResultHandler {
 
         logger.debug("query: {}", datasetWithValueQuery.toString());
 
-        SearchResponse lastDatasetRecordResponse = elasticsearch.getClient()
+        return client
             .prepareSearch(HARVEST_INDEX).setTypes("dataset")
             .setQuery(datasetWithValueQuery)
             .addSort("date", SortOrder.DESC)
-            .setSize(1).get();
+            .setSize(1);
+    }
 
+    private DatasetHarvestRecord readLastDatasetHarvestRecordWithContent(SearchResponse lastDatasetRecordResponse, String datasetId, String datasetUri, Gson gson) {
         if (lastDatasetRecordResponse.getHits().getTotalHits() > 0) {
 
             DatasetHarvestRecord lastHarvestRecord =
                 gson.fromJson(lastDatasetRecordResponse.getHits().getAt(0).getSourceAsString(), DatasetHarvestRecord.class);
-            if (lastHarvestRecord != null && lastHarvestRecord.getDatasetId().equals(dataset.getId())) {
+            if (lastHarvestRecord != null && lastHarvestRecord.getDatasetId().equals(datasetId)) {
                 logger.debug("Found {} harvested at {}", lastHarvestRecord.getDatasetId(), dateFormat.format(lastHarvestRecord.getDate()));
 
                 return lastHarvestRecord;
             } else {
-                logger.info("Dataset {} has no harvest metadata and is never been harvested before", dataset.getUri());
+                logger.info("Dataset {} has no harvest metadata and is never been harvested before", datasetUri);
             }
 
         }
@@ -465,6 +669,7 @@ public class ElasticSearchResultHandler implements CrawlerResultHandler {
         TermQueryBuilder hasDatasetId = QueryBuilders.termQuery("datasetId", dataset.getId());
         logger.trace("findFirstDataset: {}", hasDatasetId.toString());
 
+        addHarvestRecordCalls(1);
         SearchResponse firstDatasetRecordResponse = elasticsearch.getClient()
             .prepareSearch(HARVEST_INDEX).setTypes("dataset")
             .setQuery(hasDatasetId)
@@ -495,6 +700,7 @@ public class ElasticSearchResultHandler implements CrawlerResultHandler {
 
         logger.trace("query: {}", csQueryBuilder.toString());
 
+        addHarvestRecordCalls(1);
         SearchResponse lastCatalogRecordResponse = elasticsearch.getClient()
             .prepareSearch(HARVEST_INDEX).setTypes("catalog")
             .setQuery(csQueryBuilder)
@@ -515,8 +721,9 @@ public class ElasticSearchResultHandler implements CrawlerResultHandler {
                     if (missingUris.size() > 0) {
                         logger.info("There are {} datasets that were not harvested this time", missingUris.size());
 
+                        Map<String, DatasetLookup> missingLookups = findLookupDatasets(elasticsearch.getClient(), missingUris, gson);
                         for (String uri : missingUris) {
-                            DatasetLookup lookup = findLookupDataset(elasticsearch.getClient(), uri, gson);
+                            DatasetLookup lookup = missingLookups.get(uri);
                             if (lookup != null && lookup.getDatasetId() != null) {
                                 DcatIndexUtils dcatIndexUtils = new DcatIndexUtils(elasticsearch);
                                 dcatIndexUtils.deleteDocument(DCAT_INDEX, DATASET_TYPE, lookup.getDatasetId());
@@ -554,6 +761,7 @@ public class ElasticSearchResultHandler implements CrawlerResultHandler {
     }
 
     DatasetLookup findLookupDataset(Client client, String uri, Gson gson) {
+        addHarvestRecordCalls(1);
         GetResponse response = client.prepareGet(HARVEST_INDEX, "lookup", uri).get();
 
         if (response.isExists()) {
@@ -563,6 +771,51 @@ public class ElasticSearchResultHandler implements CrawlerResultHandler {
         return null;
     }
 
+    /**
+     * Reads the lookup entries of the uris with multi-get, LOOKUP_BATCH_SIZE at a time.
+     *
+     * @return the lookup entry of each uri, null if the uri has none
+     */
+    Map<String, DatasetLookup> findLookupDatasets(Client client, Collection<String> uris, Gson gson) {
+        Map<String, DatasetLookup> lookups = new HashMap<>();
+
+        for (List<String> batch : Iterables.partition(uris, LOOKUP_BATCH_SIZE)) {
+            MultiGetRequestBuilder multiGet = client.prepareMultiGet();
+            batch.forEach(uri -> multiGet.add(new MultiGetRequest.Item(HARVEST_INDEX, "lookup", uri)));
+
+            addHarvestRecordCalls(1);
+            for (MultiGetItemResponse item : multiGet.get().getResponses()) {
+                if (item.isFailed()) {
+                    logger.warn("Unable to read lookup entry of {}. Reason {}", item.getId(), item.getFailure().getMessage());
+                    lookups.put(item.getId(), findLookupDataset(client, item.getId(), gson));
+                } else if (item.getResponse().isExists()) {
+                    lookups.put(item.getId(), gson.fromJson(item.getResponse().getSourceAsString(), DatasetLookup.class));
+                } else {
+                    lookups.put(item.getId(), null);
+                }
+            }
+        }
+
+        return lookups;
+    }
+
+    private void addHarvestRecordCalls(long calls) {
+        if (jobMetrics != null) {
+            jobMetrics.addRemoteCalls(CrawlerJobMetrics.HARVEST_RECORDS, calls);
+        }
+    }
+
+    // errors that are logged without failing the harvest, the job does not record the source as harvested
+    private void addIndexingErrors(long errors) {
+        if (jobMetrics != null) {
+            jobMetrics.addCount(CrawlerJobMetrics.INDEXING_ERRORS, errors);
+        }
+    }
+
+    private static long countFailures(BulkResponse response) {
+        return Arrays.stream(response.getItems()).filter(BulkItemResponse::isFailed).count();
+    }
+
     private HarvestMetadata createHarvestMetadata() {
         HarvestMetadata result = new HarvestMetadata();
         result.setChanged(new ArrayList<>());
@@ -580,8 +833,9 @@ public class ElasticSearchResultHandler implements CrawlerResultHandler {
     DatasetLookup findOrCreateDatasetLookupAndUpdateDatasetId(Dataset dataset, Elasticsearch5Client elasticsearch, Gson gson, ChangeInformation stats, Date harvestTime) {
         String datasetId = null;
 
-        // get dataset lookup entry
-        DatasetLookup lookupEntry = findLookupDataset(elasticsearch.getClient(), dataset.getUri(), gson);
+        // get dataset lookup entry, already read when the datasets were fingerprinted
+        DatasetLookup lookupEntry = datasetLookups.containsKey(dataset.getUri()) ?
+            datasetLookups.get(dataset.getUri()) : findLookupDataset(elasticsearch.getClient(), dataset.getUri(), gson);
 
         if (lookupEntry == null) {
 
@@ -594,6 +848,9 @@ public class ElasticSearchResultHandler implements CrawlerResultHandler {
             lookupEntry.getHarvest().setFirstHarvested(harvestTime);
             lookupEntry.setIdentifier(dataset.getIdentifier());
 
+            // a new dataset has no harvest records to search for
+            lastHarvestRecordsWithContent.put(datasetId, null);
+
             stats.setInserts(stats.getInserts() + 1);
 
         } else {
@@ -749,19 +1006,44 @@ public class ElasticSearchResultHandler implements CrawlerResultHandler {
             // add harvest metadata to dataset
             dataset.setHarvest(lookupEntry.getHarvest());
 
-            // save lookup entry
-            bulkRequest.add(createBulkRequest(HARVEST_INDEX, "lookup", dataset.getUri(), lookupEntry, gson));
-
             logger.debug("Add dataset document {} to bulk request", dataset.getId());
             // save dataset
             bulkRequest.add(createBulkRequest(DCAT_INDEX, DATASET_TYPE, dataset.getId(), dataset, gson));
 
+            // save lookup entry, with the fingerprint of what was indexed
+            lookupEntry.setFingerprint(datasetFingerprints.get(dataset.getUri()));
+            bulkRequest.add(createBulkRequest(HARVEST_INDEX, "lookup", dataset.getUri(), lookupEntry, gson));
+
         } catch (Exception e) {
             logger.error("Unable to index {}. Reason: {}", dataset.getUri(), e.getMessage(), e);
+            addIndexingErrors(1);
         }
 
     }
 
+    /**
+     * Records the harvest of a dataset that was not built because it is unchanged: the lookup entry gets the harvest
+     * time as last harvested, and a harvest record without content is added like for other unchanged datasets.
+     * The dataset document keeps the harvest metadata of when it was last indexed.
+     */
+    void saveUnchangedDatasetHarvest(DcatSource dcatSource, Gson gson, BulkRequestBuilder bulkRequest, Date harvestTime, DatasetLookup lookupEntry) {
+        if (lookupEntry.getHarvest() == null) {
+            lookupEntry.setHarvest(createHarvestMetadata());
+        }
+        lookupEntry.getHarvest().setLastHarvested(harvestTime);
+
+        if (enableChangeHandling) {
+            DatasetHarvestRecord record = new DatasetHarvestRecord();
+            record.setDatasetId(lookupEntry.getDatasetId());
+            record.setDatasetUri(lookupEntry.getHarvestUri());
+            record.setDcatSourceId(dcatSource.getId());
+            record.setDate(harvestTime);
+            bulkRequest.add(createBulkRequest(HARVEST_INDEX, "dataset", null, record, gson));
+        }
+
+        bulkRequest.add(createBulkRequest(HARVEST_INDEX, "lookup", lookupEntry.getHarvestUri(), lookupEntry, gson));
+    }
+
     DatasetHarvestRecord createDatasetHarvestRecord(Dataset dataset, DcatSource dcatSource, boolean isChanged, Date harvestTime, List<String> catalogValidationResults) {
         DatasetHarvestRecord record = new DatasetHarvestRecord();
 
@@ -941,6 +1223,10 @@ public class ElasticSearchResultHandler implements CrawlerResultHandler {
 
         catalogRecord.setValidationMessages(catalogValidationMessages);
 
+        if (jobMetrics != null) {
+            catalogRecord.setMetrics(jobMetrics.toHarvestMetrics());
+        }
+
         IndexRequest catalogCrawlRequest = new IndexRequest(HARVEST_INDEX, "catalog");
         catalogCrawlRequest.source(gson.toJson(catalogRecord));
 
@@ -1032,12 +1318,14 @@ public class ElasticSearchResultHandler implements CrawlerResultHandler {
             if (response.hasFailures()) {
                 //TODO: process failures by iterating through each bulk response item?
                 logger.error("Cannot store bulk requests: {}", response.buildFailureMessage());
+                addIndexingErrors(countFailures(response));
             }
 
             waitForIndexing(elasticsearch);
 
         } catch (Exception e) {
             logger.error("Unable to index subjects: {}", e.getMessage());
+            addIndexingErrors(1);
         }
 
     }
@@ -3,6 +3,9 @@ package no.dcat.harvester.crawler.web;
 import no.dcat.harvester.crawler.Crawler;
 import no.dcat.harvester.crawler.CrawlerJob;
 import no.dcat.harvester.crawler.CrawlerJobFactory;
+import no.dcat.harvester.crawler.HarvestScheduler;
+import no.dcat.harvester.service.ValidationProfiler;
+import no.dcat.harvester.validation.ValidationProfile;
 import no.dcat.harvester.settings.FusekiSettings;
 import no.dcat.datastore.AdminDataStore;
 import no.dcat.datastore.Fuseki;
@@ -31,6 +34,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @CrossOrigin(origins = "*")
@@ -53,6 +57,12 @@ public class CrawlerRestController {
     @Autowired
     private CrawlerJobFactory crawlerJobFactory;
 
+    @Autowired
+    private HarvestScheduler harvestScheduler;
+
+    @Autowired
+    private ValidationProfiler validationProfiler;
+
     @PostConstruct
     public void initialize() {
         adminDataStore = new AdminDataStore(new Fuseki(fusekiSettings.getAdminServiceUri()));
@@ -161,18 +171,67 @@ public class CrawlerRestController {
     }
 
 
+    /**
+     * Queue a harvest of a dcat source. If the source is already queued or running, it is not queued again.
+     *
+     * @param dcatSourceId id of the dcat source
+     * @return HTTP 503 Service unavailable if the crawler queue is full
+     */
     @RequestMapping("/api/admin/harvest")
-    public void harvestDataSoure(@RequestParam(value = "id") String dcatSourceId) throws InterruptedException {
+    public ResponseEntity<String> harvestDataSoure(@RequestParam(value = "id") String dcatSourceId) throws InterruptedException {
         logger.info("Received request to harvest {}", dcatSourceId);
 
         logger.debug("Harvest datasset.");
         Optional<DcatSource> dcatSource = adminDataStore.getDcatSourceById(dcatSourceId);
         if (dcatSource.isPresent()) {
-            CrawlerJob job = crawlerJobFactory.createCrawlerJob(dcatSource.get());
-            crawler.execute(job);
+            return execute(crawlerJobFactory.createCrawlerJob(dcatSource.get()));
         } else {
             logger.warn("No stored dcat source {}", dcatSource.toString());
         }
+        return ResponseEntity.ok().build();
+    }
+
+    /**
+     * Re-index the last harvested copy of a dcat source without downloading it from the publisher again.
+     *
+     * @param dcatSourceId id of the dcat source
+     */
+    @RequestMapping("/api/admin/reindex")
+    public ResponseEntity<String> reindexDataSource(@RequestParam(value = "id") String dcatSourceId) {
+        logger.info("Received request to reindex {}", dcatSourceId);
+
+        Optional<DcatSource> dcatSource = adminDataStore.getDcatSourceById(dcatSourceId);
+        if (dcatSource.isPresent()) {
+            return execute(crawlerJobFactory.createReplayCrawlerJob(dcatSource.get()));
+        } else {
+            logger.warn("No stored dcat source {}", dcatSourceId);
+        }
+        return ResponseEntity.ok().build();
+    }
+
+    private ResponseEntity<String> execute(CrawlerJob job) {
+        try {
+            crawler.execute(job);
+            return ResponseEntity.ok().build();
+        } catch (RejectedExecutionException e) {
+            return new ResponseEntity<>("Crawler queue is full, try again later", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    /**
+     * Cancel the queued or running crawler job of a dcat source.
+     *
+     * @param dcatSourceId id of the dcat source
+     * @return HTTP 200 OK if the job was cancelled, HTTP 404 Not found if the source has no queued or running job
+     */
+    @RequestMapping(method = RequestMethod.POST, value = "/api/admin/cancel")
+    public ResponseEntity<String> cancelHarvest(@RequestParam(value = "id") String dcatSourceId) {
+        logger.info("Received request to cancel harvest of {}", dcatSourceId);
+
+        if (crawler.cancel(dcatSourceId)) {
+            return ResponseEntity.ok().build();
+        }
+        return ResponseEntity.notFound().build();
     }
 
     @RequestMapping("/api/admin/harvest-all")
@@ -180,11 +239,12 @@ public class CrawlerRestController {
         logger.info("Received request to harvest all dcat sources");
 
         harvestAllDcatSources();
-        logger.debug("Finished all crawler jobs");
+        logger.debug("Scheduled all crawler jobs");
     }
 
     /**
-     * Gets all datasources from admin database and starts an execution jobb to harvest the data
+     * Gets all datasources from admin database and schedules a crawler job for each of them.
+     * The jobs run in parallel, progress is reported by /api/admin/harvest-status.
      * This job starts at 01:00 every day. Test string "0 *\/1 * * * *" - Every minute
      */
     @Scheduled(cron = scheduleSpesification)
@@ -193,16 +253,7 @@ public class CrawlerRestController {
 
         logger.debug("Start Crawler Job for each dcat source");
 
-        for (DcatSource dcatSource : adminDataStore.getDcatSources()) {
-            logger.info("STARTING CRAWLERJOB {}", dcatSource.getUrl());
-
-            CrawlerJob job = crawlerJobFactory.createCrawlerJob(dcatSource);
-            try {
-                crawler.execute(job).get();
-            } catch (Exception e) {
-                logger.error("EXECUTION ERROR ", e);
-            }
-        }
+        harvestScheduler.harvestAll(adminDataStore.getDcatSources());
     }
 
     List<DcatSource> getDcatSources() {
@@ -217,8 +268,53 @@ public class CrawlerRestController {
     @RequestMapping(method = RequestMethod.GET, value = "/api/admin/isIdle", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
     public ResponseEntity<Object> isIdle() {
         Map<String, Boolean>  ret = new HashMap<>();
-        ret.put("idle", crawler.isIdle());
+        ret.put("idle", crawler.isIdle() && !harvestScheduler.isRunning());
         return ResponseEntity.ok(ret);
 
     }
+
+    /**
+     * Queued and running crawler jobs, with how long they have waited or run.
+     */
+    @CrossOrigin
+    @RequestMapping(method = RequestMethod.GET, value = "/api/admin/jobs", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<List<Crawler.JobStatus>> jobs() {
+        return ResponseEntity.ok(crawler.getJobs());
+    }
+
+    /**
+     * The validation rules that take the most time, added up over the last harvest of every dcat source.
+     *
+     * @param limit the number of rules to return
+     */
+    @CrossOrigin
+    @RequestMapping(method = RequestMethod.GET, value = "/api/admin/slowest-validation-rules", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<List<ValidationProfiler.RuleStatistics>> slowestValidationRules(@RequestParam(value = "limit", defaultValue = "20") int limit) {
+        return ResponseEntity.ok(validationProfiler.getSlowestRules(limit));
+    }
+
+    /**
+     * The time each validation rule took in the last harvest of a dcat source, slowest first.
+     *
+     * @param dcatSourceId id of the dcat source
+     * @return HTTP 404 Not found if the source has not been validated since the harvester started
+     */
+    @CrossOrigin
+    @RequestMapping(method = RequestMethod.GET, value = "/api/admin/validation-profile", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<List<ValidationProfile.RuleTiming>> validationProfile(@RequestParam(value = "id") String dcatSourceId) {
+        List<ValidationProfile.RuleTiming> rules = validationProfiler.getRules(dcatSourceId);
+        if (rules == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(rules);
+    }
+
+    /**
+     * Progress of the last harvest of all dcat sources: pending, running and completed sources with durations and errors.
+     */
+    @CrossOrigin
+    @RequestMapping(method = RequestMethod.GET, value = "/api/admin/harvest-status", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<HarvestScheduler.HarvestStatus> harvestStatus() {
+        return ResponseEntity.ok(harvestScheduler.getStatus());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,283 @@
+package no.dcat.harvester.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import no.dcat.harvester.settings.CrawlerSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks whether dct:spatial URIs can be resolved, shared by all crawler jobs.
+ *
+ * The checks are HEAD requests run on a pool with a bounded number of threads, so the URIs of a source are checked
+ * concurrently and the same URI is only requested once even if several jobs ask for it at the same time. Results are
+ * cached with one time-to-live for resolvable URIs and a shorter one for URIs that are not, and the cache is written
+ * to disk so that it survives restarts.
+ */
+@Service
+public class LocationResolver {
+    private static final Logger logger = LoggerFactory.getLogger(LocationResolver.class);
+
+    static final String CACHE_FILE = "locations.json";
+
+    public enum Status {
+        /** The URI responded with a 2xx or 3xx status */
+        RESOLVABLE,
+        /** The URI responded with an error status */
+        NOT_RESOLVABLE,
+        /** The URI is not a valid http URL, or the server could not be reached */
+        INVALID
+    }
+
+    @FunctionalInterface
+    public interface UriCheck {
+        /**
+         * @return true if the URI responds with a successful status
+         * @throws IOException if the URI is not a valid URL or the server cannot be reached
+         */
+        boolean responds(String uri) throws IOException;
+    }
+
+    private static class Entry {
+        Status status;
+        long checked;
+    }
+
+    private final UriCheck uriCheck;
+    private final long resolvableTtlMillis;
+    private final long notResolvableTtlMillis;
+    private final Path cacheFile;
+    private final ExecutorService executor;
+
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Status>> inFlight = new ConcurrentHashMap<>();
+    private final Gson gson = new Gson();
+
+    @Autowired
+    public LocationResolver(CrawlerSettings crawlerSettings) {
+        this(headRequest(crawlerSettings.getLocationCheckTimeoutMillis()),
+            crawlerSettings.getMaxConcurrentLocationChecks(),
+            Duration.ofHours(crawlerSettings.getLocationCacheTtlHours()),
+            Duration.ofHours(crawlerSettings.getLocationNegativeCacheTtlHours()),
+            getCacheFile(crawlerSettings));
+    }
+
+    /**
+     * @param uriCheck               how a single URI is checked
+     * @param maxConcurrentChecks    the largest number of checks that run at the same time
+     * @param resolvableTtl          how long a resolvable URI is cached
+     * @param notResolvableTtl       how long a URI that is not resolvable or invalid is cached
+     * @param cacheFile              where the cache is stored between restarts, or null to keep it in memory only
+     */
+    public LocationResolver(UriCheck uriCheck, int maxConcurrentChecks, Duration resolvableTtl, Duration notResolvableTtl, Path cacheFile) {
+        this.uriCheck = uriCheck;
+        this.resolvableTtlMillis = resolvableTtl.toMillis();
+        this.notResolvableTtlMillis = notResolvableTtl.toMillis();
+        this.cacheFile = cacheFile;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, maxConcurrentChecks), daemonThreads());
+
+        readCache();
+    }
+
+    private static Path getCacheFile(CrawlerSettings crawlerSettings) {
+        if (crawlerSettings.getLocationCacheFile() != null) {
+            return Paths.get(crawlerSettings.getLocationCacheFile());
+        }
+        if (crawlerSettings.getFetchCacheDirectory() != null) {
+            return Paths.get(crawlerSettings.getFetchCacheDirectory(), CACHE_FILE);
+        }
+        return Paths.get(System.getProperty("java.io.tmpdir"), "harvest-cache", CACHE_FILE);
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "location-resolver-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Sends a HEAD request and accepts 2xx and 3xx responses.
+     */
+    static UriCheck headRequest(int timeoutMillis) {
+        return uri -> {
+            HttpURLConnection connection;
+            try {
+                connection = (HttpURLConnection) new URL(uri).openConnection();
+            } catch (ClassCastException e) {
+                throw new IOException("not a http url: " + uri, e);
+            }
+            connection.setRequestMethod("HEAD");
+            connection.setConnectTimeout(timeoutMillis);
+            connection.setReadTimeout(timeoutMillis);
+            try {
+                int responseCode = connection.getResponseCode();
+                return responseCode >= 200 && responseCode < 400;
+            } finally {
+                connection.disconnect();
+            }
+        };
+    }
+
+    /**
+     * Starts checking the URIs that are not cached, without waiting for the checks to finish.
+     * The cache is saved when the checks started by this call are done.
+     *
+     * @param uris        the URIs to check, duplicates are checked once
+     * @param remoteCalls incremented for every request this call sends
+     * @return the status of each URI, completed when all checks are done
+     */
+    public CompletableFuture<Map<String, Status>> resolve(Collection<String> uris, AtomicInteger remoteCalls) {
+        int callsBefore = remoteCalls.get();
+        Map<String, CompletableFuture<Status>> futures = new LinkedHashMap<>();
+        for (String uri : new LinkedHashSet<>(uris)) {
+            futures.put(uri, resolve(uri, remoteCalls));
+        }
+        boolean checked = remoteCalls.get() != callsBefore;
+
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0]))
+            .thenApply(done -> {
+                if (checked) {
+                    save();
+                }
+                Map<String, Status> result = new LinkedHashMap<>();
+                futures.forEach((uri, future) -> result.put(uri, future.join()));
+                return result;
+            });
+    }
+
+    private CompletableFuture<Status> resolve(String uri, AtomicInteger remoteCalls) {
+        Entry entry = cache.get(uri);
+        if (entry != null && !isExpired(entry, System.currentTimeMillis())) {
+            return CompletableFuture.completedFuture(entry.status);
+        }
+
+        CompletableFuture<Status> future = new CompletableFuture<>();
+        CompletableFuture<Status> running = inFlight.putIfAbsent(uri, future);
+        if (running != null) {
+            return running;
+        }
+
+        remoteCalls.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(check(uri));
+                } finally {
+                    inFlight.remove(uri, future);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(uri, future);
+            future.complete(Status.INVALID);
+        }
+        return future;
+    }
+
+    private Status check(String uri) {
+        Status status;
+        try {
+            status = uriCheck.responds(uri) ? Status.RESOLVABLE : Status.NOT_RESOLVABLE;
+        } catch (IOException | RuntimeException e) {
+            logger.error("Location URL not valid: {}. Reason {}", uri, e.getLocalizedMessage());
+            status = Status.INVALID;
+        }
+
+        Entry entry = new Entry();
+        entry.status = status;
+        entry.checked = System.currentTimeMillis();
+        cache.put(uri, entry);
+
+        return status;
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        long ttl = entry.status == Status.RESOLVABLE ? resolvableTtlMillis : notResolvableTtlMillis;
+        return now - entry.checked > ttl;
+    }
+
+    /**
+     * Writes the cache to disk, leaving out expired entries.
+     */
+    public synchronized void save() {
+        if (cacheFile == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        cache.forEach((uri, entry) -> {
+            if (!isExpired(entry, now)) {
+                entries.put(uri, entry);
+            }
+        });
+
+        try {
+            Path parent = cacheFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path tempFile = Files.createTempFile(parent, CACHE_FILE, ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                gson.toJson(entries, writer);
+            }
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Unable to write location cache {}: {}", cacheFile, e.getMessage());
+        }
+    }
+
+    private void readCache() {
+        if (cacheFile == null || !Files.exists(cacheFile)) {
+            return;
+        }
+
+        try (Reader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+            Map<String, Entry> entries = gson.fromJson(reader, new TypeToken<Map<String, Entry>>() {}.getType());
+            long now = System.currentTimeMillis();
+            if (entries != null) {
+                entries.forEach((uri, entry) -> {
+                    if (entry != null && entry.status != null && !isExpired(entry, now)) {
+                        cache.put(uri, entry);
+                    }
+                });
+            }
+            logger.info("Loaded {} cached locations from {}", cache.size(), cacheFile);
+        } catch (IOException | JsonParseException e) {
+            logger.warn("Unable to read location cache {}: {}", cacheFile, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        save();
+    }
+}
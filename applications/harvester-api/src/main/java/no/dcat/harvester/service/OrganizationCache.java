@@ -0,0 +1,462 @@
+package no.dcat.harvester.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import no.dcat.harvester.HarvesterApplication;
+import no.dcat.harvester.crawler.entities.Enhet;
+import no.dcat.harvester.settings.CrawlerSettings;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Organisations from Enhetsregisteret, shared by all crawler jobs.
+ *
+ * An organisation is looked up once and then cached, with one time-to-live for organisations that are registered
+ * and a shorter one for organisation numbers that are not. The cache is written to disk so that it survives
+ * restarts, and it can be filled from a bulk download of Enhetsregisteret so that a harvest needs few lookups.
+ * When Enhetsregisteret cannot be reached, an expired entry is used rather than none.
+ *
+ * Lookups run on a bounded pool over keep-alive connections, and an organisation that is being looked up is only
+ * requested once even if several jobs ask for it at the same time.
+ */
+@Service
+public class OrganizationCache {
+    private static final Logger logger = LoggerFactory.getLogger(OrganizationCache.class);
+
+    static final String CACHE_FILE = "organizations.json";
+    static final int DEFAULT_MAX_CONCURRENT_LOOKUPS = 8;
+    static final int DEFAULT_LOOKUP_TIMEOUT_MILLIS = 10000;
+
+    @FunctionalInterface
+    public interface Lookup {
+        /**
+         * @return the organisation as Enhetsregisteret JSON, or null if the organisation number is not registered
+         * @throws IOException if Enhetsregisteret cannot be reached
+         */
+        String fetch(String orgNo) throws IOException;
+    }
+
+    private static class Entry {
+        /** The organisation as JSON, or null if it is not registered */
+        final String enhet;
+        final long fetched;
+
+        Entry(String enhet, long fetched) {
+            this.enhet = enhet;
+            this.fetched = fetched;
+        }
+    }
+
+    private final Lookup lookup;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final Path cacheFile;
+    private final ThreadPoolExecutor executor;
+
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+    private volatile boolean changed;
+    private final Gson gson = new Gson();
+
+    private static Lookup sharedLookup;
+
+    @Autowired
+    public OrganizationCache(CrawlerSettings crawlerSettings) {
+        this(restLookup(crawlerSettings.getMaxConcurrentOrganizationLookups(), crawlerSettings.getOrganizationLookupTimeoutMillis()),
+            crawlerSettings.getMaxConcurrentOrganizationLookups(),
+            Duration.ofHours(crawlerSettings.getOrganizationCacheTtlHours()),
+            Duration.ofHours(crawlerSettings.getOrganizationNegativeCacheTtlHours()),
+            getCacheFile(crawlerSettings));
+
+        String dumpFile = crawlerSettings.getOrganizationDumpFile();
+        if (dumpFile != null && !dumpFile.isEmpty()) {
+            try {
+                preload(Paths.get(dumpFile));
+                save();
+            } catch (IOException | JsonParseException e) {
+                logger.warn("Unable to preload organizations from {}: {}", dumpFile, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * A cache kept in memory only, for tests and tools. Crawler jobs use the shared cache bean.
+     */
+    public OrganizationCache() {
+        this(orgNo -> sharedLookup().fetch(orgNo), DEFAULT_MAX_CONCURRENT_LOOKUPS, Duration.ofDays(1), Duration.ofDays(1), null);
+    }
+
+    /**
+     * @param lookup      how a single organisation is looked up in Enhetsregisteret
+     * @param ttl         how long a registered organisation is cached
+     * @param negativeTtl how long an organisation number that is not registered is cached
+     * @param cacheFile   where the cache is stored between restarts, or null to keep it in memory only
+     */
+    public OrganizationCache(Lookup lookup, Duration ttl, Duration negativeTtl, Path cacheFile) {
+        this(lookup, DEFAULT_MAX_CONCURRENT_LOOKUPS, ttl, negativeTtl, cacheFile);
+    }
+
+    /**
+     * @param lookup               how a single organisation is looked up in Enhetsregisteret
+     * @param maxConcurrentLookups the largest number of lookups that run at the same time
+     * @param ttl                  how long a registered organisation is cached
+     * @param negativeTtl          how long an organisation number that is not registered is cached
+     * @param cacheFile            where the cache is stored between restarts, or null to keep it in memory only
+     */
+    public OrganizationCache(Lookup lookup, int maxConcurrentLookups, Duration ttl, Duration negativeTtl, Path cacheFile) {
+        this.lookup = lookup;
+        this.ttlMillis = ttl.toMillis();
+        this.negativeTtlMillis = negativeTtl.toMillis();
+        this.cacheFile = cacheFile;
+
+        int threads = Math.max(1, maxConcurrentLookups);
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), daemonThreads());
+        this.executor.allowCoreThreadTimeOut(true);
+
+        readCache();
+    }
+
+    private static Path getCacheFile(CrawlerSettings crawlerSettings) {
+        if (crawlerSettings.getOrganizationCacheFile() != null) {
+            return Paths.get(crawlerSettings.getOrganizationCacheFile());
+        }
+        if (crawlerSettings.getFetchCacheDirectory() != null) {
+            return Paths.get(crawlerSettings.getFetchCacheDirectory(), CACHE_FILE);
+        }
+        return Paths.get(System.getProperty("java.io.tmpdir"), "harvest-cache", CACHE_FILE);
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "organization-lookup-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * The pooled client of the in-memory caches, created when the first organisation is looked up.
+     */
+    private static synchronized Lookup sharedLookup() {
+        if (sharedLookup == null) {
+            sharedLookup = restLookup(DEFAULT_MAX_CONCURRENT_LOOKUPS, DEFAULT_LOOKUP_TIMEOUT_MILLIS);
+        }
+        return sharedLookup;
+    }
+
+    /**
+     * Looks up organisations with one RestTemplate for all requests, on a pool of keep-alive connections.
+     * Client errors such as 404 and 410 mean that the organisation number is not registered.
+     *
+     * @param maxConnections the largest number of open connections
+     * @param timeoutMillis  how long to wait for a connection and for a response
+     */
+    static Lookup restLookup(int maxConnections, int timeoutMillis) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(Math.max(1, maxConnections));
+        connectionManager.setDefaultMaxPerRoute(Math.max(1, maxConnections));
+        HttpClient httpClient = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectTimeout(timeoutMillis)
+                .setConnectionRequestTimeout(timeoutMillis)
+                .setSocketTimeout(timeoutMillis)
+                .build())
+            .build();
+        RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+
+        return orgNo -> {
+            try {
+                return restTemplate.getForObject(HarvesterApplication.getEnhetsregisterJsonUrlForOrganization(orgNo), String.class);
+            } catch (HttpClientErrorException e) {
+                logger.warn("Organization {} not found in Enhetsregisteret. Statuscode={} {}", orgNo, e.getRawStatusCode(), e.getStatusText());
+                return null;
+            } catch (RestClientException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        };
+    }
+
+    /**
+     * Returns the organisation from the cache, or looks it up in Enhetsregisteret if it is not cached or has expired.
+     *
+     * @param orgNo       the organisation number
+     * @param remoteCalls incremented for every lookup in Enhetsregisteret
+     * @return a new copy of the organisation, or null if the organisation number is not registered
+     * @throws IOException if Enhetsregisteret cannot be reached and the organisation has never been cached
+     */
+    public Enhet get(String orgNo, AtomicInteger remoteCalls) throws IOException {
+        try {
+            return getAsync(orgNo, remoteCalls).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Like {@link #get}, but the lookup runs on the lookup pool, and a lookup of an organisation that is already
+     * being looked up waits for that lookup instead of sending another request.
+     *
+     * @param orgNo       the organisation number
+     * @param remoteCalls incremented for every lookup in Enhetsregisteret
+     * @return a new copy of the organisation or null if it is not registered, completed exceptionally with an
+     * IOException if Enhetsregisteret cannot be reached and the organisation has never been cached
+     */
+    public CompletableFuture<Enhet> getAsync(String orgNo, AtomicInteger remoteCalls) {
+        Entry entry = cache.get(orgNo);
+        CompletableFuture<Entry> result;
+        if (entry != null && !isExpired(entry, System.currentTimeMillis())) {
+            result = CompletableFuture.completedFuture(entry);
+        } else {
+            result = fetchAsync(orgNo, entry, remoteCalls);
+        }
+        return result.thenApply(this::toEnhet);
+    }
+
+    private CompletableFuture<Entry> fetchAsync(String orgNo, Entry stale, AtomicInteger remoteCalls) {
+        CompletableFuture<Entry> future = new CompletableFuture<>();
+        CompletableFuture<Entry> running = inFlight.putIfAbsent(orgNo, future);
+        if (running != null) {
+            return running;
+        }
+
+        remoteCalls.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(fetch(orgNo, stale));
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(orgNo, future);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(orgNo, future);
+            future.completeExceptionally(new IOException("Organization lookups are shut down", e));
+        }
+        return future;
+    }
+
+    private Entry fetch(String orgNo, Entry stale) throws IOException {
+        String enhet;
+        try {
+            enhet = lookup.fetch(orgNo);
+        } catch (IOException | RuntimeException e) {
+            if (stale != null) {
+                logger.warn("Unable to lookup organization {}, using the copy from {}: {}", orgNo, Instant.ofEpochMilli(stale.fetched), e.getMessage());
+                return stale;
+            }
+            throw e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e);
+        }
+
+        Entry fetched = new Entry(enhet, System.currentTimeMillis());
+        cache.put(orgNo, fetched);
+        changed = true;
+        return fetched;
+    }
+
+    /**
+     * Every caller gets its own copy, since {@link Enhet#createResource} binds the organisation to a model.
+     */
+    private Enhet toEnhet(Entry entry) {
+        return entry.enhet != null ? gson.fromJson(entry.enhet, Enhet.class) : null;
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        long ttl = entry.enhet != null ? ttlMillis : negativeTtlMillis;
+        return now - entry.fetched > ttl;
+    }
+
+    /**
+     * @return the number of cached organisations, registered or not
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Adds the organisations in a bulk download of Enhetsregisteret, a JSON array of organisations that may be gzipped.
+     * The organisations count as fetched when the file was last modified, and do not replace organisations that were
+     * fetched later.
+     *
+     * @param dumpFile the file to read
+     * @return the number of organisations that were added or replaced
+     * @throws IOException if the file cannot be read
+     */
+    public int preload(Path dumpFile) throws IOException {
+        long fetched = Files.getLastModifiedTime(dumpFile).toMillis();
+        int added = 0;
+        int skipped = 0;
+
+        try (JsonReader reader = new JsonReader(openDump(dumpFile))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                JsonElement element = new JsonParser().parse(reader);
+                String orgNo = organisasjonsnummer(element);
+                if (orgNo == null) {
+                    skipped++;
+                    continue;
+                }
+
+                Entry existing = cache.get(orgNo);
+                if (existing == null || existing.fetched < fetched) {
+                    cache.put(orgNo, new Entry(element.toString(), fetched));
+                    added++;
+                }
+            }
+            reader.endArray();
+        }
+
+        if (added > 0) {
+            changed = true;
+        }
+        logger.info("Preloaded {} organizations from {}, skipped {} without organization number", added, dumpFile, skipped);
+        return added;
+    }
+
+    private static Reader openDump(Path dumpFile) throws IOException {
+        InputStream inputStream = new BufferedInputStream(Files.newInputStream(dumpFile));
+        if (dumpFile.getFileName().toString().endsWith(".gz")) {
+            inputStream = new GZIPInputStream(inputStream);
+        }
+        return new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+    }
+
+    private static String organisasjonsnummer(JsonElement element) {
+        if (!element.isJsonObject()) {
+            return null;
+        }
+        JsonElement orgNo = element.getAsJsonObject().get("organisasjonsnummer");
+        return orgNo != null && orgNo.isJsonPrimitive() ? orgNo.getAsString() : null;
+    }
+
+    /**
+     * Writes the cache to disk if it has changed, leaving out expired organisation numbers that are not registered.
+     * Expired organisations are kept, to be used when Enhetsregisteret cannot be reached.
+     */
+    public synchronized void save() {
+        if (cacheFile == null || !changed) {
+            return;
+        }
+        changed = false;
+
+        long now = System.currentTimeMillis();
+        try {
+            Path parent = cacheFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path tempFile = Files.createTempFile(parent, CACHE_FILE, ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8);
+                 JsonWriter json = new JsonWriter(writer)) {
+                json.beginObject();
+                for (Map.Entry<String, Entry> cached : cache.entrySet()) {
+                    Entry entry = cached.getValue();
+                    if (entry.enhet == null && isExpired(entry, now)) {
+                        continue;
+                    }
+                    json.name(cached.getKey()).beginObject();
+                    json.name("fetched").value(entry.fetched);
+                    if (entry.enhet != null) {
+                        json.name("enhet").jsonValue(entry.enhet);
+                    }
+                    json.endObject();
+                }
+                json.endObject();
+            }
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            changed = true;
+            logger.warn("Unable to write organization cache {}: {}", cacheFile, e.getMessage());
+        }
+    }
+
+    private void readCache() {
+        if (cacheFile == null || !Files.exists(cacheFile)) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        try (JsonReader json = new JsonReader(Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8))) {
+            json.beginObject();
+            while (json.hasNext()) {
+                String orgNo = json.nextName();
+                long fetched = 0;
+                String enhet = null;
+
+                json.beginObject();
+                while (json.hasNext()) {
+                    String name = json.nextName();
+                    if ("fetched".equals(name)) {
+                        fetched = json.nextLong();
+                    } else if ("enhet".equals(name) && json.peek() != JsonToken.NULL) {
+                        enhet = new JsonParser().parse(json).toString();
+                    } else {
+                        json.skipValue();
+                    }
+                }
+                json.endObject();
+
+                Entry entry = new Entry(enhet, fetched);
+                if (enhet != null || !isExpired(entry, now)) {
+                    cache.put(orgNo, entry);
+                }
+            }
+            json.endObject();
+            logger.info("Loaded {} cached organizations from {}", cache.size(), cacheFile);
+        } catch (IOException | JsonParseException | IllegalStateException e) {
+            logger.warn("Unable to read organization cache {}: {}", cacheFile, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        save();
+    }
+}
@@ -0,0 +1,434 @@
+package no.dcat.harvester.service;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import no.dcat.datastore.domain.DcatSource;
+import no.dcat.harvester.settings.CrawlerSettings;
+import no.dcat.harvester.validation.ValidationRuleSet;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.jena.atlas.web.ContentType;
+import org.apache.jena.atlas.web.HttpException;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Keeps a local copy of each harvested dcat source together with the HTTP validators (ETag and Last-Modified)
+ * and a SHA-256 digest of the content.
+ *
+ * The validators are sent as a conditional GET on the next harvest, and the digest tells the crawler job
+ * whether the source is byte-identical to what was last harvested successfully. A harvest is only recorded for
+ * the version of the harvester and of the validation rules that did it, so a deploy harvests every source again.
+ * The cached copy can also be used to re-index a source without downloading it from the publisher again.
+ *
+ * Sources are downloaded over pooled connections that follow redirects, also from http to https. The download
+ * runs on a separate thread, so that a job that is cancelled or times out aborts it instead of waiting for it.
+ */
+@Service
+public class SourceFetchCache {
+    private static final Logger logger = LoggerFactory.getLogger(SourceFetchCache.class);
+
+    static final String CONTENT_FILE = "content";
+    static final String META_FILE = "meta.json";
+
+    static final int DEFAULT_TIMEOUT_MILLIS = 60000;
+    static final int DEFAULT_MAX_CONNECTIONS = 10;
+
+    private final Path cacheDirectory;
+    private final String harvestVersion;
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private final CloseableHttpClient httpClient;
+    private final ExecutorService downloads = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "source-fetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public SourceFetchCache(CrawlerSettings crawlerSettings) {
+        this(crawlerSettings.getFetchCacheDirectory() != null ?
+                Paths.get(crawlerSettings.getFetchCacheDirectory()) :
+                Paths.get(System.getProperty("java.io.tmpdir"), "harvest-cache"),
+            currentHarvestVersion(),
+            crawlerSettings.getSourceFetchTimeoutMillis(),
+            Math.max(DEFAULT_MAX_CONNECTIONS, crawlerSettings.getThreadPoolSize()));
+    }
+
+    public SourceFetchCache(Path cacheDirectory) {
+        this(cacheDirectory, currentHarvestVersion());
+    }
+
+    public SourceFetchCache(Path cacheDirectory, String harvestVersion) {
+        this(cacheDirectory, harvestVersion, DEFAULT_TIMEOUT_MILLIS, DEFAULT_MAX_CONNECTIONS);
+    }
+
+    /**
+     * @param cacheDirectory where the copies are kept
+     * @param harvestVersion version of the harvest, a copy harvested with another version is harvested again
+     * @param timeoutMillis  how long to wait for a connection and for each read from the publisher
+     * @param maxConnections the largest number of open connections, to one publisher and in total
+     */
+    public SourceFetchCache(Path cacheDirectory, String harvestVersion, int timeoutMillis, int maxConnections) {
+        this.cacheDirectory = cacheDirectory;
+        this.harvestVersion = harvestVersion;
+        this.httpClient = HttpClients.custom()
+            .setMaxConnTotal(Math.max(1, maxConnections))
+            .setMaxConnPerRoute(Math.max(1, maxConnections))
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectTimeout(timeoutMillis)
+                .setConnectionRequestTimeout(timeoutMillis)
+                .setSocketTimeout(timeoutMillis)
+                .setRedirectsEnabled(true)
+                .build())
+            .build();
+        logger.info("Harvest fetch cache located at {}, harvest version {}", cacheDirectory, harvestVersion);
+    }
+
+    /**
+     * @return the version of the harvester together with a digest of the validation rules
+     */
+    static String currentHarvestVersion() {
+        String applicationVersion = SourceFetchCache.class.getPackage().getImplementationVersion();
+        try {
+            return (applicationVersion != null ? applicationVersion : "development") + "/" + ValidationRuleSet.getDefault().getDigest();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read the validation rules", e);
+        }
+    }
+
+    /**
+     * Downloads the dcat source, sending a conditional GET if a copy of the same url is already cached.
+     *
+     * @param dcatSource the source to download
+     * @return the cached copy, with information about whether it has changed since the last successful harvest
+     * @throws IOException          if the source cannot be read or the cache cannot be written
+     * @throws HttpException        if the publisher responds with an error status
+     * @throws InterruptedException if the thread is interrupted, the download is aborted
+     */
+    public FetchedSource fetch(DcatSource dcatSource) throws IOException, InterruptedException {
+        Path sourceDirectory = getSourceDirectory(dcatSource);
+        Path contentFile = sourceDirectory.resolve(CONTENT_FILE);
+
+        Entry entry = readEntry(sourceDirectory);
+        if (entry != null && (!dcatSource.getUrl().equals(entry.url) || !Files.exists(contentFile))) {
+            logger.debug("Ignoring cached copy of {}, url has changed or content is missing", dcatSource.getId());
+            entry = null;
+        }
+
+        HttpGet request;
+        try {
+            request = new HttpGet(dcatSource.getUrl());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("not a valid url: " + dcatSource.getUrl(), e);
+        }
+        request.setHeader("Accept", WebContent.defaultDatasetAcceptHeader);
+        if (entry != null) {
+            if (entry.etag != null) {
+                request.setHeader("If-None-Match", entry.etag);
+            }
+            if (entry.lastModified != null) {
+                request.setHeader("If-Modified-Since", entry.lastModified);
+            }
+        }
+
+        Entry cachedEntry = entry;
+        Future<FetchedSource> download = downloads.submit(() -> download(dcatSource, request, cachedEntry, sourceDirectory, contentFile));
+        try {
+            return download.get();
+        } catch (InterruptedException e) {
+            request.abort();
+            download.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private FetchedSource download(DcatSource dcatSource, HttpGet request, Entry entry, Path sourceDirectory, Path contentFile) throws IOException {
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            int responseCode = response.getStatusLine().getStatusCode();
+
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && entry != null) {
+                logger.info("Source {} not modified since {}", dcatSource.getUrl(), entry.fetched);
+                return new FetchedSource(entry, contentFile, true, harvestVersion);
+            }
+
+            HttpEntity body = response.getEntity();
+            if (responseCode < 200 || responseCode >= 300 || body == null) {
+                throw new HttpException(responseCode, response.getStatusLine().getReasonPhrase(), null);
+            }
+
+            Files.createDirectories(sourceDirectory);
+            Path downloadFile = Files.createTempFile(sourceDirectory, CONTENT_FILE, ".tmp");
+            String digest;
+            try (InputStream in = new DigestInputStream(body.getContent(), createDigest())) {
+                Files.copy(in, downloadFile, StandardCopyOption.REPLACE_EXISTING);
+                digest = toHex(((DigestInputStream) in).getMessageDigest().digest());
+            } catch (IOException e) {
+                Files.deleteIfExists(downloadFile);
+                throw e;
+            }
+            Files.move(downloadFile, contentFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            Entry fetchedEntry = new Entry();
+            fetchedEntry.url = dcatSource.getUrl();
+            fetchedEntry.etag = headerValue(response.getFirstHeader("ETag"));
+            fetchedEntry.lastModified = headerValue(response.getFirstHeader("Last-Modified"));
+            fetchedEntry.contentType = headerValue(body.getContentType());
+            fetchedEntry.digest = digest;
+            fetchedEntry.fetched = new Date();
+            fetchedEntry.harvestedDigest = entry != null ? entry.harvestedDigest : null;
+            fetchedEntry.harvestedVersion = entry != null ? entry.harvestedVersion : null;
+
+            writeEntry(sourceDirectory, fetchedEntry);
+
+            logger.info("Fetched {} ({} bytes, digest {})", dcatSource.getUrl(), Files.size(contentFile), digest);
+
+            return new FetchedSource(fetchedEntry, contentFile, false, harvestVersion);
+        }
+    }
+
+    private static String headerValue(Header header) {
+        return header != null ? header.getValue() : null;
+    }
+
+    /**
+     * Returns the last downloaded copy of the source without contacting the publisher.
+     *
+     * @param dcatSource the source to look up
+     * @return the cached copy, or empty if the source has never been fetched from its current url
+     */
+    public Optional<FetchedSource> getCachedCopy(DcatSource dcatSource) {
+        Path sourceDirectory = getSourceDirectory(dcatSource);
+        Path contentFile = sourceDirectory.resolve(CONTENT_FILE);
+
+        Entry entry = readEntry(sourceDirectory);
+        if (entry == null || !dcatSource.getUrl().equals(entry.url) || !Files.exists(contentFile)) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new FetchedSource(entry, contentFile, false, harvestVersion));
+    }
+
+    /**
+     * Records that the given copy of the source has been harvested successfully by this version of the harvest.
+     * A later fetch with the same digest and the same harvest version is reported as unchanged.
+     *
+     * @param dcatSource    the harvested source
+     * @param fetchedSource the copy that was harvested
+     */
+    public void markHarvested(DcatSource dcatSource, FetchedSource fetchedSource) {
+        Path sourceDirectory = getSourceDirectory(dcatSource);
+
+        Entry entry = readEntry(sourceDirectory);
+        if (entry == null || !fetchedSource.getDigest().equals(entry.digest)) {
+            logger.warn("Cached copy of {} was replaced during harvest, not marking it as harvested", dcatSource.getId());
+            return;
+        }
+
+        entry.harvestedDigest = entry.digest;
+        entry.harvestedVersion = harvestVersion;
+        try {
+            writeEntry(sourceDirectory, entry);
+        } catch (IOException e) {
+            logger.warn("Unable to update fetch cache for {}: {}", dcatSource.getId(), e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        downloads.shutdownNow();
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.warn("Unable to close the source fetch connections: {}", e.getMessage());
+        }
+    }
+
+    Path getSourceDirectory(DcatSource dcatSource) {
+        MessageDigest digest = createDigest();
+        return cacheDirectory.resolve(toHex(digest.digest(dcatSource.getId().getBytes(StandardCharsets.UTF_8))));
+    }
+
+    private Entry readEntry(Path sourceDirectory) {
+        Path metaFile = sourceDirectory.resolve(META_FILE);
+        if (!Files.exists(metaFile)) {
+            return null;
+        }
+
+        try (Reader reader = Files.newBufferedReader(metaFile, StandardCharsets.UTF_8)) {
+            return gson.fromJson(reader, Entry.class);
+        } catch (IOException | JsonParseException e) {
+            logger.warn("Unable to read fetch cache entry {}: {}", metaFile, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeEntry(Path sourceDirectory, Entry entry) throws IOException {
+        Files.createDirectories(sourceDirectory);
+        Path tempFile = Files.createTempFile(sourceDirectory, META_FILE, ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            gson.toJson(entry, writer);
+        }
+        Files.move(tempFile, sourceDirectory.resolve(META_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Persisted metadata for one cached source.
+     */
+    static class Entry {
+        String url;
+        String etag;
+        String lastModified;
+        String contentType;
+        String digest;
+        String harvestedDigest;
+        String harvestedVersion;
+        Date fetched;
+    }
+
+    /**
+     * A local copy of a dcat source.
+     */
+    public static class FetchedSource {
+        private final Entry entry;
+        private final Path contentFile;
+        private final boolean notModified;
+        private final String harvestVersion;
+
+        FetchedSource(Entry entry, Path contentFile, boolean notModified, String harvestVersion) {
+            this.entry = entry;
+            this.contentFile = contentFile;
+            this.notModified = notModified;
+            this.harvestVersion = harvestVersion;
+        }
+
+        public String getDigest() {
+            return entry.digest;
+        }
+
+        public String getContentType() {
+            return entry.contentType;
+        }
+
+        public Path getContentFile() {
+            return contentFile;
+        }
+
+        /**
+         * @return true if the publisher answered the conditional GET with 304 Not Modified
+         */
+        public boolean isNotModified() {
+            return notModified;
+        }
+
+        /**
+         * @return true if the content is byte-identical to the last successfully harvested copy, and it was
+         * harvested by the same version of the harvest
+         */
+        public boolean isUnchangedSinceLastHarvest() {
+            return entry.harvestedDigest != null && entry.harvestedDigest.equals(entry.digest)
+                && Objects.equals(entry.harvestedVersion, harvestVersion);
+        }
+
+        /**
+         * Parses the cached copy into a dataset.
+         *
+         * @return the parsed dataset
+         */
+        public Dataset loadDataset() throws IOException {
+            Dataset dataset = DatasetFactory.create();
+            parse(StreamRDFLib.dataset(dataset.asDatasetGraph()));
+            return dataset;
+        }
+
+        /**
+         * Parses the cached copy and sends the triples and quads to the destination. The language is taken
+         * from the content type returned by the publisher, falling back to the file extension of the source url
+         * like RDFDataMgr does.
+         *
+         * @param destination receiver of the parsed triples and quads
+         */
+        public void parse(StreamRDF destination) throws IOException {
+            Lang lang = null;
+            if (entry.contentType != null) {
+                String contentType = ContentType.create(entry.contentType).getContentType();
+                if (!WebContent.contentTypeTextPlain.equals(contentType)) {
+                    lang = RDFLanguages.contentTypeToLang(contentType);
+                }
+            }
+            if (lang == null) {
+                lang = RDFLanguages.filenameToLang(entry.url);
+            }
+            if (lang == null) {
+                throw new RiotException("Failed to determine the content type: " + entry.contentType + " for " + entry.url);
+            }
+
+            try (InputStream in = Files.newInputStream(contentFile)) {
+                RDFDataMgr.parse(destination, in, entry.url, lang);
+            }
+        }
+    }
+
+}
@@ -3,7 +3,18 @@ package no.dcat.harvester.service;
 import no.dcat.shared.Subject;
 import no.dcat.datastore.domain.dcat.builders.DatasetBuilder;
 import no.dcat.datastore.domain.dcat.builders.DcatBuilder;
+import no.dcat.harvester.settings.CrawlerSettings;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.Property;
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.ResIterator;
@@ -11,26 +22,204 @@ import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.SimpleSelector;
 import org.apache.jena.rdf.model.Statement;
 import org.apache.jena.rdf.model.StmtIterator;
-import org.apache.jena.util.FileManager;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
 import org.apache.jena.vocabulary.DCTerms;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.SKOS;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adds the definitions of the subjects in a model, looked up at the subject URIs.
+ *
+ * Each URI is fetched once with an Accept header for the RDF formats, and parsed according to the content type of the
+ * response. The fetches of a model run concurrently on a bounded pool, and the definitions are cached across harvests
+ * with one time-to-live for URIs that resolve and a shorter one for URIs that do not.
+ */
 @Service
 public class SubjectCrawler {
     private static Logger logger = LoggerFactory.getLogger(SubjectCrawler.class);
     private final DcatBuilder builder = new DcatBuilder();
 
+    /** Content types that many servers use for any file, and that do not tell the RDF format */
+    static final List<String> UNSPECIFIC_CONTENT_TYPES = Arrays.asList("text/plain", "application/octet-stream");
+    static final String ACCEPT = "text/turtle, application/rdf+xml;q=0.9, application/ld+json;q=0.8, application/n-triples;q=0.7, */*;q=0.1";
+
+    @FunctionalInterface
+    public interface ModelLoader extends Closeable {
+        /**
+         * @return the RDF at the URI
+         * @throws IOException if the URI cannot be fetched or parsed
+         */
+        Model load(String uri) throws IOException;
+
+        /**
+         * Releases the connections of the loader, it is called once when the crawler shuts down.
+         */
+        @Override
+        default void close() throws IOException {
+        }
+    }
+
+    private static class Entry {
+        /** The concepts at the URI, or null if it did not resolve */
+        final List<Subject> subjects;
+        final long loaded;
+
+        Entry(List<Subject> subjects, long loaded) {
+            this.subjects = subjects;
+            this.loaded = loaded;
+        }
+    }
+
+    private final ModelLoader modelLoader;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final ThreadPoolExecutor executor;
+
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+
+    // entries put since the expired entries were last dropped
+    private final AtomicInteger putsSincePurge = new AtomicInteger();
+
+    @Autowired
+    public SubjectCrawler(CrawlerSettings crawlerSettings) {
+        this(contentNegotiation(crawlerSettings.getMaxConcurrentSubjectLookups(), crawlerSettings.getSubjectLookupTimeoutMillis()),
+            crawlerSettings.getMaxConcurrentSubjectLookups(),
+            Duration.ofHours(crawlerSettings.getSubjectCacheTtlHours()),
+            Duration.ofHours(crawlerSettings.getSubjectNegativeCacheTtlHours()));
+    }
+
+    /**
+     * @param modelLoader          how the RDF at a subject URI is fetched
+     * @param maxConcurrentLookups the largest number of URIs that are fetched at the same time
+     * @param ttl                  how long the definitions at a URI are cached
+     * @param negativeTtl          how long a URI that does not resolve is cached
+     */
+    public SubjectCrawler(ModelLoader modelLoader, int maxConcurrentLookups, Duration ttl, Duration negativeTtl) {
+        this.modelLoader = modelLoader;
+        this.ttlMillis = ttl.toMillis();
+        this.negativeTtlMillis = negativeTtl.toMillis();
+
+        int threads = Math.max(1, maxConcurrentLookups);
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "subject-lookup-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Fetches URIs with one GET request on a pool of keep-alive connections, and picks the parser from the content
+     * type of the response. When the content type does not tell the format, the file extension of the URI is used,
+     * and then TURTLE, RDFXML and JSONLD are tried on the same response.
+     *
+     * @param maxConnections the largest number of open connections
+     * @param timeoutMillis  how long to wait for a connection and for a response
+     */
+    static ModelLoader contentNegotiation(int maxConnections, int timeoutMillis) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(Math.max(1, maxConnections));
+        connectionManager.setDefaultMaxPerRoute(Math.max(1, maxConnections));
+        CloseableHttpClient httpClient = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectTimeout(timeoutMillis)
+                .setConnectionRequestTimeout(timeoutMillis)
+                .setSocketTimeout(timeoutMillis)
+                .build())
+            .build();
+
+        return new ModelLoader() {
+            @Override
+            public Model load(String uri) throws IOException {
+                return fetch(httpClient, uri);
+            }
+
+            @Override
+            public void close() throws IOException {
+                httpClient.close();
+            }
+        };
+    }
+
+    private static Model fetch(CloseableHttpClient httpClient, String uri) throws IOException {
+        HttpGet request;
+        try {
+            request = new HttpGet(uri);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("not a valid url: " + uri, e);
+        }
+        request.setHeader(HttpHeaders.ACCEPT, ACCEPT);
+
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            int status = response.getStatusLine().getStatusCode();
+            if (status < 200 || status >= 300 || response.getEntity() == null) {
+                throw new IOException("status " + status + " from " + uri);
+            }
+            ContentType contentType = ContentType.get(response.getEntity());
+            byte[] body = EntityUtils.toByteArray(response.getEntity());
+            return parse(uri, contentType != null ? contentType.getMimeType() : null, body);
+        }
+    }
+
+    static Model parse(String uri, String mimeType, byte[] body) throws IOException {
+        List<Lang> langs = new ArrayList<>();
+        Lang declared = mimeType != null && !UNSPECIFIC_CONTENT_TYPES.contains(mimeType) ? RDFLanguages.contentTypeToLang(mimeType) : null;
+        if (declared != null) {
+            langs.add(declared);
+        } else {
+            Lang extension = RDFLanguages.filenameToLang(uri);
+            if (extension != null) {
+                langs.add(extension);
+            }
+            for (Lang lang : Arrays.asList(Lang.TURTLE, Lang.RDFXML, Lang.JSONLD)) {
+                if (!langs.contains(lang)) {
+                    langs.add(lang);
+                }
+            }
+        }
+
+        RuntimeException lastException = null;
+        for (Lang lang : langs) {
+            Model model = ModelFactory.createDefaultModel();
+            try {
+                RDFDataMgr.read(model, new ByteArrayInputStream(body), uri, lang);
+                return model;
+            } catch (RuntimeException e) {
+                lastException = e;
+            }
+        }
+        throw new IOException("Unable to parse " + uri + " as " + langs + ": " + lastException.getMessage(), lastException);
+    }
+
     /**
      * Runs through all subject predicates in the model.
      *
@@ -41,6 +230,28 @@ public class SubjectCrawler {
      * @return the model which has been annotated with subject definitions
      */
     public Model annotateSubjects(Model model) {
+        return annotateSubjects(model, new AtomicInteger());
+    }
+
+    /**
+     * Same as {@link #annotateSubjects(Model)}, counting the number of subject lookups.
+     *
+     * The subject URIs are fetched concurrently before the model is annotated on the calling thread.
+     *
+     * @param model the model to iterate over and check for subjects
+     * @param lookups incremented for every subject URI that is fetched
+     * @return the model which has been annotated with subject definitions
+     */
+    public Model annotateSubjects(Model model, AtomicInteger lookups) {
+
+        Map<String, CompletableFuture<Entry>> loading = new HashMap<>();
+        StmtIterator subjectStatements = model.listStatements(new SimpleSelector(null, DCTerms.subject, (RDFNode) null));
+        while (subjectStatements.hasNext()) {
+            RDFNode object = subjectStatements.nextStatement().getObject();
+            if (object.isURIResource()) {
+                loading.computeIfAbsent(object.asResource().getURI(), uri -> load(uri, lookups));
+            }
+        }
 
         Map<String, Subject> foundSubjects = new HashMap<>();
         Set<String> excludedSubjects = new HashSet<>();
@@ -53,25 +264,28 @@ public class SubjectCrawler {
             if (subjectInModel != null && subjectInModel.getUri() != null && !foundSubjects.containsKey(subjectInModel.getUri())) {
                 Resource subjectResource = statement.getObject().asResource();
 
-                try {
-                    for (Subject harvestedSubject : loadSubjects(subjectInModel.getUri())) {
+                CompletableFuture<Entry> loaded = loading.get(subjectInModel.getUri());
+                List<Subject> harvestedSubjects = loaded != null ? loaded.join().subjects : null;
+                if (harvestedSubjects == null) {
+                    excludedSubjects.add(subjectInModel.getUri());
+                    continue;
+                }
 
-                        if (harvestedSubject != null && harvestedSubject.getUri() != null) {
-                            foundSubjects.put(harvestedSubject.getUri(), harvestedSubject);
+                for (Subject harvestedSubject : harvestedSubjects) {
 
-                            logger.info("found subject: {}", harvestedSubject);
+                    if (harvestedSubject != null && harvestedSubject.getUri() != null) {
+                        foundSubjects.put(harvestedSubject.getUri(), harvestedSubject);
 
-                            if (harvestedSubject.getUri().equals(subjectInModel.getUri())) {
-                                removeDuplicatedProperties(harvestedSubject, subjectResource);
-                            } else {
-                                subjectResource = model.createResource(harvestedSubject.getUri());
-                            }
+                        logger.info("found subject: {}", harvestedSubject);
 
-                            builder.addSubjectContent(harvestedSubject, subjectResource);
+                        if (harvestedSubject.getUri().equals(subjectInModel.getUri())) {
+                            removeDuplicatedProperties(harvestedSubject, subjectResource);
+                        } else {
+                            subjectResource = model.createResource(harvestedSubject.getUri());
                         }
+
+                        builder.addSubjectContent(harvestedSubject, subjectResource);
                     }
-                } catch (Exception e) {
-                    excludedSubjects.add(subjectInModel.getUri());
                 }
             }
         }
@@ -85,6 +299,79 @@ public class SubjectCrawler {
         return model;
     }
 
+    /**
+     * Returns the cached definitions at the URI, or fetches them on the pool. A URI that is being fetched for another
+     * harvest is not fetched again. The future always completes normally, with null subjects if the URI did not resolve.
+     */
+    private CompletableFuture<Entry> load(String uri, AtomicInteger lookups) {
+        Entry entry = cache.get(uri);
+        if (entry != null && !isExpired(entry, System.currentTimeMillis())) {
+            return CompletableFuture.completedFuture(entry);
+        }
+
+        CompletableFuture<Entry> future = new CompletableFuture<>();
+        CompletableFuture<Entry> running = inFlight.putIfAbsent(uri, future);
+        if (running != null) {
+            return running;
+        }
+
+        lookups.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                Entry loaded;
+                try {
+                    loaded = new Entry(loadSubjects(uri), System.currentTimeMillis());
+                    put(uri, loaded);
+                } catch (RuntimeException e) {
+                    loaded = new Entry(null, System.currentTimeMillis());
+                }
+                // removed before it completes, so that a lookup after the completion does not get this load again
+                inFlight.remove(uri, future);
+                future.complete(loaded);
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(uri, future);
+            future.complete(new Entry(null, System.currentTimeMillis()));
+        }
+        return future;
+    }
+
+    /**
+     * Caches the entry. The expired entries are dropped each time the cache has had as many puts as it has entries,
+     * so that URIs that are not harvested any more do not stay in memory, at a constant cost per put.
+     */
+    private void put(String uri, Entry entry) {
+        cache.put(uri, entry);
+
+        if (putsSincePurge.incrementAndGet() >= cache.size()) {
+            putsSincePurge.set(0);
+            long now = System.currentTimeMillis();
+            cache.values().removeIf(cached -> isExpired(cached, now));
+        }
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        long ttl = entry.subjects != null ? ttlMillis : negativeTtlMillis;
+        return now - entry.loaded >= ttl;
+    }
+
+    /**
+     * @return the number of cached URIs, including expired ones that have not been dropped yet
+     */
+    int size() {
+        return cache.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        try {
+            modelLoader.close();
+        } catch (IOException e) {
+            logger.warn("Unable to close the subject lookup connections: {}", e.getMessage());
+        }
+    }
+
     public void removeDuplicatedProperties(Subject subject, Resource resource) {
 
         removeProperty(subject.getPrefLabel(), resource, SKOS.prefLabel);
@@ -133,41 +420,18 @@ public class SubjectCrawler {
                 return result;
 
             } catch (Exception e) {
-                logger.warn("Subject {} could not be read. Reason {}", e.getLocalizedMessage());
+                logger.warn("Subject {} could not be read. Reason {}", uri, e.getLocalizedMessage());
             }
 
         return null;
     }
 
     public Model loadModel(String URLName){
-        Exception jenaException = null;
-        Model model;
-        try {
-            model = FileManager.get().loadModel(URLName, "TURTLE");
-            return model;
-        }
-        catch (Exception e) {
-            jenaException = e;
-        }
-
-        try {
-            model = FileManager.get().loadModel(URLName, "RDFXML");
-            return model;
-        }
-        catch (Exception e) {
-            jenaException = e;
-        }
-
         try {
-            model = FileManager.get().loadModel(URLName, "JSONLD");
-            return model;
+            return modelLoader.load(URLName);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("URI {} could not be resolved. Reason {}", URLName, e.getLocalizedMessage());
         }
-        catch (Exception e) {
-            jenaException = e;
-
-        }
-
-        logger.warn("URI {} could not be resolved. Have tried all TURTLE, RDFXML and JSONLD. Last exception {}", URLName, jenaException.getLocalizedMessage());
 
         return null;
     }
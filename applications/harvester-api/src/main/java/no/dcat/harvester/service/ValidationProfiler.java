@@ -0,0 +1,129 @@
+package no.dcat.harvester.service;
+
+import no.dcat.harvester.validation.ValidationProfile;
+import org.springframework.stereotype.Service;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the validation profile of the last harvest of each source, and ranks the validation rules by the time
+ * they take across those harvests.
+ */
+@Service
+public class ValidationProfiler {
+
+    private final Map<String, ValidationProfile> profiles = new ConcurrentHashMap<>();
+
+    /**
+     * @param dcatSourceId the source that was validated
+     * @param profile      the timings of its last validation
+     */
+    public void record(String dcatSourceId, ValidationProfile profile) {
+        profiles.put(dcatSourceId, profile);
+    }
+
+    /**
+     * @return the timings of the last validation of the source, slowest rule first, or null if it has not been validated
+     */
+    public List<ValidationProfile.RuleTiming> getRules(String dcatSourceId) {
+        ValidationProfile profile = profiles.get(dcatSourceId);
+        return profile != null ? profile.getRules() : null;
+    }
+
+    /**
+     * Adds up the time of each rule in the last validation of every source.
+     *
+     * @param limit the largest number of rules to return
+     * @return the rules with the largest total time first
+     */
+    public List<RuleStatistics> getSlowestRules(int limit) {
+        Map<String, RuleStatistics> statistics = new LinkedHashMap<>();
+        profiles.forEach((dcatSourceId, profile) -> {
+            for (ValidationProfile.RuleTiming timing : profile.getRules()) {
+                statistics.computeIfAbsent(timing.getRule(), RuleStatistics::new).add(dcatSourceId, timing);
+            }
+        });
+
+        return statistics.values().stream()
+            .sorted(Comparator.comparingDouble(RuleStatistics::getTotalMillis).reversed())
+            .limit(limit)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * The time of one rule summed over the sources, serialized by the slowest rules endpoint.
+     */
+    public static class RuleStatistics {
+        private final String rule;
+        private int sources;
+        private double totalMillis;
+        private double maxMillis;
+        private long rows;
+        private String slowestSource;
+        private long slowestSourceModelSize;
+
+        RuleStatistics(String rule) {
+            this.rule = rule;
+        }
+
+        void add(String dcatSourceId, ValidationProfile.RuleTiming timing) {
+            sources++;
+            totalMillis += timing.getMillis();
+            rows += timing.getRows();
+            if (slowestSource == null || timing.getMillis() > maxMillis) {
+                maxMillis = timing.getMillis();
+                slowestSource = dcatSourceId;
+                slowestSourceModelSize = timing.getModelSize();
+            }
+        }
+
+        public String getRule() {
+            return rule;
+        }
+
+        /**
+         * @return the number of sources the rule was run against
+         */
+        public int getSources() {
+            return sources;
+        }
+
+        public double getTotalMillis() {
+            return totalMillis;
+        }
+
+        public double getMaxMillis() {
+            return maxMillis;
+        }
+
+        public double getMeanMillis() {
+            return sources > 0 ? totalMillis / sources : 0;
+        }
+
+        /**
+         * @return the number of validation results of the rule, for all sources
+         */
+        public long getRows() {
+            return rows;
+        }
+
+        /**
+         * @return the source where the rule took the longest time
+         */
+        public String getSlowestSource() {
+            return slowestSource;
+        }
+
+        /**
+         * @return the number of triples of the source where the rule took the longest time
+         */
+        public long getSlowestSourceModelSize() {
+            return slowestSourceModelSize;
+        }
+    }
+}
@@ -4,12 +4,41 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Configuration
 @EnableConfigurationProperties
 @ConfigurationProperties(prefix="crawler")
 public class CrawlerSettings {
 
 	private int threadPoolSize;
+	private int maxConcurrentHarvestsPerHost;
+	private int maxQueuedJobs = 100;
+	private long jobTimeoutMinutes;
+	private long slowValidationRuleMillis = 5000;
+	private String fetchCacheDirectory;
+	private int sourceFetchTimeoutMillis = 60000;
+	private int maxConcurrentLocationChecks = 8;
+	private int locationCheckTimeoutMillis = 10000;
+	private long locationCacheTtlHours = 24 * 7;
+	private long locationNegativeCacheTtlHours = 24;
+	private String locationCacheFile;
+	private long organizationCacheTtlHours = 24 * 7;
+	private long organizationNegativeCacheTtlHours = 24;
+	private String organizationCacheFile;
+	private String organizationDumpFile;
+	private int maxConcurrentOrganizationLookups = 8;
+	private int organizationLookupTimeoutMillis = 10000;
+	private int maxConcurrentSubjectLookups = 8;
+	private int subjectLookupTimeoutMillis = 10000;
+	private long subjectCacheTtlHours = 24;
+	private long subjectNegativeCacheTtlHours = 1;
+	private long referenceCodeRefreshMinutes = 10;
+	private long diskBackedTripleThreshold;
+	private List<String> diskBackedSources = new ArrayList<>();
+	private String diskStoreDirectory;
+	private int datasetBuildParallelism = 1;
 
 	public int getThreadPoolSize() {
 		return threadPoolSize;
@@ -18,4 +47,246 @@ public class CrawlerSettings {
 	public void setThreadPoolSize(int threadPoolSize) {
 		this.threadPoolSize = threadPoolSize;
 	}
+
+	public int getMaxConcurrentHarvestsPerHost() {
+		return maxConcurrentHarvestsPerHost;
+	}
+
+	public void setMaxConcurrentHarvestsPerHost(int maxConcurrentHarvestsPerHost) {
+		this.maxConcurrentHarvestsPerHost = maxConcurrentHarvestsPerHost;
+	}
+
+	/**
+	 * The number of crawler jobs that can wait for a thread, further jobs are rejected
+	 */
+	public int getMaxQueuedJobs() {
+		return maxQueuedJobs;
+	}
+
+	public void setMaxQueuedJobs(int maxQueuedJobs) {
+		this.maxQueuedJobs = maxQueuedJobs;
+	}
+
+	/**
+	 * Running crawler jobs are cancelled after this many minutes, 0 for no limit
+	 */
+	public long getJobTimeoutMinutes() {
+		return jobTimeoutMinutes;
+	}
+
+	public void setJobTimeoutMinutes(long jobTimeoutMinutes) {
+		this.jobTimeoutMinutes = jobTimeoutMinutes;
+	}
+
+	/**
+	 * Validation rules that take longer than this are reported in the harvest result
+	 */
+	public long getSlowValidationRuleMillis() {
+		return slowValidationRuleMillis;
+	}
+
+	public void setSlowValidationRuleMillis(long slowValidationRuleMillis) {
+		this.slowValidationRuleMillis = slowValidationRuleMillis;
+	}
+
+	public String getFetchCacheDirectory() {
+		return fetchCacheDirectory;
+	}
+
+	public void setFetchCacheDirectory(String fetchCacheDirectory) {
+		this.fetchCacheDirectory = fetchCacheDirectory;
+	}
+
+	/**
+	 * How long to wait for a connection to a dcat source, and for each read of its content
+	 */
+	public int getSourceFetchTimeoutMillis() {
+		return sourceFetchTimeoutMillis;
+	}
+
+	public void setSourceFetchTimeoutMillis(int sourceFetchTimeoutMillis) {
+		this.sourceFetchTimeoutMillis = sourceFetchTimeoutMillis;
+	}
+
+	public int getMaxConcurrentLocationChecks() {
+		return maxConcurrentLocationChecks;
+	}
+
+	public void setMaxConcurrentLocationChecks(int maxConcurrentLocationChecks) {
+		this.maxConcurrentLocationChecks = maxConcurrentLocationChecks;
+	}
+
+	public int getLocationCheckTimeoutMillis() {
+		return locationCheckTimeoutMillis;
+	}
+
+	public void setLocationCheckTimeoutMillis(int locationCheckTimeoutMillis) {
+		this.locationCheckTimeoutMillis = locationCheckTimeoutMillis;
+	}
+
+	public long getLocationCacheTtlHours() {
+		return locationCacheTtlHours;
+	}
+
+	public void setLocationCacheTtlHours(long locationCacheTtlHours) {
+		this.locationCacheTtlHours = locationCacheTtlHours;
+	}
+
+	public long getLocationNegativeCacheTtlHours() {
+		return locationNegativeCacheTtlHours;
+	}
+
+	public void setLocationNegativeCacheTtlHours(long locationNegativeCacheTtlHours) {
+		this.locationNegativeCacheTtlHours = locationNegativeCacheTtlHours;
+	}
+
+	public String getLocationCacheFile() {
+		return locationCacheFile;
+	}
+
+	public void setLocationCacheFile(String locationCacheFile) {
+		this.locationCacheFile = locationCacheFile;
+	}
+
+	public long getOrganizationCacheTtlHours() {
+		return organizationCacheTtlHours;
+	}
+
+	public void setOrganizationCacheTtlHours(long organizationCacheTtlHours) {
+		this.organizationCacheTtlHours = organizationCacheTtlHours;
+	}
+
+	public long getOrganizationNegativeCacheTtlHours() {
+		return organizationNegativeCacheTtlHours;
+	}
+
+	public void setOrganizationNegativeCacheTtlHours(long organizationNegativeCacheTtlHours) {
+		this.organizationNegativeCacheTtlHours = organizationNegativeCacheTtlHours;
+	}
+
+	public String getOrganizationCacheFile() {
+		return organizationCacheFile;
+	}
+
+	public void setOrganizationCacheFile(String organizationCacheFile) {
+		this.organizationCacheFile = organizationCacheFile;
+	}
+
+	/**
+	 * A bulk download of Enhetsregisteret (JSON, optionally gzipped) that is loaded into the organization cache at startup
+	 */
+	public String getOrganizationDumpFile() {
+		return organizationDumpFile;
+	}
+
+	public void setOrganizationDumpFile(String organizationDumpFile) {
+		this.organizationDumpFile = organizationDumpFile;
+	}
+
+	/**
+	 * The number of lookups in Enhetsregisteret that run at the same time, and of pooled connections to it
+	 */
+	public int getMaxConcurrentOrganizationLookups() {
+		return maxConcurrentOrganizationLookups;
+	}
+
+	public void setMaxConcurrentOrganizationLookups(int maxConcurrentOrganizationLookups) {
+		this.maxConcurrentOrganizationLookups = maxConcurrentOrganizationLookups;
+	}
+
+	public int getOrganizationLookupTimeoutMillis() {
+		return organizationLookupTimeoutMillis;
+	}
+
+	public void setOrganizationLookupTimeoutMillis(int organizationLookupTimeoutMillis) {
+		this.organizationLookupTimeoutMillis = organizationLookupTimeoutMillis;
+	}
+
+	public int getMaxConcurrentSubjectLookups() {
+		return maxConcurrentSubjectLookups;
+	}
+
+	public void setMaxConcurrentSubjectLookups(int maxConcurrentSubjectLookups) {
+		this.maxConcurrentSubjectLookups = maxConcurrentSubjectLookups;
+	}
+
+	public int getSubjectLookupTimeoutMillis() {
+		return subjectLookupTimeoutMillis;
+	}
+
+	public void setSubjectLookupTimeoutMillis(int subjectLookupTimeoutMillis) {
+		this.subjectLookupTimeoutMillis = subjectLookupTimeoutMillis;
+	}
+
+	/**
+	 * How long the subject definitions at a URI are kept before the URI is fetched again
+	 */
+	public long getSubjectCacheTtlHours() {
+		return subjectCacheTtlHours;
+	}
+
+	public void setSubjectCacheTtlHours(long subjectCacheTtlHours) {
+		this.subjectCacheTtlHours = subjectCacheTtlHours;
+	}
+
+	public long getSubjectNegativeCacheTtlHours() {
+		return subjectNegativeCacheTtlHours;
+	}
+
+	public void setSubjectNegativeCacheTtlHours(long subjectNegativeCacheTtlHours) {
+		this.subjectNegativeCacheTtlHours = subjectNegativeCacheTtlHours;
+	}
+
+	/**
+	 * How often the cached code lists and themes are revalidated with reference-data
+	 */
+	public long getReferenceCodeRefreshMinutes() {
+		return referenceCodeRefreshMinutes;
+	}
+
+	public void setReferenceCodeRefreshMinutes(long referenceCodeRefreshMinutes) {
+		this.referenceCodeRefreshMinutes = referenceCodeRefreshMinutes;
+	}
+
+	/**
+	 * Sources with more triples than this are moved to disk while they are harvested, 0 keeps all sources in memory
+	 */
+	public long getDiskBackedTripleThreshold() {
+		return diskBackedTripleThreshold;
+	}
+
+	public void setDiskBackedTripleThreshold(long diskBackedTripleThreshold) {
+		this.diskBackedTripleThreshold = diskBackedTripleThreshold;
+	}
+
+	/**
+	 * Ids of dcat sources that are always harvested on disk
+	 */
+	public List<String> getDiskBackedSources() {
+		return diskBackedSources;
+	}
+
+	public void setDiskBackedSources(List<String> diskBackedSources) {
+		this.diskBackedSources = diskBackedSources;
+	}
+
+	public String getDiskStoreDirectory() {
+		return diskStoreDirectory;
+	}
+
+	public void setDiskStoreDirectory(String diskStoreDirectory) {
+		this.diskStoreDirectory = diskStoreDirectory;
+	}
+
+	/**
+	 * The number of threads that build the datasets of a large catalog, 1 builds them on the harvest thread.
+	 * The threads are in one pool that all harvests share.
+	 */
+	public int getDatasetBuildParallelism() {
+		return datasetBuildParallelism;
+	}
+
+	public void setDatasetBuildParallelism(int datasetBuildParallelism) {
+		this.datasetBuildParallelism = datasetBuildParallelism;
+	}
 }
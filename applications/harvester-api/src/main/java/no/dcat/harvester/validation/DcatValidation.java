@@ -1,19 +1,13 @@
 package no.dcat.harvester.validation;
 
-import org.apache.commons.io.IOUtils;
-import org.apache.jena.query.QueryExecutionFactory;
 import org.apache.jena.query.QuerySolution;
-import org.apache.jena.query.ResultSet;
 import org.apache.jena.rdf.model.Literal;
 import org.apache.jena.rdf.model.Model;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 import org.springframework.util.Assert;
 
 import java.io.IOException;
-import java.io.InputStream;
 
 /**
  * Created by havardottestad on 04/01/16.
@@ -29,12 +23,25 @@ public class DcatValidation {
      * <predicate>
      * The operation returns false if errors are detected. It returns true if only warnings have been detected.
      * It reads validation files in SPARQL format that is stored under src/main/resources/validation-rules.
+     * The files are read and parsed once, see {@link ValidationRuleSet}.
      *
      * @param model             the DCAT RDF model to be validated.
      * @param validationHandler a handler for reporting validation problems
      * @return a boolean that is true if no errors are detected and false if errors are detected
      */
     public static boolean validate(Model model, ValidationHandler validationHandler) {
+        return validate(model, validationHandler, null);
+    }
+
+    /**
+     * Validates the model like {@link #validate(Model, ValidationHandler)}, and records how long each rule took.
+     *
+     * @param model             the DCAT RDF model to be validated.
+     * @param validationHandler a handler for reporting validation problems
+     * @param profile           receives the timing of each rule, may be null
+     * @return a boolean that is true if no errors are detected and false if errors are detected
+     */
+    public static boolean validate(Model model, ValidationHandler validationHandler, ValidationProfile profile) {
         Assert.notNull(model);
 
         if (validationHandler == null) {
@@ -42,44 +49,8 @@ public class DcatValidation {
             };
         }
 
-        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
         try {
-            // identify validation rules files
-            Resource[] resources = resolver.getResources("classpath*:validation-rules/**/*.rq");
-
-            final boolean[] valid = {true};
-            final ValidationHandler finalValidationHandler = validationHandler;
-
-            // for each file validate
-            for (Resource r : resources) {
-                //logger.trace("Checking against validation-rule in file: " + r.toString());
-                InputStream is = r.getInputStream();
-
-                String query = IOUtils.toString(is, "UTF-8");
-
-                ResultSet resultSet = null;
-                try {
-                    resultSet = QueryExecutionFactory.create(query, model).execSelect();
-
-                } catch (Exception e) {
-
-                    logger.error("QueryParseException in " + r.toString() + " : " + e.getMessage());
-                    throw e;
-                } finally {
-                    IOUtils.closeQuietly(is);
-                }
-
-                while (resultSet != null && resultSet.hasNext()) {
-
-                    ValidationError error = validationError(resultSet.next());
-                    finalValidationHandler.handle(error);
-                    if (error.isError()) {
-                        valid[0] = false;
-                    }
-                }
-            }
-
-            return valid[0];
+            return ValidationRuleSet.getDefault().validate(model, validationHandler, profile);
         } catch (IOException e) {
             logger.error("Unable to load validation rules " + e.getMessage(), e);
         }
@@ -0,0 +1,86 @@
+package no.dcat.harvester.validation;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Execution time, number of results and model size of each validation rule in one validation.
+ */
+public class ValidationProfile {
+
+    private final List<RuleTiming> timings = new ArrayList<>();
+
+    synchronized void record(String rule, long nanos, int rows, long modelSize) {
+        RuleTiming timing = new RuleTiming();
+        timing.rule = rule;
+        timing.millis = nanos / 1_000_000.0;
+        timing.rows = rows;
+        timing.modelSize = modelSize;
+        timings.add(timing);
+    }
+
+    /**
+     * @return the timing of every rule, slowest first
+     */
+    public synchronized List<RuleTiming> getRules() {
+        List<RuleTiming> sorted = new ArrayList<>(timings);
+        sorted.sort(Comparator.comparingDouble(RuleTiming::getMillis).reversed());
+        return sorted;
+    }
+
+    /**
+     * @param thresholdMillis the longest time a rule may take
+     * @return the rules that took longer than the threshold, slowest first
+     */
+    public List<RuleTiming> getRulesSlowerThan(long thresholdMillis) {
+        return getRules().stream()
+            .filter(timing -> timing.millis > thresholdMillis)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the sum of the execution times of all rules, more than the duration of the validation since rules run in parallel
+     */
+    public synchronized double getTotalMillis() {
+        return timings.stream().mapToDouble(RuleTiming::getMillis).sum();
+    }
+
+    public static class RuleTiming {
+        private String rule;
+        private double millis;
+        private int rows;
+        private long modelSize;
+
+        /**
+         * @return the file of the rule, relative to validation-rules
+         */
+        public String getRule() {
+            return rule;
+        }
+
+        public double getMillis() {
+            return millis;
+        }
+
+        /**
+         * @return the number of validation results the rule returned
+         */
+        public int getRows() {
+            return rows;
+        }
+
+        /**
+         * @return the number of triples in the validated model
+         */
+        public long getModelSize() {
+            return modelSize;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %.0f ms (%d rows)", rule, millis, rows);
+        }
+    }
+}
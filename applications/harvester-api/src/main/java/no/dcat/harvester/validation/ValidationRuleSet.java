@@ -0,0 +1,231 @@
+package no.dcat.harvester.validation;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.sparql.graph.GraphReadOnly;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The validation rules of DCAT-AP-xx, read and parsed once.
+ *
+ * The rules are run in parallel against a read-only view of the model, on a pool shared by all validations.
+ * The results are passed to the handler in the same order every time: rule by rule in the order of their file
+ * names, and in the order the query returns them within each rule.
+ */
+public class ValidationRuleSet {
+    private static final Logger logger = LoggerFactory.getLogger(ValidationRuleSet.class);
+
+    static final String RULES_DIRECTORY = "validation-rules/";
+    static final String RULES_LOCATION = "classpath*:" + RULES_DIRECTORY + "**/*.rq";
+
+    private static ValidationRuleSet defaultRuleSet;
+
+    private final List<Rule> rules;
+    private final String digest;
+    private final ExecutorService executor;
+
+    private static class Rule {
+        private final String name;
+        private final Query query;
+
+        Rule(String name, Query query) {
+            this.name = name;
+            this.query = query;
+        }
+    }
+
+    /**
+     * @return the rules under src/main/resources/validation-rules, loaded the first time they are needed
+     * @throws IOException if the rules cannot be read
+     */
+    public static synchronized ValidationRuleSet getDefault() throws IOException {
+        if (defaultRuleSet == null) {
+            defaultRuleSet = load(RULES_LOCATION, Runtime.getRuntime().availableProcessors());
+        }
+        return defaultRuleSet;
+    }
+
+    /**
+     * Reads and parses the rules.
+     *
+     * @param locationPattern where to find the SPARQL files of the rules
+     * @param threads         how many rules are run at the same time
+     * @throws IOException if the rules cannot be read
+     */
+    static ValidationRuleSet load(String locationPattern, int threads) throws IOException {
+        Resource[] resources = new PathMatchingResourcePatternResolver().getResources(locationPattern);
+        Arrays.sort(resources, Comparator.comparing(ValidationRuleSet::path));
+
+        List<Rule> rules = new ArrayList<>();
+        MessageDigest digest = createDigest();
+        for (Resource resource : resources) {
+            try (InputStream is = resource.getInputStream()) {
+                String query = IOUtils.toString(is, "UTF-8");
+                rules.add(new Rule(ruleName(resource), QueryFactory.create(query)));
+                digest.update(ruleName(resource).getBytes(StandardCharsets.UTF_8));
+                digest.update(query.getBytes(StandardCharsets.UTF_8));
+            } catch (RuntimeException e) {
+                logger.error("QueryParseException in " + resource.toString() + " : " + e.getMessage());
+                throw e;
+            }
+        }
+        logger.info("Loaded {} validation rules", rules.size());
+
+        return new ValidationRuleSet(rules, toHex(digest.digest()), threads);
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static String ruleName(Resource resource) {
+        String path = path(resource);
+        int start = path.lastIndexOf(RULES_DIRECTORY);
+        return start >= 0 ? path.substring(start + RULES_DIRECTORY.length()) : path;
+    }
+
+    private static String path(Resource resource) {
+        try {
+            return resource.getURL().toString();
+        } catch (IOException e) {
+            return resource.toString();
+        }
+    }
+
+    private ValidationRuleSet(List<Rule> rules, String digest, int threads) {
+        this.rules = Collections.unmodifiableList(rules);
+        this.digest = digest;
+
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "validation-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the number of rules
+     */
+    public int size() {
+        return rules.size();
+    }
+
+    /**
+     * @return a SHA-256 digest of the names and the SPARQL of the rules, it changes whenever a rule is changed
+     */
+    public String getDigest() {
+        return digest;
+    }
+
+    /**
+     * Runs all rules against the model. The model must not be changed while it is validated.
+     *
+     * @param model             the DCAT RDF model to be validated
+     * @param validationHandler receives the validation problems, on the calling thread
+     * @return true if no errors are detected and false if errors are detected
+     */
+    public boolean validate(Model model, ValidationHandler validationHandler) {
+        return validate(model, validationHandler, null);
+    }
+
+    /**
+     * Runs all rules against the model, and records how long each of them took.
+     *
+     * @param model             the DCAT RDF model to be validated, it must not be changed while it is validated
+     * @param validationHandler receives the validation problems, on the calling thread
+     * @param profile           receives the timing of each rule, may be null
+     * @return true if no errors are detected and false if errors are detected
+     */
+    public boolean validate(Model model, ValidationHandler validationHandler, ValidationProfile profile) {
+        Model readOnly = ModelFactory.createModelForGraph(new GraphReadOnly(model.getGraph()));
+        long modelSize = profile != null ? model.size() : 0;
+
+        List<Future<List<ValidationError>>> results = new ArrayList<>();
+        for (Rule rule : rules) {
+            results.add(executor.submit(() -> {
+                long start = System.nanoTime();
+                List<ValidationError> errors = run(rule, readOnly);
+                if (profile != null) {
+                    profile.record(rule.name, System.nanoTime() - start, errors.size(), modelSize);
+                }
+                return errors;
+            }));
+        }
+
+        boolean valid = true;
+        try {
+            for (Future<List<ValidationError>> result : results) {
+                for (ValidationError error : result.get()) {
+                    validationHandler.handle(error);
+                    if (error.isError()) {
+                        valid = false;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Validation was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            results.forEach(result -> result.cancel(true));
+        }
+
+        return valid;
+    }
+
+    private static List<ValidationError> run(Rule rule, Model model) {
+        List<ValidationError> errors = new ArrayList<>();
+        try (QueryExecution execution = QueryExecutionFactory.create(rule.query, model)) {
+            ResultSet resultSet = execution.execSelect();
+            while (resultSet.hasNext()) {
+                errors.add(DcatValidation.validationError(resultSet.next()));
+            }
+        } catch (RuntimeException e) {
+            logger.error("Validation rule " + rule.name + " failed: " + e.getMessage());
+            throw e;
+        }
+        return errors;
+    }
+}
@@ -0,0 +1,110 @@
+package no.dcat.harvester;
+
+import no.dcat.harvester.crawler.HarvestStore;
+import no.dcat.shared.testcategories.LoadTest;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.sparql.graph.GraphWrapper;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Counts the passes over the model and the lookups in the graph that {@link DataEnricher} makes and measures the time
+ * it takes, on large catalogs from data.norge.no and a smaller one from EntryScape. Compare the log before and after
+ * a change, the triples it gives are checked against expected files in {@link DataEnricherTest}.
+ *
+ * Run with: mvn test -P load-test -Dtest=DataEnricherBenchmark
+ */
+@Category(LoadTest.class)
+public class DataEnricherBenchmark {
+    private static Logger logger = LoggerFactory.getLogger(DataEnricherBenchmark.class);
+
+    private static final int ITERATIONS = 5;
+
+    /**
+     * Counts the calls to find, each of them is a traversal of (a part of) an index. A find without a subject is
+     * counted as a pass, it goes through every statement with the predicate or object, or the whole graph.
+     */
+    private static class CountingGraph extends GraphWrapper {
+        private int finds;
+        private int passes;
+
+        CountingGraph(Graph graph) {
+            super(graph);
+        }
+
+        @Override
+        public ExtendedIterator<Triple> find(Triple triple) {
+            return find(triple.getSubject(), triple.getPredicate(), triple.getObject());
+        }
+
+        @Override
+        public ExtendedIterator<Triple> find(Node s, Node p, Node o) {
+            finds++;
+            if (s == null || s == Node.ANY) {
+                passes++;
+            }
+            return super.find(s, p, o);
+        }
+    }
+
+    @Test
+    public void datanorgeCatalog() {
+        measure("datanorge_2018_05_31.jsonld", ITERATIONS);
+    }
+
+    @Test
+    public void difiCatalog() {
+        measure("difi-complete-2018-03-08.jsonld", ITERATIONS);
+    }
+
+    @Test
+    public void entryscapeCatalog() {
+        measure("entryscape.jsonld", 50);
+    }
+
+    private void measure(String source, int iterations) {
+        Model original = HarvestStore.inMemory().load(getClass().getClassLoader().getResource(source).toString(), UnaryOperator.identity());
+
+        CountingGraph graph = count(original, model -> new DataEnricher().enrichData(model));
+        double millis = time(original, iterations, model -> new DataEnricher().enrichData(model));
+
+        logger.info("{} ({} triples): {} passes {} finds {} ms per enrichment",
+            source, original.size(), graph.passes, graph.finds, String.format("%.1f", millis));
+    }
+
+    /**
+     * A copy with the write layer the crawler job enriches
+     */
+    private static Model copy(Model model) {
+        return HarvestStore.withWriteLayer(ModelFactory.createDefaultModel().add(model));
+    }
+
+    private static CountingGraph count(Model original, UnaryOperator<Model> enricher) {
+        CountingGraph graph = new CountingGraph(copy(original).getGraph());
+        enricher.apply(ModelFactory.createModelForGraph(graph));
+        return graph;
+    }
+
+    private static double time(Model original, int iterations, UnaryOperator<Model> enricher) {
+        // warm up
+        enricher.apply(copy(original));
+
+        long total = 0;
+        for (int i = 0; i < iterations; i++) {
+            Model model = copy(original);
+            long start = System.nanoTime();
+            enricher.apply(model);
+            total += System.nanoTime() - start;
+        }
+        return total / 1_000_000.0 / iterations;
+    }
+}
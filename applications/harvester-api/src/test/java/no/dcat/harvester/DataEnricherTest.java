@@ -2,10 +2,13 @@ package no.dcat.harvester;
 
 import no.dcat.datastore.domain.DcatSource;
 import no.dcat.datastore.domain.dcat.vocabulary.DCAT;
+import no.dcat.harvester.crawler.HarvestStore;
 import no.dcat.shared.testcategories.UnitTest;
 import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
 import org.apache.jena.rdf.model.*;
 import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFParser;
 import org.apache.jena.vocabulary.DCTerms;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
@@ -23,6 +26,8 @@ import static org.junit.Assert.assertFalse;
 @Category(UnitTest.class)
 public class DataEnricherTest {
 
+    private static final String ENRICHED_BASE = "http://dcat.no/test/";
+
     /**
      * Helper method to load test data
      *
@@ -277,4 +282,36 @@ public class DataEnricherTest {
                 "http://data.norge.no/nlod/");
     }
 
+
+    /**
+     * Loads the union of all graphs in a test file the way the crawler job does, with a fixed base uri so that
+     * relative uris resolve the same everywhere.
+     */
+    private Model loadFlatTestModel(String testFileName) {
+        Dataset dataset = DatasetFactory.create();
+        RDFParser.create().source(getClass().getClassLoader().getResource(testFileName).toString()).base(ENRICHED_BASE).parse(dataset);
+
+        Model model = ModelFactory.createDefaultModel().add(dataset.getDefaultModel());
+        dataset.listNames().forEachRemaining(graphName -> model.add(dataset.getNamedModel(graphName)));
+        return HarvestStore.withWriteLayer(model);
+    }
+
+    /**
+     * Check that enrichment gives the triples in enriched/, for sources from EntryScape, Vegvesenet, data.norge.no
+     * and others. The expected files were written by the enricher that made a pass over the model for each step.
+     * Each source is small and covers the steps for its publisher, the large catalogs are in DataEnricherBenchmark.
+     */
+    @Test
+    public void enrichmentGivesTheExpectedTriples() {
+        String[] testFiles = {"entryscape.jsonld", "vegvesenet.xml", "difi-dataset-2017-10-19.jsonld", "distribution-licenseformat-difi.jsonld", "datasett-mini.ttl", "dataset-FDK-138-validering.ttl"};
+
+        for (String testFile : testFiles) {
+            Model expected = RDFDataMgr.loadModel("enriched/" + testFile.substring(0, testFile.lastIndexOf('.')) + ".ttl");
+            Model actual = new DataEnricher().enrichData(loadFlatTestModel(testFile));
+
+            assertThat(testFile, actual.size(), is(expected.size()));
+            assertThat(testFile, actual.isIsomorphicWith(expected), is(true));
+        }
+    }
+
 }
@@ -0,0 +1,82 @@
+package no.dcat.harvester.crawler;
+
+import no.dcat.datastore.domain.DcatSource;
+import no.dcat.harvester.crawler.handlers.ElasticSearchResultHandler;
+import no.dcat.harvester.settings.ApplicationSettings;
+import no.dcat.harvester.settings.CrawlerSettings;
+import no.dcat.harvester.settings.ElasticSettings;
+import no.dcat.shared.testcategories.UnitTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+@Category(UnitTest.class)
+public class CrawlerJobFactoryTest {
+
+    private CrawlerJobFactory factory;
+    private final List<ElasticSearchResultHandler> handlers = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        CrawlerJobFactory crawlerJobFactory = new CrawlerJobFactory();
+        ReflectionTestUtils.setField(crawlerJobFactory, "crawlerSettings", new CrawlerSettings());
+        ReflectionTestUtils.setField(crawlerJobFactory, "elasticSettings", new ElasticSettings());
+        ReflectionTestUtils.setField(crawlerJobFactory, "applicationSettings", new ApplicationSettings());
+
+        factory = spy(crawlerJobFactory);
+        doAnswer(invocation -> {
+            ElasticSearchResultHandler handler = mock(ElasticSearchResultHandler.class);
+            synchronized (handlers) {
+                handlers.add(handler);
+            }
+            return handler;
+        }).when(factory).createElasticSearchResultHandler(anyBoolean());
+    }
+
+    private DcatSource dcatSource(int i) {
+        return new DcatSource("http://dcat.difi.no/test" + i, "Test", "http://localhost/catalog" + i + ".ttl", "tester", "123456789");
+    }
+
+    @Test
+    public void concurrentJobsReportToTheirOwnMetrics() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<CrawlerJob>> jobs = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            DcatSource dcatSource = dcatSource(i);
+            jobs.add(executor.submit(() -> factory.createCrawlerJob(dcatSource)));
+        }
+        executor.shutdown();
+
+        for (Future<CrawlerJob> job : jobs) {
+            CrawlerJob crawlerJob = job.get();
+            @SuppressWarnings("unchecked")
+            List<CrawlerResultHandler> jobHandlers = (List<CrawlerResultHandler>) ReflectionTestUtils.getField(crawlerJob, "handlers");
+            ElasticSearchResultHandler handler = (ElasticSearchResultHandler) jobHandlers.stream()
+                .filter(handlers::contains).findFirst().get();
+
+            verify(handler).setJobMetrics(crawlerJob.getMetrics());
+        }
+    }
+
+    @Test
+    public void replayIndexesEveryDataset() {
+        factory.createCrawlerJob(dcatSource(1));
+        factory.createReplayCrawlerJob(dcatSource(2));
+
+        verify(factory).createElasticSearchResultHandler(true);
+        verify(factory).createElasticSearchResultHandler(false);
+    }
+}
@@ -1,34 +1,51 @@
 package no.dcat.harvester.crawler;
 
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import no.dcat.datastore.AdminDataStore;
 import no.dcat.datastore.DcatDataStore;
 import no.dcat.datastore.domain.DcatSource;
+import no.dcat.datastore.domain.DifiMeta;
 import no.dcat.datastore.domain.dcat.vocabulary.DCATNO;
 import no.dcat.harvester.HarvesterApplication;
 import no.dcat.harvester.crawler.handlers.ElasticSearchResultHandler;
 import no.dcat.harvester.crawler.handlers.FusekiResultHandler;
+import no.dcat.harvester.service.LocationResolver;
+import no.dcat.harvester.service.OrganizationCache;
+import no.dcat.harvester.service.SourceFetchCache;
+import no.dcat.harvester.service.ValidationProfiler;
 import no.dcat.harvester.validation.ValidationError;
 import no.dcat.shared.testcategories.UnitTest;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.ResIterator;
 import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.RDFDataMgr;
 import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.system.StreamRDF;
 import org.apache.jena.shared.BadURIException;
 import org.apache.jena.sparql.vocabulary.FOAF;
 import org.apache.jena.util.FileManager;
+import org.apache.jena.vocabulary.DCTerms;
 import org.apache.jena.vocabulary.RDF;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.io.ClassPathResource;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
@@ -40,6 +57,9 @@ import static org.mockito.Mockito.*;
 public class CrawlerJobTest {
     private static Logger logger = LoggerFactory.getLogger(CrawlerJobTest.class);
 
+    @Rule
+    public TemporaryFolder storeDirectory = new TemporaryFolder();
+
 
     @Test
     public void testLastPath() {
@@ -120,6 +140,31 @@ public class CrawlerJobTest {
 
     }
 
+    @Test
+    public void interruptedValidationCancelsTheJob() throws IOException {
+        ClassPathResource resource = new ClassPathResource("brreg.jsonld");
+        DcatSource dcatSource = new DcatSource("http//dcat.difi.no/test", "Test", resource.getURL().toString(), "tester", "123456789");
+        AdminDataStore adminDataStore = mock(AdminDataStore.class);
+        FusekiResultHandler handler = mock(FusekiResultHandler.class);
+
+        CrawlerJob job = spy(new CrawlerJob(dcatSource, adminDataStore, null, handler));
+        job.testMode();
+        doAnswer(invocation -> {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Validation was interrupted");
+        }).when(job).isValid(any());
+
+        try {
+            job.run();
+            assertThat(Thread.currentThread().isInterrupted(), is(true));
+        } finally {
+            Thread.interrupted();
+        }
+
+        verify(adminDataStore).addCrawlResults(dcatSource, DifiMeta.error, "Harvest was cancelled");
+        verify(handler, never()).process(any(), any(), any());
+    }
+
     @Test
     public void testDIFICrawlerJob() throws IOException {
 
@@ -215,6 +260,7 @@ public class CrawlerJobTest {
 
         CrawlerJob job = new CrawlerJob(dcatSource, adminDataStore, null, handler);
         job.testMode();
+        job.setOrganizationCache(new OrganizationCache());
         job.run();
 
         Model actualModel = job.getModel();
@@ -237,28 +283,203 @@ public class CrawlerJobTest {
 
     }
 
-    @Test(expected = RiotException.class)
-    public void testCrawlingJsonLdWithSpaceInUri() throws Throwable {
-        ClassPathResource resource = new ClassPathResource("space-in-uri.jsonld");
+    @Test
+    public void testUnchangedSourceSkipsPipeline() throws Throwable {
+        DcatSource dcatSource = new DcatSource("http//dcat.difi.no/test", "Test", "http://localhost/catalog.ttl", "tester", "123456789");
 
+        AdminDataStore adminDataStore = mock(AdminDataStore.class);
         FusekiResultHandler handler = mock(FusekiResultHandler.class);
 
-        CrawlerJob job = new CrawlerJob(null, null, null, handler);
-        job.verifyModelByParsing(FileManager.get().loadModel(resource.getFile().getCanonicalPath()));
+        SourceFetchCache.FetchedSource fetchedSource = mock(SourceFetchCache.FetchedSource.class);
+        when(fetchedSource.isUnchangedSinceLastHarvest()).thenReturn(true);
+        SourceFetchCache fetchCache = mock(SourceFetchCache.class);
+        when(fetchCache.fetch(dcatSource)).thenReturn(fetchedSource);
+
+        CrawlerJob job = new CrawlerJob(dcatSource, adminDataStore, null, handler);
+        job.setFetchCache(fetchCache);
         job.run();
 
+        verify(handler, never()).process(any(), any(), any());
+        verify(fetchedSource, never()).loadDataset();
+        verify(fetchCache, never()).markHarvested(any(), any());
+        verify(adminDataStore).addCrawlResults(eq(dcatSource), eq(DifiMeta.ok), any());
     }
 
-    @Test(expected = BadURIException.class)
-    public void testCrawlingXmlRdfWithSpecialCharacterInUri() throws IOException {
-        ClassPathResource resource = new ClassPathResource("dcat-11.xml");
+    @Test
+    public void testRepeatedSkipKeepsTheLastMessage() throws Throwable {
+        DcatSource dcatSource = new DcatSource("http//dcat.difi.no/test", "Test", "http://localhost/catalog.ttl", "tester", "123456789");
+        String lastMessage = CrawlerJob.UNCHANGED_MESSAGE + "Datasets: 1 new, 0 changed, 0 unchanged\n";
+        dcatSource.getHarvested().add(dcatSource.new Harvest(DifiMeta.warning, "2018-10-01T12:00:00+02:00", lastMessage));
+
+        AdminDataStore adminDataStore = mock(AdminDataStore.class);
+        SourceFetchCache.FetchedSource fetchedSource = mock(SourceFetchCache.FetchedSource.class);
+        when(fetchedSource.isUnchangedSinceLastHarvest()).thenReturn(true);
+        SourceFetchCache fetchCache = mock(SourceFetchCache.class);
+        when(fetchCache.fetch(dcatSource)).thenReturn(fetchedSource);
+
+        CrawlerJob job = new CrawlerJob(dcatSource, adminDataStore, null, mock(FusekiResultHandler.class));
+        job.setFetchCache(fetchCache);
+        job.run();
+
+        verify(adminDataStore).addCrawlResults(dcatSource, DifiMeta.warning, lastMessage);
+    }
+
+    private SourceFetchCache.FetchedSource changedSource(String resource) throws IOException {
+        SourceFetchCache.FetchedSource fetchedSource = mock(SourceFetchCache.FetchedSource.class);
+        doAnswer(invocation -> {
+            RDFDataMgr.parse((StreamRDF) invocation.getArgument(0), new ClassPathResource(resource).getURL().toString());
+            return null;
+        }).when(fetchedSource).parse(any());
+        return fetchedSource;
+    }
+
+    @Test
+    public void testSuccessfulHarvestIsMarkedInTheFetchCache() throws Throwable {
+        DcatSource dcatSource = new DcatSource("http//dcat.difi.no/test", "Test", "http://localhost/catalog.ttl", "tester", "123456789");
 
+        SourceFetchCache.FetchedSource fetchedSource = changedSource("dataset-test.ttl");
+        SourceFetchCache fetchCache = mock(SourceFetchCache.class);
+        when(fetchCache.fetch(dcatSource)).thenReturn(fetchedSource);
+
+        CrawlerJob job = new CrawlerJob(dcatSource, mock(AdminDataStore.class), null, mock(FusekiResultHandler.class));
+        job.setFetchCache(fetchCache);
+        job.run();
+
+        verify(fetchCache).markHarvested(dcatSource, fetchedSource);
+    }
+
+    @Test
+    public void testHarvestWithIndexingErrorsIsNotMarkedInTheFetchCache() throws Throwable {
+        DcatSource dcatSource = new DcatSource("http//dcat.difi.no/test", "Test", "http://localhost/catalog.ttl", "tester", "123456789");
+
+        SourceFetchCache.FetchedSource fetchedSource = changedSource("dataset-test.ttl");
+        SourceFetchCache fetchCache = mock(SourceFetchCache.class);
+        when(fetchCache.fetch(dcatSource)).thenReturn(fetchedSource);
 
         FusekiResultHandler handler = mock(FusekiResultHandler.class);
+        CrawlerJob job = new CrawlerJob(dcatSource, mock(AdminDataStore.class), null, handler);
+        doAnswer(invocation -> {
+            job.getMetrics().addCount(CrawlerJobMetrics.INDEXING_ERRORS, 1);
+            return null;
+        }).when(handler).process(any(), any(), any());
+        job.setFetchCache(fetchCache);
+        job.run();
+
+        verify(handler).process(any(), any(), any());
+        verify(fetchCache, never()).markHarvested(any(), any());
+    }
 
-        CrawlerJob job = new CrawlerJob(null, null, null, handler);
+    @Test
+    public void nonResolvableLocationIsRemovedFromEveryDataset() throws Throwable {
+        ClassPathResource resource = new ClassPathResource("dataset-test.ttl");
+        DcatSource dcatSource = new DcatSource("http//dcat.difi.no/test", "Test", resource.getURL().toString(), "tester", "123456789");
+        String location = "http://sws.geonames.org/3144096/";
+
+        List<Model> processed = new ArrayList<>();
+        CrawlerResultHandler handler = (source, model, validationResults) -> processed.add(ModelFactory.createDefaultModel().add(model));
+        LocationResolver locationResolver = new LocationResolver(uri -> !uri.equals(location), 1, Duration.ofHours(1), Duration.ofHours(1), null);
+
+        CrawlerJob job = new CrawlerJob(dcatSource, mock(AdminDataStore.class), null, handler);
+        job.testMode();
+        job.setLocationResolver(locationResolver);
+        try {
+            job.run();
+        } finally {
+            locationResolver.shutdown();
+        }
+
+        assertThat(processed.size(), is(1));
+        assertThat(processed.get(0).contains(null, DCTerms.spatial, processed.get(0).createResource(location)), is(false));
+        assertThat(processed.get(0).contains(null, DCTerms.spatial), is(false));
+    }
+
+    @Test
+    public void testStageMetricsAreRecorded() throws Throwable {
+        ClassPathResource resource = new ClassPathResource("dataset-test.ttl");
+        DcatSource dcatSource = new DcatSource("http//dcat.difi.no/test", "Test", resource.getURL().toString(), "tester", "123456789");
+
+        FusekiResultHandler handler = mock(FusekiResultHandler.class);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+        CrawlerJob job = new CrawlerJob(dcatSource, mock(AdminDataStore.class), null, handler);
+        job.testMode();
+        job.setMeterRegistry(registry);
+        job.setOrganizationCache(new OrganizationCache());
+        job.run();
+
+        CrawlerJobMetrics metrics = job.getMetrics();
+        assertThat(metrics.getCount(CrawlerJobMetrics.TRIPLES) > 0, is(true));
+        assertThat(metrics.getCount(CrawlerJobMetrics.DATASETS), is(90L));
+        assertThat(metrics.toHarvestMetrics().getStageDurations().keySet(), hasItems(
+            CrawlerJobMetrics.LOAD, CrawlerJobMetrics.VERIFY, CrawlerJobMetrics.ENRICH, CrawlerJobMetrics.ORGANISATIONS,
+            CrawlerJobMetrics.VALIDATION, CrawlerJobMetrics.RANKING, CrawlerJobMetrics.TOTAL,
+            CrawlerJobMetrics.HANDLER_PREFIX + handler.getClass().getSimpleName()));
+
+        Timer total = registry.find(CrawlerJobMetrics.STAGE_TIMER)
+            .tags("source", dcatSource.getId(), "stage", CrawlerJobMetrics.TOTAL).timer();
+        assertThat(total.count(), is(1L));
+    }
+
+    @Test
+    public void testSlowValidationRulesAreReportedInHarvestResult() throws Throwable {
+        ClassPathResource resource = new ClassPathResource("datasett-mini.ttl");
+        DcatSource dcatSource = new DcatSource("http//dcat.difi.no/test", "Test", resource.getURL().toString(), "tester", "123456789");
+        AdminDataStore adminDataStore = mock(AdminDataStore.class);
+        ValidationProfiler validationProfiler = new ValidationProfiler();
+
+        CrawlerJob job = new CrawlerJob(dcatSource, adminDataStore, null, mock(FusekiResultHandler.class));
+        job.testMode();
+        job.setValidationProfiler(validationProfiler, -1);
+        job.run();
+
+        ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
+        verify(adminDataStore).addCrawlResults(eq(dcatSource), any(), message.capture());
+        assertThat(message.getValue(), containsString("Slow validation rules (over -1 ms): "));
+        assertThat(validationProfiler.getRules(dcatSource.getId()).size(), is(job.getValidationProfile().getRules().size()));
+    }
+
+    @Test
+    public void testDiskBackedJobGivesSameResultAsInMemory() throws Throwable {
+        ClassPathResource resource = new ClassPathResource("dataset-test.ttl");
+        DcatSource dcatSource = new DcatSource("http//dcat.difi.no/test", "Test", resource.getURL().toString(), "tester", "123456789");
+        List<Model> processed = new ArrayList<>();
+        CrawlerResultHandler handler = (source, model, validationResults) -> processed.add(ModelFactory.createDefaultModel().add(model));
+
+        CrawlerJob inMemory = new CrawlerJob(dcatSource, mock(AdminDataStore.class), null, handler);
+        inMemory.testMode();
+        inMemory.setOrganizationCache(new OrganizationCache());
+        inMemory.run();
+
+        CrawlerJob onDisk = new CrawlerJob(dcatSource, mock(AdminDataStore.class), null, handler);
+        onDisk.testMode();
+        onDisk.setOrganizationCache(new OrganizationCache());
+        onDisk.setDiskBackedStore(storeDirectory.getRoot().toPath(), 100);
+        onDisk.run();
+
+        assertThat(onDisk.getMetrics().getCount(CrawlerJobMetrics.DISK_BACKED), is(1L));
+        assertThat(onDisk.getMetrics().getCount(CrawlerJobMetrics.DATASETS), is(90L));
+        // the order of the validation messages follows the storage
+        assertThat(new HashSet<>(onDisk.getValidationResult()), is(new HashSet<>(inMemory.getValidationResult())));
+        assertThat(processed.size(), is(2));
+        // without access to Enhetsregisteret the fallback organization path depends on the order publishers are visited in
+        processed.forEach(model -> model.removeAll(null, DCATNO.organizationPath, null));
+        assertThat(processed.get(1).isIsomorphicWith(processed.get(0)), is(true));
+        assertThat(storeDirectory.getRoot().listFiles().length, is(0));
+    }
+
+    @Test(expected = RiotException.class)
+    public void testCrawlingJsonLdWithSpaceInUri() throws Throwable {
+        ClassPathResource resource = new ClassPathResource("space-in-uri.jsonld");
+
+        SerializationCheck.verify(FileManager.get().loadModel(resource.getFile().getCanonicalPath()));
+
+    }
+
+    @Test(expected = BadURIException.class)
+    public void testCrawlingXmlRdfWithSpecialCharacterInUri() throws IOException {
+        ClassPathResource resource = new ClassPathResource("dcat-11.xml");
 
-        job.verifyModelByParsing(FileManager.get().loadModel(resource.getFile().getCanonicalPath()));
+        SerializationCheck.verify(FileManager.get().loadModel(resource.getFile().getCanonicalPath()));
 
     }
 
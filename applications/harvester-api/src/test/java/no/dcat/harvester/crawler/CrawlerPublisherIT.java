@@ -4,6 +4,7 @@ import no.dcat.harvester.HarvesterApplication;
 import no.dcat.datastore.domain.dcat.Publisher;
 import no.dcat.datastore.domain.dcat.builders.PublisherBuilder;
 import no.dcat.shared.testcategories.IntegrationTest;
+import no.dcat.harvester.service.OrganizationCache;
 import org.apache.jena.rdf.model.Model;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
@@ -33,8 +34,9 @@ public class CrawlerPublisherIT {
         Resource r = new ClassPathResource("organizations.ttl");
 
         // Crawler brregAgentConverter should generate organization paths in model
-        Model model = new CrawlerJob(null,null, null)
-                .loadModelAndValidate(r.getURL());
+        CrawlerJob job = new CrawlerJob(null,null, null);
+        job.setOrganizationCache(new OrganizationCache());
+        Model model = job.loadModelAndValidate(r.getURL());
 
         //model.write(System.out, "TURTLE");
 
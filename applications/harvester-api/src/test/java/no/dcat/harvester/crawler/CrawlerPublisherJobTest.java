@@ -3,6 +3,7 @@ package no.dcat.harvester.crawler;
 
 import no.dcat.harvester.HarvesterApplication;
 import no.dcat.datastore.domain.DcatSource;
+import no.dcat.harvester.service.OrganizationCache;
 import no.dcat.shared.testcategories.UnitTest;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
@@ -33,7 +34,7 @@ public class CrawlerPublisherJobTest {
         URL url = getClass().getClassLoader().getResource("datasett-mini.ttl");
         DcatSource dcatSource = new DcatSource("http//dcat.no/test", "Test", url.toString(), "admin_user", "123456789");
 
-        CrawlerPublisherJob j = new CrawlerPublisherJob(dcatSource, null, handler);
+        CrawlerPublisherJob j = new CrawlerPublisherJob(dcatSource, null, new OrganizationCache(), handler);
 
         j.run();
 
@@ -0,0 +1,178 @@
+package no.dcat.harvester.crawler;
+
+import no.dcat.harvester.settings.CrawlerSettings;
+import no.dcat.shared.testcategories.UnitTest;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+@Category(UnitTest.class)
+public class CrawlerTest {
+
+    private Crawler crawler;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final Map<String, AtomicInteger> runs = new ConcurrentHashMap<>();
+    private final Map<String, Throwable> errors = new ConcurrentHashMap<>();
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private Crawler crawler(int threadPoolSize, int maxQueuedJobs, long jobTimeoutMinutes) {
+        CrawlerSettings crawlerSettings = new CrawlerSettings();
+        crawlerSettings.setThreadPoolSize(threadPoolSize);
+        crawlerSettings.setMaxQueuedJobs(maxQueuedJobs);
+        crawlerSettings.setJobTimeoutMinutes(jobTimeoutMinutes);
+        crawler = new Crawler(crawlerSettings);
+        crawler.initialize();
+        return crawler;
+    }
+
+    @After
+    public void shutdown() {
+        release.countDown();
+        crawler.shutdown();
+    }
+
+    private Runnable blockingJob(String id) {
+        return () -> {
+            runs.computeIfAbsent(id, key -> new AtomicInteger()).incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new CancellationException("interrupted");
+            }
+        };
+    }
+
+    private Future<?> submit(String id) {
+        return crawler.execute(id, blockingJob(id), (duration, error) -> {
+            if (error != null) {
+                errors.put(id, error);
+            }
+            done.countDown();
+        });
+    }
+
+    private void awaitState(String id, Crawler.State state) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (System.currentTimeMillis() < deadline) {
+            if (crawler.getJobs().stream().anyMatch(job -> job.getId().equals(id) && job.getState() == state)) {
+                return;
+            }
+            Thread.sleep(5);
+        }
+        throw new AssertionError(id + " did not get state " + state);
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (!crawler.isIdle() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(crawler.isIdle(), is(true));
+    }
+
+    @Test
+    public void sourceThatIsQueuedOrRunningIsNotQueuedAgain() throws Exception {
+        crawler(1, 10, 0);
+
+        Future<?> first = submit("a");
+        awaitState("a", Crawler.State.RUNNING);
+        Future<?> second = submit("a");
+        submit("b");
+        Future<?> third = submit("b");
+
+        assertThat(second, sameInstance(first));
+        assertThat(crawler.getJobs().size(), is(2));
+        assertThat(crawler.getJobs().get(1).getState(), is(Crawler.State.QUEUED));
+
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        third.get(5, TimeUnit.SECONDS);
+        awaitIdle();
+
+        assertThat(runs.get("a").get(), is(1));
+        assertThat(runs.get("b").get(), is(1));
+    }
+
+    @Test
+    public void fullQueueRejectsJobs() throws Exception {
+        crawler(1, 1, 0);
+
+        submit("a");
+        awaitState("a", Crawler.State.RUNNING);
+        submit("b");
+
+        try {
+            submit("c");
+            throw new AssertionError("expected the job to be rejected");
+        } catch (RejectedExecutionException e) {
+            assertThat(crawler.getJobs().size(), is(2));
+        }
+    }
+
+    @Test
+    public void queuedJobCanBeCancelled() throws Exception {
+        crawler(1, 10, 0);
+
+        submit("a");
+        awaitState("a", Crawler.State.RUNNING);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        crawler.execute("b", blockingJob("b"), (duration, error) -> {
+            errors.put("b", error);
+            cancelled.countDown();
+        });
+
+        assertThat(crawler.cancel("b"), is(true));
+        assertThat(cancelled.await(5, TimeUnit.SECONDS), is(true));
+
+        assertThat(errors.get("b"), instanceOf(CancellationException.class));
+        assertThat(crawler.getJobs().size(), is(1));
+        assertThat(runs.get("b"), nullValue());
+        assertThat(crawler.cancel("b"), is(false));
+    }
+
+    @Test
+    public void runningJobIsInterruptedAndReleasedWhenItStops() throws Exception {
+        crawler(1, 10, 0);
+
+        submit("a");
+        awaitState("a", Crawler.State.RUNNING);
+
+        assertThat(crawler.cancel("a"), is(true));
+        assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+        awaitIdle();
+
+        assertThat(errors.get("a"), instanceOf(CancellationException.class));
+        assertThat(crawler.getJobs().isEmpty(), is(true));
+    }
+
+    @Test
+    public void jobsThatRunTooLongAreCancelled() throws Exception {
+        crawler(1, 10, 0);
+        crawler.setJobTimeout(Duration.ofMillis(50));
+
+        submit("a");
+
+        assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+        awaitIdle();
+        assertThat(errors.get("a"), instanceOf(CancellationException.class));
+        assertThat(errors.get("a").getMessage(), startsWith("Timed out"));
+    }
+}
@@ -0,0 +1,132 @@
+package no.dcat.harvester.crawler;
+
+import no.dcat.datastore.domain.dcat.vocabulary.DCAT;
+import no.dcat.shared.testcategories.LoadTest;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.DCTerms;
+import org.apache.jena.vocabulary.RDF;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Compares lookups on the union chain previously built by CrawlerJob with lookups on the flat model
+ * built by {@link HarvestStore}, for sources with the same datasets spread over an increasing number
+ * of named graphs.
+ *
+ * Run with: mvn test -P load-test -Dtest=FlatModelBenchmark
+ */
+@Category(LoadTest.class)
+public class FlatModelBenchmark {
+    private static Logger logger = LoggerFactory.getLogger(FlatModelBenchmark.class);
+
+    private static final int DATASETS = 500;
+    private static final int ITERATIONS = 10;
+
+    @Test
+    public void lookupCostDoesNotGrowWithNamedGraphs() {
+        double flatBaseline = 0;
+        double flatWorst = 0;
+
+        for (int namedGraphs : new int[]{1, 4, 8, 12, 16}) {
+            Dataset dataset = createDataset(namedGraphs);
+
+            Model union = createUnionChain(dataset);
+            Model flat = createFlatModel(dataset);
+            // both models get a write layer in CrawlerJob, give them the same contents
+            union.add(union.createResource("http://example.org/catalog"), DCTerms.title, "Catalog", "nb");
+            flat.add(flat.createResource("http://example.org/catalog"), DCTerms.title, "Catalog", "nb");
+
+            assertThat(flat.size(), is(union.size()));
+
+            double unionMillis = timeLookups(union);
+            double flatMillis = timeLookups(flat);
+
+            logger.info("{} named graphs: union chain {} ms, flat model {} ms per lookup pass",
+                namedGraphs, String.format("%.2f", unionMillis), String.format("%.2f", flatMillis));
+
+            if (namedGraphs == 1) {
+                flatBaseline = flatMillis;
+            }
+            flatWorst = Math.max(flatWorst, flatMillis);
+        }
+
+        // generous bound, the flat model should be roughly constant while the cost of the union chain grows
+        // much faster than the number of graphs
+        assertThat(flatWorst, lessThan(Math.max(flatBaseline, 1.0) * 5));
+    }
+
+    private Dataset createDataset(int namedGraphs) {
+        Dataset dataset = DatasetFactory.create();
+        Resource catalog = dataset.getDefaultModel().createResource("http://example.org/catalog");
+        catalog.addProperty(RDF.type, DCAT.Catalog);
+
+        for (int i = 0; i < DATASETS; i++) {
+            Model graph = dataset.getNamedModel("http://example.org/graph/" + (i % namedGraphs));
+            Resource datasetResource = graph.createResource("http://example.org/dataset/" + i);
+            datasetResource.addProperty(RDF.type, DCAT.Dataset);
+            datasetResource.addProperty(DCTerms.title, "Dataset " + i, "nb");
+            graph.add(catalog, DCAT.dataset, datasetResource);
+        }
+
+        return dataset;
+    }
+
+    /**
+     * The loading strategy CrawlerJob used before HarvestStore.
+     */
+    private Model createUnionChain(Dataset dataset) {
+        Model union = ModelFactory.createUnion(ModelFactory.createDefaultModel(), dataset.getDefaultModel());
+        Iterator<String> names = dataset.listNames();
+        while (names.hasNext()) {
+            union = ModelFactory.createUnion(union, dataset.getNamedModel(names.next()));
+        }
+        return union;
+    }
+
+    private Model createFlatModel(Dataset dataset) {
+        Model flat = ModelFactory.createDefaultModel();
+        dataset.asDatasetGraph().find().forEachRemaining(quad -> flat.getGraph().add(quad.asTriple()));
+        return HarvestStore.withWriteLayer(flat);
+    }
+
+    private double timeLookups(Model model) {
+        Graph graph = model.getGraph();
+        long checksum = 0;
+
+        // warm up
+        checksum += lookupPass(model);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            checksum += lookupPass(model);
+        }
+        long took = System.nanoTime() - start;
+
+        logger.debug("checksum {} for {}", checksum, graph.getClass().getSimpleName());
+        return took / 1_000_000.0 / ITERATIONS;
+    }
+
+    private long lookupPass(Model model) {
+        long count = 0;
+        // the typical access pattern of the enrichers, validators and DcatReader
+        for (int i = 0; i < 50; i++) {
+            Resource dataset = model.getResource("http://example.org/dataset/" + (i * 7 % DATASETS));
+            count += model.listStatements(dataset, DCTerms.title, (String) null).toList().size();
+        }
+        count += model.listResourcesWithProperty(RDF.type, DCAT.Catalog).toList().size();
+        return count;
+    }
+}
@@ -0,0 +1,190 @@
+package no.dcat.harvester.crawler;
+
+import no.dcat.datastore.domain.DcatSource;
+import no.dcat.harvester.settings.CrawlerSettings;
+import no.dcat.shared.testcategories.UnitTest;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@Category(UnitTest.class)
+public class HarvestSchedulerTest {
+
+    private Crawler crawler;
+    private CrawlerJobFactory crawlerJobFactory;
+    private CrawlerSettings crawlerSettings;
+
+    @Rule
+    public TemporaryFolder cacheDirectory = new TemporaryFolder();
+
+    private final AtomicInteger runningTotal = new AtomicInteger();
+    private final AtomicInteger maxRunningTotal = new AtomicInteger();
+    private final Map<String, AtomicInteger> runningPerHost = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> maxRunningPerHost = new ConcurrentHashMap<>();
+    private final List<String> startOrder = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setup() {
+        crawlerSettings = new CrawlerSettings();
+        crawlerSettings.setThreadPoolSize(4);
+        crawlerSettings.setMaxConcurrentHarvestsPerHost(1);
+        crawlerSettings.setFetchCacheDirectory(cacheDirectory.getRoot().getPath());
+
+        crawler = new Crawler();
+        crawler.initialize();
+
+        crawlerJobFactory = mock(CrawlerJobFactory.class);
+        when(crawlerJobFactory.createCrawlerJob(any(DcatSource.class))).thenAnswer(invocation -> {
+            DcatSource dcatSource = (DcatSource) invocation.getArguments()[0];
+            CrawlerJob job = mock(CrawlerJob.class);
+            doAnswer(run -> {
+                simulateHarvest(dcatSource);
+                return null;
+            }).when(job).run();
+            return job;
+        });
+    }
+
+    private void simulateHarvest(DcatSource dcatSource) throws InterruptedException {
+        String host = HarvestScheduler.getHost(dcatSource);
+        startOrder.add(dcatSource.getId());
+
+        int total = runningTotal.incrementAndGet();
+        maxRunningTotal.accumulateAndGet(total, Math::max);
+        int perHost = runningPerHost.computeIfAbsent(host, key -> new AtomicInteger()).incrementAndGet();
+        maxRunningPerHost.computeIfAbsent(host, key -> new AtomicInteger()).accumulateAndGet(perHost, Math::max);
+
+        Thread.sleep(Integer.parseInt(dcatSource.getDescription()));
+
+        runningPerHost.get(host).decrementAndGet();
+        runningTotal.decrementAndGet();
+
+        if (dcatSource.getId().startsWith("fail")) {
+            throw new IllegalStateException("harvest failed");
+        }
+    }
+
+    private DcatSource source(String id, String host, int millis) {
+        return new DcatSource(id, String.valueOf(millis), "http://" + host + "/" + id + ".ttl", "tester", "123456789");
+    }
+
+    private void awaitCompletion(HarvestScheduler scheduler) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (scheduler.isRunning() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(scheduler.isRunning(), is(false));
+    }
+
+    @Test
+    public void harvestsRespectGlobalAndPerHostLimits() throws Exception {
+        HarvestScheduler scheduler = new HarvestScheduler(crawler, crawlerJobFactory, crawlerSettings);
+
+        List<DcatSource> sources = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            sources.add(source("a" + i, "host-a", 20));
+            sources.add(source("b" + i, "host-b", 20));
+            sources.add(source("c" + i, "host-c" + i, 20));
+        }
+
+        assertThat(scheduler.harvestAll(sources), is(true));
+        awaitCompletion(scheduler);
+
+        HarvestScheduler.HarvestStatus status = scheduler.getStatus();
+        assertThat(status.getCompleted(), is(18));
+        assertThat(status.getFailed(), is(0));
+        assertThat(status.getFinished() != null, is(true));
+
+        assertThat(maxRunningTotal.get(), lessThanOrEqualTo(4));
+        assertThat(maxRunningPerHost.get("host-a").get(), is(1));
+        assertThat(maxRunningPerHost.get("host-b").get(), is(1));
+    }
+
+    @Test
+    public void longestRunningSourcesAreStartedFirst() throws Exception {
+        crawlerSettings.setThreadPoolSize(1);
+        HarvestScheduler scheduler = new HarvestScheduler(crawler, crawlerJobFactory, crawlerSettings);
+
+        List<DcatSource> sources = Arrays.asList(
+            source("fast", "host-a", 1),
+            source("slow", "host-b", 60),
+            source("medium", "host-c", 30));
+
+        scheduler.harvestAll(sources);
+        awaitCompletion(scheduler);
+        startOrder.clear();
+
+        scheduler.harvestAll(sources);
+        awaitCompletion(scheduler);
+
+        assertThat(startOrder, contains("slow", "medium", "fast"));
+    }
+
+    @Test
+    public void durationsAreKeptAcrossRestarts() throws Exception {
+        crawlerSettings.setThreadPoolSize(1);
+        List<DcatSource> sources = Arrays.asList(
+            source("fast", "host-a", 1),
+            source("slow", "host-b", 60),
+            source("medium", "host-c", 30));
+
+        HarvestScheduler scheduler = new HarvestScheduler(crawler, crawlerJobFactory, crawlerSettings);
+        scheduler.harvestAll(sources);
+        awaitCompletion(scheduler);
+        startOrder.clear();
+
+        HarvestScheduler restarted = new HarvestScheduler(crawler, crawlerJobFactory, crawlerSettings);
+        assertThat(restarted.getExpectedDuration(sources.get(1)), is(scheduler.getExpectedDuration(sources.get(1))));
+
+        restarted.harvestAll(sources);
+        awaitCompletion(restarted);
+
+        assertThat(startOrder, contains("slow", "medium", "fast"));
+    }
+
+    @Test
+    public void secondHarvestAllIsRejectedWhileRunning() throws Exception {
+        HarvestScheduler scheduler = new HarvestScheduler(crawler, crawlerJobFactory, crawlerSettings);
+
+        List<DcatSource> sources = Collections.singletonList(source("a", "host-a", 500));
+        assertThat(scheduler.harvestAll(sources), is(true));
+        assertThat(scheduler.harvestAll(sources), is(false));
+
+        awaitCompletion(scheduler);
+        assertThat(scheduler.getStatus().getTotal(), is(1));
+    }
+
+    @Test
+    public void failedHarvestsAreReported() throws Exception {
+        HarvestScheduler scheduler = new HarvestScheduler(crawler, crawlerJobFactory, crawlerSettings);
+
+        scheduler.harvestAll(Arrays.asList(source("ok", "host-a", 1), source("fail", "host-b", 1)));
+        awaitCompletion(scheduler);
+
+        HarvestScheduler.HarvestStatus status = scheduler.getStatus();
+        assertThat(status.getCompleted(), is(2));
+        assertThat(status.getFailed(), is(1));
+        assertThat(status.getPending(), is(0));
+        assertThat(status.getRunningSources().isEmpty(), is(true));
+    }
+}
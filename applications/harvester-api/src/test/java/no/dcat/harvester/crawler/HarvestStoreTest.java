@@ -0,0 +1,135 @@
+package no.dcat.harvester.crawler;
+
+import no.dcat.datastore.domain.dcat.vocabulary.DCAT;
+import no.dcat.shared.testcategories.UnitTest;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.ResIterator;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.vocabulary.DCTerms;
+import org.apache.jena.vocabulary.RDF;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.function.UnaryOperator;
+
+import static org.hamcrest.Matchers.arrayWithSize;
+import static org.hamcrest.Matchers.emptyArray;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@Category(UnitTest.class)
+public class HarvestStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private String uri(String resource) throws Exception {
+        return new ClassPathResource(resource).getURL().toString();
+    }
+
+    private HarvestStore store(long tripleThreshold) {
+        return new HarvestStore(temporaryFolder.getRoot().toPath(), tripleThreshold);
+    }
+
+    /**
+     * The triples of the default graph and all named graphs, read through a dataset.
+     */
+    private static Model allGraphs(String uri) {
+        Model model = ModelFactory.createDefaultModel();
+        RDFDataMgr.loadDatasetGraph(uri).find().forEachRemaining(quad -> model.getGraph().add(quad.asTriple()));
+        return model;
+    }
+
+    @Test
+    public void namedGraphsAreMergedIntoOneModelWithoutDuplicates() throws Exception {
+        String trig =
+            "@prefix dcat: <http://www.w3.org/ns/dcat#> .\n" +
+            "<http://example.org/catalog> a dcat:Catalog ; dcat:dataset <http://example.org/dataset/1> .\n" +
+            "<http://example.org/g1> { <http://example.org/dataset/1> a dcat:Dataset . }\n" +
+            "<http://example.org/g2> { <http://example.org/dataset/1> a dcat:Dataset . <http://example.org/dataset/2> a dcat:Dataset . }\n";
+
+        File file = temporaryFolder.newFile("catalog.trig");
+        Files.write(file.toPath(), trig.getBytes(StandardCharsets.UTF_8));
+
+        try (HarvestStore store = HarvestStore.inMemory()) {
+            Model model = store.load(file.toURI().toString(), UnaryOperator.identity());
+
+            assertThat(model.size(), is(4L));
+            assertThat(model.listResourcesWithProperty(RDF.type, DCAT.Dataset).toList().size(), is(2));
+            assertThat(model.listResourcesWithProperty(RDF.type, DCAT.Catalog).toList().size(), is(1));
+        }
+    }
+
+    @Test
+    public void smallSourceStaysInMemory() throws Exception {
+        try (HarvestStore store = store(1_000_000)) {
+            Model loaded = store.load(uri("dataset-test.ttl"), UnaryOperator.identity());
+
+            assertThat(store.isOnDisk(), is(false));
+            assertThat(loaded.isIsomorphicWith(allGraphs(uri("dataset-test.ttl"))), is(true));
+            assertThat(temporaryFolder.getRoot().listFiles(), emptyArray());
+        }
+    }
+
+    @Test
+    public void largeSourceIsMovedToDiskWithAllTriples() throws Exception {
+        try (HarvestStore store = store(10)) {
+            Model loaded = store.load(uri("dataset-test.ttl"), UnaryOperator.identity());
+
+            assertThat(store.isOnDisk(), is(true));
+            assertThat(loaded.isIsomorphicWith(allGraphs(uri("dataset-test.ttl"))), is(true));
+            assertThat(temporaryFolder.getRoot().listFiles(), arrayWithSize(1));
+        }
+    }
+
+    @Test
+    public void namedGraphsAreFlattenedOnDisk() throws Exception {
+        try (HarvestStore store = store(0)) {
+            Model loaded = store.load(uri("npolar.jsonld"), UnaryOperator.identity());
+
+            assertThat(store.isOnDisk(), is(true));
+            assertThat(loaded.isIsomorphicWith(allGraphs(uri("npolar.jsonld"))), is(true));
+        }
+    }
+
+    @Test
+    public void additionsWhileIteratingGoToWriteLayer() throws Exception {
+        try (HarvestStore store = store(0)) {
+            Model loaded = store.load(uri("dataset-test.ttl"), UnaryOperator.identity());
+            long loadedSize = loaded.size();
+            Model union = store.withWriteLayer();
+
+            int added = 0;
+            ResIterator subjects = union.listSubjectsWithProperty(RDF.type);
+            while (subjects.hasNext()) {
+                Resource subject = subjects.next();
+                subject.addProperty(DCTerms.identifier, "enriched");
+                added++;
+            }
+
+            assertThat(loaded.size(), is(loadedSize));
+            assertThat(union.size(), is(loadedSize + added));
+        }
+    }
+
+    @Test
+    public void closeDeletesTheStore() throws Exception {
+        HarvestStore store = store(0);
+        store.load(uri("dataset-test.ttl"), UnaryOperator.identity());
+        store.withWriteLayer();
+        File[] stores = temporaryFolder.getRoot().listFiles();
+
+        store.close();
+
+        assertThat(stores, arrayWithSize(1));
+        assertThat(stores[0].exists(), is(false));
+    }
+}
@@ -0,0 +1,183 @@
+package no.dcat.harvester.crawler;
+
+import no.dcat.shared.testcategories.UnitTest;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.shared.JenaException;
+import org.apache.jena.vocabulary.DCTerms;
+import org.apache.jena.vocabulary.RDF;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.springframework.core.io.ClassPathResource;
+
+import java.util.function.UnaryOperator;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+/**
+ * The check must report the same errors as writing the whole model as Turtle and RDF/XML and parsing it again.
+ */
+@Category(UnitTest.class)
+public class SerializationCheckTest {
+
+    private static RuntimeException writeAndParseWholeModel(Model model) {
+        try {
+            SerializationCheck.writeAndParse(model, RDFLanguages.strLangTurtle, Lang.TTL);
+            SerializationCheck.writeAndParse(model, RDFLanguages.strLangRDFXML, Lang.RDFXML);
+            return null;
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    private static RuntimeException checkWhileParsing(String uri) {
+        SerializationCheck check = new SerializationCheck();
+        HarvestStore.inMemory().load(uri, check::checking);
+        try {
+            check.throwIfInvalid();
+            return null;
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    private static RuntimeException checkModel(Model model) {
+        try {
+            SerializationCheck.verify(model);
+            return null;
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    private static RuntimeException checkModelInBatches(Model model, int batchSize) {
+        SerializationCheck check = new SerializationCheck(batchSize);
+        model.getGraph().find().forEachRemaining(check::check);
+        try {
+            check.throwIfInvalid();
+            return null;
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    private static void assertSameError(RuntimeException expected, RuntimeException actual) {
+        if (expected == null) {
+            assertThat(actual, nullValue());
+        } else {
+            assertThat(actual.getClass().getName(), is(expected.getClass().getName()));
+            assertThat(withoutPosition(actual), is(withoutPosition(expected)));
+        }
+    }
+
+    private static String withoutPosition(RuntimeException e) {
+        return e instanceof JenaException ? CrawlerJob.formatJenaException((JenaException) e) : e.getMessage();
+    }
+
+    private void assertSameErrorForResource(String resource) throws Exception {
+        String uri = new ClassPathResource(resource).getURL().toString();
+
+        RuntimeException expected = writeAndParseWholeModel(HarvestStore.inMemory().load(uri, UnaryOperator.identity()));
+
+        assertSameError(expected, checkWhileParsing(uri));
+    }
+
+    @Test
+    public void validSourcesPass() throws Exception {
+        assertSameErrorForResource("dataset-test.ttl");
+        assertSameErrorForResource("brreg.jsonld");
+        assertSameErrorForResource("npolar.jsonld");
+
+        assertThat(checkWhileParsing(new ClassPathResource("dataset-test.ttl").getURL().toString()), nullValue());
+    }
+
+    @Test
+    public void spaceInUriGivesSameKindOfError() throws Exception {
+        String uri = new ClassPathResource("space-in-uri.jsonld").getURL().toString();
+
+        RuntimeException expected = writeAndParseWholeModel(HarvestStore.inMemory().load(uri, UnaryOperator.identity()));
+        RuntimeException actual = checkWhileParsing(uri);
+
+        // the source has several IRIs with spaces, the writer and the parser may meet a different one first
+        assertThat(actual.getClass().getName(), is(expected.getClass().getName()));
+        assertThat(withoutPosition(actual), startsWith("Bad character in IRI (space)"));
+        assertThat(withoutPosition(expected), startsWith("Bad character in IRI (space)"));
+    }
+
+    @Test
+    public void specialCharacterInUriGivesSameError() throws Exception {
+        Model model = ModelFactory.createDefaultModel();
+        model.read(new ClassPathResource("dcat-11.xml").getInputStream(), null, "RDF/XML");
+
+        RuntimeException expected = writeAndParseWholeModel(model);
+
+        assertThat(expected != null, is(true));
+        assertSameError(expected, checkModel(model));
+    }
+
+    @Test
+    public void badLanguageTagGivesSameError() {
+        Model model = ModelFactory.createDefaultModel();
+        Resource dataset = model.createResource("http://example.org/dataset/1");
+        dataset.addProperty(RDF.type, model.createResource("http://www.w3.org/ns/dcat#Dataset"));
+        dataset.addProperty(DCTerms.title, "Tittel", "nb_NO");
+
+        RuntimeException expected = writeAndParseWholeModel(model);
+
+        assertThat(expected != null, is(true));
+        assertSameError(expected, checkModel(model));
+    }
+
+    @Test
+    public void controlCharacterInLiteralGivesSameError() {
+        Model model = ModelFactory.createDefaultModel();
+        model.createResource("http://example.org/dataset/1").addProperty(DCTerms.description, "Beskrivelse\u0001");
+
+        RuntimeException expected = writeAndParseWholeModel(model);
+
+        assertThat(expected != null, is(true));
+        assertSameError(expected, checkModel(model));
+    }
+
+    @Test
+    public void propertyWithoutLocalNameGivesSameError() {
+        Model model = ModelFactory.createDefaultModel();
+        model.createResource("http://example.org/dataset/1").addProperty(model.createProperty("http://example.org/123"), "x");
+
+        RuntimeException expected = writeAndParseWholeModel(model);
+
+        assertThat(expected != null, is(true));
+        assertSameError(expected, checkModel(model));
+    }
+
+    @Test
+    public void turtleErrorIsReportedBeforeRdfXmlError() {
+        Model model = ModelFactory.createDefaultModel();
+        model.createResource("http://example.org/dataset/1").addProperty(model.createProperty("http://example.org/123"), "x");
+        model.createResource("http://example.org/data set/2").addProperty(DCTerms.title, "y");
+
+        assertSameError(writeAndParseWholeModel(model), checkModel(model));
+    }
+
+    @Test
+    public void errorsInEveryBatchAreFound() {
+        Model model = ModelFactory.createDefaultModel();
+        for (int i = 0; i < 10; i++) {
+            model.createResource("http://example.org/dataset/" + i).addProperty(DCTerms.title, "Tittel " + i);
+        }
+        model.createResource("http://example.org/dataset/10").addProperty(model.createProperty("http://example.org/123"), "x");
+
+        RuntimeException expected = writeAndParseWholeModel(model);
+
+        assertThat(expected != null, is(true));
+        assertSameError(expected, checkModelInBatches(model, 1));
+        assertSameError(expected, checkModelInBatches(model, 3));
+        assertSameError(null, checkModelInBatches(ModelFactory.createDefaultModel(), 3));
+    }
+}
@@ -0,0 +1,137 @@
+package no.dcat.harvester.crawler.handlers;
+
+import no.dcat.datastore.domain.dcat.vocabulary.DCAT;
+import no.dcat.shared.SkosCode;
+import no.dcat.shared.testcategories.UnitTest;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.util.FileManager;
+import org.apache.jena.vocabulary.DCTerms;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.SKOS;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+@Category(UnitTest.class)
+public class DatasetFingerprintTest {
+
+    private static final String CATALOG = "http://brreg.no/catalogs/910244132";
+    private static final String DATASET_WITH_DISTRIBUTION = "http://brreg.no/catalogs/910244132/datasets/20b77e30-59a0-4410-8e92-55536234cf5b";
+    private static final String OTHER_DATASET = "http://brreg.no/catalogs/910244132/datasets/2b33a21e-3da0-4bb8-bf71-03b2602b9e6f";
+
+    private Map<String, String> fingerprints(Model model) {
+        DatasetFingerprint fingerprint = new DatasetFingerprint();
+        Resource catalog = model.getResource(CATALOG);
+
+        Map<String, String> result = new HashMap<>();
+        catalog.listProperties(DCAT.dataset).forEachRemaining(statement ->
+            result.put(statement.getResource().getURI(), fingerprint.of(statement.getResource(), catalog, Collections.emptyList())));
+        return result;
+    }
+
+    @Test
+    public void sameDataGivesSameFingerprints() {
+        Map<String, String> first = fingerprints(FileManager.get().loadModel("ramsund.ttl"));
+        Map<String, String> second = fingerprints(FileManager.get().loadModel("ramsund.ttl"));
+
+        assertThat(first.size(), is(4));
+        assertThat(second, is(first));
+    }
+
+    @Test
+    public void changeInDistributionChangesOnlyItsDataset() {
+        Model model = FileManager.get().loadModel("ramsund.ttl");
+        Map<String, String> before = fingerprints(model);
+
+        Resource distribution = model.getResource(DATASET_WITH_DISTRIBUTION).getPropertyResourceValue(DCAT.distribution);
+        distribution.removeAll(DCTerms.description).addProperty(DCTerms.description, "Ny beskrivelse", "nb");
+        Map<String, String> after = fingerprints(model);
+
+        assertThat(after.get(DATASET_WITH_DISTRIBUTION), not(before.get(DATASET_WITH_DISTRIBUTION)));
+        assertThat(after.get(OTHER_DATASET), is(before.get(OTHER_DATASET)));
+    }
+
+    @Test
+    public void changeInBlankNodeChangesFingerprint() {
+        Model model = FileManager.get().loadModel("ramsund.ttl");
+        Map<String, String> before = fingerprints(model);
+
+        Resource legalBasis = model.getResource(DATASET_WITH_DISTRIBUTION)
+            .getPropertyResourceValue(model.createProperty("http://difi.no/dcatno#legalBasisForAccess"));
+        legalBasis.removeAll(SKOS.prefLabel).addProperty(SKOS.prefLabel, "Offentleglova §4", "nb");
+
+        assertThat(fingerprints(model).get(DATASET_WITH_DISTRIBUTION), not(before.get(DATASET_WITH_DISTRIBUTION)));
+    }
+
+    @Test
+    public void changeInCatalogChangesAllDatasetsButNewDatasetDoesNot() {
+        Model model = FileManager.get().loadModel("ramsund.ttl");
+        Map<String, String> before = fingerprints(model);
+
+        Resource newDataset = model.createResource("http://brreg.no/catalogs/910244132/datasets/new")
+            .addProperty(RDF.type, DCAT.Dataset);
+        model.getResource(CATALOG).addProperty(DCAT.dataset, newDataset);
+        Map<String, String> afterNewDataset = fingerprints(model);
+
+        Statement title = model.getResource(CATALOG).getProperty(DCTerms.title);
+        model.remove(title);
+        model.getResource(CATALOG).addProperty(DCTerms.title, "Ny tittel", "nb");
+        Map<String, String> afterNewTitle = fingerprints(model);
+
+        assertThat(afterNewDataset.get(OTHER_DATASET), is(before.get(OTHER_DATASET)));
+        assertThat(afterNewTitle.get(OTHER_DATASET), not(before.get(OTHER_DATASET)));
+    }
+
+    @Test
+    public void validationMessagesArePartOfFingerprint() {
+        Model model = FileManager.get().loadModel("ramsund.ttl");
+        Resource dataset = model.getResource(OTHER_DATASET);
+        Resource catalog = model.getResource(CATALOG);
+
+        String withoutMessages = new DatasetFingerprint().of(dataset, catalog, Collections.emptyList());
+        String withMessage = new DatasetFingerprint().of(dataset, catalog, Collections.singletonList("[validation_warning] dct:title"));
+
+        assertThat(withMessage, not(withoutMessages));
+    }
+
+    private static Map<String, Map<String, SkosCode>> codes(String type, String uri, String label) {
+        Map<String, SkosCode> codesOfType = new HashMap<>();
+        codesOfType.put(uri, new SkosCode(uri, uri, Collections.singletonMap("nb", label)));
+        return Collections.singletonMap(type, codesOfType);
+    }
+
+    @Test
+    public void labelsOfReferencedCodesArePartOfFingerprint() {
+        Model model = FileManager.get().loadModel("ramsund.ttl");
+        Resource dataset = model.getResource(OTHER_DATASET);
+        Resource catalog = model.getResource(CATALOG);
+        String location = "http://sws.geonames.org/3144096/";
+        dataset.addProperty(DCTerms.spatial, model.createResource(location));
+
+        String before = new DatasetFingerprint(codes("location", location, "Norge"), null).of(dataset, catalog, Collections.emptyList());
+
+        assertThat(new DatasetFingerprint(codes("location", location, "Norge"), null).of(dataset, catalog, Collections.emptyList()), is(before));
+        assertThat(new DatasetFingerprint(codes("location", location, "Noreg"), null).of(dataset, catalog, Collections.emptyList()), not(before));
+    }
+
+    @Test
+    public void codesThatAreNotReferencedAreNotPartOfFingerprint() {
+        Model model = FileManager.get().loadModel("ramsund.ttl");
+        Resource dataset = model.getResource(OTHER_DATASET);
+        Resource catalog = model.getResource(CATALOG);
+
+        String before = new DatasetFingerprint().of(dataset, catalog, Collections.emptyList());
+
+        assertThat(new DatasetFingerprint(codes("location", "http://sws.geonames.org/6548528/", "Bergen"), null)
+            .of(dataset, catalog, Collections.emptyList()), is(before));
+    }
+}
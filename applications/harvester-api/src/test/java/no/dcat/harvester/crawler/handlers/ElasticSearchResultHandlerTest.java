@@ -7,10 +7,14 @@ import no.dcat.datastore.DcatIndexUtils;
 import no.dcat.datastore.domain.DcatSource;
 import no.dcat.datastore.domain.dcat.builders.DcatReader;
 import no.dcat.datastore.domain.harvest.DatasetHarvestRecord;
+import no.dcat.datastore.domain.harvest.CatalogHarvestRecord;
+import no.dcat.datastore.domain.harvest.ChangeInformation;
 import no.dcat.datastore.domain.harvest.DatasetLookup;
+import no.dcat.harvester.crawler.CrawlerJobMetrics;
 import no.dcat.shared.*;
 import no.dcat.shared.testcategories.UnitTest;
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.util.FileManager;
 import org.elasticsearch.action.ActionFuture;
 import org.elasticsearch.action.ActionRequestBuilder;
@@ -19,17 +23,34 @@ import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.get.GetRequestBuilder;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetRequestBuilder;
+import org.elasticsearch.action.get.MultiGetResponse;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.MultiSearchRequestBuilder;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchAction;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.index.get.GetResult;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
+import org.mockito.ArgumentCaptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.Assert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -531,7 +552,7 @@ public class ElasticSearchResultHandlerTest {
 
         ElasticSearchResultHandler spyHandler = spy(resultHandler);
         doReturn(reader).when(spyHandler).getReader(model);
-        doReturn(null).when(spyHandler).findLookupDataset(any(), anyString(), any());
+        doReturn(new HashMap<>()).when(spyHandler).findLookupDatasets(any(), any(), any());
         doReturn(null).when(spyHandler).findLastDatasetHarvestRecordWithContent(any(), any(), any());
         doNothing().when(spyHandler).deletePreviousDatasetsNotPresentInThisHarvest(any(), any(), any(), any());
         doNothing().when(spyHandler).saveCatalogHarvestRecord(any(), any(), any(), any(), any(), any());
@@ -540,6 +561,175 @@ public class ElasticSearchResultHandlerTest {
         spyHandler.indexWithElasticsearch(dataSource, model, elasticsearch, Collections.EMPTY_LIST);
     }
 
+    @Test
+    public void unchangedDatasetsAreNotBuiltOrIndexed() {
+        String catalogUri = "http://brreg.no/catalogs/910244132";
+        String unchangedUri = "http://brreg.no/catalogs/910244132/datasets/2b33a21e-3da0-4bb8-bf71-03b2602b9e6f";
+        String changedUri = "http://brreg.no/catalogs/910244132/datasets/7fef0750-b2e8-4a2e-9d8b-33a4cf9b1b56";
+
+        Client client = mock(Client.class);
+        Elasticsearch5Client elasticsearch = mock(Elasticsearch5Client.class);
+        BulkRequestBuilder bulkRequestBuilder = mock(BulkRequestBuilder.class);
+        ListenableActionFuture listenableActionFuture = mock(ListenableActionFuture.class);
+        BulkResponse bulkResponse = mock(BulkResponse.class);
+        MultiGetRequestBuilder multiGetRequestBuilder = mock(MultiGetRequestBuilder.class);
+        MultiGetResponse multiGetResponse = mock(MultiGetResponse.class);
+        when(elasticsearch.getClient()).thenReturn(client);
+        when(client.prepareBulk()).thenReturn(bulkRequestBuilder);
+        when(bulkRequestBuilder.execute()).thenReturn(listenableActionFuture);
+        when(listenableActionFuture.actionGet()).thenReturn(bulkResponse);
+        when(client.prepareMultiGet()).thenReturn(multiGetRequestBuilder);
+        when(multiGetRequestBuilder.add(any(MultiGetRequest.Item.class))).thenReturn(multiGetRequestBuilder);
+        when(multiGetRequestBuilder.get()).thenReturn(multiGetResponse);
+        when(multiGetResponse.getResponses()).thenReturn(new MultiGetItemResponse[]{
+            new MultiGetItemResponse(new GetResponse(new GetResult(ElasticSearchResultHandler.DCAT_INDEX,
+                ElasticSearchResultHandler.DATASET_TYPE, "unchanged-id", 1, true, null, null)), null)});
+
+        Model model = FileManager.get().loadModel("ramsund.ttl");
+        Resource catalog = model.getResource(catalogUri);
+        String fingerprint = new DatasetFingerprint().of(model.getResource(unchangedUri), catalog, Collections.emptyList());
+
+        Map<String, DatasetLookup> lookups = new HashMap<>();
+        lookups.put(unchangedUri, createLookup("unchanged-id", unchangedUri, fingerprint));
+        lookups.put(changedUri, createLookup("changed-id", changedUri, "an old fingerprint"));
+
+        ElasticSearchResultHandler spyHandler = spy(resultHandler);
+        CrawlerJobMetrics metrics = new CrawlerJobMetrics();
+        spyHandler.setJobMetrics(metrics);
+        doReturn(new DcatReader(model)).when(spyHandler).getReader(model);
+        doAnswer(invocation -> {
+            Map<String, DatasetLookup> found = new HashMap<>();
+            ((Collection<String>) invocation.getArguments()[1]).forEach(uri -> found.put(uri, lookups.get(uri)));
+            return found;
+        }).when(spyHandler).findLookupDatasets(any(), any(), any());
+        doNothing().when(spyHandler).findLastDatasetHarvestRecordsWithContent(any(), any(), any());
+        doReturn(null).when(spyHandler).findLastDatasetHarvestRecordWithContent(any(), any(), any());
+        doNothing().when(spyHandler).deletePreviousDatasetsNotPresentInThisHarvest(any(), any(), any(), any());
+        doNothing().when(spyHandler).saveCatalogHarvestRecord(any(), any(), any(), any(), any(), any());
+        doNothing().when(spyHandler).waitForIndexing(any());
+
+        spyHandler.indexWithElasticsearch(mock(DcatSource.class), model, elasticsearch, Collections.emptyList());
+
+        ArgumentCaptor<Dataset> indexed = ArgumentCaptor.forClass(Dataset.class);
+        verify(spyHandler, times(3)).saveDatasetAndHarvestRecord(any(), any(), any(), any(), any(), any(), indexed.capture(), any());
+        assertThat(indexed.getAllValues().stream().anyMatch(dataset -> unchangedUri.equals(dataset.getUri())), is(false));
+
+        ArgumentCaptor<CatalogHarvestRecord> catalogRecord = ArgumentCaptor.forClass(CatalogHarvestRecord.class);
+        ArgumentCaptor<ChangeInformation> stats = ArgumentCaptor.forClass(ChangeInformation.class);
+        verify(spyHandler).deletePreviousDatasetsNotPresentInThisHarvest(any(), any(), catalogRecord.capture(), stats.capture());
+        assertThat(catalogRecord.getValue().getValidDatasetUris().size(), is(4));
+        assertThat(stats.getValue().getInserts(), is(2));
+        assertThat(stats.getValue().getUpdates(), is(1));
+        assertThat(stats.getValue().getUnchanged(), is(1));
+
+        assertThat(metrics.getCount(CrawlerJobMetrics.DATASETS_NEW), is(2L));
+        assertThat(metrics.getCount(CrawlerJobMetrics.DATASETS_CHANGED), is(1L));
+        assertThat(metrics.getCount(CrawlerJobMetrics.DATASETS_UNCHANGED), is(1L));
+
+        verify(spyHandler).saveUnchangedDatasetHarvest(any(), any(), any(), any(), eq(lookups.get(unchangedUri)));
+        assertThat(lookups.get(unchangedUri).getHarvest().getLastHarvested(), notNullValue());
+    }
+
+    @Test
+    public void lookupsAreReadWithOneMultiGetPerBatch() {
+        Client client = mock(Client.class);
+        MultiGetRequestBuilder multiGetRequestBuilder = mock(MultiGetRequestBuilder.class);
+        MultiGetResponse multiGetResponse = mock(MultiGetResponse.class);
+        AtomicInteger multiGets = new AtomicInteger();
+        List<String> requestedUris = new ArrayList<>();
+        when(client.prepareMultiGet()).thenAnswer(invocation -> {
+            multiGets.incrementAndGet();
+            requestedUris.clear();
+            return multiGetRequestBuilder;
+        });
+        when(multiGetRequestBuilder.add(any(MultiGetRequest.Item.class))).thenAnswer(invocation -> {
+            requestedUris.add(((MultiGetRequest.Item) invocation.getArguments()[0]).id());
+            return multiGetRequestBuilder;
+        });
+        when(multiGetRequestBuilder.get()).thenReturn(multiGetResponse);
+        // only the first uri has a lookup entry
+        when(multiGetResponse.getResponses()).thenAnswer(invocation -> requestedUris.stream()
+            .map(uri -> new MultiGetItemResponse(new GetResponse(new GetResult(ElasticSearchResultHandler.HARVEST_INDEX, "lookup", uri, 1,
+                uri.endsWith("/0"), uri.endsWith("/0") ? new BytesArray(datasetLookupJson) : null, null)), null))
+            .toArray(MultiGetItemResponse[]::new));
+
+        List<String> uris = new ArrayList<>();
+        for (int i = 0; i <= ElasticSearchResultHandler.LOOKUP_BATCH_SIZE; i++) {
+            uris.add("http://example.org/datasets/" + i);
+        }
+        CrawlerJobMetrics metrics = new CrawlerJobMetrics();
+        resultHandler.setJobMetrics(metrics);
+
+        Map<String, DatasetLookup> lookups = resultHandler.findLookupDatasets(client, uris, new Gson());
+
+        assertThat(multiGets.get(), is(2));
+        assertThat(lookups.size(), is(uris.size()));
+        assertThat(lookups.get("http://example.org/datasets/0").getDatasetId(), is("06ae95f8-d712-4f52-9e2f-d8a6f3250bfa"));
+        assertThat(lookups.containsKey("http://example.org/datasets/1"), is(true));
+        assertThat(lookups.get("http://example.org/datasets/1"), is(nullValue()));
+        assertThat(metrics.getCount(CrawlerJobMetrics.REMOTE_CALLS_PREFIX + CrawlerJobMetrics.HARVEST_RECORDS), is(2L));
+    }
+
+    @Test
+    public void lastHarvestRecordsOfACatalogAreFoundWithOneMultiSearch() {
+        String catalogUri = "http://brreg.no/catalogs/910244132";
+
+        Client client = mock(Client.class);
+        Elasticsearch5Client elasticsearch = mock(Elasticsearch5Client.class);
+        BulkRequestBuilder bulkRequestBuilder = mock(BulkRequestBuilder.class);
+        ListenableActionFuture listenableActionFuture = mock(ListenableActionFuture.class);
+        BulkResponse bulkResponse = mock(BulkResponse.class);
+        MultiSearchRequestBuilder multiSearchRequestBuilder = mock(MultiSearchRequestBuilder.class);
+        SearchResponse noRecords = mock(SearchResponse.class);
+        when(elasticsearch.getClient()).thenReturn(client);
+        when(client.prepareBulk()).thenReturn(bulkRequestBuilder);
+        when(bulkRequestBuilder.execute()).thenReturn(listenableActionFuture);
+        when(listenableActionFuture.actionGet()).thenReturn(bulkResponse);
+        when(client.prepareSearch(eq(ElasticSearchResultHandler.HARVEST_INDEX))).thenAnswer(invocation -> new SearchRequestBuilder(client, SearchAction.INSTANCE));
+        when(client.prepareMultiSearch()).thenReturn(multiSearchRequestBuilder);
+        when(multiSearchRequestBuilder.add(any(SearchRequestBuilder.class))).thenReturn(multiSearchRequestBuilder);
+        when(noRecords.getHits()).thenReturn(new SearchHits(new SearchHit[0], 0, 0));
+        when(multiSearchRequestBuilder.get()).thenReturn(new MultiSearchResponse(new MultiSearchResponse.Item[]{
+            new MultiSearchResponse.Item(noRecords, null), new MultiSearchResponse.Item(noRecords, null),
+            new MultiSearchResponse.Item(noRecords, null), new MultiSearchResponse.Item(noRecords, null)}));
+
+        Model model = FileManager.get().loadModel("ramsund.ttl");
+        Map<String, DatasetLookup> lookups = new HashMap<>();
+        int id = 0;
+        for (String uri : resultHandler.getDatasetsUris(model, catalogUri)) {
+            lookups.put(uri, createLookup("id-" + id++, uri, "an old fingerprint"));
+        }
+
+        ElasticSearchResultHandler spyHandler = spy(resultHandler);
+        CrawlerJobMetrics metrics = new CrawlerJobMetrics();
+        spyHandler.setJobMetrics(metrics);
+        doReturn(new DcatReader(model)).when(spyHandler).getReader(model);
+        doReturn(lookups).when(spyHandler).findLookupDatasets(any(), any(), any());
+        doNothing().when(spyHandler).deletePreviousDatasetsNotPresentInThisHarvest(any(), any(), any(), any());
+        doNothing().when(spyHandler).saveCatalogHarvestRecord(any(), any(), any(), any(), any(), any());
+        doNothing().when(spyHandler).waitForIndexing(any());
+
+        spyHandler.indexWithElasticsearch(mock(DcatSource.class), model, elasticsearch, Collections.emptyList());
+
+        verify(client, times(1)).prepareMultiSearch();
+        verify(multiSearchRequestBuilder, times(4)).add(any(SearchRequestBuilder.class));
+        assertThat(metrics.getCount(CrawlerJobMetrics.REMOTE_CALLS_PREFIX + CrawlerJobMetrics.HARVEST_RECORDS), is(1L));
+
+        // a harvest record, the dataset and the lookup entry of each dataset
+        verify(bulkRequestBuilder, times(12)).add(any(IndexRequest.class));
+    }
+
+    private DatasetLookup createLookup(String datasetId, String uri, String fingerprint) {
+        DatasetLookup lookup = new DatasetLookup();
+        lookup.setDatasetId(datasetId);
+        lookup.setHarvestUri(uri);
+        lookup.setFingerprint(fingerprint);
+        lookup.setHarvest(new HarvestMetadata());
+        lookup.getHarvest().setFirstHarvested(new Date());
+        lookup.getHarvest().setChanged(new ArrayList<>());
+        return lookup;
+    }
+
     @Test
     public void saveDatasetAndHarvestRecord() {
         DcatSource dcatSource = mock(DcatSource.class);
@@ -0,0 +1,159 @@
+package no.dcat.harvester.service;
+
+import no.dcat.shared.testcategories.UnitTest;
+import no.dcat.shared.testutils.StubHttpServer;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+@Category(UnitTest.class)
+public class LocationResolverTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private volatile int delayMillis = 0;
+
+    private final List<LocationResolver> resolvers = new ArrayList<>();
+
+    @Rule
+    public StubHttpServer server = new StubHttpServer(exchange -> {
+        String path = exchange.getRequestURI().getPath();
+        requests.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(delayMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        running.decrementAndGet();
+
+        StubHttpServer.respond(exchange, path.startsWith("/missing") ? 404 : 200);
+    });
+
+    @After
+    public void shutdownResolvers() {
+        resolvers.forEach(LocationResolver::shutdown);
+    }
+
+    private LocationResolver resolver(int maxConcurrentChecks, Duration ttl, Duration negativeTtl, Path cacheFile) {
+        LocationResolver resolver = new LocationResolver(LocationResolver.headRequest(2000), maxConcurrentChecks, ttl, negativeTtl, cacheFile);
+        resolvers.add(resolver);
+        return resolver;
+    }
+
+    private Map<String, LocationResolver.Status> resolve(LocationResolver resolver, AtomicInteger remoteCalls, String... uris) throws Exception {
+        return resolver.resolve(Arrays.asList(uris), remoteCalls).get(10, TimeUnit.SECONDS);
+    }
+
+    private int requestsTo(String path) {
+        return requests.getOrDefault(path, new AtomicInteger()).get();
+    }
+
+    @Test
+    public void statusOfEachUriIsReported() throws Exception {
+        LocationResolver resolver = resolver(4, Duration.ofHours(1), Duration.ofHours(1), null);
+
+        Map<String, LocationResolver.Status> result = resolve(resolver, new AtomicInteger(),
+            server.url("/ok"), server.url("/missing"), "Norge", "ftp://localhost/file");
+
+        assertThat(result.get(server.url("/ok")), is(LocationResolver.Status.RESOLVABLE));
+        assertThat(result.get(server.url("/missing")), is(LocationResolver.Status.NOT_RESOLVABLE));
+        assertThat(result.get("Norge"), is(LocationResolver.Status.INVALID));
+        assertThat(result.get("ftp://localhost/file"), is(LocationResolver.Status.INVALID));
+    }
+
+    @Test
+    public void positiveAndNegativeResultsAreCachedAcrossCalls() throws Exception {
+        LocationResolver resolver = resolver(4, Duration.ofHours(1), Duration.ofHours(1), null);
+
+        AtomicInteger firstJob = new AtomicInteger();
+        resolve(resolver, firstJob, server.url("/ok"), server.url("/missing"), server.url("/ok"));
+        AtomicInteger secondJob = new AtomicInteger();
+        Map<String, LocationResolver.Status> result = resolve(resolver, secondJob, server.url("/ok"), server.url("/missing"));
+
+        assertThat(firstJob.get(), is(2));
+        assertThat(secondJob.get(), is(0));
+        assertThat(requestsTo("/ok"), is(1));
+        assertThat(requestsTo("/missing"), is(1));
+        assertThat(result.get(server.url("/missing")), is(LocationResolver.Status.NOT_RESOLVABLE));
+    }
+
+    @Test
+    public void expiredResultsAreCheckedAgain() throws Exception {
+        LocationResolver resolver = resolver(4, Duration.ofHours(1), Duration.ZERO, null);
+
+        resolve(resolver, new AtomicInteger(), server.url("/ok"), server.url("/missing"));
+        Thread.sleep(5);
+        resolve(resolver, new AtomicInteger(), server.url("/ok"), server.url("/missing"));
+
+        assertThat(requestsTo("/ok"), is(1));
+        assertThat(requestsTo("/missing"), is(2));
+    }
+
+    @Test
+    public void concurrentJobsShareRunningChecks() throws Exception {
+        delayMillis = 200;
+        LocationResolver resolver = resolver(4, Duration.ofHours(1), Duration.ofHours(1), null);
+
+        AtomicInteger firstJob = new AtomicInteger();
+        AtomicInteger secondJob = new AtomicInteger();
+        resolver.resolve(Collections.singletonList(server.url("/slow")), firstJob);
+        resolve(resolver, secondJob, server.url("/slow"));
+
+        assertThat(requestsTo("/slow"), is(1));
+        assertThat(firstJob.get() + secondJob.get(), is(1));
+    }
+
+    @Test
+    public void numberOfConcurrentChecksIsBounded() throws Exception {
+        delayMillis = 50;
+        LocationResolver resolver = resolver(3, Duration.ofHours(1), Duration.ofHours(1), null);
+
+        String[] uris = new String[12];
+        for (int i = 0; i < uris.length; i++) {
+            uris[i] = server.url("/location/" + i);
+        }
+        Map<String, LocationResolver.Status> result = resolve(resolver, new AtomicInteger(), uris);
+
+        assertThat(result.size(), is(12));
+        assertThat(maxRunning.get(), lessThanOrEqualTo(3));
+        assertThat(maxRunning.get() > 1, is(true));
+    }
+
+    @Test
+    public void cacheSurvivesRestart() throws Exception {
+        Path cacheFile = temporaryFolder.getRoot().toPath().resolve(LocationResolver.CACHE_FILE);
+
+        resolve(resolver(4, Duration.ofHours(1), Duration.ofHours(1), cacheFile), new AtomicInteger(),
+            server.url("/ok"), server.url("/missing"));
+
+        AtomicInteger remoteCalls = new AtomicInteger();
+        Map<String, LocationResolver.Status> result = resolve(resolver(4, Duration.ofHours(1), Duration.ofHours(1), cacheFile), remoteCalls,
+            server.url("/ok"), server.url("/missing"));
+
+        assertThat(remoteCalls.get(), is(0));
+        assertThat(result.get(server.url("/ok")), is(LocationResolver.Status.RESOLVABLE));
+        assertThat(result.get(server.url("/missing")), is(LocationResolver.Status.NOT_RESOLVABLE));
+    }
+}
@@ -0,0 +1,257 @@
+package no.dcat.harvester.service;
+
+import no.dcat.datastore.domain.dcat.vocabulary.EnhetsregisteretRDF;
+import no.dcat.harvester.HarvesterApplication;
+import no.dcat.harvester.crawler.converters.EnhetsregisterResolver;
+import no.dcat.harvester.crawler.entities.Enhet;
+import no.dcat.shared.testcategories.UnitTest;
+import no.dcat.shared.testutils.StubHttpServer;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.DCTerms;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+@Category(UnitTest.class)
+public class OrganizationCacheTest {
+
+    private static final String ARBEIDSDEPARTEMENTET = "{\"organisasjonsnummer\":\"983887457\",\"navn\":\"ARBEIDS- OG SOSIALDEPARTEMENTET\","
+        + "\"organisasjonsform\":{\"kode\":\"STAT\",\"beskrivelse\":\"Staten\"},\"overordnetEnhet\":\"972417858\"}";
+    private static final String NAV = "{\"organisasjonsnummer\":\"889640782\",\"navn\":\"ARBEIDS- OG VELFERDSETATEN\","
+        + "\"organisasjonsform\":{\"kode\":\"ORGL\",\"beskrivelse\":\"Organisasjonsledd\"},\"overordnetEnhet\":\"983887457\","
+        + "\"postadresse\":{\"adresse\":[\"Postboks 5 St. Olavs plass\"],\"postnummer\":\"0130\",\"poststed\":\"OSLO\"}}";
+    private static final String STATEN = "{\"organisasjonsnummer\":\"972417858\",\"navn\":\"STATEN\","
+        + "\"organisasjonsform\":{\"kode\":\"STAT\",\"beskrivelse\":\"Staten\"},\"_links\":{}}";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final Map<String, String> registry = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> lookups = new ConcurrentHashMap<>();
+    private volatile boolean registryDown = false;
+    private volatile int delayMillis = 0;
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    private final OrganizationCache.Lookup lookup = orgNo -> {
+        lookups.computeIfAbsent(orgNo, key -> new AtomicInteger()).incrementAndGet();
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(delayMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running.decrementAndGet();
+        }
+        if (registryDown) {
+            throw new IOException("Enhetsregisteret is down");
+        }
+        return registry.get(orgNo);
+    };
+
+    private OrganizationCache cache(Duration ttl, Path cacheFile) {
+        return new OrganizationCache(lookup, ttl, ttl, cacheFile);
+    }
+
+    private Model modelWithPublishers(String... orgNumbers) {
+        Model model = ModelFactory.createDefaultModel();
+        for (String orgNo : orgNumbers) {
+            model.createResource("http://example.org/dataset/" + orgNo)
+                .addProperty(DCTerms.publisher, model.createResource("http://data.brreg.no/enhetsregisteret/enhet/" + orgNo));
+        }
+        return model;
+    }
+
+    private int lookups(String orgNo) {
+        AtomicInteger count = lookups.get(orgNo);
+        return count != null ? count.get() : 0;
+    }
+
+    @Test
+    public void organisationsAndUnknownNumbersAreLookedUpOnce() throws Exception {
+        registry.put("889640782", NAV);
+        OrganizationCache cache = cache(Duration.ofHours(1), null);
+        AtomicInteger remoteCalls = new AtomicInteger();
+
+        Enhet first = cache.get("889640782", remoteCalls);
+        Enhet second = cache.get("889640782", remoteCalls);
+        assertThat(cache.get("123456789", remoteCalls), nullValue());
+        assertThat(cache.get("123456789", remoteCalls), nullValue());
+
+        assertThat(first.getNavn(), is("ARBEIDS- OG VELFERDSETATEN"));
+        assertThat(second.getPostadresse().getPoststed(), is("OSLO"));
+        assertThat(first == second, is(false));
+        assertThat(lookups("889640782"), is(1));
+        assertThat(lookups("123456789"), is(1));
+        assertThat(remoteCalls.get(), is(2));
+    }
+
+    @Test
+    public void expiredOrganisationIsLookedUpAgainAndUsedWhenRegistryIsDown() throws Exception {
+        registry.put("889640782", NAV);
+        OrganizationCache cache = cache(Duration.ZERO, null);
+        AtomicInteger remoteCalls = new AtomicInteger();
+        cache.get("889640782", remoteCalls);
+        Thread.sleep(5);
+
+        registryDown = true;
+        Enhet enhet = cache.get("889640782", remoteCalls);
+
+        assertThat(enhet.getNavn(), is("ARBEIDS- OG VELFERDSETATEN"));
+        assertThat(lookups("889640782"), is(2));
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownOrganisationFailsWhenRegistryIsDown() throws Exception {
+        registryDown = true;
+        cache(Duration.ofHours(1), null).get("889640782", new AtomicInteger());
+    }
+
+    @Test
+    public void cacheSurvivesRestart() throws Exception {
+        registry.put("889640782", NAV);
+        Path cacheFile = temporaryFolder.getRoot().toPath().resolve("organizations.json");
+        OrganizationCache cache = cache(Duration.ofHours(1), cacheFile);
+        cache.get("889640782", new AtomicInteger());
+        cache.get("123456789", new AtomicInteger());
+        cache.save();
+
+        registryDown = true;
+        OrganizationCache restarted = cache(Duration.ofHours(1), cacheFile);
+
+        assertThat(restarted.size(), is(2));
+        assertThat(restarted.get("889640782", new AtomicInteger()).getOrganisasjonsform(), is("ORGL"));
+        assertThat(restarted.get("123456789", new AtomicInteger()), nullValue());
+        assertThat(lookups("889640782"), is(1));
+    }
+
+    @Test
+    public void gzippedDumpIsPreloaded() throws Exception {
+        Path dump = temporaryFolder.getRoot().toPath().resolve("enheter_alle.json.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(dump))) {
+            out.write(("[" + NAV + "," + ARBEIDSDEPARTEMENTET + "," + STATEN + ",{\"navn\":\"uten nummer\"}]").getBytes(StandardCharsets.UTF_8));
+        }
+        OrganizationCache cache = cache(Duration.ofDays(3650), null);
+
+        int added = cache.preload(dump);
+
+        registryDown = true;
+        assertThat(added, is(3));
+        assertThat(cache.get("972417858", new AtomicInteger()).getNavn(), is("STATEN"));
+        assertThat(lookups.isEmpty(), is(true));
+    }
+
+    @Test
+    public void resolverNeedsNoLookupsForPreloadedHierarchy() throws Exception {
+        Path dump = temporaryFolder.getRoot().toPath().resolve("enheter.json");
+        Files.write(dump, ("[" + NAV + "," + ARBEIDSDEPARTEMENTET + "," + STATEN + "]").getBytes(StandardCharsets.UTF_8));
+        OrganizationCache cache = cache(Duration.ofDays(3650), null);
+        cache.preload(dump);
+        registryDown = true;
+
+        Model model = ModelFactory.createDefaultModel();
+        Resource dataset = model.createResource("http://example.org/dataset");
+        Resource publisher = model.createResource("http://data.brreg.no/enhetsregisteret/enhet/889640782");
+        dataset.addProperty(DCTerms.publisher, publisher);
+
+        EnhetsregisterResolver resolver = new EnhetsregisterResolver(cache);
+        resolver.resolveModel(model);
+
+        assertThat(resolver.getRemoteCalls(), is(0));
+        assertThat(publisher.getProperty(DCTerms.valid).getBoolean(), is(true));
+        assertThat(model.getResource("http://data.brreg.no/enhetsregisteret/enhet/972417858")
+            .getProperty(EnhetsregisteretRDF.navn).getString(), is("STATEN"));
+    }
+
+    @Test
+    public void organisationBeingLookedUpIsRequestedOnce() throws Exception {
+        registry.put("889640782", NAV);
+        delayMillis = 100;
+        OrganizationCache cache = new OrganizationCache(lookup, 4, Duration.ofHours(1), Duration.ofHours(1), null);
+        AtomicInteger firstJob = new AtomicInteger();
+        AtomicInteger secondJob = new AtomicInteger();
+
+        CompletableFuture<Enhet> first = cache.getAsync("889640782", firstJob);
+        CompletableFuture<Enhet> second = cache.getAsync("889640782", secondJob);
+
+        assertThat(first.get(10, TimeUnit.SECONDS).getNavn(), is("ARBEIDS- OG VELFERDSETATEN"));
+        assertThat(second.get(10, TimeUnit.SECONDS) == first.get(), is(false));
+        assertThat(lookups("889640782"), is(1));
+        assertThat(firstJob.get() + secondJob.get(), is(1));
+    }
+
+    @Test
+    public void resolverLooksUpOrganisationsConcurrentlyWithSameResultAsOneByOne() throws Exception {
+        registry.put("889640782", NAV);
+        registry.put("983887457", ARBEIDSDEPARTEMENTET);
+        registry.put("972417858", STATEN);
+        for (int i = 0; i < 6; i++) {
+            String orgNo = "97000000" + i;
+            registry.put(orgNo, "{\"organisasjonsnummer\":\"" + orgNo + "\",\"navn\":\"ETAT " + i + "\","
+                + "\"organisasjonsform\":{\"kode\":\"ORGL\"},\"overordnetEnhet\":\"983887457\"}");
+        }
+        String[] publishers = {"889640782", "970000000", "970000001", "970000002", "970000003", "970000004", "970000005", "123456789"};
+        delayMillis = 50;
+
+        Model oneByOne = modelWithPublishers(publishers);
+        EnhetsregisterResolver sequential = new EnhetsregisterResolver(new OrganizationCache(lookup, 1, Duration.ofHours(1), Duration.ofHours(1), null));
+        sequential.resolveModel(oneByOne);
+        assertThat(maxRunning.get(), is(1));
+
+        Model concurrently = modelWithPublishers(publishers);
+        EnhetsregisterResolver concurrent = new EnhetsregisterResolver(new OrganizationCache(lookup, 8, Duration.ofHours(1), Duration.ofHours(1), null));
+        concurrent.resolveModel(concurrently);
+
+        assertThat(maxRunning.get() > 1, is(true));
+        assertThat(concurrent.getRemoteCalls(), is(10));
+        assertThat(sequential.getRemoteCalls(), is(10));
+        assertThat(concurrently.isIsomorphicWith(oneByOne), is(true));
+        assertThat(concurrently.getResource("http://data.brreg.no/enhetsregisteret/enhet/123456789")
+            .getProperty(DCTerms.valid).getBoolean(), is(false));
+    }
+
+    @Test
+    public void restLookupReusesPooledConnections() throws Exception {
+        Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+        StubHttpServer server = new StubHttpServer(exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            boolean found = exchange.getRequestURI().getPath().endsWith("889640782");
+            StubHttpServer.respond(exchange, found ? 200 : 404, "application/json", found ? NAV : "{}");
+        }).start();
+        String enhetsregisteretUrl = HarvesterApplication.getEnhetsregisteretUrl();
+        new HarvesterApplication().setEnhetsregisteretUrl(server.url("/enheter/"));
+        try {
+            OrganizationCache.Lookup restLookup = OrganizationCache.restLookup(2, 2000);
+            for (int i = 0; i < 10; i++) {
+                assertThat(restLookup.fetch("889640782"), containsString("ARBEIDS- OG VELFERDSETATEN"));
+                assertThat(restLookup.fetch("123456789"), nullValue());
+            }
+            assertThat(clientPorts.size(), is(1));
+        } finally {
+            new HarvesterApplication().setEnhetsregisteretUrl(enhetsregisteretUrl);
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package no.dcat.harvester.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import no.dcat.datastore.domain.DcatSource;
+import no.dcat.shared.testcategories.UnitTest;
+import no.dcat.shared.testutils.StubHttpServer;
+import org.apache.jena.atlas.web.HttpException;
+import org.apache.jena.query.Dataset;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+@Category(UnitTest.class)
+public class SourceFetchCacheTest {
+
+    private static final String ETAG = "\"v1\"";
+    private static final String TURTLE =
+        "@prefix dcat: <http://www.w3.org/ns/dcat#> .\n" +
+        "<http://example.org/catalog> a dcat:Catalog .\n";
+
+    @Rule
+    public TemporaryFolder cacheFolder = new TemporaryFolder();
+
+    @Rule
+    public StubHttpServer server = new StubHttpServer(this::respond);
+
+    private final AtomicReference<String> body = new AtomicReference<>(TURTLE);
+    private final AtomicReference<String> receivedIfNoneMatch = new AtomicReference<>();
+    private final AtomicInteger status = new AtomicInteger(200);
+    private final CountDownLatch slowRequestReceived = new CountDownLatch(1);
+    private final CountDownLatch slowResponseReleased = new CountDownLatch(1);
+
+    private void respond(HttpExchange exchange) throws IOException {
+        switch (exchange.getRequestURI().getPath()) {
+            case "/catalog.ttl":
+                String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+                receivedIfNoneMatch.set(ifNoneMatch);
+
+                if (status.get() != 200) {
+                    StubHttpServer.respond(exchange, status.get());
+                } else if (ETAG.equals(ifNoneMatch) && TURTLE.equals(body.get())) {
+                    StubHttpServer.respond(exchange, 304);
+                } else {
+                    if (TURTLE.equals(body.get())) {
+                        exchange.getResponseHeaders().add("ETag", ETAG);
+                    }
+                    StubHttpServer.respond(exchange, 200, "text/turtle; charset=utf-8", body.get());
+                }
+                break;
+            case "/moved.ttl":
+                exchange.getResponseHeaders().add("Location", server.url("/catalog.ttl"));
+                StubHttpServer.respond(exchange, 301);
+                break;
+            case "/slow.ttl":
+                slowRequestReceived.countDown();
+                try {
+                    slowResponseReleased.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.close();
+                break;
+            default:
+                StubHttpServer.respond(exchange, 404);
+        }
+    }
+
+    @After
+    public void releaseSlowResponse() {
+        slowResponseReleased.countDown();
+    }
+
+    private DcatSource dcatSource() {
+        return dcatSource("/catalog.ttl");
+    }
+
+    private DcatSource dcatSource(String path) {
+        return new DcatSource("http://dcat.difi.no/test", "Test",
+            server.url(path), "tester", "123456789");
+    }
+
+    @Test
+    public void firstFetchDownloadsAndParsesContent() throws Exception {
+        SourceFetchCache cache = new SourceFetchCache(cacheFolder.getRoot().toPath());
+
+        SourceFetchCache.FetchedSource fetched = cache.fetch(dcatSource());
+
+        assertThat(receivedIfNoneMatch.get(), nullValue());
+        assertThat(fetched.isNotModified(), is(false));
+        assertThat(fetched.isUnchangedSinceLastHarvest(), is(false));
+
+        Dataset dataset = fetched.loadDataset();
+        assertThat(dataset.getDefaultModel().size(), is(1L));
+    }
+
+    @Test
+    public void conditionalFetchAfterHarvestIsUnchanged() throws Exception {
+        SourceFetchCache cache = new SourceFetchCache(cacheFolder.getRoot().toPath());
+        DcatSource dcatSource = dcatSource();
+
+        cache.markHarvested(dcatSource, cache.fetch(dcatSource));
+
+        SourceFetchCache.FetchedSource refetched = cache.fetch(dcatSource);
+
+        assertThat(receivedIfNoneMatch.get(), is(ETAG));
+        assertThat(refetched.isNotModified(), is(true));
+        assertThat(refetched.isUnchangedSinceLastHarvest(), is(true));
+    }
+
+    @Test
+    public void changedContentIsNotUnchanged() throws Exception {
+        SourceFetchCache cache = new SourceFetchCache(cacheFolder.getRoot().toPath());
+        DcatSource dcatSource = dcatSource();
+
+        cache.markHarvested(dcatSource, cache.fetch(dcatSource));
+
+        body.set(TURTLE + "<http://example.org/catalog2> a dcat:Catalog .\n");
+        SourceFetchCache.FetchedSource refetched = cache.fetch(dcatSource);
+
+        assertThat(refetched.isNotModified(), is(false));
+        assertThat(refetched.isUnchangedSinceLastHarvest(), is(false));
+        assertThat(refetched.loadDataset().getDefaultModel().size(), is(2L));
+    }
+
+    @Test
+    public void harvestByAnotherVersionIsNotUnchanged() throws Exception {
+        DcatSource dcatSource = dcatSource();
+        SourceFetchCache cache = new SourceFetchCache(cacheFolder.getRoot().toPath(), "1.0/rules");
+
+        cache.markHarvested(dcatSource, cache.fetch(dcatSource));
+
+        SourceFetchCache deployed = new SourceFetchCache(cacheFolder.getRoot().toPath(), "1.1/rules");
+        SourceFetchCache.FetchedSource refetched = deployed.fetch(dcatSource);
+
+        assertThat(refetched.isNotModified(), is(true));
+        assertThat(refetched.isUnchangedSinceLastHarvest(), is(false));
+        assertThat(cache.fetch(dcatSource).isUnchangedSinceLastHarvest(), is(true));
+    }
+
+    @Test
+    public void cachedCopyIsAvailableWithoutServer() throws Exception {
+        SourceFetchCache cache = new SourceFetchCache(cacheFolder.getRoot().toPath());
+        DcatSource dcatSource = dcatSource();
+
+        assertThat(cache.getCachedCopy(dcatSource).isPresent(), is(false));
+
+        cache.fetch(dcatSource);
+        server.stop();
+
+        SourceFetchCache replayCache = new SourceFetchCache(cacheFolder.getRoot().toPath());
+        assertThat(replayCache.getCachedCopy(dcatSource).get().loadDataset().getDefaultModel().size(), is(1L));
+    }
+
+    @Test(expected = HttpException.class)
+    public void errorStatusIsReportedAsHttpException() throws Exception {
+        status.set(500);
+
+        new SourceFetchCache(cacheFolder.getRoot().toPath()).fetch(dcatSource());
+    }
+
+    @Test
+    public void redirectIsFollowed() throws Exception {
+        SourceFetchCache.FetchedSource fetched = new SourceFetchCache(cacheFolder.getRoot().toPath()).fetch(dcatSource("/moved.ttl"));
+
+        assertThat(fetched.loadDataset().getDefaultModel().size(), is(1L));
+    }
+
+    @Test(timeout = 10000)
+    public void interruptAbortsTheDownload() throws Exception {
+        SourceFetchCache cache = new SourceFetchCache(cacheFolder.getRoot().toPath());
+        AtomicReference<Exception> thrown = new AtomicReference<>();
+
+        Thread job = new Thread(() -> {
+            try {
+                cache.fetch(dcatSource("/slow.ttl"));
+            } catch (Exception e) {
+                thrown.set(e);
+            }
+        });
+        job.start();
+        slowRequestReceived.await();
+        job.interrupt();
+        job.join();
+
+        assertThat(thrown.get(), instanceOf(InterruptedException.class));
+    }
+}
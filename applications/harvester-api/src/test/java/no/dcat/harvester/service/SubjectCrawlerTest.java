@@ -0,0 +1,173 @@
+package no.dcat.harvester.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import no.dcat.shared.testcategories.UnitTest;
+import no.dcat.shared.testutils.StubHttpServer;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.DCTerms;
+import org.apache.jena.vocabulary.SKOS;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+@Category(UnitTest.class)
+public class SubjectCrawlerTest {
+
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private final Map<String, String> acceptHeaders = new ConcurrentHashMap<>();
+
+    private SubjectCrawler subjectCrawler;
+
+    private static String turtle(String uri, String label) {
+        return "@prefix skos: <http://www.w3.org/2004/02/skos/core#> .\n"
+            + "<" + uri + "> a skos:Concept ; skos:prefLabel \"" + label + "\"@no ; skos:definition \"definisjon av " + label + "\"@no .\n";
+    }
+
+    private static String rdfXml(String uri, String label) {
+        return "<?xml version=\"1.0\"?>\n"
+            + "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\" xmlns:skos=\"http://www.w3.org/2004/02/skos/core#\">\n"
+            + "  <skos:Concept rdf:about=\"" + uri + "\"><skos:prefLabel xml:lang=\"no\">" + label + "</skos:prefLabel></skos:Concept>\n"
+            + "</rdf:RDF>\n";
+    }
+
+    @Rule
+    public StubHttpServer server = new StubHttpServer(this::respond);
+
+    private void respond(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String uri = server.url(path);
+        requests.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+        acceptHeaders.put(path, exchange.getRequestHeaders().getFirst("Accept"));
+
+        if (path.startsWith("/turtle")) {
+            StubHttpServer.respond(exchange, 200, "text/turtle; charset=utf-8", turtle(uri, "turtle"));
+        } else if (path.startsWith("/rdfxml")) {
+            StubHttpServer.respond(exchange, 200, "application/rdf+xml", rdfXml(uri, "rdfxml"));
+        } else if (path.startsWith("/plain")) {
+            StubHttpServer.respond(exchange, 200, "text/plain", rdfXml(uri, "plain"));
+        } else {
+            StubHttpServer.respond(exchange, 404);
+        }
+    }
+
+    @Before
+    public void createCrawler() {
+        subjectCrawler = new SubjectCrawler(SubjectCrawler.contentNegotiation(4, 2000), 4, Duration.ofHours(1), Duration.ofHours(1));
+    }
+
+    @After
+    public void shutdownCrawler() {
+        subjectCrawler.shutdown();
+    }
+
+    private int requestsTo(String path) {
+        return requests.getOrDefault(path, new AtomicInteger()).get();
+    }
+
+    private Model modelWithSubjects(String... paths) {
+        Model model = ModelFactory.createDefaultModel();
+        Resource dataset = model.createResource("http://example.org/dataset");
+        for (String path : paths) {
+            dataset.addProperty(DCTerms.subject, model.createResource(server.url(path)));
+        }
+        return model;
+    }
+
+    private String prefLabel(Model model, String path) {
+        Resource subject = model.getResource(server.url(path));
+        return subject.hasProperty(SKOS.prefLabel) ? subject.getProperty(SKOS.prefLabel).getString() : null;
+    }
+
+    @Test
+    public void eachUriIsFetchedOnceAndParsedByContentType() {
+        AtomicInteger lookups = new AtomicInteger();
+        Model model = subjectCrawler.annotateSubjects(modelWithSubjects("/turtle/1", "/rdfxml/1", "/plain/1", "/missing/1"), lookups);
+
+        assertThat(prefLabel(model, "/turtle/1"), is("turtle"));
+        assertThat(prefLabel(model, "/rdfxml/1"), is("rdfxml"));
+        assertThat(prefLabel(model, "/plain/1"), is("plain"));
+        assertThat(prefLabel(model, "/missing/1"), nullValue());
+        assertThat(model.getResource(server.url("/turtle/1")).getProperty(SKOS.definition).getString(), is("definisjon av turtle"));
+
+        assertThat(lookups.get(), is(4));
+        for (String path : new String[]{"/turtle/1", "/rdfxml/1", "/plain/1", "/missing/1"}) {
+            assertThat(requestsTo(path), is(1));
+        }
+        assertThat(acceptHeaders.get("/turtle/1"), is(SubjectCrawler.ACCEPT));
+    }
+
+    @Test
+    public void definitionsAreCachedAcrossHarvests() {
+        subjectCrawler.annotateSubjects(modelWithSubjects("/turtle/2", "/missing/2"), new AtomicInteger());
+
+        AtomicInteger lookups = new AtomicInteger();
+        Model model = subjectCrawler.annotateSubjects(modelWithSubjects("/turtle/2", "/missing/2"), lookups);
+
+        assertThat(prefLabel(model, "/turtle/2"), is("turtle"));
+        assertThat(lookups.get(), is(0));
+        assertThat(requestsTo("/turtle/2"), is(1));
+        assertThat(requestsTo("/missing/2"), is(1));
+    }
+
+    @Test
+    public void uriThatDidNotResolveIsFetchedAgainWhenExpired() {
+        SubjectCrawler crawler = new SubjectCrawler(SubjectCrawler.contentNegotiation(4, 2000), 4, Duration.ofHours(1), Duration.ZERO);
+        try {
+            crawler.annotateSubjects(modelWithSubjects("/missing/3"), new AtomicInteger());
+            crawler.annotateSubjects(modelWithSubjects("/missing/3"), new AtomicInteger());
+
+            assertThat(requestsTo("/missing/3"), is(2));
+        } finally {
+            crawler.shutdown();
+        }
+    }
+
+    @Test
+    public void expiredEntriesAreDropped() {
+        SubjectCrawler crawler = new SubjectCrawler(SubjectCrawler.contentNegotiation(4, 2000), 4, Duration.ZERO, Duration.ZERO);
+        try {
+            for (int i = 0; i < 20; i++) {
+                crawler.annotateSubjects(modelWithSubjects("/turtle/expired/" + i, "/missing/expired/" + i), new AtomicInteger());
+            }
+
+            assertThat(crawler.size() < 10, is(true));
+        } finally {
+            crawler.shutdown();
+        }
+    }
+
+    @Test
+    public void shutdownClosesTheLoader() {
+        AtomicBoolean closed = new AtomicBoolean();
+        SubjectCrawler crawler = new SubjectCrawler(new SubjectCrawler.ModelLoader() {
+            @Override
+            public Model load(String uri) {
+                return ModelFactory.createDefaultModel();
+            }
+
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        }, 4, Duration.ofHours(1), Duration.ofHours(1));
+
+        crawler.shutdown();
+
+        assertThat(closed.get(), is(true));
+    }
+}
@@ -0,0 +1,62 @@
+package no.dcat.harvester.service;
+
+import no.dcat.harvester.validation.DcatValidation;
+import no.dcat.harvester.validation.ValidationProfile;
+import no.dcat.shared.testcategories.UnitTest;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.util.FileManager;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+@Category(UnitTest.class)
+public class ValidationProfilerTest {
+
+    private static ValidationProfile profile(String source) {
+        Model model = FileManager.get().loadModel(source);
+        ValidationProfile profile = new ValidationProfile();
+        DcatValidation.validate(model, null, profile);
+        return profile;
+    }
+
+    @Test
+    public void rulesAreRankedByTotalTimeOverAllSources() {
+        ValidationProfiler profiler = new ValidationProfiler();
+        ValidationProfile small = profile("datasett-mini.ttl");
+        ValidationProfile large = profile("dataset-test.ttl");
+        profiler.record("small", small);
+        profiler.record("large", large);
+
+        List<ValidationProfiler.RuleStatistics> slowest = profiler.getSlowestRules(5);
+
+        assertThat(slowest.size(), is(5));
+        for (int i = 1; i < slowest.size(); i++) {
+            assertThat(slowest.get(i - 1).getTotalMillis() >= slowest.get(i).getTotalMillis(), is(true));
+        }
+
+        ValidationProfiler.RuleStatistics first = slowest.get(0);
+        double expectedTotal = small.getRules().stream().filter(rule -> rule.getRule().equals(first.getRule()))
+            .mapToDouble(ValidationProfile.RuleTiming::getMillis).sum()
+            + large.getRules().stream().filter(rule -> rule.getRule().equals(first.getRule()))
+            .mapToDouble(ValidationProfile.RuleTiming::getMillis).sum();
+        assertThat(first.getSources(), is(2));
+        assertThat(Math.abs(first.getTotalMillis() - expectedTotal) < 0.001, is(true));
+    }
+
+    @Test
+    public void lastProfileOfSourceReplacesTheOneBefore() {
+        ValidationProfiler profiler = new ValidationProfiler();
+        profiler.record("source", profile("datasett-mini.ttl"));
+        ValidationProfile last = profile("datasett-mini.ttl");
+        profiler.record("source", last);
+
+        assertThat(profiler.getRules("source").size(), is(last.getRules().size()));
+        assertThat(profiler.getSlowestRules(1).get(0).getSources(), is(1));
+        assertThat(profiler.getRules("unknown"), nullValue());
+    }
+}
@@ -0,0 +1,75 @@
+package no.dcat.harvester.validation;
+
+import no.dcat.datastore.domain.dcat.builders.DcatBuilder;
+import no.dcat.datastore.domain.dcat.smoke.TestCompleteCatalog;
+import no.dcat.shared.testcategories.LoadTest;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.util.FileManager;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Compares running the validation rules one by one, reading and parsing them on every validation, with the
+ * precompiled {@link ValidationRuleSet} that runs them in parallel. Measured on the complete test catalog and on a
+ * large catalog.
+ *
+ * Run with: mvn test -P load-test -Dtest=DcatValidationBenchmark
+ */
+@Category(LoadTest.class)
+public class DcatValidationBenchmark {
+    private static Logger logger = LoggerFactory.getLogger(DcatValidationBenchmark.class);
+
+    private static final int ITERATIONS = 5;
+
+    @FunctionalInterface
+    private interface Validation {
+        int validate(Model model) throws IOException;
+    }
+
+    @Test
+    public void completeCatalog() throws Exception {
+        String turtle = DcatBuilder.transform(TestCompleteCatalog.getCompleteCatalog(), "TURTLE");
+        Model model = ModelFactory.createDefaultModel().read(new StringReader(turtle), null, "TURTLE");
+
+        compare("complete catalog", model, 20);
+    }
+
+    @Test
+    public void largeCatalog() throws Exception {
+        compare("large catalog", FileManager.get().loadModel("datanorge_2018_05_31.jsonld"), ITERATIONS);
+    }
+
+    private void compare(String name, Model model, int iterations) throws IOException {
+        ValidationRuleSet ruleSet = ValidationRuleSet.getDefault();
+
+        int oneByOneCount = ValidationRuleSetTest.validateOneByOne(model).size();
+        int ruleSetCount = ValidationRuleSetTest.validate(ruleSet, model).size();
+        assertThat(ruleSetCount, is(oneByOneCount));
+
+        double oneByOne = time(model, iterations, m -> ValidationRuleSetTest.validateOneByOne(m).size());
+        double parallel = time(model, iterations, m -> ValidationRuleSetTest.validate(ruleSet, m).size());
+
+        logger.info("{} ({} triples, {} results): one by one {} ms, rule set {} ms per validation",
+            name, model.size(), ruleSetCount, String.format("%.1f", oneByOne), String.format("%.1f", parallel));
+    }
+
+    private double time(Model model, int iterations, Validation validation) throws IOException {
+        // warm up
+        validation.validate(model);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            validation.validate(model);
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / iterations;
+    }
+}
@@ -0,0 +1,117 @@
+package no.dcat.harvester.validation;
+
+import no.dcat.shared.testcategories.UnitTest;
+import org.apache.commons.io.IOUtils;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.util.FileManager;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+@Category(UnitTest.class)
+public class ValidationRuleSetTest {
+
+    /**
+     * How DcatValidation ran the rules before the rule set: find, read and parse every rule on each validation,
+     * and run them one after another.
+     */
+    static List<ValidationError> validateOneByOne(Model model) throws IOException {
+        List<ValidationError> errors = new ArrayList<>();
+        Resource[] resources = new PathMatchingResourcePatternResolver().getResources(ValidationRuleSet.RULES_LOCATION);
+        for (Resource resource : resources) {
+            try (InputStream is = resource.getInputStream()) {
+                ResultSet resultSet = QueryExecutionFactory.create(IOUtils.toString(is, "UTF-8"), model).execSelect();
+                while (resultSet.hasNext()) {
+                    errors.add(DcatValidation.validationError(resultSet.next()));
+                }
+            }
+        }
+        return errors;
+    }
+
+    static List<ValidationError> validate(ValidationRuleSet ruleSet, Model model) {
+        List<ValidationError> errors = new ArrayList<>();
+        ruleSet.validate(model, errors::add);
+        return errors;
+    }
+
+    private static List<String> sorted(List<ValidationError> errors) {
+        return errors.stream().map(ValidationError::toString).sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    public void digestChangesWithTheRules() throws Exception {
+        String digest = ValidationRuleSet.getDefault().getDigest();
+
+        assertThat(ValidationRuleSet.load(ValidationRuleSet.RULES_LOCATION, 1).getDigest(), is(digest));
+        assertThat(ValidationRuleSet.load("classpath*:" + ValidationRuleSet.RULES_DIRECTORY + "from-no/*.rq", 1).getDigest(), not(digest));
+    }
+
+    @Test
+    public void rulesAreLoadedOnce() throws Exception {
+        ValidationRuleSet ruleSet = ValidationRuleSet.getDefault();
+
+        assertThat(ValidationRuleSet.getDefault(), sameInstance(ruleSet));
+        assertThat(ruleSet.size(), is(new PathMatchingResourcePatternResolver().getResources(ValidationRuleSet.RULES_LOCATION).length));
+    }
+
+    @Test
+    public void sameResultsAsRunningRulesOneByOne() throws Exception {
+        for (String source : new String[]{"dataset-test.ttl", "datasett-with-error.ttl", "ramsund.ttl"}) {
+            Model model = FileManager.get().loadModel(source);
+
+            List<ValidationError> expected = validateOneByOne(model);
+            List<ValidationError> actual = validate(ValidationRuleSet.getDefault(), model);
+
+            assertThat(source, sorted(actual), is(sorted(expected)));
+            assertThat(source, ValidationRuleSet.getDefault().validate(model, error -> {}),
+                is(expected.stream().noneMatch(ValidationError::isError)));
+        }
+    }
+
+    @Test
+    public void resultsAreInTheSameOrderEveryTime() throws Exception {
+        Model model = FileManager.get().loadModel("dataset-test.ttl");
+        List<String> first = validate(ValidationRuleSet.getDefault(), model).stream()
+            .map(ValidationError::toString).collect(Collectors.toList());
+
+        for (int i = 0; i < 5; i++) {
+            List<String> again = validate(ValidationRuleSet.getDefault(), model).stream()
+                .map(ValidationError::toString).collect(Collectors.toList());
+            assertThat(again, is(first));
+        }
+    }
+
+    @Test
+    public void everyRuleIsTimed() throws Exception {
+        Model model = FileManager.get().loadModel("dataset-test.ttl");
+        ValidationProfile profile = new ValidationProfile();
+
+        List<ValidationError> errors = new ArrayList<>();
+        ValidationRuleSet.getDefault().validate(model, errors::add, profile);
+
+        List<ValidationProfile.RuleTiming> rules = profile.getRules();
+        assertThat(rules.size(), is(ValidationRuleSet.getDefault().size()));
+        assertThat(rules.stream().mapToInt(ValidationProfile.RuleTiming::getRows).sum(), is(errors.size()));
+        assertThat(rules.stream().allMatch(rule -> rule.getModelSize() == model.size()), is(true));
+        assertThat(rules.stream().allMatch(rule -> rule.getRule().startsWith("from-")), is(true));
+        for (int i = 1; i < rules.size(); i++) {
+            assertThat(rules.get(i - 1).getMillis() >= rules.get(i).getMillis(), is(true));
+        }
+        assertThat(profile.getRulesSlowerThan(-1).size(), is(rules.size()));
+    }
+}
@@ -0,0 +1,46 @@
+package no.dcat.themes;
+
+import no.dcat.themes.service.CompiledList;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import java.util.List;
+
+/**
+ * Sends the ETag of a compiled list, and answers 304 Not Modified when the client already has the list.
+ */
+@ControllerAdvice
+public class CompiledListEtagAdvice implements ResponseBodyAdvice<CompiledList<?>> {
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return CompiledListHttpMessageConverter.class.isAssignableFrom(converterType);
+    }
+
+    @Override
+    public CompiledList<?> beforeBodyWrite(CompiledList<?> body, MethodParameter returnType, MediaType selectedContentType,
+                                           Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                           ServerHttpRequest request, ServerHttpResponse response) {
+        if (body == null) {
+            return null;
+        }
+
+        response.getHeaders().setETag(body.getEtag());
+
+        List<String> ifNoneMatch = request.getHeaders().getIfNoneMatch();
+        boolean safe = request.getMethod() == HttpMethod.GET || request.getMethod() == HttpMethod.HEAD;
+        if (safe && (ifNoneMatch.contains(body.getEtag()) || ifNoneMatch.contains("*"))) {
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            return null;
+        }
+
+        return body;
+    }
+}
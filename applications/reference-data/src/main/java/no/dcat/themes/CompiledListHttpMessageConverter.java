@@ -0,0 +1,45 @@
+package no.dcat.themes;
+
+import no.dcat.themes.service.CompiledList;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+
+/**
+ * Writes a compiled list as the JSON that was rendered when it was compiled.
+ */
+public class CompiledListHttpMessageConverter extends AbstractHttpMessageConverter<CompiledList<?>> {
+
+    public CompiledListHttpMessageConverter() {
+        super(MediaType.APPLICATION_JSON_UTF8, MediaType.APPLICATION_JSON);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return CompiledList.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected CompiledList<?> readInternal(Class<? extends CompiledList<?>> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Compiled lists are only written");
+    }
+
+    @Override
+    protected Long getContentLength(CompiledList<?> compiledList, MediaType contentType) {
+        return (long) compiledList.getJson().length;
+    }
+
+    @Override
+    protected void writeInternal(CompiledList<?> compiledList, HttpOutputMessage outputMessage) throws IOException {
+        outputMessage.getBody().write(compiledList.getJson());
+    }
+}
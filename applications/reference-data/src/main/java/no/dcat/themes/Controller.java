@@ -30,6 +30,7 @@ import org.springframework.web.bind.annotation.RestController;
 
 import java.net.MalformedURLException;
 import java.util.List;
+import java.util.stream.Collectors;
 
 @RestController
 @Scope("thread")
@@ -107,6 +108,14 @@ public class Controller {
         }
     }
 
+    @PreAuthorize("hasAuthority('INTERNAL_CALL')")
+    @CrossOrigin
+    @RequestMapping(value = "/locations/batch", consumes = MediaType.APPLICATION_JSON_UTF8_VALUE, method = RequestMethod.POST)
+    public List<SkosCode> putLocations(@RequestBody List<LocationUri> resources) {
+        logger.info("register {} new locations", resources.size());
+        return codesService.addLocations(resources.stream().map(LocationUri::getUri).collect(Collectors.toList()));
+    }
+
     @PreAuthorize("hasAuthority('INTERNAL_CALL')")
     @CrossOrigin
     @RequestMapping(value = "/subjects",  method = RequestMethod.GET)
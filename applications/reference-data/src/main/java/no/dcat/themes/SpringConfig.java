@@ -3,11 +3,24 @@ package no.dcat.themes;
 import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
 
 @Configuration
-public class SpringConfig {
+public class SpringConfig implements WebMvcConfigurer {
     @Bean
     public static BeanFactoryPostProcessor beanFactoryPostProcessor() {
         return new CustomScopeRegistration();
     }
+
+    /**
+     * The code lists, themes and help texts are sent as the JSON they were compiled to, with its ETag, so that
+     * the reference code caches in the other services can revalidate without receiving the lists again.
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(0, new CompiledListHttpMessageConverter());
+    }
 }
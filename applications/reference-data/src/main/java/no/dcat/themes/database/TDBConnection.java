@@ -6,6 +6,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Service;
 
+import java.util.function.Supplier;
+
 @Service
 @Scope("thread")
 public class TDBConnection {
@@ -32,4 +34,11 @@ public class TDBConnection {
         }
 
     }
+
+    /**
+     * @return what was compiled for the key from the graph, compiled again whenever the graph is written
+     */
+    public <T> T getCompiled(String key, String graphName, Supplier<T> compile) {
+        return tdbService.getCompiled(key, graphName, compile);
+    }
 }
@@ -1,19 +1,17 @@
 package no.dcat.themes.database;
 
 import org.apache.jena.query.Dataset;
-import org.apache.jena.query.Query;
-import org.apache.jena.query.QueryExecutionFactory;
-import org.apache.jena.query.QueryFactory;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
-import org.apache.jena.reasoner.ReasonerRegistry;
-import org.apache.jena.util.FileManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.function.Supplier;
+
 
 /**
  * Created by extkkj on 27.09.2017.
@@ -23,7 +21,6 @@ import org.springframework.stereotype.Service;
 @Scope("thread")
 public class TDBInferenceService {
     private final TDBService tdbService;
-    private Model schema  = FileManager.get().loadModel("ontology.ttl");
 
     static private final Logger logger = LoggerFactory.getLogger(TDBInferenceService.class);
 
@@ -32,18 +29,21 @@ public class TDBInferenceService {
         this.tdbService = tdbService;
     }
 
+    /**
+     * @return the graph with the RDFS inferences that were materialized when it was written
+     */
     public Model getModelWithInference(String name) {
 
         logger.info("Model for name not cached: {}", name);
-        return ModelFactory.createInfModel(ReasonerRegistry.getRDFSReasoner(), schema, tdbService.getDataset().getNamedModel(name));
+        return tdbService.getModelWithInference(name);
 
     }
 
+    /**
+     * @return the description of the resource, including the materialized inferences about it
+     */
     public Model describeWithInference(String uri) {
-        Query query = QueryFactory.create("describe <" + uri + ">");
-        Model model = QueryExecutionFactory.create(query, tdbService.getDataset()).execDescribe();
-        return ModelFactory.createInfModel(ReasonerRegistry.getRDFSReasoner(), schema, model);
-
+        return tdbService.describeWithInference(uri);
     }
 
     public Dataset getDataset() {
@@ -62,12 +62,32 @@ public class TDBInferenceService {
 
 
 
+    /**
+     * Adds the model to the graph. The caches are not evicted here, the write transaction evicts what was
+     * compiled from the graph when it ends.
+     */
     public void addModelToGraph(Model model, String location) {
         getDataset().getNamedModel(location).add(model);
-        tdbService.evictCache();
+        tdbService.materializeAddedInference(location, model);
+    }
+
+    /**
+     * Adds the models to the graph and materializes their inferences once. The caches are not evicted here,
+     * the write transaction evicts them once when it ends.
+     */
+    public void addModelsToGraph(Collection<Model> models, String location) {
+        Model added = ModelFactory.createDefaultModel();
+        models.forEach(added::add);
+
+        getDataset().getNamedModel(location).add(added);
+        tdbService.materializeAddedInference(location, added);
     }
 
     public void evictCache() {
         tdbService.evictCache();
     }
+
+    public <T> T getCompiled(String key, String graphName, Supplier<T> compile) {
+        return tdbService.getCompiled(key, graphName, compile);
+    }
 }
@@ -17,12 +17,26 @@ import org.apache.jena.update.UpdateAction;
 import org.apache.jena.update.UpdateFactory;
 import org.apache.jena.update.UpdateRequest;
 import org.apache.jena.util.FileManager;
+import org.apache.jena.vocabulary.RDFS;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 @Service
 public class TDBService {
@@ -32,8 +46,43 @@ public class TDBService {
     static public final String THEMES_GRAPH = "http://data.brreg.no/fdk/themes-graph";
     static public final String HELPTEXTS_GRAPH = "http://data.brreg.no/fdk/helptexts-graph";
 
+    // the RDFS closure of each graph is kept in a graph with this prefix before its name
+    static public final String INFERRED_GRAPH_PREFIX = "http://data.brreg.no/fdk/inferred/";
+
     private final Dataset dataset;
 
+    // what the services compiled from the graphs, by key
+    private final Map<String, Compiled> compiled = new ConcurrentHashMap<>();
+
+    // graphs written since the caches were last evicted, a write transaction evicts them when it ends
+    private final Set<String> changedGraphs = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService compiler = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "reference-data-compiler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * A value compiled from one graph. When the graph changes the value is compiled again in the background,
+     * and readers wait for that compilation instead of starting their own.
+     */
+    private static class Compiled {
+        final String key;
+        final String graphName;
+        final Supplier<?> compile;
+
+        // set from when a compilation is queued until it starts reading the graph
+        final AtomicBoolean queued = new AtomicBoolean();
+
+        volatile CompletableFuture<?> value;
+
+        Compiled(String key, String graphName, Supplier<?> compile) {
+            this.key = key;
+            this.graphName = graphName;
+            this.compile = compile;
+        }
+    }
 
     private Model schema = FileManager.get().loadModel("ontology.ttl");
 
@@ -74,6 +123,77 @@ public class TDBService {
         changeLanguageNoToNb(DatasetFactory.create(hm));
         overwrite(HELPTEXTS_GRAPH, hm);
 
+        materializeMissingInference();
+    }
+
+    /**
+     * Graphs that were stored before their inferences were materialized, like the locations and subjects
+     * added at runtime, get their inferred graph at startup.
+     */
+    private void materializeMissingInference() {
+        dataset.begin(ReadWrite.WRITE);
+        try {
+            List<String> graphNames = new ArrayList<>();
+            dataset.listNames().forEachRemaining(graphNames::add);
+
+            for (String graphName : graphNames) {
+                if (!graphName.startsWith(INFERRED_GRAPH_PREFIX) && !dataset.containsNamedModel(inferredGraphName(graphName))) {
+                    logger.info("Materialize inferences of graph {}", graphName);
+                    materializeInference(graphName);
+                }
+            }
+        } finally {
+            dataset.commit();
+        }
+
+        evictCache();
+    }
+
+    public static String inferredGraphName(String graphName) {
+        return INFERRED_GRAPH_PREFIX + graphName;
+    }
+
+    /**
+     * Replaces the inferred graph of a graph with the RDFS closure of the graph and the ontology. Must be called in
+     * a write transaction whenever the graph is overwritten, then the inferences are read like any other graph.
+     */
+    void materializeInference(String graphName) {
+        Model inferred = closure(dataset.getNamedModel(graphName));
+
+        dataset.removeNamedModel(inferredGraphName(graphName));
+        dataset.addNamedModel(inferredGraphName(graphName), inferred);
+
+        changedGraphs.add(graphName);
+    }
+
+    /**
+     * Adds the inferences of triples that were added to a graph to its inferred graph. Must be called in the write
+     * transaction that added them.
+     *
+     * The classes and properties are defined by the ontology, so every inference of a code follows from one of its
+     * triples and the ontology, and the closure of the added triples is what they add to the closure of the graph.
+     * If they define classes or properties themselves, or the graph has no inferred graph yet, the closure of the
+     * whole graph is materialized again.
+     */
+    void materializeAddedInference(String graphName, Model added) {
+        if (definesSchema(added) || !dataset.containsNamedModel(inferredGraphName(graphName))) {
+            materializeInference(graphName);
+            return;
+        }
+
+        dataset.getNamedModel(inferredGraphName(graphName)).add(closure(added));
+
+        changedGraphs.add(graphName);
+    }
+
+    private Model closure(Model model) {
+        return ModelFactory.createDefaultModel()
+            .add(ModelFactory.createInfModel(ReasonerRegistry.getRDFSReasoner(), schema, model));
+    }
+
+    private static boolean definesSchema(Model model) {
+        return model.contains(null, RDFS.subClassOf) || model.contains(null, RDFS.subPropertyOf) ||
+            model.contains(null, RDFS.domain) || model.contains(null, RDFS.range);
     }
 
     private void changeLanguageNoToNb(Dataset dataset) {
@@ -101,6 +221,7 @@ public class TDBService {
 
             dataset.removeNamedModel(graphName);
             dataset.addNamedModel(graphName, m);
+            materializeInference(graphName);
 
         } finally {
             dataset.commit();
@@ -111,9 +232,65 @@ public class TDBService {
     }
 
 
-    @CacheEvict(cacheNames = {"codes", "themes", "helptexts"}, allEntries = true)
+    /**
+     * Compiles again, in the background, what was compiled from the graphs written since the last eviction.
+     * Must be called when a write transaction has been committed, so that the compilations read what it wrote.
+     */
     public void evictCache() {
-        logger.debug("Cache evicted");
+        Set<String> graphNames = new HashSet<>();
+        for (Iterator<String> iterator = changedGraphs.iterator(); iterator.hasNext(); ) {
+            graphNames.add(iterator.next());
+            iterator.remove();
+        }
+
+        compiled.values().stream()
+            .filter(entry -> graphNames.contains(entry.graphName))
+            .forEach(this::compileInBackground);
+
+        logger.debug("Cache evicted for graphs {}", graphNames);
+    }
+
+    /**
+     * Returns what was compiled for the key from the graph, compiling it the first time. After the graph is
+     * written, requests wait for the compilation that the write started.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getCompiled(String key, String graphName, Supplier<T> compile) {
+        Compiled entry = compiled.computeIfAbsent(key, k -> {
+            Compiled created = new Compiled(k, graphName, compile);
+            compileInBackground(created);
+            return created;
+        });
+
+        try {
+            return (T) entry.value.join();
+        } catch (CompletionException e) {
+            // the next request compiles again
+            compiled.remove(key, entry);
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Queues a compilation of the entry, unless one is queued that has not started yet and so will read the
+     * latest graph anyway.
+     */
+    private void compileInBackground(Compiled entry) {
+        if (entry.queued.compareAndSet(false, true)) {
+            entry.value = CompletableFuture.supplyAsync(() -> {
+                entry.queued.set(false);
+                logger.info("Compile {} from graph {}", entry.key, entry.graphName);
+                return entry.compile.get();
+            }, compiler);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        compiler.shutdownNow();
     }
 
 
@@ -124,23 +301,32 @@ public class TDBService {
 
     }
 
+    /**
+     * @return the graph with its materialized inferences
+     */
     public Model getModelWithInference(String name) {
 
         logger.info("Model for name not cached: {}", name);
-        return ModelFactory.createInfModel(ReasonerRegistry.getRDFSReasoner(), schema, dataset.getNamedModel(name));
+        return dataset.getNamedModel(inferredGraphName(name));
 
     }
 
 
+    /**
+     * Adds the model to the graph. Must be called in a write transaction, the caches are evicted when it ends.
+     */
     public void addModelToGraph(Model model, String location) {
         dataset.getNamedModel(location).add(model);
-        evictCache();
+        materializeAddedInference(location, model);
     }
 
+    /**
+     * Describes a resource. The default graph is the union of all graphs, so the description includes the
+     * materialized inferences about the resource.
+     */
     public Model describeWithInference(String uri) {
         Query query = QueryFactory.create("describe <" + uri + ">");
-        Model model = QueryExecutionFactory.create(query, dataset).execDescribe();
-        return ModelFactory.createInfModel(ReasonerRegistry.getRDFSReasoner(), schema, model);
+        return QueryExecutionFactory.create(query, dataset).execDescribe();
 
     }
 }
@@ -17,8 +17,9 @@ import org.apache.jena.rdf.model.ResIterator;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.RDFS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Service;
 
@@ -27,7 +28,15 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 @Service
@@ -35,6 +44,22 @@ import java.util.stream.Collectors;
 
 public class CodesService extends BaseServiceWithFraming {
 
+    static private final Logger logger = LoggerFactory.getLogger(CodesService.class);
+
+    // remote models of new locations are fetched this many at a time
+    static final int MAX_CONCURRENT_LOCATION_FETCHES = 8;
+
+    // shared by the instances of this thread scoped service
+    private static final ExecutorService locationFetcher = Executors.newFixedThreadPool(MAX_CONCURRENT_LOCATION_FETCHES, runnable -> {
+        Thread thread = new Thread(runnable, "location-fetcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final CompiledList<String> codeTypes = CompiledList.compile(Arrays
+            .stream(Types.values())
+            .map(Types::getType)
+            .collect(Collectors.toList()), null, null);
 
     private static final String frame;
 
@@ -51,17 +76,19 @@ public class CodesService extends BaseServiceWithFraming {
         super(tdbConnection);
     }
 
-    public List<String> listCodes() {
-        return Arrays
-                .stream(Types.values())
-                .map(Types::getType)
-                .collect(Collectors.toList());
-
+    public CompiledList<String> listCodes() {
+        return codeTypes;
     }
 
 
-    @Cacheable("codes")
-    public List<SkosCode> getCodes(Types type) {
+    /**
+     * @return the codes of the type, compiled when the graph of the type was last written
+     */
+    public CompiledList<SkosCode> getCodes(Types type) {
+        return tdbConnection.getCompiled("codes/" + type, type.toString(), () -> CompiledList.compile(compileCodes(type), SkosCode::getUri, SkosCode::getCode));
+    }
+
+    private List<SkosCode> compileCodes(Types type) {
 
         return tdbConnection.inTransaction(ReadWrite.READ, connection -> {
             Dataset dataset = DatasetFactory.create(connection.getModelWithInference(type.toString()));
@@ -73,11 +100,15 @@ public class CodesService extends BaseServiceWithFraming {
                 result.addAll(extractLocationCodes(model, model.listResourcesWithProperty(GeoNames.officialName)));
                 result.addAll(extractLocationCodes(model, model.listResourcesWithProperty(RDF.type, AdmEnhet.NamedIndividual)));
 
-            } else {
+            } else if (!dataset.getDefaultModel().isEmpty()) {
+                // the framing fails on an empty graph, like the subjects before any is added
                 String json = frame(dataset, frame);
                 dataset.close();
 
-                result = new Gson().fromJson(json, FramedSkosCode.class).getGraph();
+                List<SkosCode> framed = new Gson().fromJson(json, FramedSkosCode.class).getGraph();
+                if (framed != null) {
+                    result = framed;
+                }
             }
 
             return result;
@@ -115,16 +146,62 @@ public class CodesService extends BaseServiceWithFraming {
 
     }
 
+    /**
+     * Registers many locations at once. The remote models are fetched concurrently and written to the location
+     * graph in one write transaction, so the caches are evicted once for the whole batch.
+     *
+     * @param locationUris uris of the locations, duplicates are registered once
+     * @return the codes of the locations that could be resolved, locations that could not be fetched are left out
+     */
+    public List<SkosCode> addLocations(Collection<String> locationUris) {
+        Map<String, CompletableFuture<Model>> fetches = new LinkedHashMap<>();
+        for (String locationUri : new LinkedHashSet<>(locationUris)) {
+            fetches.put(locationUri, CompletableFuture.supplyAsync(() -> fetchLocation(locationUri), locationFetcher));
+        }
+
+        Map<String, Model> models = new LinkedHashMap<>();
+        fetches.forEach((locationUri, fetch) -> {
+            Model model = fetch.join();
+            if (model != null) {
+                models.put(locationUri, model);
+            }
+        });
+
+        if (models.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        tdbConnection.inTransaction(ReadWrite.WRITE, connection -> {
+            connection.addModelsToGraph(models.values(), Types.location.toString());
+            return null;
+        });
+
+        return tdbConnection.inTransaction(ReadWrite.READ, connection -> models.keySet().stream()
+            .map(uri -> extractLocationCode(connection.describeWithInference(uri), uri))
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList()));
+    }
+
+    private Model fetchLocation(String locationUri) {
+        try {
+            return getRemoteModel(new URL(locationUri));
+        } catch (Exception e) {
+            logger.error("Unable to find location with URI <{}>. Reason {}", locationUri, e.getMessage());
+            return null;
+        }
+    }
+
     public SkosCode getLocationCode(String uri){
-        return tdbConnection.inTransaction(ReadWrite.READ, connection -> {
-            Dataset dataset = DatasetFactory.create(connection.describeWithInference(uri));
+        return tdbConnection.inTransaction(ReadWrite.READ, connection -> extractLocationCode(connection.describeWithInference(uri), uri));
+    }
 
-            SkosCode locationCode = DatasetBuilder.extractLocation(dataset.getDefaultModel().getResource(uri));
+    private SkosCode extractLocationCode(Model description, String uri) {
+        Dataset dataset = DatasetFactory.create(description);
 
-            dataset.close();
+        SkosCode locationCode = DatasetBuilder.extractLocation(dataset.getDefaultModel().getResource(uri));
 
-            return locationCode;
+        dataset.close();
 
-        });
+        return locationCode;
     }
 }
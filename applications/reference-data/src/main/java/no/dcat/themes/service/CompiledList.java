@@ -0,0 +1,109 @@
+package no.dcat.themes.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.DigestUtils;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * An immutable list compiled from a graph, together with its JSON and the ETag of the JSON.
+ *
+ * The list is compiled once each time the graph changes. The endpoints send the JSON as it is, so serving a list
+ * does not depend on the framing that compiled it. The items can also be looked up by uri and by code.
+ *
+ * The items are shared by all requests and must not be modified.
+ */
+public class CompiledList<T> extends AbstractList<T> {
+
+    private static final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private final List<T> items;
+    private final Map<String, T> byUri;
+    private final Map<String, T> byCode;
+    private final byte[] json;
+    private final String etag;
+
+    private CompiledList(List<T> items, Map<String, T> byUri, Map<String, T> byCode, byte[] json) {
+        this.items = items;
+        this.byUri = byUri;
+        this.byCode = byCode;
+        this.json = json;
+        this.etag = "\"" + DigestUtils.md5DigestAsHex(json) + "\"";
+    }
+
+    /**
+     * @param items the items of the list
+     * @param uriKey the uri of an item, or null if the items are not looked up by uri
+     * @param codeKey the code of an item, or null if the items are not looked up by code
+     */
+    public static <T> CompiledList<T> compile(List<T> items, Function<T, String> uriKey, Function<T, String> codeKey) {
+        List<T> copy = new ArrayList<>(items);
+
+        try {
+            return new CompiledList<>(Collections.unmodifiableList(copy), index(copy, uriKey), index(copy, codeKey), objectMapper.writeValueAsBytes(copy));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to write compiled list as JSON", e);
+        }
+    }
+
+    private static <T> Map<String, T> index(List<T> items, Function<T, String> key) {
+        if (key == null) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, T> index = new HashMap<>();
+        for (T item : items) {
+            String value = key.apply(item);
+            if (value != null) {
+                index.putIfAbsent(value, item);
+            }
+        }
+        return Collections.unmodifiableMap(index);
+    }
+
+    @Override
+    public T get(int index) {
+        return items.get(index);
+    }
+
+    @Override
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * @return the item with the uri, or null
+     */
+    public T getByUri(String uri) {
+        return byUri.get(uri);
+    }
+
+    /**
+     * @return the item with the code, or null
+     */
+    public T getByCode(String code) {
+        return byCode.get(code);
+    }
+
+    /**
+     * @return the list as UTF-8 encoded JSON, must not be modified
+     */
+    public byte[] getJson() {
+        return json;
+    }
+
+    /**
+     * @return a strong ETag of the JSON, quoted
+     */
+    public String getEtag() {
+        return etag;
+    }
+}
@@ -0,0 +1,39 @@
+package no.dcat.themes.service;
+
+import no.dcat.shared.Types;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Compiles the code lists, themes and help texts when the application has started, so that the first requests
+ * do not wait for the framing.
+ */
+@Component
+public class CompiledListsLoader {
+
+    static private final Logger logger = LoggerFactory.getLogger(CompiledListsLoader.class);
+
+    private final CodesService codesService;
+    private final ThemesService themesService;
+    private final HelpTextService helpTextService;
+
+    @Autowired
+    public CompiledListsLoader(CodesService codesService, ThemesService themesService, HelpTextService helpTextService) {
+        this.codesService = codesService;
+        this.themesService = themesService;
+        this.helpTextService = helpTextService;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void compile() {
+        for (Types type : Types.values()) {
+            logger.info("Compiled {} codes of type {}", codesService.getCodes(type).size(), type);
+        }
+        logger.info("Compiled {} themes", themesService.getThemes().size());
+        logger.info("Compiled {} help texts", helpTextService.getHelpTexts().size());
+    }
+}
@@ -13,11 +13,11 @@ import org.apache.jena.shared.NotFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -45,27 +45,21 @@ public class HelpTextService extends BaseServiceWithFraming {
         super(tdbConnection);
     }
 
-    @Cacheable("helptexts")
     public HelpText getHelpTexts(String id) throws NotFoundException {
-        return tdbConnection.inTransaction(ReadWrite.READ, connection -> {
-            Model model = connection.getModel(TDBService.HELPTEXTS_GRAPH);
-            Resource subject = model.createResource("http://brreg.no/fdk/fields#" + id);
-            StmtIterator descIter = model.listStatements(subject, null, (RDFNode) null);
-            if (! descIter.hasNext()) throw new NotFoundException(id + " Not found");
-            Model newModel = ModelFactory.createDefaultModel();
-            newModel.add(descIter);
-            Dataset dataset = DatasetFactory.create(newModel);
+        HelpText helpText = getHelpTexts().getByUri("http://brreg.no/fdk/fields#" + id);
+        if (helpText == null) throw new NotFoundException(id + " Not found");
+        return helpText;
+    }
 
-            String json = frame(dataset, frame);
-            logger.trace("JSON returned for ID: {} with Helptexts:\n{}", id, json);
 
-            return new Gson().fromJson(json, FramedHelpText.class).getGraph().get(0);
-        });
+    /**
+     * @return the help texts, compiled when the help texts graph was last written, by uri
+     */
+    public CompiledList<HelpText> getHelpTexts() {
+        return tdbConnection.getCompiled("helptexts", TDBService.HELPTEXTS_GRAPH, () -> CompiledList.compile(compileHelpTexts(), helpText -> helpText.getURI().toString(), null));
     }
 
-
-    @Cacheable("helptexts")
-    public List<HelpText> getHelpTexts() {
+    private List<HelpText> compileHelpTexts() {
 
 
         return tdbConnection.inTransaction(ReadWrite.READ, connection -> {
@@ -80,7 +74,8 @@ public class HelpTextService extends BaseServiceWithFraming {
             String json = frame(dataset, frame);
 
 
-            return new Gson().fromJson(json, FramedHelpText.class).getGraph();
+            List<HelpText> helpTexts = new Gson().fromJson(json, FramedHelpText.class).getGraph();
+            return helpTexts != null ? helpTexts : new ArrayList<>();
         });
     }
 
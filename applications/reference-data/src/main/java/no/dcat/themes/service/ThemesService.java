@@ -9,11 +9,11 @@ import org.apache.jena.query.Dataset;
 import org.apache.jena.query.DatasetFactory;
 import org.apache.jena.query.ReadWrite;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 @Service
@@ -38,8 +38,14 @@ public class ThemesService extends BaseServiceWithFraming {
     }
 
 
-    @Cacheable("themes")
-    public List<DataTheme> getThemes() {
+    /**
+     * @return the themes, compiled when the themes graph was last written
+     */
+    public CompiledList<DataTheme> getThemes() {
+        return tdbConnection.getCompiled("themes", TDBService.THEMES_GRAPH, () -> CompiledList.compile(compileThemes(), DataTheme::getId, DataTheme::getCode));
+    }
+
+    private List<DataTheme> compileThemes() {
 
 
         return tdbConnection.inTransaction(ReadWrite.READ, connection -> {
@@ -47,7 +53,8 @@ public class ThemesService extends BaseServiceWithFraming {
 
             String json = frame(dataset, frame);
 
-            return new Gson().fromJson(json, FramedDataTheme.class).getGraph();
+            List<DataTheme> themes = new Gson().fromJson(json, FramedDataTheme.class).getGraph();
+            return themes != null ? themes : new ArrayList<>();
         });
     }
 
@@ -0,0 +1,71 @@
+package no.dcat.themes.builders;
+
+import no.dcat.shared.Types;
+import no.dcat.shared.testcategories.UnitTest;
+import no.dcat.themes.service.CodesService;
+import no.dcat.themes.service.CompiledList;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@RunWith(SpringRunner.class)
+@Category(UnitTest.class)
+public class CompiledListEndpointTest {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private CodesService codesService;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void setup() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+    }
+
+    @Test
+    public void codesAreSentAsCompiledWithEtag() throws Exception {
+        CompiledList<?> codes = codesService.getCodes(Types.provenancestatement);
+
+        MvcResult result = mockMvc.perform(get("/codes/provenancestatement"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("ETag", codes.getEtag()))
+            .andExpect(content().contentTypeCompatibleWith("application/json"))
+            .andReturn();
+
+        assertThat(result.getResponse().getContentAsByteArray(), is(codes.getJson()));
+    }
+
+    @Test
+    public void knownEtagIsNotModified() throws Exception {
+        String etag = mockMvc.perform(get("/themes"))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/themes").header("If-None-Match", etag))
+            .andExpect(status().isNotModified())
+            .andExpect(content().string(""));
+
+        mockMvc.perform(get("/codes").header("If-None-Match", "\"other\""))
+            .andExpect(status().isOk())
+            .andExpect(content().bytes(codesService.listCodes().getJson()));
+    }
+}
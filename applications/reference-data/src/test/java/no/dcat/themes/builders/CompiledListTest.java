@@ -0,0 +1,149 @@
+package no.dcat.themes.builders;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.dcat.datastore.domain.dcat.vocabulary.GeoNames;
+import no.dcat.shared.DataTheme;
+import no.dcat.shared.SkosCode;
+import no.dcat.shared.Types;
+import no.dcat.shared.testcategories.UnitTest;
+import no.dcat.themes.database.TDBConnection;
+import no.dcat.themes.database.TDBInferenceService;
+import no.dcat.themes.database.TDBService;
+import no.dcat.themes.service.CodesService;
+import no.dcat.themes.service.CompiledList;
+import no.dcat.themes.service.HelpTextService;
+import no.dcat.themes.service.ThemesService;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * The code lists, themes and help texts are compiled once, and again only after their graph is written.
+ */
+@Category(UnitTest.class)
+public class CompiledListTest {
+
+    private static final String OSLO = "http://sws.geonames.org/3143242/";
+
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    private TDBService tdbService;
+    private TDBConnection tdbConnection;
+
+    @Before
+    public void setup() throws IOException {
+        tdbService = new TDBService(testFolder.getRoot().getCanonicalPath());
+        tdbService.postConstruct();
+        tdbConnection = new TDBConnection(new TDBInferenceService(tdbService));
+    }
+
+    private void addOslo(Types type) {
+        Model oslo = ModelFactory.createDefaultModel();
+        oslo.createResource(OSLO).addProperty(GeoNames.officialName, "Oslo", "no");
+        tdbConnection.inTransaction(ReadWrite.WRITE, connection -> {
+            connection.addModelToGraph(oslo, type.toString());
+            return null;
+        });
+    }
+
+    @Test
+    public void listsAreCompiledOnceUntilTheirGraphIsWritten() {
+        CodesService codesService = new CodesService(tdbConnection);
+        CompiledList<SkosCode> provenance = codesService.getCodes(Types.provenancestatement);
+        CompiledList<DataTheme> themes = new ThemesService(tdbConnection).getThemes();
+
+        assertThat(new CodesService(tdbConnection).getCodes(Types.provenancestatement), sameInstance(provenance));
+        assertThat(new ThemesService(tdbConnection).getThemes(), sameInstance(themes));
+        assertThat(codesService.getCodes(Types.location).getByUri(OSLO), is(nullValue()));
+
+        addOslo(Types.location);
+
+        assertThat(codesService.getCodes(Types.location).getByUri(OSLO).getPrefLabel().get("no"), is("Oslo"));
+        assertThat(codesService.getCodes(Types.provenancestatement), sameInstance(provenance));
+        assertThat(new ThemesService(tdbConnection).getThemes(), sameInstance(themes));
+    }
+
+    @Test
+    public void writtenGraphIsCompiledAgainOnceForConcurrentReaders() throws Exception {
+        AtomicInteger compilations = new AtomicInteger();
+        Supplier<Integer> compile = () -> {
+            sleep(100);
+            return compilations.incrementAndGet();
+        };
+        String location = Types.location.toString();
+
+        assertThat(tdbService.getCompiled("test", location, compile), is(1));
+
+        addOslo(Types.subject);
+        assertThat(tdbService.getCompiled("test", location, compile), is(1));
+
+        addOslo(Types.location);
+        ExecutorService readers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> reads = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                reads.add(readers.submit(() -> tdbService.getCompiled("test", location, compile)));
+            }
+            for (Future<Integer> read : reads) {
+                assertThat(read.get(), is(2));
+            }
+        } finally {
+            readers.shutdown();
+        }
+        assertThat(compilations.get(), is(2));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void jsonIsTheSerializedList() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        CompiledList<SkosCode> codes = new CodesService(tdbConnection).getCodes(Types.provenancestatement);
+
+        assertThat(objectMapper.readTree(codes.getJson()), is((JsonNode) objectMapper.valueToTree(new ArrayList<>(codes))));
+        assertThat(codes.getByCode("VEDTAK"), is(codes.getByUri("http://data.brreg.no/datakatalog/provinens/vedtak")));
+        assertThat(codes.getByCode("VEDTAK").getPrefLabel().get("nb"), is("Vedtak"));
+    }
+
+    @Test
+    public void helpTextsAreLookedUpById() {
+        HelpTextService helpTextService = new HelpTextService(tdbConnection);
+
+        assertThat(helpTextService.getHelpTexts("Dataset_description"), is(notNullValue()));
+        assertThat(helpTextService.getHelpTexts("Dataset_description"),
+            sameInstance(helpTextService.getHelpTexts().getByUri("http://brreg.no/fdk/fields#Dataset_description")));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void compiledListCannotBeModified() {
+        new CodesService(tdbConnection).getCodes(Types.provenancestatement).add(new SkosCode());
+    }
+}
@@ -0,0 +1,96 @@
+package no.dcat.themes.builders;
+
+import com.sun.net.httpserver.HttpExchange;
+import no.dcat.shared.SkosCode;
+import no.dcat.shared.testcategories.UnitTest;
+import no.dcat.shared.testutils.StubHttpServer;
+import no.dcat.themes.database.TDBConnection;
+import no.dcat.themes.database.TDBInferenceService;
+import no.dcat.themes.database.TDBService;
+import no.dcat.themes.service.CodesService;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Registration of many locations in one batch, from a local server instead of geonames.
+ */
+@Category(UnitTest.class)
+public class LocationBatchTest {
+
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    @Rule
+    public StubHttpServer server = new StubHttpServer(this::respond);
+
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private final AtomicInteger evictions = new AtomicInteger();
+
+    private CodesService codesService;
+
+    private void respond(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        requests.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(200);
+
+            if (path.startsWith("/missing")) {
+                StubHttpServer.respond(exchange, 404);
+                return;
+            }
+
+            StubHttpServer.respond(exchange, 200, "text/turtle", "@prefix gn: <http://www.geonames.org/ontology#> .\n"
+                + "<" + server.url(path) + "> gn:officialName \"" + path.substring(1) + "\"@no .\n");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.close();
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+    @Before
+    public void setup() throws Exception {
+        TDBService tdbService = new TDBService(testFolder.getRoot().getCanonicalPath()) {
+            @Override
+            public void evictCache() {
+                evictions.incrementAndGet();
+            }
+        };
+        TDBConnection tdbConnection = new TDBConnection(new TDBInferenceService(tdbService));
+        codesService = new CodesService(tdbConnection);
+    }
+
+    @Test
+    public void locationsAreFetchedConcurrentlyAndWrittenOnce() {
+        List<String> uris = Arrays.asList(server.url("/Oslo"), server.url("/Bergen"), server.url("/Oslo"), server.url("/Tromsø"), server.url("/missing"));
+
+        List<SkosCode> codes = codesService.addLocations(uris);
+
+        assertThat(codes.stream().map(code -> code.getPrefLabel().get("no")).collect(Collectors.toList()), containsInAnyOrder("Oslo", "Bergen", "Tromsø"));
+        assertThat(requests.get("/Oslo").get(), is(1));
+        assertThat(maxRunning.get(), greaterThan(1));
+        assertThat(evictions.get(), is(1));
+
+        assertThat(codesService.getLocationCode(server.url("/Bergen")).getPrefLabel().get("no"), is("Bergen"));
+    }
+}
@@ -0,0 +1,213 @@
+package no.dcat.themes.builders;
+
+import no.dcat.datastore.domain.dcat.builders.DatasetBuilder;
+import no.dcat.datastore.domain.dcat.vocabulary.GeoNames;
+import no.dcat.shared.SkosCode;
+import no.dcat.shared.Types;
+import no.dcat.shared.testcategories.UnitTest;
+import no.dcat.themes.database.TDBConnection;
+import no.dcat.themes.database.TDBInferenceService;
+import no.dcat.themes.database.TDBService;
+import no.dcat.themes.service.CodesService;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.reasoner.ReasonerRegistry;
+import org.apache.jena.util.FileManager;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * The materialized inferences must give the same models and codes as the RDFS reasoner did when it ran on every read.
+ */
+@Category(UnitTest.class)
+public class MaterializedInferenceTest {
+
+    private static final String OSLO = "http://sws.geonames.org/3143242/";
+    private static final Resource FEATURE = ResourceFactory.createResource(GeoNames.NS + "Feature");
+    private static final Property SHORT_NAME = ResourceFactory.createProperty(GeoNames.NS, "shortName");
+
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    private final Model schema = FileManager.get().loadModel("ontology.ttl");
+
+    private TDBService tdbService;
+    private TDBConnection tdbConnection;
+    private Dataset dataset;
+
+    @Before
+    public void setup() throws IOException {
+        tdbService = new TDBService(testFolder.getRoot().getCanonicalPath());
+        tdbService.postConstruct();
+
+        TDBInferenceService tdbInferenceService = new TDBInferenceService(tdbService);
+        tdbConnection = new TDBConnection(tdbInferenceService);
+        dataset = tdbInferenceService.getDataset();
+    }
+
+    private Model liveInference(Model model) {
+        return ModelFactory.createInfModel(ReasonerRegistry.getRDFSReasoner(), schema, model);
+    }
+
+    private static Model oslo() {
+        Model model = ModelFactory.createDefaultModel();
+        model.createResource(OSLO)
+            .addProperty(RDF.type, FEATURE)
+            .addProperty(GeoNames.officialName, "Oslo", "no")
+            .addProperty(GeoNames.officialName, "Oslo", "en")
+            .addProperty(SHORT_NAME, "Oslo kommune", "no");
+        return model;
+    }
+
+    @Test
+    public void everyGraphHasTheSameTriplesAsTheReasoner() {
+        List<String> graphNames = new ArrayList<>();
+        for (Types type : Types.values()) {
+            if (type.getSourceUrl() != null) {
+                graphNames.add(type.toString());
+            }
+        }
+        graphNames.add(TDBService.THEMES_GRAPH);
+        graphNames.add(TDBService.HELPTEXTS_GRAPH);
+
+        tdbConnection.inTransaction(ReadWrite.READ, connection -> {
+            for (String graphName : graphNames) {
+                // every statement the reasoner lists, its size() only counts the base graph
+                Model live = ModelFactory.createDefaultModel().add(liveInference(connection.getModel(graphName)));
+                Model materialized = connection.getModelWithInference(graphName);
+
+                assertThat(graphName, materialized.size(), is(live.size()));
+                assertThat(graphName, materialized.isIsomorphicWith(live), is(true));
+            }
+            return null;
+        });
+    }
+
+    @Test
+    public void addedLocationIsDescribedWithItsInferences() {
+        tdbConnection.inTransaction(ReadWrite.WRITE, connection -> {
+            connection.addModelToGraph(oslo(), Types.location.toString());
+            return null;
+        });
+
+        tdbConnection.inTransaction(ReadWrite.READ, connection -> {
+            Model liveDescription = liveInference(QueryExecutionFactory.create(QueryFactory.create("describe <" + OSLO + ">"),
+                connection.getModel(Types.location.toString())).execDescribe());
+            Model description = connection.describeWithInference(OSLO);
+
+            Resource live = liveDescription.getResource(OSLO);
+            Resource materialized = description.getResource(OSLO);
+            assertThat(new HashSet<>(materialized.listProperties().toList()), is(new HashSet<>(live.listProperties().toList())));
+
+            Model liveLocations = liveInference(connection.getModel(Types.location.toString()));
+            assertThat(connection.getModelWithInference(Types.location.toString()).isIsomorphicWith(liveLocations), is(true));
+            return null;
+        });
+
+        SkosCode expected = tdbConnection.inTransaction(ReadWrite.READ, connection ->
+            DatasetBuilder.extractLocation(liveInference(connection.getModel(Types.location.toString())).getResource(OSLO)));
+        CodesService codesService = new CodesService(tdbConnection);
+
+        assertThat(codesService.getLocationCode(OSLO), is(expected));
+        assertThat(codesService.getCodes(Types.location).contains(expected), is(true));
+    }
+
+    private static Model bergen() {
+        Model model = ModelFactory.createDefaultModel();
+        model.createResource("http://sws.geonames.org/3161732/")
+            .addProperty(RDF.type, FEATURE)
+            .addProperty(GeoNames.officialName, "Bergen", "no");
+        return model;
+    }
+
+    private void assertInferredLocationsAreTheClosure() {
+        tdbConnection.inTransaction(ReadWrite.READ, connection -> {
+            Model live = ModelFactory.createDefaultModel().add(liveInference(connection.getModel(Types.location.toString())));
+            Model materialized = connection.getModelWithInference(Types.location.toString());
+
+            assertThat(materialized.size(), is(live.size()));
+            assertThat(materialized.isIsomorphicWith(live), is(true));
+            return null;
+        });
+    }
+
+    @Test
+    public void inferencesOfAddedModelsAreAddedToTheClosure() {
+        tdbConnection.inTransaction(ReadWrite.WRITE, connection -> {
+            connection.addModelToGraph(oslo(), Types.location.toString());
+            return null;
+        });
+        tdbConnection.inTransaction(ReadWrite.WRITE, connection -> {
+            connection.addModelsToGraph(Arrays.asList(bergen(), oslo()), Types.location.toString());
+            return null;
+        });
+
+        assertInferredLocationsAreTheClosure();
+    }
+
+    @Test
+    public void addedSchemaMaterializesTheWholeGraph() {
+        tdbConnection.inTransaction(ReadWrite.WRITE, connection -> {
+            connection.addModelToGraph(oslo(), Types.location.toString());
+            return null;
+        });
+
+        // the short name of oslo, which is already stored, becomes a label
+        Model schemaExtension = ModelFactory.createDefaultModel().add(SHORT_NAME, RDFS.subPropertyOf, RDFS.label);
+        tdbConnection.inTransaction(ReadWrite.WRITE, connection -> {
+            connection.addModelToGraph(schemaExtension, Types.location.toString());
+            return null;
+        });
+
+        assertInferredLocationsAreTheClosure();
+        assertThat(inTransaction(() -> dataset.getNamedModel(TDBService.inferredGraphName(Types.location.toString()))
+            .contains(ResourceFactory.createResource(OSLO), RDFS.label)), is(true));
+    }
+
+    @Test
+    public void graphsStoredWithoutInferencesAreMaterializedAtStartup() throws IOException {
+        dataset.begin(ReadWrite.WRITE);
+        try {
+            dataset.getNamedModel(Types.subject.toString()).add(oslo());
+        } finally {
+            dataset.commit();
+        }
+        assertThat(inTransaction(() -> dataset.containsNamedModel(TDBService.inferredGraphName(Types.subject.toString()))), is(false));
+
+        tdbService.postConstruct();
+
+        assertThat(inTransaction(() -> liveInference(dataset.getNamedModel(Types.subject.toString()))
+            .isIsomorphicWith(dataset.getNamedModel(TDBService.inferredGraphName(Types.subject.toString())))), is(true));
+    }
+
+    private boolean inTransaction(BooleanSupplier read) {
+        dataset.begin(ReadWrite.READ);
+        try {
+            return read.getAsBoolean();
+        } finally {
+            dataset.end();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package no.dcat.configuration;
+
+import no.dcat.client.referencedata.ReferenceCodeCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * The code lists and themes from reference-data, loaded on the first import and shared by all imports.
+ */
+@Configuration
+public class ReferenceDataConfiguration {
+
+    @Bean(destroyMethod = "shutdown")
+    public ReferenceCodeCache referenceCodeCache(@Value("${application.themesServiceUrl}") String themesServiceUrl) {
+        return new ReferenceCodeCache(themesServiceUrl, ReferenceCodeCache.DEFAULT_REFRESH_INTERVAL);
+    }
+}
@@ -3,6 +3,7 @@ package no.dcat.controller;
 import com.google.common.collect.Sets;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import no.dcat.client.referencedata.ReferenceCodeCache;
 import no.dcat.datastore.domain.dcat.builders.DcatReader;
 import no.dcat.model.Catalog;
 import no.dcat.model.Dataset;
@@ -49,15 +50,21 @@ public class ImportController {
     private static Logger logger = LoggerFactory.getLogger(ImportController.class);
     protected final DatasetController datasetController;
     protected final CatalogRepository catalogRepository;
+    private final ReferenceCodeCache referenceCodeCache;
     private final Map<String, Map<String, SkosCode>> allCodes = new HashMap<>();
     private final Set<String> languages = Sets.newHashSet("no", "nb", "nn", "en");
     @Value("${application.themesServiceUrl}")
     private String THEMES_SERVICE_URL = "http://localhost:8100";
 
     @Autowired
-    public ImportController(DatasetController datasetController, CatalogRepository catalogRepository) {
+    public ImportController(DatasetController datasetController, CatalogRepository catalogRepository, ReferenceCodeCache referenceCodeCache) {
         this.datasetController = datasetController;
         this.catalogRepository = catalogRepository;
+        this.referenceCodeCache = referenceCodeCache;
+    }
+
+    public ImportController(DatasetController datasetController, CatalogRepository catalogRepository) {
+        this(datasetController, catalogRepository, null);
     }
 
     @PreAuthorize("hasPermission(#catalogId, 'write')")
@@ -180,7 +187,8 @@ public class ImportController {
     }
 
     DcatReader getDcatReader(Model model) {
-        return new DcatReader(model, THEMES_SERVICE_URL, "user", "password");
+        ReferenceCodeCache referenceCodes = referenceCodeCache != null ? referenceCodeCache : ReferenceCodeCache.shared(THEMES_SERVICE_URL);
+        return new DcatReader(model, referenceCodes, THEMES_SERVICE_URL, "user", "password");
     }
 
     List<Dataset> parseDatasets(Model model) throws IOException {
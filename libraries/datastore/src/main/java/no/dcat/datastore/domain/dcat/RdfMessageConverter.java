@@ -2,7 +2,7 @@ package no.dcat.datastore.domain.dcat;
 
 import no.dcat.shared.Catalog;
 import no.dcat.shared.Dataset;
-import no.dcat.datastore.domain.dcat.builders.DcatBuilder;
+import no.dcat.datastore.domain.dcat.builders.DcatStreamWriter;
 import org.springframework.http.HttpInputMessage;
 import org.springframework.http.HttpOutputMessage;
 import org.springframework.http.MediaType;
@@ -23,6 +23,7 @@ public class RdfMessageConverter extends AbstractHttpMessageConverter<Object> {
     public RdfMessageConverter() {
         super (
                 new MediaType("text", "turtle", charset),
+                new MediaType(APPLICATION, "n-triples", charset),
                 new MediaType(APPLICATION, "rdf+xml", charset),
                 new MediaType(APPLICATION, "ld+json", charset)
         );
@@ -46,11 +47,11 @@ public class RdfMessageConverter extends AbstractHttpMessageConverter<Object> {
 
             String format = format(outputMessage);
 
-            outputMessage.getBody().write(DcatBuilder.transform(catalog, format).getBytes());
+            DcatStreamWriter.write(catalog, format, outputMessage.getBody());
         } else if (o instanceof Dataset) {
             Dataset dataset = (Dataset) o;
 
-            outputMessage.getBody().write(DcatBuilder.transform(dataset, format(outputMessage)).getBytes());
+            DcatStreamWriter.write(dataset, format(outputMessage), outputMessage.getBody());
         }
 
     }
@@ -63,6 +64,8 @@ public class RdfMessageConverter extends AbstractHttpMessageConverter<Object> {
                 format = "RDF/XML";
             } else if ("ld+json".equals(media.getSubtype())) {
                 format = "JSONLD";
+            } else if ("n-triples".equals(media.getSubtype())) {
+                format = "N-TRIPLES";
             }
         }
         return format;
@@ -45,7 +45,6 @@ public abstract class AbstractBuilder {
     public static String defaultLanguage = "no";
 
     private static Logger logger = LoggerFactory.getLogger(AbstractBuilder.class);
-    static Map<String, Contact> contactMap = new HashMap<>();
 
 
     // TODO - remove in next iteration
@@ -393,13 +392,21 @@ public abstract class AbstractBuilder {
      * @return a list of instantiated Contact object.
      */
     public static List<Contact> extractContacts(Resource datasetResource) {
+        return extractContacts(datasetResource, new BuildContext());
+    }
+
+    /**
+     * Extracts the contacts of a dataset, reusing the contacts with the same uri that were extracted in the build.
+     *
+     * @param datasetResource the resource which contains the contact point resource
+     * @param context the build the dataset is part of
+     * @return a list of instantiated Contact object.
+     */
+    public static List<Contact> extractContacts(Resource datasetResource, BuildContext context) {
         try {
             List<Contact> result = new ArrayList<>();
             StmtIterator iterator = datasetResource.listProperties(DCAT.contactPoint);
             while (iterator.hasNext()) {
-                Contact contact = new Contact();
-                boolean hasAttributes = false;
-
                 final Statement property = iterator.next();
 
                 if (property == null) {
@@ -409,64 +416,15 @@ public abstract class AbstractBuilder {
 
                 final Resource object = property.getObject().asResource();
 
+                Contact contact;
                 if (object.getURI() != null && !object.getURI().isEmpty()) {
-                    contact.setUri(object.getURI());
-
                     // reuse existing contact
-                    if (contactMap.containsKey(contact.getUri())) {
-                        result.add(contactMap.get(contact.getUri()));
-                        continue;
-                    }
-
-                    contactMap.put(contact.getUri(), contact);
-                }
-
-                final String fn = extractAsString(object, Vcard.fn);
-                if (fn != null) {
-                    hasAttributes = true;
-                    contact.setFullname(fn);
-                }
-
-                final String email = extractAsString(object, Vcard.hasEmail);
-                if (email != null) {
-                    hasAttributes = true;
-                    if (email.startsWith("mailto:")) {
-                        contact.setEmail(email.substring("mailto:".length(), email.length()));
-                    } else {
-                        contact.setEmail(email);
-                    }
-                }
-
-                final String telephone = extractAsString(object, Vcard.hasTelephone);
-                if (telephone != null) {
-                    hasAttributes = true;
-                    if (telephone.startsWith("tel:")) {
-                        contact.setHasTelephone(telephone.substring("tel:".length(), telephone.length()));
-                    } else {
-                        contact.setHasTelephone(telephone);
-                    }
-                }
-
-                final String organizationName = extractAsString(object, Vcard.organizationName);
-                if (organizationName != null) {
-                    hasAttributes = true;
-                    contact.setOrganizationName(organizationName);
-                }
-
-                final String organizationUnit = extractAsString(object, Vcard.organizationUnit);
-                if (organizationUnit != null) {
-                    hasAttributes = true;
-                    contact.setOrganizationUnit(organizationUnit);
-                }
-
-                final String hasURL = extractAsString(object, Vcard.hasURL);
-                if (hasURL != null) {
-                    hasAttributes = true;
-                    contact.setHasURL(hasURL);
+                    contact = context.getContact(object.getURI(), () -> extractContact(object));
+                } else {
+                    contact = extractContact(object);
                 }
 
-                if (hasAttributes) {
-                    contactMap.put(contact.getUri(), contact);
+                if (contact != null) {
                     result.add(contact);
                 }
             }
@@ -481,6 +439,64 @@ public abstract class AbstractBuilder {
         return null;
     }
 
+    /**
+     * @return the contact, or null if the contact point has no attributes
+     */
+    private static Contact extractContact(Resource object) {
+        Contact contact = new Contact();
+        boolean hasAttributes = false;
+
+        if (object.getURI() != null && !object.getURI().isEmpty()) {
+            contact.setUri(object.getURI());
+        }
+
+        final String fn = extractAsString(object, Vcard.fn);
+        if (fn != null) {
+            hasAttributes = true;
+            contact.setFullname(fn);
+        }
+
+        final String email = extractAsString(object, Vcard.hasEmail);
+        if (email != null) {
+            hasAttributes = true;
+            if (email.startsWith("mailto:")) {
+                contact.setEmail(email.substring("mailto:".length(), email.length()));
+            } else {
+                contact.setEmail(email);
+            }
+        }
+
+        final String telephone = extractAsString(object, Vcard.hasTelephone);
+        if (telephone != null) {
+            hasAttributes = true;
+            if (telephone.startsWith("tel:")) {
+                contact.setHasTelephone(telephone.substring("tel:".length(), telephone.length()));
+            } else {
+                contact.setHasTelephone(telephone);
+            }
+        }
+
+        final String organizationName = extractAsString(object, Vcard.organizationName);
+        if (organizationName != null) {
+            hasAttributes = true;
+            contact.setOrganizationName(organizationName);
+        }
+
+        final String organizationUnit = extractAsString(object, Vcard.organizationUnit);
+        if (organizationUnit != null) {
+            hasAttributes = true;
+            contact.setOrganizationUnit(organizationUnit);
+        }
+
+        final String hasURL = extractAsString(object, Vcard.hasURL);
+        if (hasURL != null) {
+            hasAttributes = true;
+            contact.setHasURL(hasURL);
+        }
+
+        return hasAttributes ? contact : null;
+    }
+
 
     /**
      * Extract period of time property from DCAT resource and map to model class.
@@ -0,0 +1,43 @@
+package no.dcat.datastore.domain.dcat.builders;
+
+import no.dcat.shared.Contact;
+import no.dcat.shared.Subject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+/**
+ * What the datasets of one build share: the contacts by uri, so that datasets with the same contact point get the
+ * same contact, and the subjects the datasets refer to.
+ *
+ * A context belongs to one build of one model, and is released with the builder. The datasets of a build may be
+ * created in parallel, so the context is thread-safe.
+ */
+public class BuildContext {
+
+    // the contact of each uri, empty if the contact point has no attributes
+    private final Map<String, Optional<Contact>> contacts = new ConcurrentHashMap<>();
+
+    // by uri, so that the subjects are listed in the same order whatever order the datasets were created in
+    private final Map<String, Subject> subjects = new ConcurrentSkipListMap<>();
+
+    /**
+     * @return the contact with the uri, extracted the first time it is asked for, or null if it has no attributes
+     */
+    Contact getContact(String uri, Supplier<Contact> extract) {
+        return contacts.computeIfAbsent(uri, key -> Optional.ofNullable(extract.get())).orElse(null);
+    }
+
+    void putSubject(Subject subject) {
+        subjects.put(subject.getUri(), subject);
+    }
+
+    public List<Subject> getSubjects() {
+        return new ArrayList<>(subjects.values());
+    }
+}
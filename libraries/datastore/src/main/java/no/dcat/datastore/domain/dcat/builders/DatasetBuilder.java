@@ -16,11 +16,13 @@ import no.dcat.datastore.domain.dcat.vocabulary.DQV;
 import no.dcat.datastore.domain.dcat.vocabulary.OA;
 import org.apache.jena.rdf.model.Literal;
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.Property;
 import org.apache.jena.rdf.model.ResIterator;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.Statement;
 import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.shared.Lock;
 import org.apache.jena.sparql.vocabulary.FOAF;
 import org.apache.jena.vocabulary.DCTerms;
 import org.apache.jena.vocabulary.RDF;
@@ -31,9 +33,14 @@ import org.slf4j.LoggerFactory;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Predicate;
 
 public class DatasetBuilder extends AbstractBuilder {
     private final static Logger logger = LoggerFactory.getLogger(DatasetBuilder.class);
@@ -42,9 +49,20 @@ public class DatasetBuilder extends AbstractBuilder {
     protected final Map<String, SkosCode> locations;
     protected final Map<String, Map<String, SkosCode>> codes;
     protected final Map<String, DataTheme> dataThemes;
-    static Map<String, Subject> subjects = new HashMap<>();
     List<Dataset> datasets = new ArrayList<>();
 
+    // the contacts and subjects of the last build
+    private BuildContext context = new BuildContext();
+
+    // the number of threads that create datasets, 1 creates them in the calling thread
+    private int parallelism = 1;
+
+    // one pool for each parallelism, shared by all builders in the process
+    private static final Map<Integer, ForkJoinPool> sharedPools = new ConcurrentHashMap<>();
+
+    // a fork-join task creates at most this many datasets itself, and splits larger ranges
+    static final int DATASETS_PER_TASK = 16;
+
     public DatasetBuilder(Model model, Map<String, SkosCode> locations, Map<String, Map<String, SkosCode>> codes,
                           Map<String, DataTheme> dataThemes) {
 
@@ -65,10 +83,10 @@ public class DatasetBuilder extends AbstractBuilder {
     }
 
     public List<Subject> getSubjects() {
-        if (subjects.isEmpty()) {
+        if (context.getSubjects().isEmpty()) {
             build();
         }
-        return new ArrayList(subjects.values());
+        return context.getSubjects();
     }
 
     public List<Dataset> getDataset() {
@@ -80,9 +98,20 @@ public class DatasetBuilder extends AbstractBuilder {
     }
 
     public DatasetBuilder build() {
+        return build(datasetUri -> true);
+    }
+
+    /**
+     * Builds the datasets of the model that are accepted by the filter.
+     *
+     * @param datasetFilter tests the uri of each dataset
+     */
+    public DatasetBuilder build(Predicate<String> datasetFilter) {
 
         datasets.clear();
-        subjects.clear();
+        context = new BuildContext();
+
+        List<Resource[]> datasetResources = new ArrayList<>();
 
         ResIterator catalogIterator = model.listResourcesWithProperty(RDF.type, DCAT.Catalog);
         while (catalogIterator.hasNext()) {
@@ -91,12 +120,19 @@ public class DatasetBuilder extends AbstractBuilder {
             StmtIterator datasetIterator = catalog.listProperties(DCAT.dataset);
             while (datasetIterator.hasNext()) {
                 Resource datasetResource = datasetIterator.next().getResource();
+                if (!datasetFilter.test(datasetResource.getURI())) {
+                    continue;
+                }
 
-                Dataset datasetObject = create(datasetResource, catalog, locations, codes, dataThemes);
-                datasetObject.setDistribution(getDistributions(datasetResource, DCAT.distribution));
-                datasetObject.setSample(getDistributions(datasetResource, ADMS.sample));
+                datasetResources.add(new Resource[]{catalog, datasetResource});
+            }
+        }
 
-                datasets.add(datasetObject);
+        if (parallelism > 1 && datasetResources.size() > DATASETS_PER_TASK) {
+            datasets.addAll(createInParallel(datasetResources));
+        } else {
+            for (Resource[] resources : datasetResources) {
+                datasets.add(createWithDistributions(resources[1], resources[0]));
             }
         }
 
@@ -104,6 +140,72 @@ public class DatasetBuilder extends AbstractBuilder {
         return this;
     }
 
+    /**
+     * Sets the number of threads that create the datasets of a build. The datasets are in the same order whatever
+     * the parallelism. Builders with the same parallelism share one pool of threads, which lives as long as the
+     * process.
+     */
+    public DatasetBuilder setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Creates the datasets in the shared fork-join pool. The model is read-locked while the tasks run, and each task
+     * reads it through a model of its own, as the resource caches of a model are not shared safely between threads.
+     *
+     * @return the datasets, in the order of the resources
+     */
+    private List<Dataset> createInParallel(List<Resource[]> datasetResources) {
+        Dataset[] created = new Dataset[datasetResources.size()];
+
+        ForkJoinPool pool = sharedPools.computeIfAbsent(parallelism, ForkJoinPool::new);
+        model.enterCriticalSection(Lock.READ);
+        try {
+            pool.invoke(new CreateDatasets(datasetResources, created, 0, created.length));
+        } finally {
+            model.leaveCriticalSection();
+        }
+
+        return Arrays.asList(created);
+    }
+
+    private class CreateDatasets extends RecursiveAction {
+        private final List<Resource[]> datasetResources;
+        private final Dataset[] created;
+        private final int from;
+        private final int to;
+
+        CreateDatasets(List<Resource[]> datasetResources, Dataset[] created, int from, int to) {
+            this.datasetResources = datasetResources;
+            this.created = created;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= DATASETS_PER_TASK) {
+                Model snapshot = ModelFactory.createModelForGraph(model.getGraph());
+                for (int i = from; i < to; i++) {
+                    Resource[] resources = datasetResources.get(i);
+                    created[i] = createWithDistributions(resources[1].inModel(snapshot), resources[0].inModel(snapshot));
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new CreateDatasets(datasetResources, created, from, middle),
+                    new CreateDatasets(datasetResources, created, middle, to));
+            }
+        }
+    }
+
+    private Dataset createWithDistributions(Resource datasetResource, Resource catalog) {
+        Dataset datasetObject = create(datasetResource, catalog, locations, codes, dataThemes, context);
+        datasetObject.setDistribution(getDistributions(datasetResource, DCAT.distribution));
+        datasetObject.setSample(getDistributions(datasetResource, ADMS.sample));
+        return datasetObject;
+    }
+
     private List<Distribution> getDistributions(Resource resource, Property property) {
         StmtIterator distributionIterator = resource.listProperties(property);
         List<Distribution> distributions = new ArrayList<>();
@@ -126,6 +228,15 @@ public class DatasetBuilder extends AbstractBuilder {
 
     public static Dataset create(Resource resource, Resource catalog, Map<String, SkosCode> locations,
                                  Map<String, Map<String, SkosCode>> codes, Map<String, DataTheme> dataThemes) {
+        return create(resource, catalog, locations, codes, dataThemes, new BuildContext());
+    }
+
+    /**
+     * Creates a dataset that is part of a build, sharing the contacts of the build and adding its subjects to it.
+     */
+    public static Dataset create(Resource resource, Resource catalog, Map<String, SkosCode> locations,
+                                 Map<String, Map<String, SkosCode>> codes, Map<String, DataTheme> dataThemes,
+                                 BuildContext context) {
         Dataset ds = new Dataset();
 
         if (resource != null) {
@@ -139,7 +250,7 @@ public class DatasetBuilder extends AbstractBuilder {
             ds.setDescription(extractLanguageLiteral(resource, DCTerms.description));
             ds.setObjective(extractLanguageLiteral(resource, DCATNO.objective));
 
-            ds.setContactPoint(extractContacts(resource));
+            ds.setContactPoint(extractContacts(resource, context));
             ds.setKeyword(extractKeywords(resource, DCAT.keyword));
             ds.setPublisher(extractPublisher(resource, DCTerms.publisher));
 
@@ -174,7 +285,7 @@ public class DatasetBuilder extends AbstractBuilder {
 
             ds.setPage(extractMultipleStrings(resource, FOAF.page));
             ds.setAccrualPeriodicity(getCode(codes.get(Types.frequency.getType()), extractAsString(resource, DCTerms.accrualPeriodicity)));
-            ds.setSubject(extractSubjects(resource, DCTerms.subject));
+            ds.setSubject(extractSubjects(resource, DCTerms.subject, context));
 
             ds.setAdmsIdentifier(extractMultipleStrings(resource, ADMS.identifier));
             ds.setConformsTo(extractSkosConcept(resource, DCTerms.conformsTo));
@@ -242,6 +353,13 @@ public class DatasetBuilder extends AbstractBuilder {
     }
 
     public static List<Subject> extractSubjects(Resource resource, Property property) {
+        return extractSubjects(resource, property, new BuildContext());
+    }
+
+    /**
+     * Extracts the subjects of a dataset and adds them to the subjects of the build.
+     */
+    public static List<Subject> extractSubjects(Resource resource, Property property, BuildContext context) {
         List<Subject> result = new ArrayList<>();
         StmtIterator iterator = resource.listProperties(property);
         while (iterator.hasNext()) {
@@ -251,7 +369,7 @@ public class DatasetBuilder extends AbstractBuilder {
 
             if (subject != null) {
                 result.add(subject);
-                subjects.put(subject.getUri(), subject);
+                context.putSubject(subject);
             }
         }
         if (result.size() > 0) {
@@ -115,15 +115,26 @@ public class DcatBuilder {
 
     public DcatBuilder addCatalog(Catalog catalog) {
 
+        Resource catRes = addCatalogDescription(catalog);
+
+        addDatasets(catRes, catalog.getDataset());
+
+        return this;
+    }
+
+    /**
+     * Adds the catalog without its datasets.
+     *
+     * @return the catalog resource, to add the datasets to
+     */
+    public Resource addCatalogDescription(Catalog catalog) {
         Resource catRes = createResource(catalog, catalog.getUri(), DCAT.Catalog);
         addLiterals(catRes, DCTerms.title, catalog.getTitle());
         addLiterals(catRes, DCTerms.description, catalog.getDescription());
 
         addPublisher(catRes, DCTerms.publisher, catalog.getPublisher());
 
-        addDatasets(catRes, catalog.getDataset());
-
-        return this;
+        return catRes;
     }
 
     public DcatBuilder addDataset(Dataset dataset) {
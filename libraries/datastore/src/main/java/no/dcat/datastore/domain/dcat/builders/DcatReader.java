@@ -1,11 +1,10 @@
 package no.dcat.datastore.domain.dcat.builders;
 
+import no.dcat.client.referencedata.ReferenceCodeCache;
 import no.dcat.datastore.domain.dcat.Distribution;
 import no.dcat.datastore.domain.dcat.client.LoadLocations;
 import no.dcat.shared.Catalog;
 import no.dcat.shared.Subject;
-import no.dcat.datastore.domain.dcat.client.RetrieveCodes;
-import no.dcat.datastore.domain.dcat.client.RetrieveDataThemes;
 import no.dcat.shared.DataTheme;
 import no.dcat.shared.Dataset;
 import no.dcat.shared.SkosCode;
@@ -21,6 +20,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
 
 public class DcatReader {
     private static Logger logger = LoggerFactory.getLogger(DcatReader.class);
@@ -31,18 +31,28 @@ public class DcatReader {
     Model model;
     DatasetBuilder builder;
 
+    /**
+     * Reads the codes and themes from the cache shared by all readers of the reference-data service at codeServiceHost.
+     */
     public DcatReader(Model model, String codeServiceHost, String httpUsername, String httpPassword) {
+        this(model, ReferenceCodeCache.shared(codeServiceHost), codeServiceHost, httpUsername, httpPassword);
+    }
+
+    /**
+     * @param referenceCodes  cache of the codes and themes in reference-data, only loaded on first use
+     * @param codeServiceHost hostname of reference-data, where locations that are not among the codes are registered
+     */
+    public DcatReader(Model model, ReferenceCodeCache referenceCodes, String codeServiceHost, String httpUsername, String httpPassword) {
         this.model = model;
 
-        // Retrieve all codes from reference-data.
         logger.debug("reading codes from: {}", codeServiceHost);
-        dataThemes = RetrieveDataThemes.getAllDataThemes(codeServiceHost);
-        codes = RetrieveCodes.getAllCodes(codeServiceHost);
+        dataThemes = referenceCodes.getDataThemes();
+        codes = referenceCodes.getCodes();
 
+        // the cached codes are shared, locations registered by this reader are added to a copy
+        locations = new HashMap<>();
         if (codes.get("location") != null) {
-            locations = codes.get("location");
-        } else {
-            locations = new HashMap<>();
+            locations.putAll(codes.get("location"));
         }
 
         LoadLocations loadLocations = new LoadLocations(codeServiceHost, httpUsername, httpPassword);
@@ -62,6 +72,14 @@ public class DcatReader {
         builder = new DatasetBuilder(model, locations, codes, dataThemes);
     }
 
+    /**
+     * Sets the number of threads that create the datasets, 1 creates them in the calling thread.
+     */
+    public DcatReader setParallelism(int parallelism) {
+        builder.setParallelism(parallelism);
+        return this;
+    }
+
     public List<Distribution> getDistributions() {
         return new DistributionBuilder(model, codes).build();
     }
@@ -70,6 +88,13 @@ public class DcatReader {
         return builder.build().getDataset();
     }
 
+    /**
+     * @param datasetFilter tests the uri of each dataset, only accepted datasets are built
+     */
+    public List<Dataset> getDatasets(Predicate<String> datasetFilter) {
+        return builder.build(datasetFilter).datasets;
+    }
+
     public List<Catalog> getCatalogs() {
         List<Catalog> result = new ArrayList<>();
 
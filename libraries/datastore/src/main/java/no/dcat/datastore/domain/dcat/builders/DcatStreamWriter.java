@@ -0,0 +1,118 @@
+package no.dcat.datastore.domain.dcat.builders;
+
+import no.dcat.shared.Catalog;
+import no.dcat.shared.Dataset;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWriter;
+
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes catalogs and datasets as DCAT straight to a stream.
+ *
+ * In N-Triples and Turtle the catalog and each of its datasets are built and written one at a time, so a large
+ * catalog is never held in memory as one model or as a string. Resources that the datasets share, like the
+ * publisher and the codes, are written again with each dataset, which gives the same graph.
+ *
+ * The other formats are written from the complete model built by {@link DcatBuilder}, they need it to be pretty.
+ */
+public class DcatStreamWriter {
+
+    private static final Map<String, RDFFormat> streamingFormats = new HashMap<>();
+
+    static {
+        streamingFormats.put("TURTLE", RDFFormat.TURTLE_BLOCKS);
+        streamingFormats.put("TTL", RDFFormat.TURTLE_BLOCKS);
+        streamingFormats.put("N-TRIPLES", RDFFormat.NTRIPLES);
+        streamingFormats.put("N-TRIPLE", RDFFormat.NTRIPLES);
+        streamingFormats.put("NT", RDFFormat.NTRIPLES);
+    }
+
+    /**
+     * @param outputFormat format (Jena/arq): TURTLE, N-TRIPLES, RDF/XML, JSONLD
+     * @return true if the format is written one dataset at a time
+     */
+    public static boolean isStreaming(String outputFormat) {
+        return streamingFormats.containsKey(outputFormat);
+    }
+
+    /**
+     * Writes a catalog with its datasets.
+     *
+     * @param catalog      object to write
+     * @param outputFormat format (Jena/arq): TURTLE, N-TRIPLES, RDF/XML, JSONLD
+     * @param out          stream to write UTF-8 to, it is not closed
+     */
+    public static void write(Catalog catalog, String outputFormat, OutputStream out) {
+        DcatBuilder builder = new DcatBuilder();
+
+        if (!isStreaming(outputFormat)) {
+            builder.addCatalog(catalog);
+            builder.getModel().write(out, outputFormat);
+            return;
+        }
+
+        StreamRDF stream = start(builder, outputFormat, out);
+
+        Resource catRes = builder.addCatalogDescription(catalog);
+        flush(builder, stream);
+
+        writeDatasets(builder, catRes, catalog.getDataset(), stream);
+
+        stream.finish();
+    }
+
+    /**
+     * Writes a single dataset.
+     *
+     * @param dataset      object to write
+     * @param outputFormat format (Jena/arq): TURTLE, N-TRIPLES, RDF/XML, JSONLD
+     * @param out          stream to write UTF-8 to, it is not closed
+     */
+    public static void write(Dataset dataset, String outputFormat, OutputStream out) {
+        DcatBuilder builder = new DcatBuilder();
+
+        if (!isStreaming(outputFormat)) {
+            builder.addDataset(dataset);
+            builder.getModel().write(out, outputFormat);
+            return;
+        }
+
+        StreamRDF stream = start(builder, outputFormat, out);
+
+        writeDatasets(builder, null, Collections.singletonList(dataset), stream);
+
+        stream.finish();
+    }
+
+    private static StreamRDF start(DcatBuilder builder, String outputFormat, OutputStream out) {
+        StreamRDF stream = StreamRDFWriter.getWriterStream(out, streamingFormats.get(outputFormat));
+        stream.start();
+        builder.getModel().getNsPrefixMap().forEach(stream::prefix);
+
+        return stream;
+    }
+
+    private static void writeDatasets(DcatBuilder builder, Resource catRes, List<Dataset> datasets, StreamRDF stream) {
+        if (datasets != null) {
+            for (Dataset dataset : datasets) {
+                // the builder remembers the exported contacts across datasets, so it is reused with an emptied model
+                builder.addDatasets(catRes, Collections.singletonList(dataset));
+                flush(builder, stream);
+            }
+        }
+    }
+
+    private static void flush(DcatBuilder builder, StreamRDF stream) {
+        Model model = builder.getModel();
+        model.getGraph().find().forEachRemaining(stream::triple);
+        model.removeAll();
+    }
+}
@@ -9,9 +9,12 @@ import org.apache.jena.vocabulary.DCTerms;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -51,8 +54,8 @@ public class LoadLocations {
 
     /**
      * Extracts all location-uris from the model and adds it to the map of locations.
-     * The locations-uri represent the key in the map. Titel is empty while these are fetched
-     * from a web-call over the net.
+     * The locations-uri represent the key in the map. The locations that are not among the existing codes
+     * are registered in reference-data in one batch, which fetches their names over the net.
      * <p/>
      *
      * @param model
@@ -60,7 +63,7 @@ public class LoadLocations {
      */
     public void addLocationsToThemes(Model model, Map<String, SkosCode> existingLocationCodes) {
 
-        BasicAuthRestTemplate template = new BasicAuthRestTemplate(httpUsername, httpPassword);
+        Set<String> newLocationUris = new LinkedHashSet<>();
 
         ResIterator resIterator = model.listResourcesWithProperty(DCTerms.spatial);
         resIterator.forEachRemaining(datasetResource -> {
@@ -69,12 +72,34 @@ public class LoadLocations {
 
                 if (uri != null && uri.startsWith("http")) {
                     if (existingLocationCodes == null || !existingLocationCodes.containsKey(uri)) {
-
-                        postLocationToReferenceData(template, uri);
+                        newLocationUris.add(uri);
                     }
                 }
             });
         });
+
+        if (!newLocationUris.isEmpty()) {
+            postLocationsToReferenceData(new BasicAuthRestTemplate(httpUsername, httpPassword), newLocationUris);
+        }
+    }
+
+    /**
+     * Registers the locations in reference-data with one request.
+     */
+    public void postLocationsToReferenceData(BasicAuthRestTemplate template, Collection<String> uris) {
+        List<LocationUri> locationUris = uris.stream().map(LocationUri::new).collect(Collectors.toList());
+
+        try {
+            SkosCode[] skosCodes = template.postForObject(referenceDataUrl + "/locations/batch", locationUris, SkosCode[].class);
+            if (skosCodes != null) {
+                for (SkosCode skosCode : skosCodes) {
+                    locations.put(skosCode.getUri(), skosCode);
+                }
+            }
+            logger.info("Posted {} locations to reference-data, {} were found", locationUris.size(), skosCodes == null ? 0 : skosCodes.length);
+        } catch (Exception e) {
+            logger.error("Error posting {} locations to reference-data service. Reason {}", locationUris.size(), e.getLocalizedMessage());
+        }
     }
 
     public void postLocationToReferenceData(BasicAuthRestTemplate template, String uri) {
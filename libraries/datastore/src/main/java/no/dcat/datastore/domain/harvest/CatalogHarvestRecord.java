@@ -19,6 +19,7 @@ public class CatalogHarvestRecord {
     private Set<String> validDatasetUris;
     private Set<String> nonValidDatasetUris;
     private ChangeInformation changeInformation;
+    private HarvestMetrics metrics;
     private String status;
     private Publisher publisher;
 
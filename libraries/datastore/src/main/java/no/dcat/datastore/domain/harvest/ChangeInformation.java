@@ -7,4 +7,5 @@ public class ChangeInformation   {
     private int inserts;
     private int updates;
     private int deletes;
+    private int unchanged;
 }
\ No newline at end of file
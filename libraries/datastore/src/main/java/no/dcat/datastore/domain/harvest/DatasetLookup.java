@@ -13,5 +13,8 @@ public class DatasetLookup {
 
     private List<String> identifier;
 
+    /** Hash of the dataset's RDF subgraph when it was last indexed */
+    private String fingerprint;
+
     private HarvestMetadata harvest;
 }
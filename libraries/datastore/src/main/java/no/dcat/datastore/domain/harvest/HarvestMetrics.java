@@ -0,0 +1,15 @@
+package no.dcat.datastore.domain.harvest;
+
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * Time spent in each stage of a harvest, in milliseconds, and counters such as number of triples,
+ * datasets and remote calls.
+ */
+@Data
+public class HarvestMetrics {
+    private Map<String, Long> stageDurations;
+    private Map<String, Long> counts;
+}
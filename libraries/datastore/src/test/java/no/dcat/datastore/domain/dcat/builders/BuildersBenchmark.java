@@ -0,0 +1,160 @@
+package no.dcat.datastore.domain.dcat.builders;
+
+import com.sun.management.ThreadMXBean;
+import no.dcat.datastore.domain.dcat.vocabulary.DCAT;
+import no.dcat.shared.Catalog;
+import no.dcat.shared.testcategories.LoadTest;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.DCTerms;
+import org.apache.jena.vocabulary.RDF;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Throughput and allocation rate of the builders and transformers, on synthetic catalogs of several sizes
+ * (see {@link SyntheticCatalog}). Each operation is warmed up, then run for a fixed time on one thread, and the
+ * operations per second and the bytes allocated per operation are logged. Compare the log before and after a change.
+ *
+ * Run with: mvn test -P load-test -Dtest=BuildersBenchmark
+ *
+ * The catalog sizes and the warm-up and measurement times can be set with -Dbenchmark.sizes=1,10,100,1000
+ * -Dbenchmark.warmupSeconds=2 -Dbenchmark.measureSeconds=5
+ */
+@Category(LoadTest.class)
+public class BuildersBenchmark {
+    private static Logger logger = LoggerFactory.getLogger(BuildersBenchmark.class);
+
+    private static final long WARMUP_MILLIS = Long.getLong("benchmark.warmupSeconds", 2) * 1000;
+    private static final long MEASURE_MILLIS = Long.getLong("benchmark.measureSeconds", 5) * 1000;
+
+    private static final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // results of the operations are folded into this, so that they cannot be optimized away
+    private static volatile int sink;
+
+    @FunctionalInterface
+    private interface Operation {
+        Object run(int i);
+    }
+
+    @Test
+    public void extractLanguageLiteral() {
+        for (int size : sizes()) {
+            List<Resource> datasets = datasetResources(SyntheticCatalog.createModel(SyntheticCatalog.create(size)));
+
+            measure("AbstractBuilder.extractLanguageLiteral", size, "dataset",
+                i -> AbstractBuilder.extractLanguageLiteral(datasets.get(i % datasets.size()), DCTerms.description));
+        }
+    }
+
+    @Test
+    public void extractContacts() {
+        for (int size : sizes()) {
+            List<Resource> datasets = datasetResources(SyntheticCatalog.createModel(SyntheticCatalog.create(size)));
+            BuildContext[] context = new BuildContext[1];
+
+            measure("AbstractBuilder.extractContacts", size, "dataset", i -> {
+                // a new build for each pass through the catalog
+                if (i % datasets.size() == 0) {
+                    context[0] = new BuildContext();
+                }
+                return AbstractBuilder.extractContacts(datasets.get(i % datasets.size()), context[0]);
+            });
+        }
+    }
+
+    @Test
+    public void createDataset() {
+        for (int size : sizes()) {
+            Model model = SyntheticCatalog.createModel(SyntheticCatalog.create(size));
+            List<Resource> datasets = datasetResources(model);
+            Resource catalog = model.listSubjectsWithProperty(RDF.type, DCAT.Catalog).next();
+            BuildContext[] context = new BuildContext[1];
+
+            measure("DatasetBuilder.create", size, "dataset", i -> {
+                if (i % datasets.size() == 0) {
+                    context[0] = new BuildContext();
+                }
+                return DatasetBuilder.create(datasets.get(i % datasets.size()), catalog, new HashMap<>(), new HashMap<>(), new HashMap<>(), context[0]);
+            });
+        }
+    }
+
+    @Test
+    public void getDatasets() {
+        for (int size : sizes()) {
+            Model model = SyntheticCatalog.createModel(SyntheticCatalog.create(size));
+
+            measure("DcatReader.getDatasets", size, "catalog", i -> new DcatReader(model).getDatasets());
+        }
+    }
+
+    @Test
+    public void transform() {
+        for (int size : sizes()) {
+            Catalog catalog = SyntheticCatalog.create(size);
+
+            measure("DcatBuilder.transform TURTLE", size, "catalog", i -> DcatBuilder.transform(catalog, "TURTLE"));
+            measure("DcatBuilder.transform JSON-LD", size, "catalog", i -> DcatBuilder.transform(catalog, "JSON-LD"));
+            measure("DcatStreamWriter.write TURTLE", size, "catalog", i -> {
+                CountingOutputStream out = new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+                DcatStreamWriter.write(catalog, "TURTLE", out);
+                return out;
+            });
+        }
+    }
+
+    private static List<Integer> sizes() {
+        List<Integer> sizes = new ArrayList<>();
+        for (String size : System.getProperty("benchmark.sizes", "1,10,100,1000").split(",")) {
+            sizes.add(Integer.parseInt(size.trim()));
+        }
+        return sizes;
+    }
+
+    private static List<Resource> datasetResources(Model model) {
+        Resource catalog = model.listSubjectsWithProperty(RDF.type, DCAT.Catalog).next();
+        List<Resource> datasets = new ArrayList<>();
+        catalog.listProperties(DCAT.dataset).forEachRemaining(statement -> datasets.add(statement.getResource()));
+        datasets.sort((a, b) -> a.getURI().compareTo(b.getURI()));
+        return Collections.unmodifiableList(datasets);
+    }
+
+    private static void measure(String name, int size, String unit, Operation operation) {
+        run(operation, WARMUP_MILLIS);
+
+        long thread = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        long operations = run(operation, MEASURE_MILLIS);
+        long nanos = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+
+        logger.info("{} [{} datasets]: {} ops/s, {} bytes/op, {} MB/s (op = one {})", name, size,
+            String.format("%.1f", operations * 1e9 / nanos),
+            allocated / operations,
+            String.format("%.1f", allocated * 1e3 / nanos),
+            unit);
+    }
+
+    private static long run(Operation operation, long millis) {
+        long end = System.nanoTime() + millis * 1_000_000;
+        long operations = 0;
+        do {
+            sink ^= System.identityHashCode(operation.run((int) operations));
+            operations++;
+        } while (System.nanoTime() < end);
+        return operations;
+    }
+}
@@ -0,0 +1,136 @@
+package no.dcat.datastore.domain.dcat.builders;
+
+import no.dcat.shared.Dataset;
+import no.dcat.shared.Subject;
+import no.dcat.shared.testcategories.UnitTest;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Builders running at the same time, like harvest jobs do, must give the same datasets and subjects as one builder
+ * running alone.
+ */
+@Category(UnitTest.class)
+public class ConcurrentBuildTest {
+
+    private static final List<String> SOURCES = Arrays.asList("gdoc-data-2017-10-19.ttl", "ramsund.ttl", "catalog.ttl");
+
+    private static class Result {
+        final String source;
+        final List<Dataset> datasets;
+        final Set<Subject> subjects;
+
+        Result(String source, List<Dataset> datasets, Set<Subject> subjects) {
+            this.source = source;
+            this.datasets = datasets;
+            this.subjects = subjects;
+        }
+    }
+
+    private static Result build(String source, Model model) {
+        DcatReader reader = new DcatReader(model);
+        List<Dataset> datasets = new ArrayList<>(reader.getDatasets());
+        Set<Subject> subjects = new HashSet<>(reader.getSubjects());
+        return new Result(source, datasets, subjects);
+    }
+
+    @Test
+    public void parallelBuildsGiveTheSameOutputAsOneBuild() throws Exception {
+        // the order of the statements differs between loads of a source, so each model is compared with itself
+        List<Model> models = new ArrayList<>();
+        List<Callable<Result>> builds = new ArrayList<>();
+        for (int i = 0; i < 48; i++) {
+            String source = SOURCES.get(i % SOURCES.size());
+            Model model = RDFDataMgr.loadModel(source);
+            models.add(model);
+            builds.add(() -> build(source, model));
+        }
+
+        List<Future<Result>> results;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            results = executor.invokeAll(builds);
+        } finally {
+            executor.shutdown();
+        }
+
+        for (int i = 0; i < models.size(); i++) {
+            Result actual = results.get(i).get();
+            Result alone = build(actual.source, models.get(i));
+
+            assertThat(actual.source, actual.datasets, is(alone.datasets));
+            assertThat(actual.source, actual.subjects, is(alone.subjects));
+        }
+        assertThat(results.get(0).get().subjects.size(), greaterThan(0));
+    }
+
+    @Test
+    public void parallelBuildGivesTheDatasetsInTheSameOrder() {
+        for (String source : Arrays.asList("gdoc-data-2017-10-19.ttl", "geonorge-data-2017-10-19.xml")) {
+            Model model = RDFDataMgr.loadModel(source);
+
+            DcatReader sequential = new DcatReader(model);
+            DcatReader parallel = new DcatReader(model).setParallelism(4);
+
+            List<Dataset> expected = sequential.getDatasets();
+            assertThat(source, expected.size(), greaterThan(DatasetBuilder.DATASETS_PER_TASK));
+
+            assertThat(source, parallel.getDatasets(), is(expected));
+            assertThat(source, parallel.getSubjects(), is(sequential.getSubjects()));
+        }
+    }
+
+    @Test
+    public void parallelBuildsAtTheSameTimeShareThePool() throws Exception {
+        Model model = RDFDataMgr.loadModel("geonorge-data-2017-10-19.xml");
+        List<Dataset> expected = new DcatReader(model).getDatasets();
+
+        List<Callable<List<Dataset>>> builds = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            builds.add(() -> new DcatReader(model).setParallelism(4).getDatasets());
+        }
+
+        List<Future<List<Dataset>>> results;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            results = executor.invokeAll(builds);
+        } finally {
+            executor.shutdown();
+        }
+
+        for (Future<List<Dataset>> result : results) {
+            assertThat(result.get(), is(expected));
+        }
+    }
+
+    @Test
+    public void contactsAreSharedWithinOneBuildOnly() {
+        Model model = RDFDataMgr.loadModel("gdoc-data-2017-10-19.ttl");
+
+        List<Dataset> first = new DcatReader(model).getDatasets();
+        List<Dataset> second = new DcatReader(model).getDatasets();
+
+        Dataset withContact = first.stream().filter(dataset -> dataset.getContactPoint() != null && !dataset.getContactPoint().isEmpty())
+            .findFirst().get();
+        Dataset sameInSecond = second.stream().filter(dataset -> dataset.getUri().equals(withContact.getUri())).findFirst().get();
+
+        assertThat(sameInSecond.getContactPoint(), is(withContact.getContactPoint()));
+        assertThat(sameInSecond.getContactPoint().get(0) != withContact.getContactPoint().get(0), is(true));
+    }
+}
@@ -0,0 +1,75 @@
+package no.dcat.datastore.domain.dcat.builders;
+
+import no.dcat.shared.testcategories.LoadTest;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Measures how the time to build the datasets of a catalog scales with the parallelism of the builder, from one
+ * thread up to the number of cores.
+ *
+ * Run with: mvn test -P load-test -Dtest=DatasetBuilderBenchmark
+ */
+@Category(LoadTest.class)
+public class DatasetBuilderBenchmark {
+    private static Logger logger = LoggerFactory.getLogger(DatasetBuilderBenchmark.class);
+
+    private static final int ITERATIONS = 20;
+
+    @Test
+    public void geonorgeCatalog() {
+        measure("geonorge-data-2017-10-19.xml");
+    }
+
+    @Test
+    public void gdocCatalog() {
+        measure("gdoc-data-2017-10-19.ttl");
+    }
+
+    private void measure(String source) {
+        Model model = RDFDataMgr.loadModel(source);
+
+        Set<Integer> parallelisms = new LinkedHashSet<>();
+        for (int parallelism = 1; parallelism < Runtime.getRuntime().availableProcessors(); parallelism *= 2) {
+            parallelisms.add(parallelism);
+        }
+        parallelisms.add(Runtime.getRuntime().availableProcessors());
+
+        // warm up the code of the builder, otherwise the first parallelism that is measured pays for the compilation
+        for (int parallelism : parallelisms) {
+            time(model, parallelism);
+        }
+
+        double sequentialMillis = 0;
+        for (int parallelism : parallelisms) {
+            double millis = time(model, parallelism);
+            if (parallelism == 1) {
+                sequentialMillis = millis;
+            }
+
+            logger.info("{}: parallelism {} builds {} datasets in {} ms, speedup {}", source, parallelism,
+                new DcatReader(model).getDatasets().size(), String.format("%.1f", millis), String.format("%.2f", sequentialMillis / millis));
+        }
+    }
+
+    private static double time(Model model, int parallelism) {
+        // warm up
+        new DcatReader(model).setParallelism(parallelism).getDatasets();
+
+        long total = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            DcatReader reader = new DcatReader(model).setParallelism(parallelism);
+            long start = System.nanoTime();
+            reader.getDatasets();
+            total += System.nanoTime() - start;
+        }
+        return total / 1_000_000.0 / ITERATIONS;
+    }
+}
@@ -0,0 +1,95 @@
+package no.dcat.datastore.domain.dcat.builders;
+
+import no.dcat.datastore.domain.dcat.RdfMessageConverter;
+import no.dcat.datastore.domain.dcat.smoke.TestCompleteCatalog;
+import no.dcat.shared.Catalog;
+import no.dcat.shared.Dataset;
+import no.dcat.shared.testcategories.UnitTest;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * The streamed formats must give the same graph as the model built by {@link DcatBuilder}.
+ */
+@Category(UnitTest.class)
+public class DcatStreamWriterTest {
+
+    private static Model read(byte[] bytes, String format) {
+        return ModelFactory.createDefaultModel().read(new ByteArrayInputStream(bytes), null, format);
+    }
+
+    private static byte[] write(Catalog catalog, String format) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DcatStreamWriter.write(catalog, format, out);
+        return out.toByteArray();
+    }
+
+    private static Model built(Catalog catalog) {
+        return new DcatBuilder().addCatalog(catalog).getModel();
+    }
+
+    // relative uris in the test data are resolved when turtle is read, so turtle is compared with turtle
+    private static Model transformed(Catalog catalog, String format) {
+        return read(DcatBuilder.transform(catalog, format).getBytes(StandardCharsets.UTF_8), format);
+    }
+
+    @Test
+    public void completeCatalogGivesTheSameGraph() {
+        Catalog catalog = TestCompleteCatalog.getCompleteCatalog();
+
+        assertThat(read(write(catalog, "TURTLE"), "TURTLE").isIsomorphicWith(transformed(catalog, "TURTLE")), is(true));
+        assertThat(read(write(catalog, "N-TRIPLES"), "N-TRIPLES").isIsomorphicWith(built(catalog)), is(true));
+    }
+
+    @Test
+    public void datasetsSharingResourcesGiveTheSameGraph() {
+        Catalog catalog = SyntheticCatalog.create(25);
+        Model expected = built(catalog);
+
+        Model streamed = read(write(catalog, "N-TRIPLES"), "N-TRIPLES");
+
+        assertThat(streamed.size(), is(expected.size()));
+        assertThat(streamed.isIsomorphicWith(expected), is(true));
+    }
+
+    @Test
+    public void datasetGivesTheSameGraph() {
+        Dataset dataset = TestCompleteCatalog.getCompleteCatalog().getDataset().get(0);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DcatStreamWriter.write(dataset, "TURTLE", out);
+
+        Model expected = read(DcatBuilder.transform(dataset, "TURTLE").getBytes(StandardCharsets.UTF_8), "TURTLE");
+        assertThat(read(out.toByteArray(), "TURTLE").isIsomorphicWith(expected), is(true));
+    }
+
+    @Test
+    public void prettyFormatIsWrittenFromTheModel() {
+        Catalog catalog = TestCompleteCatalog.getCompleteCatalog();
+
+        assertThat(DcatStreamWriter.isStreaming("JSONLD"), is(false));
+        assertThat(read(write(catalog, "JSONLD"), "JSONLD").isIsomorphicWith(transformed(catalog, "JSONLD")), is(true));
+    }
+
+    @Test
+    public void converterStreamsNTriples() throws Exception {
+        Catalog catalog = TestCompleteCatalog.getCompleteCatalog();
+        MockHttpOutputMessage message = new MockHttpOutputMessage();
+
+        new RdfMessageConverter().write(catalog, new MediaType("application", "n-triples"), message);
+
+        assertThat(message.getHeaders().getContentType().getSubtype(), is("n-triples"));
+        assertThat(read(message.getBodyAsBytes(), "N-TRIPLES").isIsomorphicWith(built(catalog)), is(true));
+    }
+}
@@ -0,0 +1,54 @@
+package no.dcat.datastore.domain.dcat.builders;
+
+import no.dcat.datastore.domain.dcat.smoke.TestCompleteCatalog;
+import no.dcat.shared.Catalog;
+import no.dcat.shared.Contact;
+import no.dcat.shared.Dataset;
+import no.dcat.shared.Distribution;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A catalog with any number of copies of the dataset in {@link TestCompleteCatalog}, to measure the builders on
+ * catalogs of different sizes. The copies have their own uris and titles, and share a few contact points like the
+ * datasets of a real publisher do.
+ */
+class SyntheticCatalog {
+
+    static final int CONTACTS = 10;
+
+    static Catalog create(int size) {
+        Catalog catalog = TestCompleteCatalog.getCompleteCatalog();
+
+        List<Dataset> datasets = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Dataset dataset = TestCompleteCatalog.getCompleteCatalog().getDataset().get(0);
+            dataset.setId(String.format("%06d", i));
+            dataset.setUri(catalog.getUri() + "/datasets/" + dataset.getId());
+            dataset.setTitle(Collections.singletonMap("nb", dataset.getTitle().get("nb") + " " + i));
+
+            Distribution distribution = dataset.getDistribution().get(0);
+            distribution.setUri(dataset.getUri() + "/distributions/d1");
+            Distribution sample = dataset.getSample().get(0);
+            sample.setUri(dataset.getUri() + "/samples/d2");
+
+            Contact contact = dataset.getContactPoint().get(0);
+            contact.setUri("http://contact/someContactURI/" + (i % CONTACTS));
+
+            datasets.add(dataset);
+        }
+        catalog.setDataset(datasets);
+
+        return catalog;
+    }
+
+    static Model createModel(Catalog catalog) {
+        String turtle = DcatBuilder.transform(catalog, "TURTLE");
+        return ModelFactory.createDefaultModel().read(new StringReader(turtle), null, "TURTLE");
+    }
+}
@@ -0,0 +1,77 @@
+package no.dcat.datastore.domain.dcat.client;
+
+import no.dcat.shared.SkosCode;
+import no.dcat.shared.testcategories.UnitTest;
+import no.dcat.shared.testutils.StubHttpServer;
+import org.apache.commons.io.IOUtils;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.vocabulary.DCTerms;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+@Category(UnitTest.class)
+public class LoadLocationsTest {
+
+    private static final String NORGE = "http://sws.geonames.org/3144096/";
+    private static final String OSLO = "http://sws.geonames.org/3143242/";
+    private static final String BERGEN = "http://sws.geonames.org/6548528/";
+
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final List<String> bodies = new CopyOnWriteArrayList<>();
+
+    @Rule
+    public StubHttpServer server = new StubHttpServer(exchange -> {
+        requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath());
+        bodies.add(IOUtils.toString(exchange.getRequestBody(), StandardCharsets.UTF_8));
+
+        StubHttpServer.respond(exchange, 200, "application/json;charset=UTF-8",
+            "[{\"uri\":\"" + OSLO + "\",\"code\":\"" + OSLO + "\",\"prefLabel\":{\"no\":\"Oslo\"}},"
+                + "{\"uri\":\"" + BERGEN + "\",\"code\":\"" + BERGEN + "\",\"prefLabel\":{\"no\":\"Bergen\"}}]");
+    });
+
+    @Test
+    public void newLocationsAreRegisteredInOneRequest() {
+        Model model = ModelFactory.createDefaultModel();
+        model.createResource("http://example.org/dataset/1")
+            .addProperty(DCTerms.spatial, model.createResource(NORGE))
+            .addProperty(DCTerms.spatial, model.createResource(OSLO));
+        model.createResource("http://example.org/dataset/2")
+            .addProperty(DCTerms.spatial, model.createResource(OSLO))
+            .addProperty(DCTerms.spatial, model.createResource(BERGEN));
+
+        LoadLocations loadLocations = new LoadLocations(server.getBaseUrl(), "user", "password");
+        loadLocations.addLocationsToThemes(model, Collections.singletonMap(NORGE, new SkosCode(NORGE, NORGE, Collections.singletonMap("no", "Norge"))));
+
+        assertThat(requests, is(Collections.singletonList("POST /locations/batch")));
+        assertThat(bodies.get(0), containsString(OSLO));
+        assertThat(bodies.get(0), containsString(BERGEN));
+        assertThat(bodies.get(0), not(containsString(NORGE)));
+        assertThat(bodies.get(0).indexOf(OSLO), is(bodies.get(0).lastIndexOf(OSLO)));
+
+        assertThat(loadLocations.getLocation(OSLO).getPrefLabel().get("no"), is("Oslo"));
+        assertThat(loadLocations.getLocation(BERGEN).getPrefLabel().get("no"), is("Bergen"));
+    }
+
+    @Test
+    public void noRequestWhenAllLocationsAreKnown() {
+        Model model = ModelFactory.createDefaultModel();
+        model.createResource("http://example.org/dataset/1").addProperty(DCTerms.spatial, model.createResource(NORGE));
+
+        new LoadLocations(server.getBaseUrl(), "user", "password")
+            .addLocationsToThemes(model, Collections.singletonMap(NORGE, new SkosCode(NORGE, NORGE, Collections.singletonMap("no", "Norge"))));
+
+        assertThat(requests.isEmpty(), is(true));
+    }
+}
@@ -0,0 +1,263 @@
+package no.dcat.client.referencedata;
+
+import no.dcat.shared.DataTheme;
+import no.dcat.shared.SkosCode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide cache of the code lists and themes in reference-data.
+ *
+ * All code lists and themes are held in one immutable snapshot that every reader shares, so readers created after
+ * the first one make no HTTP calls. A background thread revalidates each list every refresh interval, sending the
+ * ETag of the last response, and replaces the snapshot only when a list has changed. The version of the snapshot
+ * increases with every replacement. When reference-data cannot be reached, the last snapshot stays in use.
+ *
+ * The codes in the snapshot are shared by all readers and must not be modified.
+ */
+public class ReferenceCodeCache {
+    private static final Logger logger = LoggerFactory.getLogger(ReferenceCodeCache.class);
+
+    public static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofMinutes(10);
+
+    private static final Map<String, ReferenceCodeCache> sharedCaches = new ConcurrentHashMap<>();
+
+    private static final ParameterizedTypeReference<List<String>> CODE_TYPES = new ParameterizedTypeReference<List<String>>() {};
+    private static final ParameterizedTypeReference<List<SkosCode>> CODES = new ParameterizedTypeReference<List<SkosCode>>() {};
+    private static final ParameterizedTypeReference<List<DataTheme>> THEMES = new ParameterizedTypeReference<List<DataTheme>>() {};
+
+    private final String referenceDataUrl;
+    private final RestTemplate restTemplate;
+    private final Duration refreshInterval;
+
+    // last response for each path, guarded by this
+    private final Map<String, CachedResponse<?>> responses = new HashMap<>();
+
+    private volatile Snapshot snapshot;
+    private ScheduledExecutorService refresher;
+
+    /**
+     * The code lists and themes at one version of reference-data.
+     */
+    public static class Snapshot {
+        private final long version;
+        private final Map<String, Map<String, SkosCode>> codes;
+        private final Map<String, DataTheme> dataThemes;
+
+        Snapshot(long version, Map<String, Map<String, SkosCode>> codes, Map<String, DataTheme> dataThemes) {
+            this.version = version;
+            this.codes = codes;
+            this.dataThemes = dataThemes;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return the codes of each code type, by uri
+         */
+        public Map<String, Map<String, SkosCode>> getCodes() {
+            return codes;
+        }
+
+        /**
+         * @return the themes, by id
+         */
+        public Map<String, DataTheme> getDataThemes() {
+            return dataThemes;
+        }
+    }
+
+    private static class CachedResponse<T> {
+        final String etag;
+        final T body;
+
+        CachedResponse(String etag, T body) {
+            this.etag = etag;
+            this.body = body;
+        }
+    }
+
+    /**
+     * @param referenceDataUrl hostname of the reference-data service
+     * @return the cache that all readers of this reference-data service in the process share
+     */
+    public static ReferenceCodeCache shared(String referenceDataUrl) {
+        return sharedCaches.computeIfAbsent(referenceDataUrl, url -> new ReferenceCodeCache(url, DEFAULT_REFRESH_INTERVAL));
+    }
+
+    public ReferenceCodeCache(String referenceDataUrl, Duration refreshInterval) {
+        this(referenceDataUrl, new RestTemplate(), refreshInterval);
+    }
+
+    public ReferenceCodeCache(String referenceDataUrl, RestTemplate restTemplate, Duration refreshInterval) {
+        this.referenceDataUrl = referenceDataUrl;
+        this.restTemplate = restTemplate;
+        this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * @return the codes of each code type, by uri
+     */
+    public Map<String, Map<String, SkosCode>> getCodes() {
+        return getSnapshot().getCodes();
+    }
+
+    /**
+     * @return the themes, by id
+     */
+    public Map<String, DataTheme> getDataThemes() {
+        return getSnapshot().getDataThemes();
+    }
+
+    /**
+     * Returns the current snapshot. The first call loads the code lists and themes, and fails if reference-data
+     * cannot be reached.
+     */
+    public Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    snapshot = load(null);
+                    startRefresher();
+                }
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Revalidates the code lists and themes with reference-data.
+     *
+     * @return true if something changed and the snapshot was replaced
+     */
+    public synchronized boolean refresh() {
+        Snapshot current = snapshot;
+        Snapshot next = load(current);
+        snapshot = next;
+        return next != current;
+    }
+
+    public synchronized void shutdown() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+
+    private void startRefresher() {
+        if (refreshInterval.isZero() || refreshInterval.isNegative()) {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reference-code-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = refreshInterval.toMillis();
+        refresher.scheduleWithFixedDelay(this::refreshQuietly, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    private void refreshQuietly() {
+        try {
+            if (refresh()) {
+                logger.info("Reference codes from {} changed, now at version {}", referenceDataUrl, snapshot.getVersion());
+            }
+        } catch (Exception e) {
+            logger.warn("Could not refresh reference codes from {}, keeping version {}: {}", referenceDataUrl, snapshot.getVersion(), e.getMessage());
+        }
+    }
+
+    /**
+     * Fetches every list that changed since the previous snapshot.
+     *
+     * @return the previous snapshot if nothing changed, otherwise a new snapshot
+     */
+    private Snapshot load(Snapshot previous) {
+        boolean changed = false;
+
+        Fetched<List<String>> codeTypes = fetch("/codes", CODE_TYPES);
+        changed |= codeTypes.changed;
+
+        Map<String, Map<String, SkosCode>> codes = new HashMap<>();
+        for (String codeType : codeTypes.response.body) {
+            Fetched<List<SkosCode>> codeList = fetch("/codes/" + codeType, CODES);
+            changed |= codeList.changed;
+
+            Map<String, SkosCode> codesByUri = new HashMap<>();
+            codeList.response.body.forEach(code -> codesByUri.put(code.getUri(), code));
+            codes.put(codeType, Collections.unmodifiableMap(codesByUri));
+        }
+
+        Fetched<List<DataTheme>> themes = fetch("/themes/", THEMES);
+        changed |= themes.changed;
+
+        if (previous != null && !changed) {
+            return previous;
+        }
+
+        Map<String, DataTheme> dataThemes = new HashMap<>();
+        themes.response.body.forEach(theme -> dataThemes.put(theme.getId(), theme));
+
+        long version = previous == null ? 1 : previous.getVersion() + 1;
+        logger.debug("Loaded {} code types and {} themes from {}, version {}", codes.size(), dataThemes.size(), referenceDataUrl, version);
+
+        return new Snapshot(version, Collections.unmodifiableMap(codes), Collections.unmodifiableMap(dataThemes));
+    }
+
+    private static class Fetched<T> {
+        final CachedResponse<T> response;
+        final boolean changed;
+
+        Fetched(CachedResponse<T> response, boolean changed) {
+            this.response = response;
+            this.changed = changed;
+        }
+    }
+
+    /**
+     * Gets a list, sending the ETag of the previous response. A list is changed if the service answers with new
+     * content, services that do not send ETags are compared by content.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Fetched<T> fetch(String path, ParameterizedTypeReference<T> type) {
+        CachedResponse<T> cached = (CachedResponse<T>) responses.get(path);
+
+        HttpHeaders headers = new HttpHeaders();
+        if (cached != null && cached.etag != null) {
+            headers.setIfNoneMatch(cached.etag);
+        }
+
+        ResponseEntity<T> entity = restTemplate.exchange(referenceDataUrl + path, HttpMethod.GET, new HttpEntity<>(headers), type);
+
+        if (cached != null && entity.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+            return new Fetched<>(cached, false);
+        }
+
+        CachedResponse<T> response = new CachedResponse<>(entity.getHeaders().getETag(), entity.getBody());
+        responses.put(path, response);
+
+        return new Fetched<>(response, cached == null || !Objects.equals(cached.body, response.body));
+    }
+}
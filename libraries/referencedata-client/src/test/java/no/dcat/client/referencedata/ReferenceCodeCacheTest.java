@@ -0,0 +1,132 @@
+package no.dcat.client.referencedata;
+
+import com.sun.net.httpserver.HttpExchange;
+import no.dcat.shared.SkosCode;
+import no.dcat.shared.testcategories.UnitTest;
+import no.dcat.shared.testutils.StubHttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.springframework.web.client.RestClientException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+@Category(UnitTest.class)
+public class ReferenceCodeCacheTest {
+
+    @Rule
+    public StubHttpServer server = new StubHttpServer(this::respond);
+
+    private final Map<String, String> bodies = new ConcurrentHashMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    private ReferenceCodeCache cache;
+
+    @Before
+    public void createCache() {
+        bodies.put("/codes", "[\"provenancestatement\",\"location\"]");
+        bodies.put("/codes/provenancestatement", "[{\"uri\":\"http://data.brreg.no/datakatalog/provinens/vedtak\",\"code\":\"VEDTAK\",\"prefLabel\":{\"nb\":\"Vedtak\"}}]");
+        bodies.put("/codes/location", "[]");
+        bodies.put("/themes/", "[{\"id\":\"http://publications.europa.eu/resource/authority/data-theme/GOVE\",\"code\":\"GOVE\"}]");
+
+        cache = new ReferenceCodeCache(server.getBaseUrl(), Duration.ZERO);
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        String body = bodies.get(exchange.getRequestURI().getPath());
+        if (body == null) {
+            StubHttpServer.respond(exchange, 404);
+            return;
+        }
+
+        String etag = "\"" + Integer.toHexString(body.hashCode()) + "\"";
+        exchange.getResponseHeaders().add("ETag", etag);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            notModified.incrementAndGet();
+            StubHttpServer.respond(exchange, 304);
+            return;
+        }
+
+        StubHttpServer.respond(exchange, 200, "application/json;charset=UTF-8", body);
+    }
+
+    @After
+    public void shutdownCache() {
+        cache.shutdown();
+    }
+
+    @Test
+    public void codesAndThemesAreFetchedOnce() {
+        Map<String, Map<String, SkosCode>> codes = cache.getCodes();
+
+        assertThat(codes.get("provenancestatement").get("http://data.brreg.no/datakatalog/provinens/vedtak").getCode(), is("VEDTAK"));
+        assertThat(cache.getDataThemes().get("http://publications.europa.eu/resource/authority/data-theme/GOVE").getCode(), is("GOVE"));
+        assertThat(requests.get(), is(4));
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(cache.getCodes(), sameInstance(codes));
+            cache.getDataThemes();
+        }
+        assertThat(requests.get(), is(4));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void codesCannotBeModified() {
+        cache.getCodes().get("location").put("http://sws.geonames.org/3144096/", new SkosCode());
+    }
+
+    @Test
+    public void unchangedListsAreRevalidatedWithEtag() {
+        ReferenceCodeCache.Snapshot snapshot = cache.getSnapshot();
+
+        assertThat(cache.refresh(), is(false));
+
+        assertThat(cache.getSnapshot(), sameInstance(snapshot));
+        assertThat(notModified.get(), is(4));
+    }
+
+    @Test
+    public void changedListReplacesSnapshotWithNewVersion() {
+        ReferenceCodeCache.Snapshot snapshot = cache.getSnapshot();
+        bodies.put("/codes/location", "[{\"uri\":\"http://sws.geonames.org/3144096/\",\"code\":\"http://sws.geonames.org/3144096/\",\"prefLabel\":{\"no\":\"Norge\"}}]");
+
+        assertThat(cache.refresh(), is(true));
+
+        ReferenceCodeCache.Snapshot changed = cache.getSnapshot();
+        assertThat(changed.getVersion(), is(snapshot.getVersion() + 1));
+        assertThat(changed.getCodes().get("location").get("http://sws.geonames.org/3144096/").getPrefLabel(), is(Collections.singletonMap("no", "Norge")));
+        assertThat(notModified.get(), is(3));
+    }
+
+    @Test
+    public void snapshotIsKeptWhenReferenceDataIsDown() {
+        ReferenceCodeCache.Snapshot snapshot = cache.getSnapshot();
+        server.stop();
+
+        try {
+            cache.refresh();
+        } catch (RestClientException e) {
+            // expected
+        }
+
+        assertThat(cache.getSnapshot(), sameInstance(snapshot));
+    }
+
+    @Test
+    public void sharedCacheIsTheSameForTheSameHost() {
+        assertThat(ReferenceCodeCache.shared(server.getBaseUrl()), sameInstance(ReferenceCodeCache.shared(server.getBaseUrl())));
+    }
+}
@@ -0,0 +1,106 @@
+package no.dcat.shared.testutils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.rules.ExternalResource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A local HTTP server for tests of clients, that answers every request with a handler written in the test.
+ * It listens on a free port of localhost and handles requests concurrently.
+ *
+ * Use it as a rule, which starts the server before each test and stops it after:
+ *
+ * <pre>
+ * &#64;Rule
+ * public StubHttpServer server = new StubHttpServer(exchange -&gt; StubHttpServer.respond(exchange, 200, "text/turtle", body));
+ * </pre>
+ *
+ * or call {@link #start()} and {@link #stop()} directly.
+ */
+public class StubHttpServer extends ExternalResource {
+
+    private final HttpHandler handler;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public StubHttpServer(HttpHandler handler) {
+        this.handler = handler;
+    }
+
+    public StubHttpServer start() throws IOException {
+        executor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", handler);
+        server.setExecutor(executor);
+        server.start();
+        return this;
+    }
+
+    /**
+     * Stops the server, the next request is refused. It can be called more than once.
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    /**
+     * @return the url of the server, like http://localhost:port, without a trailing slash
+     */
+    public String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public String url(String path) {
+        return getBaseUrl() + path;
+    }
+
+    @Override
+    protected void before() throws IOException {
+        start();
+    }
+
+    @Override
+    protected void after() {
+        stop();
+    }
+
+    /**
+     * Sends a response with a body and closes the exchange.
+     *
+     * @param contentType the content type of the body, or null to leave it out
+     */
+    public static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        if (contentType != null) {
+            exchange.getResponseHeaders().add("Content-Type", contentType);
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+        exchange.close();
+    }
+
+    public static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        respond(exchange, status, contentType, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sends a response without a body, like 304 or 404, and closes the exchange.
+     */
+    public static void respond(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+        exchange.close();
+    }
+}